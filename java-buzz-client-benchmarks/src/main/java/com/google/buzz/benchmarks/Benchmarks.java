@@ -0,0 +1,30 @@
+package com.google.buzz.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the JMH command line options, always adding the gc profiler: next to
+ * the throughput, every benchmark reports its allocation rate ( <b>gc.alloc.rate</b> ) and the
+ * bytes allocated per operation ( <b>gc.alloc.rate.norm</b> ). <br/>
+ * ie: <b>java -jar target/benchmarks.jar FeedParser -p entries=1000 -rf json</b>
+ */
+public final class Benchmarks
+{
+    private Benchmarks()
+    {
+    }
+
+    public static void main( String[] args )
+        throws RunnerException, CommandLineOptionException
+    {
+        Options options = new OptionsBuilder().parent( new CommandLineOptions( args ) )
+            .addProfiler( GCProfiler.class ).build();
+        new Runner( options ).run();
+    }
+}
@@ -0,0 +1,101 @@
+package com.google.buzz.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.buzz.codec.BuzzBinaryDecoder;
+import com.google.buzz.codec.BuzzBinaryEncoder;
+import com.google.buzz.exception.BuzzException;
+import com.google.buzz.model.BuzzCommentsFeed;
+import com.google.buzz.model.BuzzFeed;
+import com.google.buzz.parser.BuzzCommentsParser;
+import com.google.buzz.parser.BuzzFeedParser;
+
+/**
+ * Binary codec against the XML parsers, on the same feeds of 1 to 10,000 entries. <br/>
+ * <b>decodeFeed</b> compares with <b>FeedParserBenchmark.parseFeedStream</b>, which reads the
+ * same feed from the bytes of the XML response; <b>parseFeed</b> is repeated here so a single run
+ * gives both sides. <br/>
+ * ie: <b>java -jar target/benchmarks.jar "BinaryCodec|FeedParser.parseFeedStream" -p entries=1000</b>
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class BinaryCodecBenchmark
+{
+    /**
+     * Number of entries of the feeds
+     */
+    @Param( { "1", "10", "100", "1000", "10000" } )
+    public int entries;
+
+    private byte[] feedXml;
+
+    private BuzzFeed feed;
+
+    private byte[] feedBinary;
+
+    private BuzzCommentsFeed comments;
+
+    private byte[] commentsBinary;
+
+    @Setup
+    public void setUp()
+        throws IOException, BuzzException
+    {
+        feedXml = Corpus.bytes( Corpus.scale( Corpus.FEED, entries ) );
+        feed = BuzzFeedParser.parseFeed( new ByteArrayInputStream( feedXml ) );
+        feedBinary = BuzzBinaryEncoder.encode( feed );
+        comments = BuzzCommentsParser.parseComments( Corpus.scale( Corpus.COMMENTS, entries ) );
+        commentsBinary = BuzzBinaryEncoder.encode( comments );
+    }
+
+    @Benchmark
+    public BuzzFeed parseFeed()
+        throws BuzzException
+    {
+        return BuzzFeedParser.parseFeed( new ByteArrayInputStream( feedXml ) );
+    }
+
+    @Benchmark
+    public BuzzFeed decodeFeed()
+        throws BuzzException
+    {
+        return new BuzzBinaryDecoder( feedBinary, 0, feedBinary.length ).readFeed();
+    }
+
+    @Benchmark
+    public byte[] encodeFeed()
+    {
+        return BuzzBinaryEncoder.encode( feed );
+    }
+
+    @Benchmark
+    public BuzzCommentsFeed decodeComments()
+        throws BuzzException
+    {
+        return new BuzzBinaryDecoder( commentsBinary, 0, commentsBinary.length ).readCommentsFeed();
+    }
+
+    @Benchmark
+    public byte[] encodeComments()
+    {
+        return BuzzBinaryEncoder.encode( comments );
+    }
+}
@@ -0,0 +1,138 @@
+package com.google.buzz.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Corpus of the benchmarks. <br/>
+ * The documents are responses of the Buzz API: Atom feeds of activities and comments, single
+ * activities and comments, and Portable Contacts responses of profiles. The feeds are scaled to
+ * any number of entries by repeating their entries in order, so every size has the same mix of
+ * content. <br/>
+ * The documents are the canned responses of the client tests, read from the test jar of
+ * java-buzz-client.
+ */
+public final class Corpus
+{
+    /**
+     * Atom feed of activities
+     */
+    public static final String FEED = "feed.xml";
+
+    /**
+     * Atom feed of comments
+     */
+    public static final String COMMENTS = "comments.xml";
+
+    /**
+     * Portable Contacts list of profiles
+     */
+    public static final String PEOPLE = "people.xml";
+
+    /**
+     * Single activity
+     */
+    public static final String ENTRY = "entry.xml";
+
+    /**
+     * Single comment
+     */
+    public static final String COMMENT = "comment.xml";
+
+    /**
+     * Single profile
+     */
+    public static final String PROFILE = "profile.xml";
+
+    /**
+     * Start and end of the repeated elements of the feeds
+     */
+    private static final String ENTRY_START = " <entry>";
+
+    private static final String ENTRY_END = " </entry>\n";
+
+    /**
+     * Location of the documents in the test jar of the client
+     */
+    private static final String LOCATION = "/com/google/buzz/";
+
+    private Corpus()
+    {
+    }
+
+    /**
+     * Load a document of the corpus.
+     *
+     * @param name of the document
+     * @return the document
+     * @throws IOException if the document can not be read
+     */
+    public static String load( String name )
+        throws IOException
+    {
+        InputStream in = Corpus.class.getResourceAsStream( LOCATION + name );
+        if ( in == null )
+        {
+            throw new IOException( "No such document in the corpus: " + name );
+        }
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ( ( n = in.read( buffer ) ) > 0 )
+            {
+                out.write( buffer, 0, n );
+            }
+            return new String( out.toByteArray(), StandardCharsets.UTF_8 );
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Load a feed of the corpus, scaled to a number of entries.
+     *
+     * @param name of the feed
+     * @param entries number of entries of the scaled feed
+     * @return the scaled feed
+     * @throws IOException if the feed can not be read
+     */
+    public static String scale( String name, int entries )
+        throws IOException
+    {
+        String feed = load( name );
+        int start = feed.indexOf( ENTRY_START );
+        int end = feed.lastIndexOf( ENTRY_END );
+        if ( start < 0 || end < 0 )
+        {
+            throw new IOException( "Not a feed: " + name );
+        }
+        end += ENTRY_END.length();
+
+        // split the entries, so the scaled feed can stop after any of them
+        String body = feed.substring( start, end );
+        String[] parts = body.split( "(?<=" + ENTRY_END + ")" );
+
+        StringBuilder sb = new StringBuilder( start + ( feed.length() - end ) + entries * body.length() / parts.length );
+        sb.append( feed, 0, start );
+        for ( int i = 0; i < entries; i++ )
+        {
+            sb.append( parts[i % parts.length] );
+        }
+        sb.append( feed, end, feed.length() );
+        return sb.toString();
+    }
+
+    /**
+     * @return the UTF-8 bytes of a document
+     */
+    public static byte[] bytes( String document )
+    {
+        return document.getBytes( StandardCharsets.UTF_8 );
+    }
+}
@@ -0,0 +1,79 @@
+package com.google.buzz.benchmarks;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.buzz.util.DateUtils;
+
+/**
+ * Parsing and formatting of the feed timestamps. <br/>
+ * The <b>simpleDateFormat</b> benchmarks keep the implementation DateUtils had before, a new
+ * <b>SimpleDateFormat</b> per call, as the baseline.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class DateUtilsBenchmark
+{
+    /**
+     * Format DateUtils used to parse and format with, as it was
+     */
+    private static final String LEGACY_FORMAT = "yyyy-MM-dd'T'hh:mm:ss.SSS'Z'";
+
+    private final String utc = "2010-05-21T18:01:44.210Z";
+
+    private final String offset = "2010-05-21T11:01:44.210-07:00";
+
+    private final Date date = new Date( 1274464904210L );
+
+    @Benchmark
+    public Date parseDate()
+    {
+        return DateUtils.parseDate( utc );
+    }
+
+    @Benchmark
+    public long parseMillisWithOffset()
+    {
+        return DateUtils.parseMillis( offset );
+    }
+
+    @Benchmark
+    public String format()
+    {
+        return DateUtils.format( date );
+    }
+
+    @Benchmark
+    public Date simpleDateFormatParse()
+        throws ParseException
+    {
+        return legacyFormat().parse( utc );
+    }
+
+    @Benchmark
+    public String simpleDateFormatFormat()
+    {
+        return legacyFormat().format( date );
+    }
+
+    private static SimpleDateFormat legacyFormat()
+    {
+        return new SimpleDateFormat( LEGACY_FORMAT );
+    }
+}
@@ -0,0 +1,92 @@
+package com.google.buzz.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.buzz.exception.BuzzException;
+import com.google.buzz.model.BuzzCommentsFeed;
+import com.google.buzz.model.BuzzFeed;
+import com.google.buzz.model.BuzzUserProfile;
+import com.google.buzz.parser.BuzzCommentsParser;
+import com.google.buzz.parser.BuzzFeedParser;
+import com.google.buzz.parser.BuzzUsersProfilesParser;
+
+/**
+ * Parsing of the feeds, from 1 to 10,000 entries. <br/>
+ * Activities are parsed both from a string and from the bytes of the response, as <b>Buzz</b>
+ * does when the body is streamed.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class FeedParserBenchmark
+{
+    /**
+     * Number of entries of the feeds
+     */
+    @Param( { "1", "10", "100", "1000", "10000" } )
+    public int entries;
+
+    private String feed;
+
+    private byte[] feedBytes;
+
+    private String comments;
+
+    private String people;
+
+    @Setup
+    public void setUp()
+        throws IOException
+    {
+        feed = Corpus.scale( Corpus.FEED, entries );
+        feedBytes = Corpus.bytes( feed );
+        comments = Corpus.scale( Corpus.COMMENTS, entries );
+        people = Corpus.scale( Corpus.PEOPLE, entries );
+    }
+
+    @Benchmark
+    public BuzzFeed parseFeed()
+        throws BuzzException
+    {
+        return BuzzFeedParser.parseFeed( feed );
+    }
+
+    @Benchmark
+    public BuzzFeed parseFeedStream()
+        throws BuzzException
+    {
+        return BuzzFeedParser.parseFeed( new ByteArrayInputStream( feedBytes ) );
+    }
+
+    @Benchmark
+    public BuzzCommentsFeed parseComments()
+        throws BuzzException
+    {
+        return BuzzCommentsParser.parseComments( comments );
+    }
+
+    @Benchmark
+    public List<BuzzUserProfile> parseUsersProfiles()
+        throws BuzzException
+    {
+        return BuzzUsersProfilesParser.parseUsersProfiles( people );
+    }
+}
@@ -0,0 +1,72 @@
+package com.google.buzz.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.buzz.exception.BuzzException;
+import com.google.buzz.model.BuzzComment;
+import com.google.buzz.model.BuzzFeedEntry;
+import com.google.buzz.model.BuzzUserProfile;
+import com.google.buzz.parser.BuzzCommentParser;
+import com.google.buzz.parser.BuzzFeedEntryParser;
+import com.google.buzz.parser.BuzzUserProfileParser;
+
+/**
+ * Parsing of the small responses: a single activity, comment or profile. Their cost is mostly
+ * the fixed overhead of a parse.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class SingleResourceBenchmark
+{
+    private String entry;
+
+    private String comment;
+
+    private String profile;
+
+    @Setup
+    public void setUp()
+        throws IOException
+    {
+        entry = Corpus.load( Corpus.ENTRY );
+        comment = Corpus.load( Corpus.COMMENT );
+        profile = Corpus.load( Corpus.PROFILE );
+    }
+
+    @Benchmark
+    public BuzzFeedEntry parseFeedEntry()
+        throws BuzzException
+    {
+        return BuzzFeedEntryParser.parseFeedEntry( entry );
+    }
+
+    @Benchmark
+    public BuzzComment parseComment()
+        throws BuzzException
+    {
+        return BuzzCommentParser.parseComment( comment );
+    }
+
+    @Benchmark
+    public BuzzUserProfile parseProfile()
+        throws BuzzException
+    {
+        return BuzzUserProfileParser.parseProfile( profile );
+    }
+}
@@ -0,0 +1,75 @@
+package com.google.buzz.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.buzz.exception.BuzzValidationException;
+import com.google.buzz.model.BuzzContent;
+import com.google.buzz.model.BuzzLink;
+import com.google.buzz.xml.XMLGenerator;
+
+/**
+ * Generation of the payload of new posts, for short to long contents, with and without link.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Benchmark )
+public class XMLGeneratorBenchmark
+{
+    /**
+     * Length of the text of the content
+     */
+    @Param( { "16", "1024", "65536" } )
+    public int length;
+
+    private BuzzContent content;
+
+    private BuzzLink link;
+
+    @Setup
+    public void setUp()
+    {
+        String words = "Analytical engines &amp; <b>numbers</b>, weaving algebraic patterns. ";
+        StringBuilder text = new StringBuilder( length );
+        while ( text.length() < length )
+        {
+            text.append( words, 0, Math.min( words.length(), length - text.length() ) );
+        }
+        content = new BuzzContent();
+        content.setType( "html" );
+        content.setText( text.toString() );
+
+        link = new BuzzLink();
+        link.setRel( "enclosure" );
+        link.setType( "text/html" );
+        link.setHref( "http://www.google.com/buzz/ada/Gq3ESy8wUdR/Analytical-engines" );
+    }
+
+    @Benchmark
+    public String constructPayload()
+        throws BuzzValidationException
+    {
+        return XMLGenerator.constructPayload( content, null );
+    }
+
+    @Benchmark
+    public String constructPayloadWithLink()
+        throws BuzzValidationException
+    {
+        return XMLGenerator.constructPayload( content, link );
+    }
+}
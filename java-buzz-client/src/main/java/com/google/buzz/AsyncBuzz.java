@@ -0,0 +1,490 @@
+package com.google.buzz;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.buzz.exception.BuzzException;
+import com.google.buzz.io.AsyncBuzzTransport;
+import com.google.buzz.io.BuzzIO;
+import com.google.buzz.io.BuzzRequest;
+import com.google.buzz.io.BuzzResponse;
+import com.google.buzz.io.BuzzTransport;
+import com.google.buzz.io.ExecutorAsyncTransport;
+import com.google.buzz.io.HttpClientTransport;
+import com.google.buzz.io.JdkHttpTransport;
+import com.google.buzz.model.BuzzComment;
+import com.google.buzz.model.BuzzCommentsFeed;
+import com.google.buzz.model.BuzzContent;
+import com.google.buzz.model.BuzzFeed;
+import com.google.buzz.model.BuzzFeedEntry;
+import com.google.buzz.model.BuzzLink;
+import com.google.buzz.model.BuzzUserProfile;
+import com.google.buzz.parser.BuzzCommentParser;
+import com.google.buzz.parser.BuzzCommentsParser;
+import com.google.buzz.parser.BuzzFeedEntryParser;
+import com.google.buzz.parser.BuzzFeedParser;
+import com.google.buzz.parser.BuzzUserProfileParser;
+import com.google.buzz.parser.BuzzUsersProfilesParser;
+
+/**
+ * Asynchronous facade of the Buzz Client API. <br/>
+ * Mirrors the operations of <b>Buzz</b>, returning futures instead of blocking. Requests are
+ * signed with the OAuth settings of the wrapped <b>Buzz</b> instance and executed by an
+ * <b>AsyncBuzzTransport</b>. With a natively asynchronous transport, such as <b>JdkHttpTransport</b>,
+ * no thread waits for the network; a blocking transport, such as a stack of decorators, holds one
+ * thread of the given executor per request in flight. Signing, which may wait for a token refresh,
+ * and parsing of the responses run on the parse executor. <br/>
+ * Futures fail with a <b>CompletionException</b> whose cause is the <b>BuzzException</b> the
+ * blocking call would have thrown.
+ */
+public class AsyncBuzz
+{
+    /**
+     * Blocking client holding the OAuth settings
+     */
+    private final Buzz buzz;
+
+    /**
+     * Transport executing the requests
+     */
+    private final AsyncBuzzTransport transport;
+
+    /**
+     * Executor signing requests and parsing responses
+     */
+    private final Executor parseExecutor;
+
+    /**
+     * Threads signing requests and parsing responses for the facades created without an executor
+     */
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool( new ThreadFactory()
+    {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread( Runnable runnable )
+        {
+            Thread thread = new Thread( runnable, "buzz-async-" + count.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        }
+    } );
+
+    /**
+     * Creates a facade over a non-blocking transport. <br/>
+     * The transport of the client is used if it is asynchronous, and the default httpclient transport
+     * is replaced by a non-blocking <b>JdkHttpTransport</b>. Signing and parsing run on threads of
+     * the library.
+     *
+     * @param buzz client holding the OAuth settings
+     * @throws IllegalArgumentException if the transport of the client is blocking; use
+     *             <b>AsyncBuzz( Buzz, Executor )</b> for it
+     */
+    public AsyncBuzz( Buzz buzz )
+    {
+        this( buzz, asyncTransport( buzz.getTransport() ), WORKERS );
+    }
+
+    /**
+     * Creates a facade running a blocking transport on an executor. <br/>
+     * The transport of the client is used as it is if it is asynchronous, and the default httpclient
+     * transport is replaced by a non-blocking <b>JdkHttpTransport</b>. Any other transport runs on
+     * the executor, which then needs one thread per request in flight.
+     *
+     * @param buzz client holding the OAuth settings
+     * @param executor to run a blocking transport, sign requests and parse responses
+     */
+    public AsyncBuzz( Buzz buzz, Executor executor )
+    {
+        this( buzz, asyncTransport( buzz.getTransport(), executor ), executor );
+    }
+
+    /**
+     * Creates a facade.
+     *
+     * @param buzz client holding the OAuth settings
+     * @param transport to execute the requests
+     * @param parseExecutor to sign requests and parse responses
+     */
+    public AsyncBuzz( Buzz buzz, AsyncBuzzTransport transport, Executor parseExecutor )
+    {
+        this.buzz = buzz;
+        this.transport = transport;
+        this.parseExecutor = parseExecutor;
+    }
+
+    /**
+     * @return the wrapped blocking client
+     */
+    public Buzz getBuzz()
+    {
+        return buzz;
+    }
+
+    /**
+     * @see Buzz#getPosts(String, BuzzFeed.Type)
+     */
+    public CompletableFuture<BuzzFeed> getPosts( final String userId, final BuzzFeed.Type feedType )
+    {
+        return call( () -> BuzzRequests.posts( userId, feedType ), !BuzzFeed.Type.PUBLIC.equals( feedType ),
+                     BuzzFeedParser::parseFeed );
+    }
+
+    /**
+     * @see Buzz#search(String)
+     */
+    public CompletableFuture<BuzzFeed> search( final String query )
+    {
+        return call( () -> BuzzRequests.search( query ), true, BuzzFeedParser::parseFeed );
+    }
+
+    /**
+     * @see Buzz#getUserProfile(String)
+     */
+    public CompletableFuture<BuzzUserProfile> getUserProfile( final String userId )
+    {
+        return call( () -> BuzzRequests.userProfile( userId ), true, BuzzUserProfileParser::parseProfile );
+    }
+
+    /**
+     * @see Buzz#followers(String)
+     */
+    public CompletableFuture<List<BuzzUserProfile>> followers( final String userId )
+    {
+        return call( () -> BuzzRequests.followers( userId ), true, BuzzUsersProfilesParser::parseUsersProfiles );
+    }
+
+    /**
+     * @see Buzz#following(String)
+     */
+    public CompletableFuture<List<BuzzUserProfile>> following( final String userId )
+    {
+        return call( () -> BuzzRequests.following( userId ), true, BuzzUsersProfilesParser::parseUsersProfiles );
+    }
+
+    /**
+     * @see Buzz#follow(String, String)
+     */
+    public CompletableFuture<Void> follow( final String userId, final String userIdToFollow )
+    {
+        return call( () -> BuzzRequests.follow( userId, userIdToFollow ), true, AsyncBuzz::ignore );
+    }
+
+    /**
+     * @see Buzz#unfollow(String, String)
+     */
+    public CompletableFuture<Void> unfollow( final String userId, final String userIdToUnfollow )
+    {
+        return call( () -> BuzzRequests.unfollow( userId, userIdToUnfollow ), true, AsyncBuzz::ignore );
+    }
+
+    /**
+     * @see Buzz#createPost(String, BuzzContent, BuzzLink)
+     */
+    public CompletableFuture<BuzzFeedEntry> createPost( final String userId, final BuzzContent content,
+                                                        final BuzzLink link )
+    {
+        return call( () -> BuzzRequests.createPost( userId, content, link ), true,
+                     BuzzFeedEntryParser::parseFeedEntry );
+    }
+
+    /**
+     * @see Buzz#createPost(String, BuzzContent)
+     */
+    public CompletableFuture<BuzzFeedEntry> createPost( String userId, BuzzContent content )
+    {
+        return createPost( userId, content, null );
+    }
+
+    /**
+     * @see Buzz#getPost(String, String)
+     */
+    public CompletableFuture<BuzzFeedEntry> getPost( final String userId, final String activityId )
+    {
+        return call( () -> BuzzRequests.post( userId, activityId ), true, BuzzFeedEntryParser::parseFeedEntry );
+    }
+
+    /**
+     * @see Buzz#deletePost(String, String)
+     */
+    public CompletableFuture<Void> deletePost( final String userId, final String activityId )
+    {
+        return call( () -> BuzzRequests.deletePost( userId, activityId ), true, AsyncBuzz::ignore );
+    }
+
+    /**
+     * @see Buzz#updatePost(String, String, BuzzContent)
+     */
+    public CompletableFuture<BuzzFeedEntry> updatePost( final String userId, final String activityId,
+                                                        final BuzzContent content )
+    {
+        return call( () -> BuzzRequests.updatePost( userId, activityId, content ), true,
+                     BuzzFeedEntryParser::parseFeedEntry );
+    }
+
+    /**
+     * @see Buzz#createComment(String, String, BuzzContent)
+     */
+    public CompletableFuture<BuzzComment> createComment( final String userId, final String activityId,
+                                                         final BuzzContent content )
+    {
+        return call( () -> BuzzRequests.createComment( userId, activityId, content ), true,
+                     BuzzCommentParser::parseComment );
+    }
+
+    /**
+     * @see Buzz#deleteComment(String, String, String)
+     */
+    public CompletableFuture<Void> deleteComment( final String userId, final String activityId,
+                                                  final String commentId )
+    {
+        return call( () -> BuzzRequests.deleteComment( userId, activityId, commentId ), true, AsyncBuzz::ignore );
+    }
+
+    /**
+     * @see Buzz#getComment(String, String, String)
+     */
+    public CompletableFuture<BuzzComment> getComment( final String userId, final String activityId,
+                                                      final String commentId )
+    {
+        return call( () -> BuzzRequests.comment( userId, activityId, commentId ), true,
+                     BuzzCommentParser::parseComment );
+    }
+
+    /**
+     * @see Buzz#getComments(String, String)
+     */
+    public CompletableFuture<BuzzCommentsFeed> getComments( final String userId, final String activityId )
+    {
+        return call( () -> BuzzRequests.comments( userId, activityId ), true, BuzzCommentsParser::parseComments );
+    }
+
+    /**
+     * @see Buzz#updateComment(String, String, String, BuzzContent)
+     */
+    public CompletableFuture<BuzzComment> updateComment( final String userId, final String activityId,
+                                                         final String commentId, final BuzzContent content )
+    {
+        return call( () -> BuzzRequests.updateComment( userId, activityId, commentId, content ), true,
+                     BuzzCommentParser::parseComment );
+    }
+
+    /**
+     * @see Buzz#getLikes(String, String)
+     */
+    public CompletableFuture<List<BuzzUserProfile>> getLikes( final String userId, final String postId )
+    {
+        return call( () -> BuzzRequests.likes( userId, postId ), true, BuzzUsersProfilesParser::parseUsersProfiles );
+    }
+
+    /**
+     * @see Buzz#likedPosts()
+     */
+    public CompletableFuture<BuzzFeed> likedPosts()
+    {
+        return getPosts( "@me", BuzzFeed.Type.LIKED );
+    }
+
+    /**
+     * @see Buzz#likePost(String, String)
+     */
+    public CompletableFuture<Void> likePost( final String userId, final String postId )
+    {
+        return call( () -> BuzzRequests.likePost( userId, postId ), true, AsyncBuzz::ignore );
+    }
+
+    /**
+     * @see Buzz#likePost(String)
+     */
+    public CompletableFuture<Void> likePost( String postId )
+    {
+        return likePost( "@me", postId );
+    }
+
+    /**
+     * @see Buzz#unlikePost(String, String)
+     */
+    public CompletableFuture<Void> unlikePost( final String userId, final String postId )
+    {
+        return call( () -> BuzzRequests.unlikePost( userId, postId ), true, AsyncBuzz::ignore );
+    }
+
+    /**
+     * @see Buzz#unlikePost(String)
+     */
+    public CompletableFuture<Void> unlikePost( String postId )
+    {
+        return unlikePost( "@me", postId );
+    }
+
+    /**
+     * @see Buzz#resharePost(String, String, String)
+     */
+    public CompletableFuture<BuzzFeedEntry> resharePost( final String userId, final String postId,
+                                                         final String annotation )
+    {
+        return call( () -> BuzzRequests.resharePost( userId, postId, annotation ), true,
+                     BuzzFeedEntryParser::parseFeedEntry );
+    }
+
+    /**
+     * @see Buzz#searchPeople(String)
+     */
+    public CompletableFuture<List<BuzzUserProfile>> searchPeople( final String query )
+    {
+        return call( () -> BuzzRequests.searchPeople( query ), true, BuzzUsersProfilesParser::parseUsersProfiles );
+    }
+
+    /**
+     * Build and sign the request on the parse executor, execute it with the transport and parse the
+     * response as it streams in on the parse executor, as <b>Buzz</b> does: GET requests go through
+     * the validator cache of the client, and the request is recorded in its metrics and as a flight
+     * recorder event. A response arriving once the future was cancelled, or timed out, is closed.
+     *
+     * @param factory building the request
+     * @param signed true if the request has to be signed
+     * @param parser of the response body
+     * @return the future result
+     */
+    private <T> CompletableFuture<T> call( final RequestFactory factory, final boolean signed,
+                                           final Buzz.ContentParser<T> parser )
+    {
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        parseExecutor.execute( () -> {
+            BuzzRequest request;
+            try
+            {
+                request = factory.create();
+                if ( signed )
+                {
+                    buzz.sign( request );
+                }
+            }
+            catch ( BuzzException e )
+            {
+                result.completeExceptionally( new CompletionException( e ) );
+                return;
+            }
+            send( request, parser, result );
+        } );
+        return result;
+    }
+
+    /**
+     * Send a request, and complete the result with its parsed response on the parse executor.
+     *
+     * @param request to send, signed
+     * @param parser of the response body
+     * @param result to complete
+     */
+    private <T> void send( final BuzzRequest request, final Buzz.ContentParser<T> parser,
+                           final CompletableFuture<T> result )
+    {
+        final BuzzCache validators = buzz.validators( request );
+        final BuzzCache.Entry cached = buzz.validate( validators, request );
+        buzz.prepare( request );
+        final long start = System.nanoTime();
+        BuzzIO.openAsync( request, transport, parseExecutor ).whenComplete( ( response, error ) -> {
+            long network = System.nanoTime() - start;
+            if ( error != null )
+            {
+                buzz.record( request, network, 0, 0, error );
+                buzz.throttle( error );
+                result.completeExceptionally( new CompletionException( error ) );
+                return;
+            }
+            read( request, validators, cached, response, network, parser, result );
+        } );
+    }
+
+    /**
+     * Complete the result with the cached result or the parsed body of a response, and close it.
+     */
+    @SuppressWarnings( "unchecked" )
+    private <T> void read( BuzzRequest request, BuzzCache validators, BuzzCache.Entry cached, BuzzResponse response,
+                           long network, Buzz.ContentParser<T> parser, CompletableFuture<T> result )
+    {
+        try
+        {
+            if ( result.isDone() )
+            {
+                // cancelled or timed out: the response is only closed
+                return;
+            }
+            if ( Buzz.isNotModified( cached, response ) )
+            {
+                Object value = buzz.hit( request, validators, cached, network );
+                if ( value == null )
+                {
+                    // the cached result was released since the request was sent: ask for the body
+                    send( Buzz.unconditional( request ), parser, result );
+                    return;
+                }
+                result.complete( (T) value );
+                return;
+            }
+            result.complete( buzz.parse( request, validators, response, network, parser ) );
+        }
+        catch ( BuzzException e )
+        {
+            result.completeExceptionally( new CompletionException( e ) );
+        }
+        finally
+        {
+            response.close();
+        }
+    }
+
+    /**
+     * Parser for operations without a result.
+     */
+    private static Void ignore( InputStream content )
+    {
+        return null;
+    }
+
+    /**
+     * Choose the non-blocking transport matching the transport of a blocking client.
+     */
+    private static AsyncBuzzTransport asyncTransport( BuzzTransport transport )
+    {
+        if ( transport instanceof AsyncBuzzTransport )
+        {
+            return (AsyncBuzzTransport) transport;
+        }
+        if ( transport instanceof HttpClientTransport )
+        {
+            return new JdkHttpTransport();
+        }
+        throw new IllegalArgumentException( "The transport " + transport.getClass().getName()
+            + " is blocking, an executor is needed to run it" );
+    }
+
+    /**
+     * Choose the asynchronous transport matching the transport of a blocking client, running it on an
+     * executor if it is blocking.
+     */
+    private static AsyncBuzzTransport asyncTransport( BuzzTransport transport, Executor executor )
+    {
+        if ( transport instanceof AsyncBuzzTransport || transport instanceof HttpClientTransport )
+        {
+            return asyncTransport( transport );
+        }
+        return new ExecutorAsyncTransport( transport, executor );
+    }
+
+    /**
+     * Builds the request of an operation.
+     */
+    private interface RequestFactory
+    {
+        BuzzRequest create()
+            throws BuzzException;
+    }
+}
@@ -0,0 +1,457 @@
+package com.google.buzz;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.buzz.exception.BuzzException;
+import com.google.buzz.model.BuzzFeedEntry;
+import com.google.buzz.model.BuzzUserProfile;
+
+/**
+ * Bulk execution mode for the blocking <b>Buzz</b> calls. <br/>
+ * By default the calls run on a bounded pool of platform threads, as large as the per host limit.
+ * On a JVM with virtual threads ( Java 21 and later ) every call runs on its own virtual thread
+ * instead, so plain synchronous <b>Buzz</b> code fans out over tens of thousands of ids. <br/>
+ * The number of calls in flight is limited per host and per account. A call waits in a queue, not on
+ * a thread, until it holds a permit of its account and one of its host, so the calls of a busy
+ * account do not hold the threads the other accounts need. Results are returned in completion
+ * order.
+ */
+public class BulkBuzz
+{
+    /**
+     * Default number of concurrent calls to one host
+     */
+    public static final int DEFAULT_MAX_PER_HOST = 200;
+
+    /**
+     * Default number of concurrent calls on behalf of one account
+     */
+    public static final int DEFAULT_MAX_PER_ACCOUNT = 50;
+
+    /**
+     * Host of the Buzz API
+     */
+    public static final String BUZZ_HOST = URI.create( Buzz.BUZZ_URL_ACTIVITIES ).getHost();
+
+    /**
+     * Executor running the calls
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Maximum number of concurrent calls to one host
+     */
+    private final int maxPerHost;
+
+    /**
+     * Maximum number of concurrent calls on behalf of one account
+     */
+    private final int maxPerAccount;
+
+    /**
+     * Permits of the hosts
+     */
+    private final ConcurrentMap<String, Semaphore> hostPermits = new ConcurrentHashMap<String, Semaphore>();
+
+    /**
+     * Permits of the accounts
+     */
+    private final ConcurrentMap<String, Semaphore> accountPermits = new ConcurrentHashMap<String, Semaphore>();
+
+    /**
+     * Bulk operations with calls still waiting for their permits
+     */
+    private final List<Dispatch<?, ?>> dispatches = new ArrayList<Dispatch<?, ?>>();
+
+    /**
+     * True once no new bulk operation is accepted
+     */
+    private boolean shutdown;
+
+    /**
+     * Creates a bulk executor with the default limits.
+     */
+    public BulkBuzz()
+    {
+        this( DEFAULT_MAX_PER_HOST, DEFAULT_MAX_PER_ACCOUNT );
+    }
+
+    /**
+     * Creates a bulk executor running on virtual threads when available, on a bounded pool of
+     * platform threads otherwise.
+     *
+     * @param maxPerHost maximum number of concurrent calls to one host
+     * @param maxPerAccount maximum number of concurrent calls on behalf of one account
+     */
+    public BulkBuzz( int maxPerHost, int maxPerAccount )
+    {
+        this( newExecutor( maxPerHost ), maxPerHost, maxPerAccount );
+    }
+
+    /**
+     * Creates a bulk executor on a given executor.
+     *
+     * @param executor to run the calls
+     * @param maxPerHost maximum number of concurrent calls to one host
+     * @param maxPerAccount maximum number of concurrent calls on behalf of one account
+     */
+    public BulkBuzz( ExecutorService executor, int maxPerHost, int maxPerAccount )
+    {
+        this.executor = executor;
+        this.maxPerHost = maxPerHost;
+        this.maxPerAccount = maxPerAccount;
+    }
+
+    /**
+     * @return true if this JVM can run the calls on virtual threads
+     */
+    public static boolean isVirtualThreadsAvailable()
+    {
+        return virtualThreadExecutor() != null;
+    }
+
+    /**
+     * Fetch many posts of a user.
+     *
+     * @param buzz client of the account
+     * @param account key of the account, for the per account limit
+     * @param userId owner of the posts
+     * @param activityIds ids of the posts
+     * @return the posts, by id, in completion order
+     */
+    public Iterator<BulkResult<String, BuzzFeedEntry>> getPosts( final Buzz buzz, String account,
+                                                                 final String userId,
+                                                                 Collection<String> activityIds )
+    {
+        return invokeAll( account, BUZZ_HOST, activityIds, new BulkCall<String, BuzzFeedEntry>()
+        {
+            public BuzzFeedEntry call( String activityId )
+                throws BuzzException
+            {
+                return buzz.getPost( userId, activityId );
+            }
+        } );
+    }
+
+    /**
+     * Fetch many user profiles.
+     *
+     * @param buzz client of the account
+     * @param account key of the account, for the per account limit
+     * @param userIds ids of the users
+     * @return the profiles, by user id, in completion order
+     */
+    public Iterator<BulkResult<String, BuzzUserProfile>> getUserProfiles( final Buzz buzz, String account,
+                                                                          Collection<String> userIds )
+    {
+        return invokeAll( account, BUZZ_HOST, userIds, new BulkCall<String, BuzzUserProfile>()
+        {
+            public BuzzUserProfile call( String userId )
+                throws BuzzException
+            {
+                return buzz.getUserProfile( userId );
+            }
+        } );
+    }
+
+    /**
+     * Run a blocking call for every key. <br/>
+     * The calls are queued at once and handed to the executor as their permits become available;
+     * the returned iterator blocks until the next call completes.
+     *
+     * @param account key of the account the calls are made for
+     * @param host the calls are made to
+     * @param keys to make the calls for
+     * @param call to make
+     * @return the results, in completion order
+     */
+    public <K, T> Iterator<BulkResult<K, T>> invokeAll( String account, String host, Collection<K> keys,
+                                                        BulkCall<K, T> call )
+    {
+        BlockingQueue<BulkResult<K, T>> results = new LinkedBlockingQueue<BulkResult<K, T>>();
+        Dispatch<K, T> dispatch = new Dispatch<K, T>( permits( accountPermits, account, maxPerAccount ),
+                                                      permits( hostPermits, host, maxPerHost ), keys, call,
+                                                      results );
+        synchronized ( this )
+        {
+            if ( shutdown )
+            {
+                throw new RejectedExecutionException( "The bulk executor is shut down" );
+            }
+            dispatches.add( dispatch );
+        }
+        dispatch();
+        return new ResultIterator<K, T>( results, keys.size() );
+    }
+
+    /**
+     * Stop accepting calls; the calls already submitted still complete.
+     */
+    public synchronized void shutdown()
+    {
+        shutdown = true;
+        if ( dispatches.isEmpty() )
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Hand the waiting calls whose permits are available to the executor.
+     */
+    private synchronized void dispatch()
+    {
+        for ( Iterator<Dispatch<?, ?>> i = dispatches.iterator(); i.hasNext(); )
+        {
+            if ( i.next().submit() )
+            {
+                i.remove();
+            }
+        }
+        if ( shutdown && dispatches.isEmpty() )
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Make one call.
+     */
+    private static <K, T> BulkResult<K, T> invoke( K key, BulkCall<K, T> call )
+    {
+        try
+        {
+            return new BulkResult<K, T>( key, call.call( key ), null );
+        }
+        catch ( BuzzException e )
+        {
+            return new BulkResult<K, T>( key, null, e );
+        }
+        catch ( RuntimeException e )
+        {
+            return new BulkResult<K, T>( key, null, new BuzzException( e ) );
+        }
+    }
+
+    /**
+     * @return the permits of a key, created on first use
+     */
+    private static Semaphore permits( ConcurrentMap<String, Semaphore> permits, String key, int limit )
+    {
+        Semaphore semaphore = permits.get( key );
+        if ( semaphore == null )
+        {
+            Semaphore created = new Semaphore( limit );
+            semaphore = permits.putIfAbsent( key, created );
+            if ( semaphore == null )
+            {
+                semaphore = created;
+            }
+        }
+        return semaphore;
+    }
+
+    /**
+     * @return an executor running each call on a virtual thread, or a bounded pool of daemon
+     *         platform threads
+     */
+    private static ExecutorService newExecutor( int maxPerHost )
+    {
+        ExecutorService executor = virtualThreadExecutor();
+        if ( executor != null )
+        {
+            return executor;
+        }
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool( maxPerHost, new ThreadFactory()
+        {
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "buzz-bulk-" + count.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+    }
+
+    /**
+     * Looked up reflectively, so the client still builds for and runs on JVMs without virtual
+     * threads; it only succeeds on Java 21 and later.
+     *
+     * @return a virtual thread per task executor, or null if the JVM has none
+     */
+    private static ExecutorService virtualThreadExecutor()
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+        }
+        catch ( Exception e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * A blocking call made for every key of a bulk operation.
+     *
+     * @param <K> type of the keys
+     * @param <T> type of the returned values
+     */
+    public interface BulkCall<K, T>
+    {
+        /**
+         * @param key to make the call for
+         * @return the value for the key
+         * @throws BuzzException if the call fails
+         */
+        T call( K key )
+            throws BuzzException;
+    }
+
+    /**
+     * Calls of a bulk operation waiting for their permits.
+     */
+    private class Dispatch<K, T>
+    {
+        private final Semaphore accountPermit;
+
+        private final Semaphore hostPermit;
+
+        /**
+         * Keys of the calls not handed to the executor yet
+         */
+        private final Queue<K> pending;
+
+        private final BulkCall<K, T> call;
+
+        private final BlockingQueue<BulkResult<K, T>> results;
+
+        Dispatch( Semaphore accountPermit, Semaphore hostPermit, Collection<K> keys, BulkCall<K, T> call,
+                  BlockingQueue<BulkResult<K, T>> results )
+        {
+            this.accountPermit = accountPermit;
+            this.hostPermit = hostPermit;
+            this.pending = new ArrayDeque<K>( keys );
+            this.call = call;
+            this.results = results;
+        }
+
+        /**
+         * Hand calls to the executor while their permits are available.
+         *
+         * @return true if no call is left waiting
+         */
+        boolean submit()
+        {
+            while ( !pending.isEmpty() && accountPermit.tryAcquire() )
+            {
+                if ( !hostPermit.tryAcquire() )
+                {
+                    accountPermit.release();
+                    break;
+                }
+                final K key = pending.remove();
+                try
+                {
+                    executor.execute( new Runnable()
+                    {
+                        public void run()
+                        {
+                            try
+                            {
+                                results.add( invoke( key, call ) );
+                            }
+                            finally
+                            {
+                                hostPermit.release();
+                                accountPermit.release();
+                                dispatch();
+                            }
+                        }
+                    } );
+                }
+                catch ( RejectedExecutionException e )
+                {
+                    hostPermit.release();
+                    accountPermit.release();
+                    results.add( new BulkResult<K, T>( key, null, new BuzzException( e ) ) );
+                }
+            }
+            return pending.isEmpty();
+        }
+    }
+
+    /**
+     * Iterates the results of a bulk operation as they arrive.
+     */
+    private static class ResultIterator<K, T>
+        implements Iterator<BulkResult<K, T>>
+    {
+        /**
+         * Completed results not yet returned
+         */
+        private final BlockingQueue<BulkResult<K, T>> results;
+
+        /**
+         * Number of results still to return
+         */
+        private int remaining;
+
+        /**
+         * @param results queue the calls complete into
+         * @param count number of calls
+         */
+        ResultIterator( BlockingQueue<BulkResult<K, T>> results, int count )
+        {
+            this.results = results;
+            this.remaining = count;
+        }
+
+        public boolean hasNext()
+        {
+            return remaining > 0;
+        }
+
+        public BulkResult<K, T> next()
+        {
+            if ( remaining == 0 )
+            {
+                throw new NoSuchElementException();
+            }
+            try
+            {
+                BulkResult<K, T> result = results.take();
+                remaining--;
+                return result;
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException( "Interrupted while waiting for a bulk result", e );
+            }
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.google.buzz;
+
+import com.google.buzz.exception.BuzzException;
+
+/**
+ * Outcome of one call of a bulk operation. <br/>
+ * Holds either the value returned for the key or the exception the call failed with.
+ *
+ * @param <K> type of the keys the calls are made for
+ * @param <T> type of the values the calls return
+ */
+public class BulkResult<K, T>
+{
+    /**
+     * The key the call was made for
+     */
+    private final K key;
+
+    /**
+     * The value returned by the call
+     */
+    private final T value;
+
+    /**
+     * The exception the call failed with
+     */
+    private final BuzzException exception;
+
+    /**
+     * Creates a result.
+     *
+     * @param key the call was made for
+     * @param value returned by the call, null if it failed
+     * @param exception the call failed with, null if it succeeded
+     */
+    public BulkResult( K key, T value, BuzzException exception )
+    {
+        this.key = key;
+        this.value = value;
+        this.exception = exception;
+    }
+
+    /**
+     * @return the key the call was made for
+     */
+    public K getKey()
+    {
+        return key;
+    }
+
+    /**
+     * @return the value returned by the call, null if it failed
+     */
+    public T getValue()
+    {
+        return value;
+    }
+
+    /**
+     * @return the exception the call failed with, null if it succeeded
+     */
+    public BuzzException getException()
+    {
+        return exception;
+    }
+
+    /**
+     * @return true if the call succeeded
+     */
+    public boolean isSuccessful()
+    {
+        return exception == null;
+    }
+}
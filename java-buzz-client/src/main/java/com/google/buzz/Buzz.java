@@ -1,42 +1,55 @@
 package com.google.buzz;
 
-import java.util.HashMap;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.Map;
-import java.net.URI;
-import java.net.URISyntaxException;
-
-import javax.net.ssl.HttpsURLConnection;
 
 import oauth.signpost.OAuth;
 // Made signpost 1.2.1.1 compliant
 //import oauth.signpost.signature.SignatureMethod;
 
 import com.google.buzz.exception.BuzzAuthenticationException;
+import com.google.buzz.exception.BuzzException;
 import com.google.buzz.exception.BuzzIOException;
 import com.google.buzz.exception.BuzzParsingException;
 import com.google.buzz.exception.BuzzValidationException;
 import com.google.buzz.io.BuzzIO;
+import com.google.buzz.io.BuzzRequest;
+import com.google.buzz.io.BuzzResponse;
+import com.google.buzz.io.BuzzTransport;
+import com.google.buzz.io.CountingInputStream;
+import com.google.buzz.metrics.BuzzMetrics;
+import com.google.buzz.metrics.BuzzMetricsRegistry;
+import com.google.buzz.metrics.BuzzOperationSample;
 import com.google.buzz.model.BuzzComment;
 import com.google.buzz.model.BuzzCommentsFeed;
 import com.google.buzz.model.BuzzContent;
 import com.google.buzz.model.BuzzFeed;
 import com.google.buzz.model.BuzzFeedEntry;
 import com.google.buzz.model.BuzzLink;
+import com.google.buzz.model.BuzzPeopleFeed;
 import com.google.buzz.model.BuzzUserProfile;
 import com.google.buzz.oauth.BuzzOAuth;
 import com.google.buzz.oauth.BuzzOAuth1;
 import com.google.buzz.oauth.BuzzOAuth2;
+import com.google.buzz.oauth.BuzzTokenManager;
 import com.google.buzz.parser.BuzzCommentParser;
 import com.google.buzz.parser.BuzzCommentsParser;
 import com.google.buzz.parser.BuzzFeedEntryParser;
 import com.google.buzz.parser.BuzzFeedParser;
+import com.google.buzz.parser.BuzzFeedReader;
 import com.google.buzz.parser.BuzzUserProfileParser;
 import com.google.buzz.parser.BuzzUsersProfilesParser;
-import com.google.buzz.xml.XMLGenerator;
 
 /**
  * Main class for the Buzz Client API.
+ * <p>
+ * A client is safe to share between threads: requests may be sent concurrently, and share its
+ * transport, connection pool and cache. The OAuth credentials are created at most once, and the
+ * OAuth 2 token is refreshed once for all the requests waiting for it. Configuration changes, such
+ * as <b>setTransport</b> or <b>setCache</b>, are seen by the requests started afterwards; requests
+ * already running finish with the previous configuration. The models returned are not shared,
+ * except the results served from the cache, which must not be modified.
  * 
  * @author roberto.estivill
  */
@@ -65,7 +78,37 @@ public class Buzz
     /**
      * The OAuth wrapper class to be used.
      */
-    private BuzzOAuth buzzOAuth;
+    private volatile BuzzOAuth buzzOAuth;
+
+    /**
+     * The transport executing the requests, or null to use the default one of BuzzIO.
+     */
+    private volatile BuzzTransport transport;
+
+    /**
+     * The validator cache of the GET requests, or null to disable conditional requests.
+     */
+    private volatile BuzzCache cache;
+
+    /**
+     * The credentials of the accounts this client can act for, or null.
+     */
+    private volatile BuzzTokenManager tokenManager;
+
+    /**
+     * The account this client acts for, or null to sign with <b>buzzOAuth</b>.
+     */
+    private volatile BuzzTokenManager.Account account;
+
+    /**
+     * The priority of the requests of this client when they wait for a rate limit.
+     */
+    private volatile BuzzRequest.Priority requestPriority = BuzzRequest.Priority.NORMAL;
+
+    /**
+     * The registry recording the measures of the requests, or null to record nothing.
+     */
+    private volatile BuzzMetricsRegistry metrics = BuzzMetrics.getDefault();
 
     /**
      * Default Constructor method.
@@ -75,31 +118,608 @@ public class Buzz
         buzzOAuth = null;
     }
 
+    /**
+     * Creates the client of an account, sharing the transport, cache and token manager of another
+     * client.
+     * 
+     * @param shared the client to share with
+     * @param account to act for
+     */
+    private Buzz( Buzz shared, BuzzTokenManager.Account account )
+    {
+        this.buzzOAuth = account.getOAuth();
+        this.transport = shared.transport;
+        this.cache = shared.cache;
+        this.tokenManager = shared.tokenManager;
+        this.requestPriority = shared.requestPriority;
+        this.metrics = shared.metrics;
+        this.account = account;
+    }
+
+    /**
+     * Constructor with a custom transport ( for example a StubTransport for tests ).
+     * 
+     * @param transport to execute the requests
+     */
+    public Buzz( BuzzTransport transport )
+    {
+        this();
+        setTransport( transport );
+    }
+
     public void setOAuthVersion(int version)
     {
      switch(version) {
-       case 1: buzzOAuth = new BuzzOAuth1();
+       case 1: setBuzzOAuth(new BuzzOAuth1());
                break;
-       case 2: buzzOAuth = new BuzzOAuth2();
+       case 2: setBuzzOAuth(new BuzzOAuth2());
                break;
        default:
                throw new IllegalArgumentException("oauth version must be 1 or 2");
      }
     }
 
+    /**
+     * @return the OAuth wrapper of this client, an OAuth 2 one created on first use unless set.
+     */
     public BuzzOAuth getBuzzOAuth()
     {
-     if (buzzOAuth==null) {
-         buzzOAuth=new BuzzOAuth2();
+     BuzzOAuth oauth = buzzOAuth;
+     if (oauth==null) {
+       synchronized (this) {
+         if (buzzOAuth==null) {
+           setBuzzOAuth(new BuzzOAuth2());
+         }
+         oauth = buzzOAuth;
+       }
      }
-     return buzzOAuth;
+     return oauth;
     }
 
-    public void  setBuzzOAuth(BuzzOAuth newBuzzOAuth)
+    public synchronized void  setBuzzOAuth(BuzzOAuth newBuzzOAuth)
     {
+       if (newBuzzOAuth instanceof BuzzOAuth2 && transport!=null) {
+          ((BuzzOAuth2)newBuzzOAuth).setTransport(transport);
+       }
+       this.account=null;
        this.buzzOAuth=newBuzzOAuth;
     }
 
+    /**
+     * @return the transport executing the requests of this client.
+     */
+    public BuzzTransport getTransport()
+    {
+        BuzzTransport own = transport;
+        return own != null ? own : BuzzIO.getTransport();
+    }
+
+    /**
+     * Set the transport executing the requests of this client, including the OAuth 2 token
+     * requests. The token requests of a client acting for an account use the transport of the
+     * token manager instead.
+     * 
+     * @param transport to use, or null to use the default transport of BuzzIO
+     */
+    public synchronized void setTransport( BuzzTransport transport )
+    {
+        this.transport = transport;
+        if ( account == null && buzzOAuth instanceof BuzzOAuth2 )
+        {
+            ( (BuzzOAuth2) buzzOAuth ).setTransport( transport );
+        }
+    }
+
+    /**
+     * @return the validator cache of this client, or null if none
+     */
+    public BuzzCache getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * Set the validator cache of this client. <br/>
+     * With a cache, GET requests such as <b>getPosts</b> and <b>getComments</b> are sent
+     * conditionally, and return the previous result without parsing when the server answers that
+     * nothing changed.
+     * 
+     * @param cache to use, or null to disable conditional requests
+     */
+    public void setCache( BuzzCache cache )
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * @return the credentials of the accounts this client can act for, or null if none
+     */
+    public BuzzTokenManager getTokenManager()
+    {
+        return tokenManager;
+    }
+
+    /**
+     * Set the credentials of the accounts this client can act for, with <b>forAccount</b>.
+     * 
+     * @param tokenManager to use, or null
+     */
+    public void setTokenManager( BuzzTokenManager tokenManager )
+    {
+        this.tokenManager = tokenManager;
+    }
+
+    /**
+     * @return the id of the account this client acts for, or null if it signs with its own
+     *         credentials
+     */
+    public String getAccountId()
+    {
+        return account != null ? account.getAccountId() : null;
+    }
+
+    /**
+     * Get a client acting for an account of the token manager. <br/>
+     * The returned client is a lightweight view: it shares the transport, connection pool, cache
+     * and token manager of this client, and only carries the account. Cached results are kept
+     * apart per account. Changing the transport or cache of either client afterwards does not
+     * affect the other one.
+     * 
+     * @param accountId identifying the account
+     * @return a client signing its requests for the account
+     * @throws BuzzAuthenticationException if there is no token manager or the account is unknown
+     */
+    public Buzz forAccount( String accountId )
+        throws BuzzAuthenticationException
+    {
+        if ( tokenManager == null )
+        {
+            throw new BuzzAuthenticationException( "No token manager set" );
+        }
+        BuzzTokenManager.Account found = tokenManager.getAccount( accountId );
+        if ( found == null )
+        {
+            throw new BuzzAuthenticationException( "Unknown account: " + accountId );
+        }
+        return new Buzz( this, found );
+    }
+
+    /**
+     * @return the priority of the requests of this client when they wait for a rate limit
+     */
+    public BuzzRequest.Priority getRequestPriority()
+    {
+        return requestPriority;
+    }
+
+    /**
+     * Set the priority of the requests of this client when they wait for a rate limit, for
+     * example LOW for a bulk job sharing the quota with interactive requests. <br/>
+     * The priority is used by a <b>RateLimitedTransport</b>.
+     * 
+     * @param requestPriority to use, NORMAL if null
+     */
+    public void setRequestPriority( BuzzRequest.Priority requestPriority )
+    {
+        this.requestPriority = requestPriority == null ? BuzzRequest.Priority.NORMAL : requestPriority;
+    }
+
+    /**
+     * @return the registry recording the measures of the requests, or null if none
+     */
+    public BuzzMetricsRegistry getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Set the registry recording the measures of the requests: count, errors by class, bytes in
+     * and out and latency, with the signing, network and parsing times apart, per operation. <br/>
+     * The shared <b>BuzzMetrics.getDefault()</b> registry is used unless changed. The network time
+     * lasts until the response headers are received; the body is read while it is parsed. The
+     * reader of a streamed feed is not measured.
+     * 
+     * @param metrics the registry to use, or null to record nothing
+     */
+    public void setMetrics( BuzzMetricsRegistry metrics )
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Tag a request with the account and priority of this client.
+     * 
+     * @param request to be sent
+     */
+    void prepare( BuzzRequest request )
+    {
+        request.setAccountId( getAccountId() );
+        request.setPriority( requestPriority );
+    }
+
+    /**
+     * Sign a request for the account of this client, or with its own credentials. The request keeps
+     * this client as its signer, for the transports sending it again.
+     * 
+     * @param request to be signed
+     * @throws BuzzIOException if the account is throttled
+     * @throws BuzzAuthenticationException if an OAuth problem occurs
+     */
+    void sign( BuzzRequest request )
+        throws BuzzIOException, BuzzAuthenticationException
+    {
+        request.setSigner( this::sign );
+        long start = System.nanoTime();
+        try
+        {
+            BuzzTokenManager.Account acting = account;
+            if ( acting != null )
+            {
+                acting.signRequest( request );
+            }
+            else
+            {
+                getBuzzOAuth().signRequest( request );
+            }
+            request.setSigningNanos( System.nanoTime() - start );
+        }
+        catch ( BuzzException e )
+        {
+            request.setSigningNanos( System.nanoTime() - start );
+            record( request, 0, 0, 0, e );
+            throw e;
+        }
+    }
+
+    /**
+     * Record the measures of a request in the registry of this client, if any.
+     * 
+     * @param request that was sent, with its signing time
+     * @param networkNanos time spent waiting for the response
+     * @param parsingNanos time spent reading and parsing the response body
+     * @param bytesIn bytes of the response body read
+     * @param error that failed the request, or null
+     */
+    void record( BuzzRequest request, long networkNanos, long parsingNanos, long bytesIn, Throwable error )
+    {
+        BuzzMetricsRegistry registry = metrics;
+        if ( registry != null )
+        {
+            String body = request.getBody();
+            long bytesOut = body != null ? body.getBytes( StandardCharsets.UTF_8 ).length : 0;
+            registry.record( new BuzzOperationSample( request.getOperation(), request.getSigningNanos(), networkNanos,
+                                                      parsingNanos, bytesOut, bytesIn, error ) );
+        }
+    }
+
+    /**
+     * Throttle the account of this client if the server answered that its quota is exceeded, so its
+     * next requests fail fast instead of reaching the server.
+     * 
+     * @param error that failed a request
+     */
+    void throttle( Throwable error )
+    {
+        BuzzTokenManager.Account acting = account;
+        if ( acting != null )
+        {
+            acting.throttleIfRejected( error );
+        }
+    }
+
+    /**
+     * Send a signed request with the transport of this client.
+     * 
+     * @param request to send
+     * @return the response body
+     * @throws BuzzIOException if any IO error occurs ( networking ).
+     */
+    private String send( BuzzRequest request )
+        throws BuzzIOException
+    {
+        prepare( request );
+        long start = System.nanoTime();
+        try
+        {
+            String body = BuzzIO.send( request, getTransport() );
+            record( request, System.nanoTime() - start, 0, body.getBytes( StandardCharsets.UTF_8 ).length, null );
+            return body;
+        }
+        catch ( BuzzIOException e )
+        {
+            record( request, System.nanoTime() - start, 0, 0, e );
+            throttle( e );
+            throw e;
+        }
+    }
+
+    /**
+     * Send a signed request with the transport of this client and parse the response body as it
+     * streams in. GET requests go through the validator cache, if any.
+     * 
+     * @param request to send
+     * @param parser of the response body
+     * @return the parsed response
+     * @throws BuzzIOException if any IO error occurs ( networking ).
+     * @throws BuzzParsingException if a parsing error occurs
+     */
+    @SuppressWarnings( "unchecked" )
+    private <T> T receive( BuzzRequest request, ContentParser<T> parser )
+        throws BuzzIOException, BuzzParsingException
+    {
+        BuzzCache validators = validators( request );
+        BuzzCache.Entry cached = validate( validators, request );
+        prepare( request );
+        long start = System.nanoTime();
+        BuzzResponse response;
+        try
+        {
+            response = BuzzIO.open( request, getTransport() );
+        }
+        catch ( BuzzIOException e )
+        {
+            record( request, System.nanoTime() - start, 0, 0, e );
+            throttle( e );
+            throw e;
+        }
+        long network = System.nanoTime() - start;
+        try
+        {
+            if ( isNotModified( cached, response ) )
+            {
+                Object value = hit( request, validators, cached, network );
+                if ( value != null )
+                {
+                    return (T) value;
+                }
+                // the cached result was released since the request was sent: ask for the body
+                response.close();
+                return receive( unconditional( request ), parser );
+            }
+            return parse( request, validators, response, network, parser );
+        }
+        finally
+        {
+            response.close();
+        }
+    }
+
+    /**
+     * @param request to send
+     * @return the validator cache of the request, the cache of this client for a GET request, or
+     *         null
+     */
+    BuzzCache validators( BuzzRequest request )
+    {
+        return BuzzIO.HTTP_METHOD_GET.equals( request.getMethod() ) ? cache : null;
+    }
+
+    /**
+     * Make a request conditional, if its result is cached.
+     * 
+     * @param validators the validator cache of the request, or null
+     * @param request to send
+     * @return the cached entry the request is conditional on, or null
+     */
+    BuzzCache.Entry validate( BuzzCache validators, BuzzRequest request )
+    {
+        return validators != null ? validators.validate( BuzzCache.key( getAccountId(), request.getUrl() ), request )
+                        : null;
+    }
+
+    /**
+     * @param cached entry the request was conditional on, or null
+     * @param response to the request
+     * @return true if the cached result is still valid
+     */
+    static boolean isNotModified( BuzzCache.Entry cached, BuzzResponse response )
+    {
+        return cached != null && response.getStatus() == BuzzCache.HTTP_NOT_MODIFIED;
+    }
+
+    /**
+     * Read back the cached result of a request answered as not modified, and record the request.
+     * 
+     * @param request sent
+     * @param validators the validator cache of the request
+     * @param cached entry the request was conditional on
+     * @param network time spent waiting for the response, in nanoseconds
+     * @return the cached result, or null if it can no longer be read and the request has to be sent
+     *         again without validators
+     * @throws BuzzParsingException if the cached result can not be read back
+     */
+    Object hit( BuzzRequest request, BuzzCache validators, BuzzCache.Entry cached, long network )
+        throws BuzzParsingException
+    {
+        Object value;
+        try
+        {
+            value = cached.getValue();
+        }
+        catch ( BuzzParsingException e )
+        {
+            record( request, network, 0, 0, e );
+            throw e;
+        }
+        if ( value != null )
+        {
+            validators.recordHit();
+            record( request, network, 0, 0, null );
+        }
+        return value;
+    }
+
+    /**
+     * @param request whose cached result can no longer be read
+     * @return a copy of the request without validators, signed again
+     * @throws BuzzIOException if the copy can not be signed
+     */
+    static BuzzRequest unconditional( BuzzRequest request )
+        throws BuzzIOException
+    {
+        BuzzRequest unconditional = request.copy();
+        BuzzCache.unconditional( unconditional );
+        return unconditional.resign();
+    }
+
+    /**
+     * Parse the body of a response as it streams in, record the request and cache the result.
+     * 
+     * @param request sent
+     * @param validators the validator cache of the request, or null
+     * @param response with a body
+     * @param network time spent waiting for the response, in nanoseconds
+     * @param parser of the response body
+     * @return the parsed response
+     * @throws BuzzIOException if the body can not be read
+     * @throws BuzzParsingException if a parsing error occurs
+     */
+    <T> T parse( BuzzRequest request, BuzzCache validators, BuzzResponse response, long network,
+                 ContentParser<T> parser )
+        throws BuzzIOException, BuzzParsingException
+    {
+        long start = System.nanoTime();
+        CountingInputStream content = null;
+        try
+        {
+            content = new CountingInputStream( response.getContent() );
+            T result = parser.parse( content );
+            record( request, network, System.nanoTime() - start, content.getCount(), null );
+            if ( validators != null )
+            {
+                validators.store( BuzzCache.key( getAccountId(), request.getUrl() ), response, result );
+            }
+            return result;
+        }
+        catch ( BuzzException e )
+        {
+            record( request, network, System.nanoTime() - start, content != null ? content.getCount() : 0, e );
+            throw e;
+        }
+    }
+
+    /**
+     * @param url of a page
+     * @param operation of the pagination
+     * @param signed true if the request has to be signed
+     * @return the GET request of the page
+     * @throws BuzzIOException if the url is not valid
+     * @throws BuzzAuthenticationException if any OAuth error occurs
+     */
+    private BuzzRequest pageRequest( String url, String operation, boolean signed )
+        throws BuzzIOException, BuzzAuthenticationException
+    {
+        BuzzRequest request = BuzzIO.createRequest( url );
+        request.setOperation( operation );
+        if ( signed )
+        {
+            sign( request );
+        }
+        return request;
+    }
+
+    /**
+     * @param operation of the pagination
+     * @param signed true if the pages have to be signed
+     * @return the loader of feed pages, following the next links
+     */
+    private BuzzCursor.PageLoader<BuzzFeedEntry> feedPages( final String operation, final boolean signed )
+    {
+        return url -> {
+            BuzzRequest request = pageRequest( url, operation, signed );
+            BuzzFeed feed = receive( request, BuzzFeedParser::parseFeed );
+            return new BuzzCursor.Page<BuzzFeedEntry>( feed.getEntries(), nextHref( feed.getLinks() ) );
+        };
+    }
+
+    /**
+     * @return the loader of comment pages, following the next links
+     */
+    private BuzzCursor.PageLoader<BuzzComment> commentPages()
+    {
+        return url -> {
+            BuzzCommentsFeed feed =
+                receive( pageRequest( url, "paginateComments", true ), BuzzCommentsParser::parseComments );
+            return new BuzzCursor.Page<BuzzComment>( feed.getComments(), nextHref( feed.getLinks() ) );
+        };
+    }
+
+    /**
+     * @param operation of the pagination
+     * @return the loader of people pages, following the start index
+     */
+    private BuzzCursor.PageLoader<BuzzUserProfile> peoplePages( final String operation )
+    {
+        return url -> {
+            BuzzPeopleFeed feed =
+                receive( pageRequest( url, operation, true ), BuzzUsersProfilesParser::parsePeopleFeed );
+            int next = feed.getStartIndex() + feed.getProfiles().size();
+            String nextUrl = null;
+            if ( !feed.getProfiles().isEmpty() && next < feed.getTotalResults() )
+            {
+                nextUrl = BuzzRequests.withParameter( url, "startIndex", String.valueOf( next ) );
+            }
+            return new BuzzCursor.Page<BuzzUserProfile>( feed.getProfiles(), nextUrl );
+        };
+    }
+
+    /**
+     * @param links of a feed
+     * @return the url of the next page, or null on the last page
+     */
+    private static String nextHref( List<BuzzLink> links )
+    {
+        for ( BuzzLink link : links )
+        {
+            if ( "next".equals( link.getRel() ) )
+            {
+                return link.getHref();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Send a signed request for a feed and read its entries as they stream in.
+     * 
+     * @param request to send
+     * @return the reader of the entries, holding the response until closed
+     * @throws BuzzIOException if any IO error occurs ( networking ).
+     * @throws BuzzParsingException if a parsing error occurs
+     */
+    private BuzzFeedReader stream( BuzzRequest request )
+        throws BuzzIOException, BuzzParsingException
+    {
+        prepare( request );
+        long start = System.nanoTime();
+        BuzzResponse response;
+        try
+        {
+            response = BuzzIO.open( request, getTransport() );
+            record( request, System.nanoTime() - start, 0, 0, null );
+        }
+        catch ( BuzzIOException e )
+        {
+            record( request, System.nanoTime() - start, 0, 0, e );
+            throttle( e );
+            throw e;
+        }
+        try
+        {
+            return BuzzFeedParser.streamFeed( response.getContent() );
+        }
+        catch ( BuzzIOException e )
+        {
+            response.close();
+            throw e;
+        }
+        catch ( BuzzParsingException e )
+        {
+            response.close();
+            throw e;
+        }
+    }
+
 
     /**
      * Method to obtain the Google user authentication web page. <br/>
@@ -206,16 +826,145 @@ public class Buzz
     public BuzzFeed search(String query)
         throws BuzzIOException, BuzzAuthenticationException, BuzzParsingException
     {
-     try {
-      String escapedQuery = new URI(null,null,null,query,null).toASCIIString().substring(1);
-      HttpsURLConnection request = BuzzIO.createRequest(
-                            BUZZ_URL_ACTIVITIES+"search?q="+escapedQuery);
-      buzzOAuth.signRequest( request );
-      String xmlResponse = BuzzIO.send( request );
-      return BuzzFeedParser.parseFeed( xmlResponse );
-     }catch(URISyntaxException ex){
-        throw new BuzzIOException(ex);
-     }
+      BuzzRequest request = BuzzRequests.search( query );
+      sign( request );
+      return receive( request, BuzzFeedParser::parseFeed );
+    }
+
+    /**
+     * Read the posts of a feed one at a time, while the response is streaming in, so feeds of any
+     * size are processed in constant memory. <br/>
+     * The returned reader holds the connection until it is closed or completely read.
+     * 
+     * @param userId for the feed.
+     * @param feedType the type of the feed to be retrieved.
+     * @return the reader of the posts
+     * @throws BuzzIOException if any IO error occurs ( networking ).
+     * @throws BuzzAuthenticationException if any OAuth error occurs
+     * @throws BuzzParsingException if a parsing error occurs
+     */
+    public BuzzFeedReader streamPosts( String userId, BuzzFeed.Type feedType )
+        throws BuzzIOException, BuzzAuthenticationException, BuzzParsingException
+    {
+        BuzzRequest request = BuzzRequests.posts( userId, feedType );
+        if ( !BuzzFeed.Type.PUBLIC.equals( feedType ) )
+        {
+            sign( request );
+        }
+        return stream( request );
+    }
+
+    /**
+     * Read the results of a search one at a time, while the response is streaming in.
+     * 
+     * @param query to search for.
+     * @return the reader of the posts
+     * @throws BuzzIOException if any IO error occurs ( networking ).
+     * @throws BuzzAuthenticationException if any OAuth error occurs
+     * @throws BuzzParsingException if a parsing error occurs
+     * @see #streamPosts(String, BuzzFeed.Type)
+     */
+    public BuzzFeedReader streamSearch( String query )
+        throws BuzzIOException, BuzzAuthenticationException, BuzzParsingException
+    {
+        BuzzRequest request = BuzzRequests.search( query );
+        sign( request );
+        return stream( request );
+    }
+
+    /**
+     * Crawl all the pages of a feed, following the next page links. <br/>
+     * The next page is fetched while the current one is consumed.
+     * 
+     * @param userId for the feed.
+     * @param feedType the type of the feed to be retrieved.
+     * @param maxPages maximum number of pages to fetch, or BuzzCursor.UNLIMITED
+     * @param maxItems maximum number of posts to return, or BuzzCursor.UNLIMITED
+     * @return the cursor over the posts
+     * @throws BuzzIOException if the feed url is not valid
+     */
+    public BuzzCursor<BuzzFeedEntry> paginatePosts( String userId, BuzzFeed.Type feedType, int maxPages,
+                                                    int maxItems )
+        throws BuzzIOException
+    {
+        return new BuzzCursor<BuzzFeedEntry>( feedPages( "paginatePosts",
+                                                         !BuzzFeed.Type.PUBLIC.equals( feedType ) ),
+                                              BuzzRequests.posts( userId, feedType ).getUrl(), maxPages,
+                                              maxItems );
+    }
+
+    /**
+     * Crawl all the pages of the results of a search.
+     * 
+     * @param query to search for.
+     * @param maxPages maximum number of pages to fetch, or BuzzCursor.UNLIMITED
+     * @param maxItems maximum number of posts to return, or BuzzCursor.UNLIMITED
+     * @return the cursor over the posts
+     * @throws BuzzIOException if the query can not be encoded
+     * @see #paginatePosts(String, BuzzFeed.Type, int, int)
+     */
+    public BuzzCursor<BuzzFeedEntry> paginateSearch( String query, int maxPages, int maxItems )
+        throws BuzzIOException
+    {
+        return new BuzzCursor<BuzzFeedEntry>( feedPages( "paginateSearch", true ),
+                                              BuzzRequests.search( query ).getUrl(), maxPages, maxItems );
+    }
+
+    /**
+     * Crawl all the pages of the comments of a post.
+     * 
+     * @param userId owner of the post.
+     * @param activityId of the post.
+     * @param maxPages maximum number of pages to fetch, or BuzzCursor.UNLIMITED
+     * @param maxItems maximum number of comments to return, or BuzzCursor.UNLIMITED
+     * @return the cursor over the comments
+     * @throws BuzzIOException if the comments url is not valid
+     * @see #paginatePosts(String, BuzzFeed.Type, int, int)
+     */
+    public BuzzCursor<BuzzComment> paginateComments( String userId, String activityId, int maxPages,
+                                                     int maxItems )
+        throws BuzzIOException
+    {
+        return new BuzzCursor<BuzzComment>( commentPages(), BuzzRequests.comments( userId, activityId ).getUrl(),
+                                            maxPages, maxItems );
+    }
+
+    /**
+     * Crawl all the pages of the followers of a user. <br/>
+     * People lists are paged by index, the next page starts after the last profile of the current
+     * one.
+     * 
+     * @param userId of the followed person.
+     * @param maxPages maximum number of pages to fetch, or BuzzCursor.UNLIMITED
+     * @param maxItems maximum number of profiles to return, or BuzzCursor.UNLIMITED
+     * @return the cursor over the profiles
+     * @throws BuzzIOException if the followers url is not valid
+     * @see #paginatePosts(String, BuzzFeed.Type, int, int)
+     */
+    public BuzzCursor<BuzzUserProfile> paginateFollowers( String userId, int maxPages, int maxItems )
+        throws BuzzIOException
+    {
+        return new BuzzCursor<BuzzUserProfile>( peoplePages( "paginateFollowers" ),
+                                                BuzzRequests.followers( userId ).getUrl(),
+                                                maxPages, maxItems );
+    }
+
+    /**
+     * Crawl all the pages of the people a user is following.
+     * 
+     * @param userId of the following person.
+     * @param maxPages maximum number of pages to fetch, or BuzzCursor.UNLIMITED
+     * @param maxItems maximum number of profiles to return, or BuzzCursor.UNLIMITED
+     * @return the cursor over the profiles
+     * @throws BuzzIOException if the following url is not valid
+     * @see #paginateFollowers(String, int, int)
+     */
+    public BuzzCursor<BuzzUserProfile> paginateFollowing( String userId, int maxPages, int maxItems )
+        throws BuzzIOException
+    {
+        return new BuzzCursor<BuzzUserProfile>( peoplePages( "paginateFollowing" ),
+                                                BuzzRequests.following( userId ).getUrl(),
+                                                maxPages, maxItems );
     }
 
     /**
@@ -232,10 +981,9 @@ public class Buzz
     private BuzzFeed getPostsWithAuthentication( String userId, BuzzFeed.Type feedType )
         throws BuzzIOException, BuzzAuthenticationException, BuzzParsingException
     {
-        HttpsURLConnection request = BuzzIO.createRequest( BUZZ_URL_ACTIVITIES + userId + "/" + feedType.getName() );
-        buzzOAuth.signRequest( request );
-        String xmlResponse = BuzzIO.send( request );
-        return BuzzFeedParser.parseFeed( xmlResponse );
+        BuzzRequest request = BuzzRequests.posts( userId, feedType );
+        sign( request );
+        return receive( request, BuzzFeedParser::parseFeed );
     }
 
     /**
@@ -252,9 +1000,8 @@ public class Buzz
     private BuzzFeed getPostsWithoutAuthentication( String userId, BuzzFeed.Type feedType )
         throws BuzzIOException, BuzzAuthenticationException, BuzzParsingException
     {
-        HttpsURLConnection request = BuzzIO.createRequest( BUZZ_URL_ACTIVITIES + userId + "/" + feedType.getName() );
-        String xmlResponse = BuzzIO.send( request );
-        return BuzzFeedParser.parseFeed( xmlResponse );
+        BuzzRequest request = BuzzRequests.posts( userId, feedType );
+        return receive( request, BuzzFeedParser::parseFeed );
     }
 
     /**
@@ -268,11 +1015,9 @@ public class Buzz
     public BuzzUserProfile getUserProfile( String userId )
         throws BuzzIOException, BuzzAuthenticationException, BuzzParsingException
     {
-        HttpsURLConnection request = BuzzIO.createRequest( BUZZ_URL_PEOPLE + userId + "/"
-            + BuzzFeed.Type.PRIVATE.getName() );
-        buzzOAuth.signRequest( request );
-        String xmlResponse = BuzzIO.send( request );
-        return BuzzUserProfileParser.parseProfile( xmlResponse );
+        BuzzRequest request = BuzzRequests.userProfile( userId );
+        sign( request );
+        return receive( request, BuzzUserProfileParser::parseProfile );
     }
 
     /**
@@ -287,11 +1032,9 @@ public class Buzz
     public List<BuzzUserProfile> followers( String userId )
         throws BuzzIOException, BuzzAuthenticationException, BuzzParsingException
     {
-        HttpsURLConnection request = BuzzIO.createRequest( BUZZ_URL_PEOPLE + userId + "/@groups/"
-            + BuzzFeed.Type.FOLLOWERS.getName() );
-        buzzOAuth.signRequest( request );
-        String xmlResponse = BuzzIO.send( request );
-        return BuzzUsersProfilesParser.parseUsersProfiles( xmlResponse );
+        BuzzRequest request = BuzzRequests.followers( userId );
+        sign( request );
+        return receive( request, BuzzUsersProfilesParser::parseUsersProfiles );
     }
 
     /**
@@ -306,11 +1049,9 @@ public class Buzz
     public List<BuzzUserProfile> following( String userId )
         throws BuzzIOException, BuzzAuthenticationException, BuzzParsingException
     {
-        HttpsURLConnection request = BuzzIO.createRequest( BUZZ_URL_PEOPLE + userId + "/@groups/"
-            + BuzzFeed.Type.FOLLOWING.getName() );
-        buzzOAuth.signRequest( request );
-        String xmlResponse = BuzzIO.send( request );
-        return BuzzUsersProfilesParser.parseUsersProfiles( xmlResponse );
+        BuzzRequest request = BuzzRequests.following( userId );
+        sign( request );
+        return receive( request, BuzzUsersProfilesParser::parseUsersProfiles );
     }
 
     /**
@@ -325,12 +1066,9 @@ public class Buzz
     public void follow( String userId, String userIdToFollow )
         throws BuzzIOException, BuzzAuthenticationException
     {
-        Map<String, String> headers = new HashMap<String, String>();
-        headers.put( "Content-Length", "0" );
-        HttpsURLConnection request = BuzzIO.createRequest( BUZZ_URL_PEOPLE + userId + "/@groups/"
-            + BuzzFeed.Type.FOLLOWING.getName() + "/" + userIdToFollow, BuzzIO.HTTP_METHOD_PUT, headers );
-        buzzOAuth.signRequest( request );
-        BuzzIO.send( request );
+        BuzzRequest request = BuzzRequests.follow( userId, userIdToFollow );
+        sign( request );
+        send( request );
     }
 
     /**
@@ -345,10 +1083,9 @@ public class Buzz
     public void unfollow( String userId, String userIdToUnfollow )
         throws BuzzIOException, BuzzAuthenticationException
     {
-        HttpsURLConnection request = BuzzIO.createRequest( BUZZ_URL_PEOPLE + userId + "/@groups/"
-            + BuzzFeed.Type.FOLLOWING.getName() + "/" + userIdToUnfollow, BuzzIO.HTTP_METHOD_DELETE, null );
-        buzzOAuth.signRequest( request );
-        BuzzIO.send( request );
+        BuzzRequest request = BuzzRequests.unfollow( userId, userIdToUnfollow );
+        sign( request );
+        send( request );
     }
 
     /**
@@ -366,16 +1103,11 @@ public class Buzz
     public BuzzFeedEntry createPost( String userId, BuzzContent content, BuzzLink link )
         throws BuzzIOException, BuzzAuthenticationException, BuzzValidationException, BuzzParsingException
     {
-        String payload = XMLGenerator.constructPayload( content, link );
+        BuzzRequest request = BuzzRequests.createPost( userId, content, link );
 
-        HttpsURLConnection request = BuzzIO.createRequest( BUZZ_URL_ACTIVITIES + userId + "/"
-            + BuzzFeed.Type.PRIVATE.getName(), BuzzIO.HTTP_METHOD_POST );
-
-        buzzOAuth.signRequest( BuzzIO.addBody( request, payload ) );
-
-        String xmlResponse = BuzzIO.send( request );
-        return BuzzFeedEntryParser.parseFeedEntry( xmlResponse );
+        sign( request );
 
+        return receive( request, BuzzFeedEntryParser::parseFeedEntry );
     }
 
     /**
@@ -407,14 +1139,11 @@ public class Buzz
     public BuzzFeedEntry getPost( String userId, String activityId )
         throws BuzzIOException, BuzzAuthenticationException, BuzzParsingException
     {
-        HttpsURLConnection request = BuzzIO.createRequest( BUZZ_URL_ACTIVITIES + userId + "/"
-            + BuzzFeed.Type.PRIVATE.getName() + "/" + activityId );
-
-        buzzOAuth.signRequest( request );
+        BuzzRequest request = BuzzRequests.post( userId, activityId );
 
-        String xmlResponse = BuzzIO.send( request );
+        sign( request );
 
-        return BuzzFeedEntryParser.parseFeedEntry( xmlResponse );
+        return receive( request, BuzzFeedEntryParser::parseFeedEntry );
     }
 
     /**
@@ -428,12 +1157,11 @@ public class Buzz
     public void deletePost( String userId, String activityId )
         throws BuzzIOException, BuzzAuthenticationException
     {
-        HttpsURLConnection request = BuzzIO.createRequest( BUZZ_URL_ACTIVITIES + userId + "/"
-            + BuzzFeed.Type.PRIVATE.getName() + "/" + activityId, BuzzIO.HTTP_METHOD_DELETE );
+        BuzzRequest request = BuzzRequests.deletePost( userId, activityId );
 
-        buzzOAuth.signRequest( request );
+        sign( request );
 
-        BuzzIO.send( request );
+        send( request );
     }
 
     /**
@@ -451,15 +1179,11 @@ public class Buzz
     public BuzzFeedEntry updatePost( String userId, String activityId, BuzzContent content )
         throws BuzzValidationException, BuzzIOException, BuzzAuthenticationException, BuzzParsingException
     {
-        String payload = XMLGenerator.constructPayload( content, null );
+        BuzzRequest request = BuzzRequests.updatePost( userId, activityId, content );
 
-        HttpsURLConnection request = BuzzIO.createRequest( BUZZ_URL_ACTIVITIES + userId + "/"
-            + BuzzFeed.Type.PRIVATE.getName() + "/" + activityId, BuzzIO.HTTP_METHOD_PUT );
+        sign( request );
 
-        buzzOAuth.signRequest( BuzzIO.addBody( request, payload ) );
-
-        String xmlResponse = BuzzIO.send( request );
-        return BuzzFeedEntryParser.parseFeedEntry( xmlResponse );
+        return receive( request, BuzzFeedEntryParser::parseFeedEntry );
     }
 
     /**
@@ -476,15 +1200,10 @@ public class Buzz
     public BuzzComment createComment( String userId, String activityId, BuzzContent content )
         throws BuzzIOException, BuzzAuthenticationException, BuzzValidationException, BuzzParsingException
     {
-        String payload = XMLGenerator.constructPayload( content, null );
-        HttpsURLConnection request = BuzzIO.createRequest( BUZZ_URL_ACTIVITIES + userId + "/"
-            + BuzzFeed.Type.PRIVATE.getName() + "/" + activityId + "/" + BuzzFeed.Type.COMMENTS.getName(),
-                                                           BuzzIO.HTTP_METHOD_POST );
-        buzzOAuth.signRequest( BuzzIO.addBody( request, payload ) );
-
-        String xmlResponse = BuzzIO.send( request );
+        BuzzRequest request = BuzzRequests.createComment( userId, activityId, content );
+        sign( request );
 
-        return BuzzCommentParser.parseComment( xmlResponse );
+        return receive( request, BuzzCommentParser::parseComment );
     }
 
     /**
@@ -499,13 +1218,11 @@ public class Buzz
     public void deleteComment( String userId, String activityId, String commentId )
         throws BuzzIOException, BuzzAuthenticationException
     {
-        HttpsURLConnection request = BuzzIO.createRequest( BUZZ_URL_ACTIVITIES + userId + "/"
-            + BuzzFeed.Type.PRIVATE.getName() + "/" + activityId + "/" + BuzzFeed.Type.COMMENTS.getName() + "/"
-            + commentId, BuzzIO.HTTP_METHOD_DELETE );
+        BuzzRequest request = BuzzRequests.deleteComment( userId, activityId, commentId );
 
-        buzzOAuth.signRequest( request );
+        sign( request );
 
-        BuzzIO.send( request );
+        send( request );
     }
 
     /**
@@ -523,15 +1240,11 @@ public class Buzz
     public BuzzComment getComment( String userId, String activityId, String commentId )
         throws BuzzIOException, BuzzAuthenticationException, BuzzParsingException
     {
-        HttpsURLConnection request = BuzzIO.createRequest( BUZZ_URL_ACTIVITIES + userId + "/"
-            + BuzzFeed.Type.PRIVATE.getName() + "/" + activityId + "/" + BuzzFeed.Type.COMMENTS.getName() + "/"
-            + commentId );
+        BuzzRequest request = BuzzRequests.comment( userId, activityId, commentId );
 
-        buzzOAuth.signRequest( request );
+        sign( request );
 
-        String xmlResponse = BuzzIO.send( request );
-
-        return BuzzCommentParser.parseComment( xmlResponse );
+        return receive( request, BuzzCommentParser::parseComment );
     }
 
     /**
@@ -547,14 +1260,11 @@ public class Buzz
     public BuzzCommentsFeed getComments( String userId, String activityId )
         throws BuzzIOException, BuzzAuthenticationException, BuzzParsingException
     {
-        HttpsURLConnection request = BuzzIO.createRequest( BUZZ_URL_ACTIVITIES + userId + "/"
-            + BuzzFeed.Type.PRIVATE.getName() + "/" + activityId + "/" + BuzzFeed.Type.COMMENTS.getName() );
-
-        buzzOAuth.signRequest( request );
+        BuzzRequest request = BuzzRequests.comments( userId, activityId );
 
-        String xmlResponse = BuzzIO.send( request );
+        sign( request );
 
-        return BuzzCommentsParser.parseComments( xmlResponse );
+        return receive( request, BuzzCommentsParser::parseComments );
     }
 
     /**
@@ -572,17 +1282,11 @@ public class Buzz
     public BuzzComment updateComment( String userId, String activityId, String commentId, BuzzContent content )
         throws BuzzValidationException, BuzzIOException, BuzzAuthenticationException, BuzzParsingException
     {
-        String payload = XMLGenerator.constructPayload( content, null );
-
-        HttpsURLConnection request = BuzzIO.createRequest( BUZZ_URL_ACTIVITIES + userId + "/"
-            + BuzzFeed.Type.PRIVATE.getName() + "/" + activityId + "/" + BuzzFeed.Type.COMMENTS.getName() + "/"
-            + commentId, BuzzIO.HTTP_METHOD_PUT );
+        BuzzRequest request = BuzzRequests.updateComment( userId, activityId, commentId, content );
 
-        buzzOAuth.signRequest( BuzzIO.addBody( request, payload ) );
+        sign( request );
 
-        String xmlResponse = BuzzIO.send( request );
-
-        return BuzzCommentParser.parseComment( xmlResponse );
+        return receive( request, BuzzCommentParser::parseComment );
     }
 
     /**
@@ -593,11 +1297,9 @@ public class Buzz
     public List<BuzzUserProfile> getLikes(String userId, String postId)
         throws BuzzValidationException, BuzzIOException, BuzzAuthenticationException, BuzzParsingException
     {
-        HttpsURLConnection request = BuzzIO.createRequest( 
-               BUZZ_URL_ACTIVITIES + userId + "/@self/"+postId+"/@liked");
-        buzzOAuth.signRequest( request );
-        String xmlResponse = BuzzIO.send( request );
-        return BuzzUsersProfilesParser.parseUsersProfiles( xmlResponse );
+        BuzzRequest request = BuzzRequests.likes( userId, postId );
+        sign( request );
+        return receive( request, BuzzUsersProfilesParser::parseUsersProfiles );
     }
 
     public BuzzFeed likedPosts()
@@ -611,13 +1313,9 @@ public class Buzz
         throws BuzzIOException, BuzzAuthenticationException,
                BuzzValidationException
     {
-      HttpsURLConnection request = BuzzIO.createRequest( 
-               BUZZ_URL_ACTIVITIES + userId  + "/@liked/"+postId,
-               BuzzIO.HTTP_METHOD_PUT);
-      String payload = " "; // not-empty, becouse Content-Length required. 
-      request = BuzzIO.addBody(request, payload ); 
-      buzzOAuth.signRequest( request );
-      String xmlResponse = BuzzIO.send( request );
+      BuzzRequest request = BuzzRequests.likePost( userId, postId );
+      sign( request );
+      send( request );
     }
 
     public void likePost(String postId)
@@ -628,11 +1326,9 @@ public class Buzz
     public void unlikePost(String userId, String postId)
         throws BuzzIOException, BuzzAuthenticationException
     {
-      HttpsURLConnection request = BuzzIO.createRequest( 
-               BUZZ_URL_ACTIVITIES + userId  + "/@liked/"+postId,
-               BuzzIO.HTTP_METHOD_DELETE);
-      buzzOAuth.signRequest( request );
-      String xmlResponse = BuzzIO.send( request );
+      BuzzRequest request = BuzzRequests.unlikePost( userId, postId );
+      sign( request );
+      send( request );
     }
 
     public void unlikePost(String postId)
@@ -647,17 +1343,10 @@ public class Buzz
         throws BuzzIOException, BuzzAuthenticationException,
               BuzzValidationException, BuzzParsingException
     {
-      HttpsURLConnection request = BuzzIO.createRequest( 
-               BUZZ_URL_ACTIVITIES +  userId+"/@self",
-               BuzzIO.HTTP_METHOD_POST);
-      String payload = XMLGenerator.constructActivityIdPayload(postId, 
-                                                               annotation);
-      //System.err.println("payload="+payload);
-      request = BuzzIO.addBody(request, payload ); 
-      buzzOAuth.signRequest( request );
+      BuzzRequest request = BuzzRequests.resharePost( userId, postId, annotation );
+      sign( request );
       
-      String xmlResponse = BuzzIO.send( request );
-      return BuzzFeedEntryParser.parseFeedEntry(xmlResponse); 
+      return receive( request, BuzzFeedEntryParser::parseFeedEntry );
     }
 
     public void mutedPosts()
@@ -675,16 +1364,9 @@ public class Buzz
     public List<BuzzUserProfile> searchPeople(String query)
         throws BuzzIOException, BuzzAuthenticationException, BuzzParsingException
     {
-     try {
-      String escapedQuery = new URI(null,null,null,query,null).toASCIIString().substring(1);
-      HttpsURLConnection request = BuzzIO.createRequest(
-                            BUZZ_URL_PEOPLE+"search?q="+escapedQuery);
-      buzzOAuth.signRequest( request );
-      String xmlResponse = BuzzIO.send( request );
-      return BuzzUsersProfilesParser.parseUsersProfiles( xmlResponse );
-     }catch(URISyntaxException ex){
-        throw new BuzzIOException(ex);
-     }
+      BuzzRequest request = BuzzRequests.searchPeople( query );
+      sign( request );
+      return receive( request, BuzzUsersProfilesParser::parseUsersProfiles );
     }
 
 
@@ -744,4 +1426,13 @@ public class Buzz
     public void reportUser()
     {
     }
+
+    /**
+     * Parser of a streamed response body.
+     */
+    interface ContentParser<T>
+    {
+        T parse( InputStream content )
+            throws BuzzIOException, BuzzParsingException;
+    }
 }
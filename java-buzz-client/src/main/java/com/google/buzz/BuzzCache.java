@@ -0,0 +1,344 @@
+package com.google.buzz;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.buzz.exception.BuzzParsingException;
+import com.google.buzz.io.BuzzRequest;
+import com.google.buzz.io.BuzzResponse;
+
+/**
+ * Validator cache of a <b>Buzz</b> client, for conditional GET requests. <br/>
+ * Keeps the parsed result of the responses that carry an <b>ETag</b> or <b>Last-Modified</b>
+ * header, by request url. When the same url is requested again the validators are sent as
+ * <b>If-None-Match</b> / <b>If-Modified-Since</b>, and a <b>304 Not Modified</b> answer returns the
+ * cached result without downloading nor parsing the body again. <br/>
+ * The cache holds a bounded number of urls and evicts the least recently used one. The results of the
+ * clients acting for an account are kept apart from the other accounts. It is safe to use from
+ * several threads. Cached results are returned as they are, the same instance every time,
+ * so callers must not modify them. <br/>
+ * See <b>BuzzDiskCache</b> for a cache kept on disk across restarts.
+ */
+public class BuzzCache
+{
+    /**
+     * Http status of a response to a conditional request whose resource did not change
+     */
+    static final int HTTP_NOT_MODIFIED = 304;
+
+    /**
+     * Validator headers of the responses
+     */
+    private static final String HEADER_ETAG = "ETag";
+
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+
+    /**
+     * Conditional headers of the requests
+     */
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    /**
+     * Maximum number of cached urls
+     */
+    private final int maxEntries;
+
+    /**
+     * Cached results by url, in access order
+     */
+    private final LinkedHashMap<String, Entry> entries;
+
+    /**
+     * Requests answered from the cache
+     */
+    private long hits;
+
+    /**
+     * Requests answered with a new body
+     */
+    private long misses;
+
+    /**
+     * Urls evicted to keep the cache bounded
+     */
+    private long evictions;
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxEntries maximum number of cached urls
+     */
+    public BuzzCache( int maxEntries )
+    {
+        if ( maxEntries <= 0 )
+        {
+            throw new IllegalArgumentException( "maxEntries must be positive" );
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, Entry>( 16, 0.75f, true );
+    }
+
+    /**
+     * @param accountId of the client sending a request, or null
+     * @param url of the request
+     * @return the key of the cached result of the request
+     */
+    static String key( String accountId, String url )
+    {
+        return accountId == null ? url : accountId + ' ' + url;
+    }
+
+    /**
+     * Make a GET request conditional, if its result is cached.
+     *
+     * @param key of the cached result
+     * @param request to send
+     * @return the cached entry the request is conditional on, or null
+     */
+    synchronized Entry validate( String key, BuzzRequest request )
+    {
+        Entry entry = entries.get( key );
+        if ( entry != null )
+        {
+            if ( entry.etag != null )
+            {
+                request.setHeader( HEADER_IF_NONE_MATCH, entry.etag );
+            }
+            if ( entry.lastModified != null )
+            {
+                request.setHeader( HEADER_IF_MODIFIED_SINCE, entry.lastModified );
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Make a request unconditional again, when the entry it was conditional on can no longer be
+     * read.
+     *
+     * @param request made conditional by <b>validate</b>
+     */
+    static void unconditional( BuzzRequest request )
+    {
+        request.getHeaders().remove( HEADER_IF_NONE_MATCH );
+        request.getHeaders().remove( HEADER_IF_MODIFIED_SINCE );
+    }
+
+    /**
+     * Count a request answered from the cache.
+     */
+    synchronized void recordHit()
+    {
+        hits++;
+    }
+
+    /**
+     * Cache the result of a response, if it has validators, and count the request.
+     *
+     * @param key of the cached result
+     * @param response with a new body
+     * @param value parsed from the body
+     */
+    synchronized void store( String key, BuzzResponse response, Object value )
+    {
+        misses++;
+        String etag = response.getHeader( HEADER_ETAG );
+        String lastModified = response.getHeader( HEADER_LAST_MODIFIED );
+        Entry entry = etag == null && lastModified == null ? null : createEntry( key, etag, lastModified, value );
+        Entry previous = entry == null ? entries.remove( key ) : entries.put( key, entry );
+        if ( previous != null )
+        {
+            removed( key, previous, entry != null );
+        }
+        trim();
+    }
+
+    /**
+     * @param key of the cached result
+     * @param etag of the response, or null
+     * @param lastModified of the response, or null
+     * @param value parsed from the body
+     * @return the entry to cache, or null if the result can not be cached
+     */
+    Entry createEntry( String key, String etag, String lastModified, Object value )
+    {
+        return new Entry( etag, lastModified, value );
+    }
+
+    /**
+     * Called when an entry leaves the cache.
+     *
+     * @param key of the entry
+     * @param entry removed
+     * @param replaced true if a new entry was stored for the same key
+     */
+    void removed( String key, Entry entry, boolean replaced )
+    {
+    }
+
+    /**
+     * Called when all the entries were removed.
+     */
+    void cleared()
+    {
+    }
+
+    /**
+     * @return true if entries have to be evicted
+     */
+    boolean isOverCapacity()
+    {
+        return entries.size() > maxEntries;
+    }
+
+    /**
+     * Put back an entry known before, without counting it as a miss.
+     *
+     * @param key of the entry
+     * @param entry to put back
+     */
+    synchronized void restore( String key, Entry entry )
+    {
+        entries.put( key, entry );
+    }
+
+    /**
+     * @return the cached entries, least recently used first
+     */
+    Collection<Entry> entries()
+    {
+        return entries.values();
+    }
+
+    /**
+     * Evict the least recently used entries until the cache is within its capacity.
+     */
+    synchronized void trim()
+    {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ( isOverCapacity() && eldest.hasNext() )
+        {
+            Map.Entry<String, Entry> entry = eldest.next();
+            eldest.remove();
+            evictions++;
+            removed( entry.getKey(), entry.getValue(), false );
+        }
+    }
+
+    /**
+     * Forget the cached result of an url.
+     *
+     * @param url to forget
+     */
+    public synchronized void invalidate( String url )
+    {
+        remove( url );
+    }
+
+    /**
+     * Forget the cached result of an url for an account.
+     *
+     * @param accountId of the account
+     * @param url to forget
+     */
+    public synchronized void invalidate( String accountId, String url )
+    {
+        remove( key( accountId, url ) );
+    }
+
+    private void remove( String key )
+    {
+        Entry entry = entries.remove( key );
+        if ( entry != null )
+        {
+            removed( key, entry, false );
+        }
+    }
+
+    /**
+     * Forget all the cached results.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+        cleared();
+    }
+
+    /**
+     * @return the maximum number of cached urls
+     */
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    /**
+     * @return the number of cached urls
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of requests answered from the cache
+     */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * @return the number of requests answered with a new body
+     */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * @return the number of urls evicted to keep the cache bounded
+     */
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+    public synchronized String toString()
+    {
+        return "size=" + entries.size() + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions;
+    }
+
+    /**
+     * Cached result of an url, with the validators of its response.
+     */
+    static class Entry
+    {
+        private final String etag;
+
+        private final String lastModified;
+
+        private final Object value;
+
+        Entry( String etag, String lastModified, Object value )
+        {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.value = value;
+        }
+
+        /**
+         * @return the cached result, or null if it can no longer be read
+         * @throws BuzzParsingException if the result can not be read back
+         */
+        Object getValue()
+            throws BuzzParsingException
+        {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.google.buzz;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.buzz.exception.BuzzException;
+import com.google.buzz.exception.BuzzIOException;
+
+/**
+ * Cursor over all the pages of a paginated Buzz list. <br/>
+ * The cursor follows the <b>next</b> page of every page on its own; as soon as a page arrives, the
+ * next one is fetched in the background while the caller consumes the current one. The crawl
+ * stops after the last page, or once the page or item limit is reached. <br/>
+ * Closing the cursor cancels the page being prefetched; the cursor closes itself after the last
+ * item and when a page fails, and can be used in a try-with-resources statement to stop early.
+ *
+ * @param <T> type of the items of the list
+ */
+public class BuzzCursor<T>
+    implements AutoCloseable
+{
+    /**
+     * No limit of pages or items
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    /**
+     * Threads prefetching the pages of all the cursors
+     */
+    private static final ExecutorService PREFETCHER = Executors.newCachedThreadPool( new ThreadFactory()
+    {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread( Runnable runnable )
+        {
+            Thread thread = new Thread( runnable, "buzz-prefetch-" + count.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        }
+    } );
+
+    /**
+     * Loader of the pages
+     */
+    private final PageLoader<T> loader;
+
+    /**
+     * Maximum number of pages to fetch
+     */
+    private final int maxPages;
+
+    /**
+     * Maximum number of items to return
+     */
+    private final int maxItems;
+
+    /**
+     * Items of the current page not yet returned
+     */
+    private final Queue<T> items = new ArrayDeque<T>();
+
+    /**
+     * The page being prefetched, null if none
+     */
+    private Future<Page<T>> nextPage;
+
+    /**
+     * Number of pages fetched so far
+     */
+    private int pageCount;
+
+    /**
+     * Number of items returned so far
+     */
+    private int itemCount;
+
+    /**
+     * Creates a cursor and starts fetching its first page.
+     *
+     * @param loader of the pages
+     * @param firstUrl url of the first page
+     * @param maxPages maximum number of pages to fetch, or UNLIMITED
+     * @param maxItems maximum number of items to return, or UNLIMITED
+     */
+    BuzzCursor( PageLoader<T> loader, String firstUrl, int maxPages, int maxItems )
+    {
+        this.loader = loader;
+        this.maxPages = maxPages;
+        this.maxItems = maxItems;
+        if ( maxPages > 0 && maxItems > 0 )
+        {
+            nextPage = prefetch( firstUrl );
+        }
+    }
+
+    /**
+     * Wait, if needed, for the next page.
+     *
+     * @return true if there is another item
+     * @throws BuzzException if a page can not be fetched
+     */
+    public boolean hasNext()
+        throws BuzzException
+    {
+        if ( itemCount >= maxItems )
+        {
+            close();
+            return false;
+        }
+        while ( items.isEmpty() && nextPage != null )
+        {
+            Page<T> page = await( nextPage );
+            pageCount++;
+            nextPage = null;
+            if ( page.nextUrl != null && pageCount < maxPages && itemCount + page.items.size() < maxItems )
+            {
+                nextPage = prefetch( page.nextUrl );
+            }
+            items.addAll( page.items );
+        }
+        return !items.isEmpty();
+    }
+
+    /**
+     * @return the next item
+     * @throws BuzzException if a page can not be fetched
+     * @throws NoSuchElementException if there are no more items
+     */
+    public T next()
+        throws BuzzException
+    {
+        if ( !hasNext() )
+        {
+            throw new NoSuchElementException();
+        }
+        itemCount++;
+        return items.poll();
+    }
+
+    /**
+     * @return the number of pages fetched so far
+     */
+    public int getPageCount()
+    {
+        return pageCount;
+    }
+
+    /**
+     * Stop the crawl, cancelling the page being prefetched.
+     */
+    public void close()
+    {
+        if ( nextPage != null )
+        {
+            nextPage.cancel( true );
+            nextPage = null;
+        }
+        items.clear();
+    }
+
+    /**
+     * Fetch a page in the background.
+     */
+    private Future<Page<T>> prefetch( final String url )
+    {
+        return PREFETCHER.submit( () -> loader.load( url ) );
+    }
+
+    /**
+     * Wait for a prefetched page.
+     */
+    private Page<T> await( Future<Page<T>> page )
+        throws BuzzException
+    {
+        try
+        {
+            return page.get();
+        }
+        catch ( ExecutionException e )
+        {
+            close();
+            if ( e.getCause() instanceof BuzzException )
+            {
+                throw (BuzzException) e.getCause();
+            }
+            throw new BuzzException( e.getCause() );
+        }
+        catch ( CancellationException e )
+        {
+            close();
+            throw new BuzzIOException( e );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            close();
+            throw new BuzzIOException( e );
+        }
+    }
+
+    /**
+     * One page of a list.
+     */
+    static class Page<T>
+    {
+        /**
+         * The items of the page
+         */
+        final List<T> items;
+
+        /**
+         * The url of the next page, null on the last page
+         */
+        final String nextUrl;
+
+        /**
+         * @param items of the page
+         * @param nextUrl of the next page, null on the last page
+         */
+        Page( List<T> items, String nextUrl )
+        {
+            this.items = items;
+            this.nextUrl = nextUrl;
+        }
+    }
+
+    /**
+     * Fetches one page of a list.
+     */
+    interface PageLoader<T>
+    {
+        /**
+         * @param url of the page
+         * @return the page
+         * @throws BuzzException if the page can not be fetched
+         */
+        Page<T> load( String url )
+            throws BuzzException;
+    }
+}
@@ -0,0 +1,923 @@
+package com.google.buzz;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import com.google.buzz.codec.BuzzBinaryDecoder;
+import com.google.buzz.codec.BuzzBinaryEncoder;
+import com.google.buzz.exception.BuzzIOException;
+import com.google.buzz.exception.BuzzParsingException;
+import com.google.buzz.io.BuzzRequest;
+import com.google.buzz.model.BuzzPeopleFeed;
+import com.google.buzz.model.BuzzUserProfile;
+
+/**
+ * Validator cache of a <b>Buzz</b> client kept on disk, so that a restarted client still sends
+ * conditional requests for the urls it knew. <br/>
+ * Each cached result is appended, with the validators of its response, to memory mapped segment
+ * files in the binary format of <b>BuzzBinaryEncoder</b>. A <b>304 Not Modified</b> answer is decoded
+ * straight from the mapped file, without copying the record to the heap, and returns a new instance
+ * every time. Opening the cache reads the segments back, in the order the results were stored. <br/>
+ * The cache evicts the least recently used url when it holds more than its maximum number of urls,
+ * or more than its maximum number of bytes. The oldest segment is rewritten, with only the results
+ * still cached, when the segments take more than about twice the maximum number of bytes. A
+ * record cut by a crash is detected by its checksum and dropped. <br/>
+ * Results other than feeds, posts, comments and profiles, and results larger than a segment, are
+ * not cached. If a segment can not be written, results are not cached either. The cache directory
+ * can be opened by a single cache at a time. <br/>
+ * The mapping of a segment is released when the segment is rewritten, cleared or closed, as soon as
+ * no result is being read from it; on a JVM that does not allow it, the mapping is released when it
+ * is collected. Once the cache is closed every request misses.
+ */
+public class BuzzDiskCache
+    extends BuzzCache
+    implements AutoCloseable
+{
+    /**
+     * Default size of the segment files
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 4 << 20;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".bzc";
+
+    private static final String LOCK_FILE = "cache.lock";
+
+    /**
+     * Length and checksum of the body of a record
+     */
+    private static final int RECORD_HEADER = 8;
+
+    /**
+     * Kinds of records
+     */
+    private static final byte KIND_REMOVED = 0;
+
+    private static final byte KIND_MODEL = 1;
+
+    private static final byte KIND_PROFILES = 2;
+
+    private static final byte[] NO_VALUE = new byte[0];
+
+    /**
+     * Directories opened by this process. A file lock does not keep out the same process, and
+     * closing any channel of the lock file would release it.
+     */
+    private static final Set<String> OPENED = new HashSet<String>();
+
+    /**
+     * <b>sun.misc.Unsafe</b> and its <b>invokeCleaner</b> method, to release a mapping at once, or
+     * null if the JVM does not allow it
+     */
+    private static final Object UNSAFE = unsafe();
+
+    private static final Method INVOKE_CLEANER = invokeCleaner( UNSAFE );
+
+    private final File directory;
+
+    private final long maxBytes;
+
+    private final int segmentSize;
+
+    /**
+     * Number of segments above which the oldest one is rewritten
+     */
+    private final int maxSegments;
+
+    /**
+     * Segment files, oldest first; the last one is written
+     */
+    private final ArrayDeque<Segment> segments = new ArrayDeque<Segment>();
+
+    private long nextSequence;
+
+    /**
+     * Bytes of the records still cached
+     */
+    private long bytes;
+
+    private boolean compacting;
+
+    private boolean closed;
+
+    private String lockPath;
+
+    private FileChannel lockChannel;
+
+    /**
+     * Opens a cache with segments of the default size.
+     *
+     * @param directory of the segment files, created if needed
+     * @param maxEntries maximum number of cached urls
+     * @param maxBytes maximum number of bytes of the cached results
+     * @throws BuzzIOException if the directory can not be used
+     */
+    public BuzzDiskCache( File directory, int maxEntries, long maxBytes )
+        throws BuzzIOException
+    {
+        this( directory, maxEntries, maxBytes, DEFAULT_SEGMENT_SIZE );
+    }
+
+    /**
+     * Opens a cache.
+     *
+     * @param directory of the segment files, created if needed
+     * @param maxEntries maximum number of cached urls
+     * @param maxBytes maximum number of bytes of the cached results
+     * @param segmentSize size of the segment files
+     * @throws BuzzIOException if the directory can not be used
+     */
+    public BuzzDiskCache( File directory, int maxEntries, long maxBytes, int segmentSize )
+        throws BuzzIOException
+    {
+        super( maxEntries );
+        if ( maxBytes <= 0 )
+        {
+            throw new IllegalArgumentException( "maxBytes must be positive" );
+        }
+        if ( segmentSize < 1024 )
+        {
+            throw new IllegalArgumentException( "segmentSize must be at least 1024" );
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.min( Integer.MAX_VALUE, Math.max( 2, 2 * maxBytes / segmentSize + 1 ) );
+        if ( !directory.isDirectory() && !directory.mkdirs() )
+        {
+            throw new BuzzIOException( "Can not create the cache directory " + directory );
+        }
+        lock();
+        try
+        {
+            load();
+        }
+        catch ( IOException e )
+        {
+            unlock();
+            throw new BuzzIOException( e );
+        }
+    }
+
+    /**
+     * @return the directory of the segment files
+     */
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * @return the maximum number of bytes of the cached results
+     */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * @return the number of bytes of the cached results
+     */
+    public synchronized long getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * Write the segments to disk, release their mappings and release the directory. The cache is
+     * left empty: results being read when it closes are still returned, later requests miss.
+     *
+     * @throws BuzzIOException if the segments can not be written
+     */
+    public synchronized void close()
+        throws BuzzIOException
+    {
+        if ( closed )
+        {
+            return;
+        }
+        closed = true;
+        try
+        {
+            for ( Segment segment : segments )
+            {
+                segment.buffer.force();
+            }
+        }
+        catch ( UncheckedIOException e )
+        {
+            throw new BuzzIOException( e.getCause() );
+        }
+        finally
+        {
+            entries().clear();
+            bytes = 0;
+            while ( !segments.isEmpty() )
+            {
+                segments.removeFirst().retire();
+            }
+            unlock();
+        }
+    }
+
+    public synchronized String toString()
+    {
+        return super.toString() + ", bytes=" + bytes + ", segments=" + segments.size();
+    }
+
+    @Override
+    synchronized Entry validate( String key, BuzzRequest request )
+    {
+        return closed ? null : super.validate( key, request );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    @Override
+    Entry createEntry( String key, String etag, String lastModified, Object value )
+    {
+        if ( closed )
+        {
+            return null;
+        }
+        byte kind = KIND_MODEL;
+        Object model = value;
+        if ( value instanceof List )
+        {
+            for ( Object element : (List<?>) value )
+            {
+                if ( !( element instanceof BuzzUserProfile ) )
+                {
+                    return null;
+                }
+            }
+            BuzzPeopleFeed people = new BuzzPeopleFeed();
+            people.setProfiles( (List<BuzzUserProfile>) value );
+            kind = KIND_PROFILES;
+            model = people;
+        }
+        byte[] encoded;
+        try
+        {
+            encoded = BuzzBinaryEncoder.encode( model );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // no binary format for this result
+            return null;
+        }
+        Record record = append( kind, key, etag, lastModified, encoded );
+        if ( record != null )
+        {
+            bytes += record.size;
+        }
+        return record;
+    }
+
+    @Override
+    void removed( String key, Entry entry, boolean replaced )
+    {
+        bytes -= ( (Record) entry ).size;
+        if ( !replaced && !closed )
+        {
+            append( KIND_REMOVED, key, null, null, NO_VALUE );
+        }
+    }
+
+    @Override
+    void cleared()
+    {
+        bytes = 0;
+        while ( !segments.isEmpty() )
+        {
+            segments.removeFirst().delete();
+        }
+    }
+
+    @Override
+    boolean isOverCapacity()
+    {
+        return super.isOverCapacity() || bytes > maxBytes;
+    }
+
+    /**
+     * Read the segment files back, replaying their records.
+     */
+    private void load()
+        throws IOException
+    {
+        File[] files = directory.listFiles();
+        List<Long> sequences = new ArrayList<Long>();
+        for ( File file : files != null ? files : new File[0] )
+        {
+            String name = file.getName();
+            if ( name.startsWith( SEGMENT_PREFIX ) && name.endsWith( SEGMENT_SUFFIX ) )
+            {
+                try
+                {
+                    sequences.add( Long.valueOf( name.substring( SEGMENT_PREFIX.length(),
+                                                                 name.length() - SEGMENT_SUFFIX.length() ) ) );
+                }
+                catch ( NumberFormatException e )
+                {
+                    // not a segment of this cache
+                }
+            }
+        }
+        Long[] sorted = sequences.toArray( new Long[sequences.size()] );
+        Arrays.sort( sorted );
+        Map<String, Record> replayed = new LinkedHashMap<String, Record>();
+        for ( long sequence : sorted )
+        {
+            File file = segmentFile( sequence );
+            nextSequence = sequence + 1;
+            if ( file.length() < RECORD_HEADER || file.length() > Integer.MAX_VALUE )
+            {
+                file.delete();
+                continue;
+            }
+            Segment segment = new Segment( file, map( file, file.length() ) );
+            segments.addLast( segment );
+            ByteBuffer buffer = segment.buffer;
+            int position = 0;
+            while ( buffer.capacity() - position >= RECORD_HEADER )
+            {
+                int length = buffer.getInt( position );
+                if ( length <= 0 || length > buffer.capacity() - position - RECORD_HEADER )
+                {
+                    break;
+                }
+                ByteBuffer body = slice( buffer, position + RECORD_HEADER, length );
+                if ( checksum( body ) != buffer.getInt( position + 4 ) )
+                {
+                    break;
+                }
+                Record record = Record.read( segment, position, body );
+                if ( record == null )
+                {
+                    break;
+                }
+                replayed.remove( record.key );
+                if ( record.kind != KIND_REMOVED )
+                {
+                    replayed.put( record.key, record );
+                }
+                position += record.size;
+            }
+            segment.position = position;
+        }
+        for ( Record record : replayed.values() )
+        {
+            restore( record.key, record );
+            bytes += record.size;
+        }
+        trim();
+    }
+
+    /**
+     * Append a record to the last segment.
+     *
+     * @return the record, or null if it could not be written
+     */
+    private Record append( byte kind, String key, String etag, String lastModified, byte[] value )
+    {
+        byte[] keyBytes = key.getBytes( StandardCharsets.UTF_8 );
+        byte[] etagBytes = etag != null ? etag.getBytes( StandardCharsets.UTF_8 ) : null;
+        byte[] lastModifiedBytes = lastModified != null ? lastModified.getBytes( StandardCharsets.UTF_8 ) : null;
+        int valueOffset = 1 + length( keyBytes ) + length( etagBytes ) + length( lastModifiedBytes );
+        long size = (long) RECORD_HEADER + valueOffset + value.length;
+        if ( size > segmentSize || ( kind != KIND_REMOVED && size > maxBytes ) )
+        {
+            return null;
+        }
+        Segment segment = reserve( (int) size );
+        if ( segment == null )
+        {
+            return null;
+        }
+        int start = segment.position;
+        ByteBuffer out = segment.buffer.duplicate();
+        out.position( start + RECORD_HEADER );
+        out.put( kind );
+        put( out, keyBytes );
+        put( out, etagBytes );
+        put( out, lastModifiedBytes );
+        out.put( value );
+        ByteBuffer body = slice( segment.buffer, start + RECORD_HEADER, (int) size - RECORD_HEADER );
+        segment.buffer.putInt( start + 4, checksum( body ) );
+        // the length goes last: until it is written the record reads as the end of the segment
+        segment.buffer.putInt( start, body.capacity() );
+        segment.position = start + (int) size;
+        return new Record( key, etag, lastModified, kind, valueOffset, segment, start, body );
+    }
+
+    /**
+     * @param size of a record
+     * @return the segment to append the record to, or null if no segment can be written
+     */
+    private Segment reserve( int size )
+    {
+        Segment last = segments.peekLast();
+        if ( last != null && last.remaining() >= size )
+        {
+            return last;
+        }
+        last = roll();
+        if ( last == null || compacting )
+        {
+            return last;
+        }
+        compacting = true;
+        try
+        {
+            for ( int i = segments.size(); i > 0 && segments.size() > maxSegments; i-- )
+            {
+                if ( !compactOldest() )
+                {
+                    break;
+                }
+            }
+        }
+        finally
+        {
+            compacting = false;
+        }
+        last = segments.peekLast();
+        return last.remaining() >= size ? last : roll();
+    }
+
+    /**
+     * Move the records still cached out of the oldest segment, and delete it.
+     *
+     * @return true if the segment was deleted
+     */
+    private boolean compactOldest()
+    {
+        Segment oldest = segments.peekFirst();
+        if ( oldest == segments.peekLast() )
+        {
+            return false;
+        }
+        for ( Entry entry : entries() )
+        {
+            Record record = (Record) entry;
+            if ( record.segment == oldest )
+            {
+                Segment target = reserve( record.size );
+                if ( target == null )
+                {
+                    return false;
+                }
+                ByteBuffer out = target.buffer.duplicate();
+                out.position( target.position );
+                out.put( slice( oldest.buffer, record.start, record.size ) );
+                record.move( target, target.position );
+                target.position += record.size;
+            }
+        }
+        segments.removeFirst().delete();
+        return true;
+    }
+
+    /**
+     * @return a new last segment, or null if it can not be created
+     */
+    private Segment roll()
+    {
+        File file = segmentFile( nextSequence++ );
+        try
+        {
+            Segment segment = new Segment( file, map( file, segmentSize ) );
+            segments.addLast( segment );
+            return segment;
+        }
+        catch ( IOException e )
+        {
+            file.delete();
+            return null;
+        }
+    }
+
+    private File segmentFile( long sequence )
+    {
+        return new File( directory, SEGMENT_PREFIX + String.format( "%08d", sequence ) + SEGMENT_SUFFIX );
+    }
+
+    private void lock()
+        throws BuzzIOException
+    {
+        FileLock lock = null;
+        try
+        {
+            String path = directory.getCanonicalPath();
+            synchronized ( OPENED )
+            {
+                if ( OPENED.add( path ) )
+                {
+                    lockPath = path;
+                }
+            }
+            if ( lockPath != null )
+            {
+                lockChannel = FileChannel.open( new File( directory, LOCK_FILE ).toPath(),
+                                                StandardOpenOption.CREATE, StandardOpenOption.WRITE );
+                lock = lockChannel.tryLock();
+            }
+        }
+        catch ( IOException | OverlappingFileLockException e )
+        {
+            unlock();
+            throw new BuzzIOException( "Can not lock the cache directory " + directory, e );
+        }
+        if ( lock == null )
+        {
+            unlock();
+            throw new BuzzIOException( "The cache directory " + directory + " is already in use" );
+        }
+    }
+
+    private void unlock()
+    {
+        try
+        {
+            if ( lockChannel != null )
+            {
+                // closing the channel releases the lock
+                lockChannel.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            // the lock goes with the process anyway
+        }
+        if ( lockPath != null )
+        {
+            synchronized ( OPENED )
+            {
+                OPENED.remove( lockPath );
+            }
+        }
+    }
+
+    private static MappedByteBuffer map( File file, long size )
+        throws IOException
+    {
+        try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                      StandardOpenOption.WRITE ) )
+        {
+            return channel.map( FileChannel.MapMode.READ_WRITE, 0, size );
+        }
+    }
+
+    /**
+     * Looked up reflectively, as the client is built for the public API only.
+     *
+     * @return the unsafe instance of the JVM, or null if it is not accessible
+     */
+    private static Object unsafe()
+    {
+        try
+        {
+            Field field = Class.forName( "sun.misc.Unsafe" ).getDeclaredField( "theUnsafe" );
+            field.setAccessible( true );
+            return field.get( null );
+        }
+        catch ( Exception e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @return the method releasing a mapping at once, or null if the JVM has none ( before Java 9 )
+     */
+    private static Method invokeCleaner( Object unsafe )
+    {
+        try
+        {
+            return unsafe == null ? null : unsafe.getClass().getMethod( "invokeCleaner", ByteBuffer.class );
+        }
+        catch ( Exception e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Release a mapping at once; it must not be read afterwards.
+     */
+    private static void unmap( MappedByteBuffer buffer )
+    {
+        if ( INVOKE_CLEANER == null )
+        {
+            // released when the buffer is collected
+            return;
+        }
+        try
+        {
+            INVOKE_CLEANER.invoke( UNSAFE, buffer );
+        }
+        catch ( Exception e )
+        {
+            // released when the buffer is collected
+        }
+    }
+
+    private static ByteBuffer slice( ByteBuffer buffer, int offset, int length )
+    {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position( offset );
+        slice.limit( offset + length );
+        return slice.slice();
+    }
+
+    private static int checksum( ByteBuffer body )
+    {
+        CRC32 crc = new CRC32();
+        crc.update( body.duplicate() );
+        return (int) crc.getValue();
+    }
+
+    private static int length( byte[] string )
+    {
+        return 4 + ( string != null ? string.length : 0 );
+    }
+
+    private static void put( ByteBuffer out, byte[] string )
+    {
+        if ( string == null )
+        {
+            out.putInt( -1 );
+        }
+        else
+        {
+            out.putInt( string.length );
+            out.put( string );
+        }
+    }
+
+    private static String get( ByteBuffer in )
+    {
+        int length = in.getInt();
+        if ( length < 0 )
+        {
+            return null;
+        }
+        if ( length > in.remaining() )
+        {
+            throw new BufferUnderflowException();
+        }
+        byte[] string = new byte[length];
+        in.get( string );
+        return new String( string, StandardCharsets.UTF_8 );
+    }
+
+    /**
+     * Mapped segment file.
+     */
+    private static final class Segment
+    {
+        private final File file;
+
+        private final MappedByteBuffer buffer;
+
+        /**
+         * End of the records written
+         */
+        private int position;
+
+        /**
+         * Number of results being read from the mapping
+         */
+        private int readers;
+
+        /**
+         * True once the segment left the cache: its mapping is released with the last reader
+         */
+        private boolean retired;
+
+        Segment( File file, MappedByteBuffer buffer )
+        {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        int remaining()
+        {
+            return buffer.capacity() - position;
+        }
+
+        /**
+         * @return true if the mapping can be read until <b>release</b>, false if it is released
+         */
+        synchronized boolean acquire()
+        {
+            if ( retired )
+            {
+                return false;
+            }
+            readers++;
+            return true;
+        }
+
+        synchronized void release()
+        {
+            if ( --readers == 0 && retired )
+            {
+                unmap( buffer );
+            }
+        }
+
+        /**
+         * Release the mapping, once no result is being read from it.
+         */
+        synchronized void retire()
+        {
+            if ( retired )
+            {
+                return;
+            }
+            retired = true;
+            if ( readers == 0 )
+            {
+                unmap( buffer );
+            }
+        }
+
+        void delete()
+        {
+            retire();
+            if ( !file.delete() )
+            {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Cached result stored in a segment: the record holds the kind of result, the key, the
+     * validators and the encoded result.
+     */
+    private static final class Record
+        extends Entry
+    {
+        private final String key;
+
+        private final byte kind;
+
+        /**
+         * Offset of the encoded result in the body
+         */
+        private final int valueOffset;
+
+        /**
+         * Size of the record, header included
+         */
+        private final int size;
+
+        /**
+         * Segment of the record, moved by compaction under the lock of the record
+         */
+        private Segment segment;
+
+        /**
+         * Offset of the record in its segment
+         */
+        private int start;
+
+        /**
+         * Body of the record, read outside of the cache lock
+         */
+        private ByteBuffer body;
+
+        Record( String key, String etag, String lastModified, byte kind, int valueOffset, Segment segment, int start,
+                ByteBuffer body )
+        {
+            super( etag, lastModified, null );
+            this.key = key;
+            this.kind = kind;
+            this.valueOffset = valueOffset;
+            this.size = RECORD_HEADER + body.capacity();
+            this.segment = segment;
+            this.start = start;
+            this.body = body;
+        }
+
+        /**
+         * @return the record of a checked body, or null if it is malformed
+         */
+        static Record read( Segment segment, int start, ByteBuffer body )
+        {
+            ByteBuffer in = body.duplicate();
+            try
+            {
+                byte kind = in.get();
+                String key = get( in );
+                String etag = get( in );
+                String lastModified = get( in );
+                if ( key == null || kind < KIND_REMOVED || kind > KIND_PROFILES )
+                {
+                    return null;
+                }
+                return new Record( key, etag, lastModified, kind, in.position(), segment, start, body );
+            }
+            catch ( RuntimeException e )
+            {
+                // a string beyond the body
+                return null;
+            }
+        }
+
+        synchronized void move( Segment segment, int start )
+        {
+            this.segment = segment;
+            this.start = start;
+            this.body = slice( segment.buffer, start + RECORD_HEADER, size - RECORD_HEADER );
+        }
+
+        /**
+         * @return the cached result, or null if its segment was released by <b>clear</b> or
+         *         <b>close</b>
+         */
+        @Override
+        Object getValue()
+            throws BuzzParsingException
+        {
+            while ( true )
+            {
+                Segment read;
+                ByteBuffer readBody;
+                synchronized ( this )
+                {
+                    read = segment;
+                    readBody = body;
+                }
+                if ( read.acquire() )
+                {
+                    try
+                    {
+                        return decode( readBody );
+                    }
+                    finally
+                    {
+                        read.release();
+                    }
+                }
+                synchronized ( this )
+                {
+                    if ( segment == read )
+                    {
+                        return null;
+                    }
+                }
+                // moved by a compaction meanwhile: read it from its new segment
+            }
+        }
+
+        private Object decode( ByteBuffer body )
+            throws BuzzParsingException
+        {
+            ByteBuffer value = body.duplicate();
+            value.position( valueOffset );
+            Object model;
+            try
+            {
+                model = new BuzzBinaryDecoder( value ).read();
+            }
+            catch ( BuzzIOException e )
+            {
+                // a buffer is not read from any stream
+                throw new BuzzParsingException( e );
+            }
+            if ( kind == KIND_PROFILES )
+            {
+                if ( !( model instanceof BuzzPeopleFeed ) )
+                {
+                    throw new BuzzParsingException( "Corrupt cached profiles" );
+                }
+                return ( (BuzzPeopleFeed) model ).getProfiles();
+            }
+            return model;
+        }
+    }
+}
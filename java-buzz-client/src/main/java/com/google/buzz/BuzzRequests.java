@@ -0,0 +1,236 @@
+package com.google.buzz;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.buzz.exception.BuzzIOException;
+import com.google.buzz.exception.BuzzValidationException;
+import com.google.buzz.io.BuzzIO;
+import com.google.buzz.io.BuzzRequest;
+import com.google.buzz.model.BuzzContent;
+import com.google.buzz.model.BuzzFeed;
+import com.google.buzz.model.BuzzLink;
+import com.google.buzz.xml.XMLGenerator;
+
+/**
+ * Builds the ( unsigned ) requests of the Buzz API operations. <br/>
+ * Shared by the blocking <b>Buzz</b> client and the <b>AsyncBuzz</b> facade so both talk to the
+ * same urls.
+ */
+final class BuzzRequests
+{
+    private BuzzRequests()
+    {
+    }
+
+    static BuzzRequest posts( String userId, BuzzFeed.Type feedType )
+        throws BuzzIOException
+    {
+        return named( "getPosts",
+                      BuzzIO.createRequest( Buzz.BUZZ_URL_ACTIVITIES + userId + "/" + feedType.getName() ) );
+    }
+
+    static BuzzRequest search( String query )
+        throws BuzzIOException
+    {
+        return named( "search",
+                      BuzzIO.createRequest( Buzz.BUZZ_URL_ACTIVITIES + "search?q=" + escapeQuery( query ) ) );
+    }
+
+    static BuzzRequest userProfile( String userId )
+        throws BuzzIOException
+    {
+        return named( "getUserProfile", BuzzIO.createRequest( Buzz.BUZZ_URL_PEOPLE + userId + "/"
+            + BuzzFeed.Type.PRIVATE.getName() ) );
+    }
+
+    static BuzzRequest followers( String userId )
+        throws BuzzIOException
+    {
+        return named( "followers", BuzzIO.createRequest( Buzz.BUZZ_URL_PEOPLE + userId + "/@groups/"
+            + BuzzFeed.Type.FOLLOWERS.getName() ) );
+    }
+
+    static BuzzRequest following( String userId )
+        throws BuzzIOException
+    {
+        return named( "following", BuzzIO.createRequest( Buzz.BUZZ_URL_PEOPLE + userId + "/@groups/"
+            + BuzzFeed.Type.FOLLOWING.getName() ) );
+    }
+
+    static BuzzRequest follow( String userId, String userIdToFollow )
+        throws BuzzIOException
+    {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put( "Content-Length", "0" );
+        return named( "follow", BuzzIO.createRequest( Buzz.BUZZ_URL_PEOPLE + userId + "/@groups/"
+            + BuzzFeed.Type.FOLLOWING.getName() + "/" + userIdToFollow, BuzzIO.HTTP_METHOD_PUT, headers ) );
+    }
+
+    static BuzzRequest unfollow( String userId, String userIdToUnfollow )
+        throws BuzzIOException
+    {
+        return named( "unfollow", BuzzIO.createRequest( Buzz.BUZZ_URL_PEOPLE + userId + "/@groups/"
+            + BuzzFeed.Type.FOLLOWING.getName() + "/" + userIdToUnfollow, BuzzIO.HTTP_METHOD_DELETE, null ) );
+    }
+
+    static BuzzRequest createPost( String userId, BuzzContent content, BuzzLink link )
+        throws BuzzIOException, BuzzValidationException
+    {
+        String payload = XMLGenerator.constructPayload( content, link );
+        BuzzRequest request = BuzzIO.createRequest( Buzz.BUZZ_URL_ACTIVITIES + userId + "/"
+            + BuzzFeed.Type.PRIVATE.getName(), BuzzIO.HTTP_METHOD_POST );
+        return named( "createPost", BuzzIO.addBody( request, payload ) );
+    }
+
+    static BuzzRequest post( String userId, String activityId )
+        throws BuzzIOException
+    {
+        return named( "getPost", BuzzIO.createRequest( postUrl( userId, activityId ) ) );
+    }
+
+    static BuzzRequest deletePost( String userId, String activityId )
+        throws BuzzIOException
+    {
+        return named( "deletePost", BuzzIO.createRequest( postUrl( userId, activityId ), BuzzIO.HTTP_METHOD_DELETE ) );
+    }
+
+    static BuzzRequest updatePost( String userId, String activityId, BuzzContent content )
+        throws BuzzIOException, BuzzValidationException
+    {
+        String payload = XMLGenerator.constructPayload( content, null );
+        BuzzRequest request = BuzzIO.createRequest( postUrl( userId, activityId ), BuzzIO.HTTP_METHOD_PUT );
+        return named( "updatePost", BuzzIO.addBody( request, payload ) );
+    }
+
+    static BuzzRequest createComment( String userId, String activityId, BuzzContent content )
+        throws BuzzIOException, BuzzValidationException
+    {
+        String payload = XMLGenerator.constructPayload( content, null );
+        BuzzRequest request = BuzzIO.createRequest( commentsUrl( userId, activityId ), BuzzIO.HTTP_METHOD_POST );
+        return named( "createComment", BuzzIO.addBody( request, payload ) );
+    }
+
+    static BuzzRequest comment( String userId, String activityId, String commentId )
+        throws BuzzIOException
+    {
+        return named( "getComment", BuzzIO.createRequest( commentsUrl( userId, activityId ) + "/" + commentId ) );
+    }
+
+    static BuzzRequest deleteComment( String userId, String activityId, String commentId )
+        throws BuzzIOException
+    {
+        return named( "deleteComment", BuzzIO.createRequest( commentsUrl( userId, activityId ) + "/" + commentId,
+                                                             BuzzIO.HTTP_METHOD_DELETE ) );
+    }
+
+    static BuzzRequest comments( String userId, String activityId )
+        throws BuzzIOException
+    {
+        return named( "getComments", BuzzIO.createRequest( commentsUrl( userId, activityId ) ) );
+    }
+
+    static BuzzRequest updateComment( String userId, String activityId, String commentId, BuzzContent content )
+        throws BuzzIOException, BuzzValidationException
+    {
+        String payload = XMLGenerator.constructPayload( content, null );
+        BuzzRequest request =
+            BuzzIO.createRequest( commentsUrl( userId, activityId ) + "/" + commentId, BuzzIO.HTTP_METHOD_PUT );
+        return named( "updateComment", BuzzIO.addBody( request, payload ) );
+    }
+
+    static BuzzRequest likes( String userId, String postId )
+        throws BuzzIOException
+    {
+        return named( "getLikes",
+                      BuzzIO.createRequest( Buzz.BUZZ_URL_ACTIVITIES + userId + "/@self/" + postId + "/@liked" ) );
+    }
+
+    static BuzzRequest likePost( String userId, String postId )
+        throws BuzzIOException
+    {
+        BuzzRequest request =
+            BuzzIO.createRequest( Buzz.BUZZ_URL_ACTIVITIES + userId + "/@liked/" + postId, BuzzIO.HTTP_METHOD_PUT );
+        // not-empty, becouse Content-Length required.
+        return named( "likePost", BuzzIO.addBody( request, " " ) );
+    }
+
+    static BuzzRequest unlikePost( String userId, String postId )
+        throws BuzzIOException
+    {
+        return named( "unlikePost", BuzzIO.createRequest( Buzz.BUZZ_URL_ACTIVITIES + userId + "/@liked/" + postId,
+                                                          BuzzIO.HTTP_METHOD_DELETE ) );
+    }
+
+    static BuzzRequest resharePost( String userId, String postId, String annotation )
+        throws BuzzIOException
+    {
+        BuzzRequest request =
+            BuzzIO.createRequest( Buzz.BUZZ_URL_ACTIVITIES + userId + "/@self", BuzzIO.HTTP_METHOD_POST );
+        return named( "resharePost",
+                      BuzzIO.addBody( request, XMLGenerator.constructActivityIdPayload( postId, annotation ) ) );
+    }
+
+    static BuzzRequest searchPeople( String query )
+        throws BuzzIOException
+    {
+        return named( "searchPeople",
+                      BuzzIO.createRequest( Buzz.BUZZ_URL_PEOPLE + "search?q=" + escapeQuery( query ) ) );
+    }
+
+    /**
+     * Name the operation of a request, for its metrics.
+     */
+    private static BuzzRequest named( String operation, BuzzRequest request )
+    {
+        request.setOperation( operation );
+        return request;
+    }
+
+    /**
+     * Set a query parameter of an url, replacing its current value.
+     */
+    static String withParameter( String url, String name, String value )
+    {
+        int query = url.indexOf( '?' );
+        StringBuilder sb = new StringBuilder( query < 0 ? url : url.substring( 0, query ) );
+        char separator = '?';
+        if ( query >= 0 )
+        {
+            for ( String parameter : url.substring( query + 1 ).split( "&" ) )
+            {
+                if ( parameter.length() > 0 && !parameter.startsWith( name + "=" ) && !parameter.equals( name ) )
+                {
+                    sb.append( separator ).append( parameter );
+                    separator = '&';
+                }
+            }
+        }
+        return sb.append( separator ).append( name ).append( '=' ).append( value ).toString();
+    }
+
+    private static String postUrl( String userId, String activityId )
+    {
+        return Buzz.BUZZ_URL_ACTIVITIES + userId + "/" + BuzzFeed.Type.PRIVATE.getName() + "/" + activityId;
+    }
+
+    private static String commentsUrl( String userId, String activityId )
+    {
+        return postUrl( userId, activityId ) + "/" + BuzzFeed.Type.COMMENTS.getName();
+    }
+
+    private static String escapeQuery( String query )
+        throws BuzzIOException
+    {
+        try
+        {
+            return new URI( null, null, null, query, null ).toASCIIString().substring( 1 );
+        }
+        catch ( URISyntaxException ex )
+        {
+            throw new BuzzIOException( ex );
+        }
+    }
+}
@@ -0,0 +1,940 @@
+package com.google.buzz.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.google.buzz.exception.BuzzIOException;
+import com.google.buzz.exception.BuzzParsingException;
+import com.google.buzz.model.BuzzAclEntry;
+import com.google.buzz.model.BuzzActivity;
+import com.google.buzz.model.BuzzAuthor;
+import com.google.buzz.model.BuzzComment;
+import com.google.buzz.model.BuzzCommentsFeed;
+import com.google.buzz.model.BuzzContent;
+import com.google.buzz.model.BuzzEmail;
+import com.google.buzz.model.BuzzFeed;
+import com.google.buzz.model.BuzzFeedEntry;
+import com.google.buzz.model.BuzzLink;
+import com.google.buzz.model.BuzzPeopleFeed;
+import com.google.buzz.model.BuzzPhoto;
+import com.google.buzz.model.BuzzReply;
+import com.google.buzz.model.BuzzUrl;
+import com.google.buzz.model.BuzzUserProfile;
+
+/**
+ * Reads the Buzz models written by a <b>BuzzBinaryEncoder</b>, one at a time. <br/>
+ * The models are rebuilt field by field, as the parsers would build them from the Atom bodies,
+ * without any reflection. A stream that is not in the binary format, or is cut, fails with a
+ * <b>BuzzParsingException</b>. A direct or mapped buffer is decoded where it lies, without copying
+ * it to the heap first. The decoder is not safe to use from several threads.
+ */
+public class BuzzBinaryDecoder
+    implements AutoCloseable
+{
+    /**
+     * Size of the buffer read from the stream at once
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Largest initial capacity of a decoded list: a cut or forged stream may announce many more
+     * items than it holds, and the list grows as the items are actually read
+     */
+    private static final int MAX_INITIAL_CAPACITY = 16;
+
+    /**
+     * The stream read, or null when decoding an array
+     */
+    private final InputStream in;
+
+    /**
+     * The direct buffer read, or null
+     */
+    private final ByteBuffer direct;
+
+    private byte[] buffer;
+
+    private int position;
+
+    private int limit;
+
+    /**
+     * Strings of the table, by index
+     */
+    private final List<String> table = new ArrayList<String>();
+
+    private boolean started;
+
+    /**
+     * Creates a decoder reading a stream.
+     *
+     * @param in stream to read
+     */
+    public BuzzBinaryDecoder( InputStream in )
+    {
+        this.in = in;
+        this.direct = null;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Creates a decoder reading an array.
+     *
+     * @param bytes the encoded stream
+     * @param offset of the stream in the array
+     * @param length of the stream
+     */
+    public BuzzBinaryDecoder( byte[] bytes, int offset, int length )
+    {
+        this.in = null;
+        this.direct = null;
+        this.buffer = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Creates a decoder reading the remaining bytes of a buffer, such as a mapped file. The position
+     * of the buffer is left as it is.
+     *
+     * @param bytes the encoded stream
+     */
+    public BuzzBinaryDecoder( ByteBuffer bytes )
+    {
+        this.in = null;
+        if ( bytes.hasArray() )
+        {
+            this.direct = null;
+            this.buffer = bytes.array();
+            this.position = bytes.arrayOffset() + bytes.position();
+            this.limit = bytes.arrayOffset() + bytes.limit();
+        }
+        else
+        {
+            // the buffer stays empty, so that every read goes to the direct bytes
+            this.direct = bytes.slice();
+            this.buffer = new byte[0];
+        }
+    }
+
+    /**
+     * Decode a single model.
+     *
+     * @param bytes the encoded stream of the model
+     * @return the model
+     * @throws BuzzParsingException if the bytes are not an encoded model
+     */
+    public static Object decode( byte[] bytes )
+        throws BuzzParsingException
+    {
+        BuzzBinaryDecoder decoder = new BuzzBinaryDecoder( bytes, 0, bytes.length );
+        try
+        {
+            Object model = decoder.read();
+            if ( model == null )
+            {
+                throw new BuzzParsingException( "No model to decode" );
+            }
+            return model;
+        }
+        catch ( BuzzParsingException e )
+        {
+            throw e;
+        }
+        catch ( BuzzIOException e )
+        {
+            // an array is not read from any stream
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * Read the next model.
+     *
+     * @return the model, or null at the end of the stream
+     * @throws BuzzParsingException if the stream is not in the binary format
+     * @throws BuzzIOException if the stream can not be read
+     */
+    public Object read()
+        throws BuzzParsingException, BuzzIOException
+    {
+        if ( !started )
+        {
+            if ( !available() )
+            {
+                return null;
+            }
+            started = true;
+            for ( byte b : BuzzBinaryFormat.MAGIC )
+            {
+                if ( readByte() != b )
+                {
+                    throw new BuzzParsingException( "Not a Buzz binary stream" );
+                }
+            }
+            int version = readByte();
+            if ( version != BuzzBinaryFormat.VERSION )
+            {
+                throw new BuzzParsingException( "Unsupported Buzz binary version " + version );
+            }
+        }
+        if ( !available() )
+        {
+            return null;
+        }
+        int tag = readByte();
+        switch ( tag )
+        {
+            case BuzzBinaryFormat.TAG_FEED:
+                return feed();
+            case BuzzBinaryFormat.TAG_FEED_ENTRY:
+                return entry();
+            case BuzzBinaryFormat.TAG_COMMENT:
+                return comment();
+            case BuzzBinaryFormat.TAG_COMMENTS_FEED:
+                return commentsFeed();
+            case BuzzBinaryFormat.TAG_USER_PROFILE:
+                return profile();
+            case BuzzBinaryFormat.TAG_PEOPLE_FEED:
+                return peopleFeed();
+            default:
+                throw new BuzzParsingException( "Unknown Buzz binary record " + tag );
+        }
+    }
+
+    /**
+     * @return the next feed, or null at the end of the stream
+     * @throws BuzzParsingException if the stream is not in the binary format or the next model is
+     *             not a feed
+     * @throws BuzzIOException if the stream can not be read
+     */
+    public BuzzFeed readFeed()
+        throws BuzzParsingException, BuzzIOException
+    {
+        return expect( BuzzFeed.class );
+    }
+
+    /**
+     * @return the next post, or null at the end of the stream
+     * @throws BuzzParsingException if the stream is not in the binary format or the next model is
+     *             not a post
+     * @throws BuzzIOException if the stream can not be read
+     */
+    public BuzzFeedEntry readFeedEntry()
+        throws BuzzParsingException, BuzzIOException
+    {
+        return expect( BuzzFeedEntry.class );
+    }
+
+    /**
+     * @return the next comment, or null at the end of the stream
+     * @throws BuzzParsingException if the stream is not in the binary format or the next model is
+     *             not a comment
+     * @throws BuzzIOException if the stream can not be read
+     */
+    public BuzzComment readComment()
+        throws BuzzParsingException, BuzzIOException
+    {
+        return expect( BuzzComment.class );
+    }
+
+    /**
+     * @return the next comments feed, or null at the end of the stream
+     * @throws BuzzParsingException if the stream is not in the binary format or the next model is
+     *             not a comments feed
+     * @throws BuzzIOException if the stream can not be read
+     */
+    public BuzzCommentsFeed readCommentsFeed()
+        throws BuzzParsingException, BuzzIOException
+    {
+        return expect( BuzzCommentsFeed.class );
+    }
+
+    /**
+     * @return the next profile, or null at the end of the stream
+     * @throws BuzzParsingException if the stream is not in the binary format or the next model is
+     *             not a profile
+     * @throws BuzzIOException if the stream can not be read
+     */
+    public BuzzUserProfile readUserProfile()
+        throws BuzzParsingException, BuzzIOException
+    {
+        return expect( BuzzUserProfile.class );
+    }
+
+    /**
+     * @return the next people feed, or null at the end of the stream
+     * @throws BuzzParsingException if the stream is not in the binary format or the next model is
+     *             not a people feed
+     * @throws BuzzIOException if the stream can not be read
+     */
+    public BuzzPeopleFeed readPeopleFeed()
+        throws BuzzParsingException, BuzzIOException
+    {
+        return expect( BuzzPeopleFeed.class );
+    }
+
+    /**
+     * Close the stream read.
+     *
+     * @throws BuzzIOException if the stream can not be closed
+     */
+    public void close()
+        throws BuzzIOException
+    {
+        if ( in != null )
+        {
+            try
+            {
+                in.close();
+            }
+            catch ( IOException e )
+            {
+                throw new BuzzIOException( e );
+            }
+        }
+    }
+
+    private <T> T expect( Class<T> type )
+        throws BuzzParsingException, BuzzIOException
+    {
+        Object model = read();
+        if ( model != null && !type.isInstance( model ) )
+        {
+            throw new BuzzParsingException( "Expected a " + type.getSimpleName() + " but read a "
+                + model.getClass().getSimpleName() );
+        }
+        return type.cast( model );
+    }
+
+    private BuzzFeed feed()
+        throws BuzzParsingException, BuzzIOException
+    {
+        BuzzFeed feed = new BuzzFeed();
+        int mask = readVarint();
+        if ( has( mask, 0 ) )
+        {
+            feed.setTitle( readString() );
+        }
+        if ( has( mask, 1 ) )
+        {
+            feed.setTitleType( readString() );
+        }
+        if ( has( mask, 2 ) )
+        {
+            feed.setUpdated( readDate() );
+        }
+        if ( has( mask, 3 ) )
+        {
+            feed.setId( readString() );
+        }
+        if ( has( mask, 4 ) )
+        {
+            feed.setGenerator( readString() );
+        }
+        if ( has( mask, 5 ) )
+        {
+            feed.setGeneratorUri( readString() );
+        }
+        if ( has( mask, 6 ) )
+        {
+            feed.setLinks( links() );
+        }
+        if ( has( mask, 7 ) )
+        {
+            int size = readLength();
+            List<BuzzFeedEntry> entries = new ArrayList<BuzzFeedEntry>( Math.min( size, MAX_INITIAL_CAPACITY ) );
+            for ( int i = 0; i < size; i++ )
+            {
+                entries.add( entry() );
+            }
+            feed.setEntries( entries );
+        }
+        return feed;
+    }
+
+    private BuzzFeedEntry entry()
+        throws BuzzParsingException, BuzzIOException
+    {
+        BuzzFeedEntry entry = new BuzzFeedEntry();
+        int mask = readVarint();
+        if ( has( mask, 0 ) )
+        {
+            entry.setTitle( readString() );
+        }
+        if ( has( mask, 1 ) )
+        {
+            entry.setPublished( readDate() );
+        }
+        if ( has( mask, 2 ) )
+        {
+            entry.setUpdated( readDate() );
+        }
+        if ( has( mask, 3 ) )
+        {
+            entry.setId( readString() );
+        }
+        if ( has( mask, 4 ) )
+        {
+            entry.setLinks( links() );
+        }
+        if ( has( mask, 5 ) )
+        {
+            entry.setAuthor( author() );
+        }
+        if ( has( mask, 6 ) )
+        {
+            entry.setContent( content() );
+        }
+        if ( has( mask, 7 ) )
+        {
+            entry.setActivityVerb( readString() );
+        }
+        if ( has( mask, 8 ) )
+        {
+            entry.setCrosspostSourceId( readString() );
+        }
+        if ( has( mask, 9 ) )
+        {
+            entry.setSourceActivityTitle( readString() );
+        }
+        if ( has( mask, 10 ) )
+        {
+            int size = readLength();
+            List<BuzzAclEntry> visibility = new ArrayList<BuzzAclEntry>( Math.min( size, MAX_INITIAL_CAPACITY ) );
+            for ( int i = 0; i < size; i++ )
+            {
+                BuzzAclEntry acl = new BuzzAclEntry();
+                int aclMask = readVarint();
+                if ( has( aclMask, 0 ) )
+                {
+                    acl.setType( readString() );
+                }
+                if ( has( aclMask, 1 ) )
+                {
+                    acl.setId( readString() );
+                }
+                if ( has( aclMask, 2 ) )
+                {
+                    acl.setUri( readString() );
+                }
+                if ( has( aclMask, 3 ) )
+                {
+                    acl.setName( readString() );
+                }
+                visibility.add( acl );
+            }
+            entry.setVisibility( visibility );
+        }
+        if ( has( mask, 11 ) )
+        {
+            BuzzActivity activity = new BuzzActivity();
+            int activityMask = readVarint();
+            if ( has( activityMask, 0 ) )
+            {
+                activity.setActivityObjectType( readString() );
+            }
+            if ( has( activityMask, 1 ) )
+            {
+                activity.setContent( content() );
+            }
+            if ( has( activityMask, 2 ) )
+            {
+                activity.setLink( link() );
+            }
+            entry.setActivity( activity );
+        }
+        return entry;
+    }
+
+    private BuzzComment comment()
+        throws BuzzParsingException, BuzzIOException
+    {
+        BuzzComment comment = new BuzzComment();
+        int mask = readVarint();
+        if ( has( mask, 0 ) )
+        {
+            comment.setActivityObjectType( readString() );
+        }
+        if ( has( mask, 1 ) )
+        {
+            comment.setId( readString() );
+        }
+        if ( has( mask, 2 ) )
+        {
+            comment.setPublished( readDate() );
+        }
+        if ( has( mask, 3 ) )
+        {
+            comment.setAuthor( author() );
+        }
+        if ( has( mask, 4 ) )
+        {
+            comment.setContent( content() );
+        }
+        if ( has( mask, 5 ) )
+        {
+            comment.setOriginalContent( content() );
+        }
+        if ( has( mask, 6 ) )
+        {
+            comment.setLinks( links() );
+        }
+        if ( has( mask, 7 ) )
+        {
+            BuzzReply reply = new BuzzReply();
+            int replyMask = readVarint();
+            if ( has( replyMask, 0 ) )
+            {
+                reply.setHref( readString() );
+            }
+            if ( has( replyMask, 1 ) )
+            {
+                reply.setType( readString() );
+            }
+            if ( has( replyMask, 2 ) )
+            {
+                reply.setRef( readString() );
+            }
+            comment.setReply( reply );
+        }
+        return comment;
+    }
+
+    private BuzzCommentsFeed commentsFeed()
+        throws BuzzParsingException, BuzzIOException
+    {
+        BuzzCommentsFeed feed = new BuzzCommentsFeed();
+        int mask = readVarint();
+        if ( has( mask, 0 ) )
+        {
+            feed.setTitle( readString() );
+        }
+        if ( has( mask, 1 ) )
+        {
+            feed.setTitleType( readString() );
+        }
+        if ( has( mask, 2 ) )
+        {
+            feed.setId( readString() );
+        }
+        if ( has( mask, 3 ) )
+        {
+            feed.setGenerator( readString() );
+        }
+        if ( has( mask, 4 ) )
+        {
+            feed.setGeneratorUri( readString() );
+        }
+        if ( has( mask, 5 ) )
+        {
+            feed.setLinks( links() );
+        }
+        if ( has( mask, 6 ) )
+        {
+            int size = readLength();
+            List<BuzzComment> comments = new ArrayList<BuzzComment>( Math.min( size, MAX_INITIAL_CAPACITY ) );
+            for ( int i = 0; i < size; i++ )
+            {
+                comments.add( comment() );
+            }
+            feed.setComments( comments );
+        }
+        return feed;
+    }
+
+    private BuzzUserProfile profile()
+        throws BuzzParsingException, BuzzIOException
+    {
+        BuzzUserProfile profile = new BuzzUserProfile();
+        int mask = readVarint();
+        if ( has( mask, 0 ) )
+        {
+            profile.setId( readString() );
+        }
+        if ( has( mask, 1 ) )
+        {
+            profile.setName( readString() );
+        }
+        if ( has( mask, 2 ) )
+        {
+            profile.setProfileUrl( readString() );
+        }
+        if ( has( mask, 3 ) )
+        {
+            int size = readLength();
+            List<BuzzEmail> emails = new ArrayList<BuzzEmail>( Math.min( size, MAX_INITIAL_CAPACITY ) );
+            for ( int i = 0; i < size; i++ )
+            {
+                BuzzEmail email = new BuzzEmail();
+                int emailMask = readVarint();
+                if ( has( emailMask, 0 ) )
+                {
+                    email.setValue( readString() );
+                }
+                if ( has( emailMask, 1 ) )
+                {
+                    email.setType( readString() );
+                }
+                email.setPrimary( has( emailMask, 2 ) );
+                emails.add( email );
+            }
+            profile.setEmails( emails );
+        }
+        if ( has( mask, 4 ) )
+        {
+            int size = readLength();
+            List<BuzzUrl> urls = new ArrayList<BuzzUrl>( Math.min( size, MAX_INITIAL_CAPACITY ) );
+            for ( int i = 0; i < size; i++ )
+            {
+                BuzzUrl url = new BuzzUrl();
+                int urlMask = readVarint();
+                if ( has( urlMask, 0 ) )
+                {
+                    url.setValue( readString() );
+                }
+                if ( has( urlMask, 1 ) )
+                {
+                    url.setType( readString() );
+                }
+                urls.add( url );
+            }
+            profile.setUrls( urls );
+        }
+        if ( has( mask, 5 ) )
+        {
+            int size = readLength();
+            List<BuzzPhoto> photos = new ArrayList<BuzzPhoto>( Math.min( size, MAX_INITIAL_CAPACITY ) );
+            for ( int i = 0; i < size; i++ )
+            {
+                BuzzPhoto photo = new BuzzPhoto();
+                int photoMask = readVarint();
+                if ( has( photoMask, 0 ) )
+                {
+                    photo.setValue( readString() );
+                }
+                if ( has( photoMask, 1 ) )
+                {
+                    photo.setType( readString() );
+                }
+                photos.add( photo );
+            }
+            profile.setPhotos( photos );
+        }
+        return profile;
+    }
+
+    private BuzzPeopleFeed peopleFeed()
+        throws BuzzParsingException, BuzzIOException
+    {
+        BuzzPeopleFeed feed = new BuzzPeopleFeed();
+        int mask = readVarint();
+        if ( has( mask, 0 ) )
+        {
+            feed.setStartIndex( readNumber() );
+        }
+        if ( has( mask, 1 ) )
+        {
+            feed.setItemsPerPage( readNumber() );
+        }
+        if ( has( mask, 2 ) )
+        {
+            feed.setTotalResults( readNumber() );
+        }
+        if ( has( mask, 3 ) )
+        {
+            int size = readLength();
+            List<BuzzUserProfile> profiles = new ArrayList<BuzzUserProfile>( Math.min( size, MAX_INITIAL_CAPACITY ) );
+            for ( int i = 0; i < size; i++ )
+            {
+                profiles.add( profile() );
+            }
+            feed.setProfiles( profiles );
+        }
+        return feed;
+    }
+
+    private BuzzAuthor author()
+        throws BuzzParsingException, BuzzIOException
+    {
+        BuzzAuthor author = new BuzzAuthor();
+        int mask = readVarint();
+        if ( has( mask, 0 ) )
+        {
+            author.setId( readString() );
+        }
+        if ( has( mask, 1 ) )
+        {
+            author.setName( readString() );
+        }
+        if ( has( mask, 2 ) )
+        {
+            author.setUri( readString() );
+        }
+        if ( has( mask, 3 ) )
+        {
+            author.setActivityObjectType( readString() );
+        }
+        if ( has( mask, 4 ) )
+        {
+            author.setLinks( links() );
+        }
+        return author;
+    }
+
+    private BuzzContent content()
+        throws BuzzParsingException, BuzzIOException
+    {
+        BuzzContent content = new BuzzContent();
+        int mask = readVarint();
+        if ( has( mask, 0 ) )
+        {
+            content.setText( readString() );
+        }
+        if ( has( mask, 1 ) )
+        {
+            content.setType( readString() );
+        }
+        return content;
+    }
+
+    private List<BuzzLink> links()
+        throws BuzzParsingException, BuzzIOException
+    {
+        int size = readLength();
+        List<BuzzLink> links = new ArrayList<BuzzLink>( Math.min( size, MAX_INITIAL_CAPACITY ) );
+        for ( int i = 0; i < size; i++ )
+        {
+            links.add( link() );
+        }
+        return links;
+    }
+
+    private BuzzLink link()
+        throws BuzzParsingException, BuzzIOException
+    {
+        BuzzLink link = new BuzzLink();
+        int mask = readVarint();
+        if ( has( mask, 0 ) )
+        {
+            link.setHref( readString() );
+        }
+        if ( has( mask, 1 ) )
+        {
+            link.setRel( readString() );
+        }
+        if ( has( mask, 2 ) )
+        {
+            link.setType( readString() );
+        }
+        if ( has( mask, 3 ) )
+        {
+            link.setCount( readNumber() );
+        }
+        return link;
+    }
+
+    private static boolean has( int mask, int field )
+    {
+        return ( mask & ( 1 << field ) ) != 0;
+    }
+
+    private int readNumber()
+        throws BuzzParsingException, BuzzIOException
+    {
+        int n = readVarint();
+        return ( n >>> 1 ) ^ -( n & 1 );
+    }
+
+    private Date readDate()
+        throws BuzzParsingException, BuzzIOException
+    {
+        long n = readVarlong();
+        return new Date( ( n >>> 1 ) ^ -( n & 1 ) );
+    }
+
+    private String readString()
+        throws BuzzParsingException, BuzzIOException
+    {
+        int reference = readVarint();
+        if ( reference != 0 )
+        {
+            if ( reference < 0 || reference > table.size() )
+            {
+                throw new BuzzParsingException( "Unknown string reference " + reference );
+            }
+            return table.get( reference - 1 );
+        }
+        int length = readLength();
+        String string;
+        if ( fill( length ) )
+        {
+            string = new String( buffer, position, length, StandardCharsets.UTF_8 );
+            position += length;
+        }
+        else
+        {
+            string = new String( readBytes( length ), StandardCharsets.UTF_8 );
+        }
+        if ( BuzzBinaryFormat.isInterned( string, table.size() ) )
+        {
+            table.add( string );
+        }
+        return string;
+    }
+
+    /**
+     * @return a list size or a byte length
+     */
+    private int readLength()
+        throws BuzzParsingException, BuzzIOException
+    {
+        int length = readVarint();
+        if ( length < 0 || length > BuzzBinaryFormat.MAX_LENGTH )
+        {
+            throw new BuzzParsingException( "Invalid length " + length );
+        }
+        return length;
+    }
+
+    private int readVarint()
+        throws BuzzParsingException, BuzzIOException
+    {
+        int value = 0;
+        for ( int shift = 0; shift < 35; shift += 7 )
+        {
+            int b = readByte();
+            value |= ( b & 0x7F ) << shift;
+            if ( ( b & 0x80 ) == 0 )
+            {
+                return value;
+            }
+        }
+        throw new BuzzParsingException( "Malformed varint" );
+    }
+
+    private long readVarlong()
+        throws BuzzParsingException, BuzzIOException
+    {
+        long value = 0;
+        for ( int shift = 0; shift < 70; shift += 7 )
+        {
+            int b = readByte();
+            value |= (long) ( b & 0x7F ) << shift;
+            if ( ( b & 0x80 ) == 0 )
+            {
+                return value;
+            }
+        }
+        throw new BuzzParsingException( "Malformed varint" );
+    }
+
+    private int readByte()
+        throws BuzzParsingException, BuzzIOException
+    {
+        if ( position == limit )
+        {
+            if ( direct != null && direct.hasRemaining() )
+            {
+                return direct.get() & 0xFF;
+            }
+            if ( !fill( 1 ) )
+            {
+                throw new BuzzParsingException( "Truncated Buzz binary stream" );
+            }
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * @return true if there are bytes left to read
+     */
+    private boolean available()
+        throws BuzzIOException
+    {
+        return direct != null ? direct.hasRemaining() : fill( 1 );
+    }
+
+    /**
+     * Read bytes that are not in the buffer.
+     */
+    private byte[] readBytes( int length )
+        throws BuzzParsingException, BuzzIOException
+    {
+        byte[] bytes = new byte[length];
+        int read = Math.min( limit - position, length );
+        System.arraycopy( buffer, position, bytes, 0, read );
+        position += read;
+        if ( direct != null && direct.remaining() >= length - read )
+        {
+            direct.get( bytes, read, length - read );
+            read = length;
+        }
+        try
+        {
+            while ( in != null && read < length )
+            {
+                int n = in.read( bytes, read, length - read );
+                if ( n < 0 )
+                {
+                    break;
+                }
+                read += n;
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new BuzzIOException( e );
+        }
+        if ( read < length )
+        {
+            throw new BuzzParsingException( "Truncated Buzz binary stream" );
+        }
+        return bytes;
+    }
+
+    /**
+     * Make the next bytes available in the buffer, if it can hold them.
+     *
+     * @param length number of bytes needed
+     * @return true if the bytes are in the buffer, false at the end of the stream or if the bytes
+     *         do not fit in the buffer
+     */
+    private boolean fill( int length )
+        throws BuzzIOException
+    {
+        if ( limit - position >= length )
+        {
+            return true;
+        }
+        if ( in == null || length > buffer.length )
+        {
+            return false;
+        }
+        System.arraycopy( buffer, position, buffer, 0, limit - position );
+        limit -= position;
+        position = 0;
+        try
+        {
+            while ( limit < length )
+            {
+                int n = in.read( buffer, limit, buffer.length - limit );
+                if ( n < 0 )
+                {
+                    return false;
+                }
+                limit += n;
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new BuzzIOException( e );
+        }
+        return true;
+    }
+}
@@ -0,0 +1,616 @@
+package com.google.buzz.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.buzz.exception.BuzzIOException;
+import com.google.buzz.model.BuzzAclEntry;
+import com.google.buzz.model.BuzzActivity;
+import com.google.buzz.model.BuzzAuthor;
+import com.google.buzz.model.BuzzComment;
+import com.google.buzz.model.BuzzCommentsFeed;
+import com.google.buzz.model.BuzzContent;
+import com.google.buzz.model.BuzzEmail;
+import com.google.buzz.model.BuzzFeed;
+import com.google.buzz.model.BuzzFeedEntry;
+import com.google.buzz.model.BuzzLink;
+import com.google.buzz.model.BuzzPeopleFeed;
+import com.google.buzz.model.BuzzPhoto;
+import com.google.buzz.model.BuzzReply;
+import com.google.buzz.model.BuzzUrl;
+import com.google.buzz.model.BuzzUserProfile;
+
+/**
+ * Writes Buzz models to a stream in the compact binary format of <b>BuzzBinaryFormat</b>, to be
+ * read back by a <b>BuzzBinaryDecoder</b>. <br/>
+ * The models are written one after the other, and share the string table of the stream: an
+ * author or a link repeated along the stream is written once. The encoder buffers its output, so
+ * it has to be flushed or closed. It is not safe to use from several threads.
+ */
+public class BuzzBinaryEncoder
+    implements AutoCloseable
+{
+    /**
+     * Size of the buffer written to the stream at once
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OutputStream out;
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int count;
+
+    /**
+     * Index of the strings of the table
+     */
+    private final Map<String, Integer> table = new HashMap<String, Integer>();
+
+    private boolean started;
+
+    /**
+     * Creates an encoder writing to a stream.
+     *
+     * @param out stream to write to
+     */
+    public BuzzBinaryEncoder( OutputStream out )
+    {
+        this.out = out;
+    }
+
+    /**
+     * Encode a single model.
+     *
+     * @param model a <b>BuzzFeed</b>, <b>BuzzFeedEntry</b>, <b>BuzzComment</b>,
+     *            <b>BuzzCommentsFeed</b>, <b>BuzzUserProfile</b> or <b>BuzzPeopleFeed</b>
+     * @return the encoded stream of the model
+     * @throws IllegalArgumentException if the model has no binary format
+     */
+    public static byte[] encode( Object model )
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BuzzBinaryEncoder encoder = new BuzzBinaryEncoder( bytes );
+        try
+        {
+            encoder.write( model );
+            encoder.flush();
+        }
+        catch ( BuzzIOException e )
+        {
+            // a byte array stream does not fail
+            throw new IllegalStateException( e );
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Write any model.
+     *
+     * @param model a <b>BuzzFeed</b>, <b>BuzzFeedEntry</b>, <b>BuzzComment</b>,
+     *            <b>BuzzCommentsFeed</b>, <b>BuzzUserProfile</b> or <b>BuzzPeopleFeed</b>
+     * @throws BuzzIOException if the stream can not be written
+     * @throws IllegalArgumentException if the model has no binary format
+     */
+    public void write( Object model )
+        throws BuzzIOException
+    {
+        if ( model instanceof BuzzFeed )
+        {
+            writeFeed( (BuzzFeed) model );
+        }
+        else if ( model instanceof BuzzFeedEntry )
+        {
+            writeFeedEntry( (BuzzFeedEntry) model );
+        }
+        else if ( model instanceof BuzzComment )
+        {
+            writeComment( (BuzzComment) model );
+        }
+        else if ( model instanceof BuzzCommentsFeed )
+        {
+            writeCommentsFeed( (BuzzCommentsFeed) model );
+        }
+        else if ( model instanceof BuzzUserProfile )
+        {
+            writeUserProfile( (BuzzUserProfile) model );
+        }
+        else if ( model instanceof BuzzPeopleFeed )
+        {
+            writePeopleFeed( (BuzzPeopleFeed) model );
+        }
+        else
+        {
+            throw new IllegalArgumentException( "No binary format for " + model );
+        }
+    }
+
+    /**
+     * @param feed to write, with its entries
+     * @throws BuzzIOException if the stream can not be written
+     */
+    public void writeFeed( BuzzFeed feed )
+        throws BuzzIOException
+    {
+        begin( BuzzBinaryFormat.TAG_FEED );
+        feed( feed );
+        end();
+    }
+
+    /**
+     * @param entry to write
+     * @throws BuzzIOException if the stream can not be written
+     */
+    public void writeFeedEntry( BuzzFeedEntry entry )
+        throws BuzzIOException
+    {
+        begin( BuzzBinaryFormat.TAG_FEED_ENTRY );
+        entry( entry );
+        end();
+    }
+
+    /**
+     * @param comment to write
+     * @throws BuzzIOException if the stream can not be written
+     */
+    public void writeComment( BuzzComment comment )
+        throws BuzzIOException
+    {
+        begin( BuzzBinaryFormat.TAG_COMMENT );
+        comment( comment );
+        end();
+    }
+
+    /**
+     * @param feed to write, with its comments
+     * @throws BuzzIOException if the stream can not be written
+     */
+    public void writeCommentsFeed( BuzzCommentsFeed feed )
+        throws BuzzIOException
+    {
+        begin( BuzzBinaryFormat.TAG_COMMENTS_FEED );
+        commentsFeed( feed );
+        end();
+    }
+
+    /**
+     * @param profile to write
+     * @throws BuzzIOException if the stream can not be written
+     */
+    public void writeUserProfile( BuzzUserProfile profile )
+        throws BuzzIOException
+    {
+        begin( BuzzBinaryFormat.TAG_USER_PROFILE );
+        profile( profile );
+        end();
+    }
+
+    /**
+     * @param feed to write, with its profiles
+     * @throws BuzzIOException if the stream can not be written
+     */
+    public void writePeopleFeed( BuzzPeopleFeed feed )
+        throws BuzzIOException
+    {
+        begin( BuzzBinaryFormat.TAG_PEOPLE_FEED );
+        peopleFeed( feed );
+        end();
+    }
+
+    /**
+     * Write the buffered models to the stream, and flush it.
+     *
+     * @throws BuzzIOException if the stream can not be written
+     */
+    public void flush()
+        throws BuzzIOException
+    {
+        try
+        {
+            drain();
+            out.flush();
+        }
+        catch ( IOException e )
+        {
+            throw new BuzzIOException( e );
+        }
+    }
+
+    /**
+     * Write the buffered models to the stream, and close it.
+     *
+     * @throws BuzzIOException if the stream can not be written
+     */
+    public void close()
+        throws BuzzIOException
+    {
+        try
+        {
+            drain();
+            out.close();
+        }
+        catch ( IOException e )
+        {
+            throw new BuzzIOException( e );
+        }
+    }
+
+    private void begin( int tag )
+    {
+        if ( !started )
+        {
+            started = true;
+            for ( byte b : BuzzBinaryFormat.MAGIC )
+            {
+                writeByte( b );
+            }
+            writeByte( BuzzBinaryFormat.VERSION );
+        }
+        writeByte( tag );
+    }
+
+    /**
+     * Hand the buffer to the stream once it is big enough.
+     */
+    private void end()
+        throws BuzzIOException
+    {
+        if ( count >= BUFFER_SIZE )
+        {
+            try
+            {
+                drain();
+            }
+            catch ( IOException e )
+            {
+                throw new BuzzIOException( e );
+            }
+        }
+    }
+
+    private void drain()
+        throws IOException
+    {
+        if ( count > 0 )
+        {
+            out.write( buffer, 0, count );
+            count = 0;
+        }
+        if ( buffer.length > 4 * BUFFER_SIZE )
+        {
+            buffer = new byte[BUFFER_SIZE];
+        }
+    }
+
+    private void feed( BuzzFeed feed )
+    {
+        mask( feed.getFeedTitle(), feed.getTitleType(), feed.getUpdated(), feed.getId(), feed.getGenerator(),
+              feed.getGeneratorUri(), feed.getLinks(), feed.getEntries() );
+        string( feed.getFeedTitle() );
+        string( feed.getTitleType() );
+        date( feed.getUpdated() );
+        string( feed.getId() );
+        string( feed.getGenerator() );
+        string( feed.getGeneratorUri() );
+        links( feed.getLinks() );
+        List<BuzzFeedEntry> entries = feed.getEntries();
+        if ( present( entries ) )
+        {
+            writeVarint( entries.size() );
+            for ( BuzzFeedEntry entry : entries )
+            {
+                entry( entry );
+            }
+        }
+    }
+
+    private void entry( BuzzFeedEntry entry )
+    {
+        mask( entry.getTitle(), entry.getPublished(), entry.getUpdated(), entry.getId(), entry.getLinks(),
+              entry.getAuthor(), entry.getContent(), entry.getActivityVerb(), entry.getCrosspostSourceId(),
+              entry.getSourceActivityTitle(), entry.getVisibility(), entry.getActivity() );
+        string( entry.getTitle() );
+        date( entry.getPublished() );
+        date( entry.getUpdated() );
+        string( entry.getId() );
+        links( entry.getLinks() );
+        author( entry.getAuthor() );
+        content( entry.getContent() );
+        string( entry.getActivityVerb() );
+        string( entry.getCrosspostSourceId() );
+        string( entry.getSourceActivityTitle() );
+        List<BuzzAclEntry> visibility = entry.getVisibility();
+        if ( present( visibility ) )
+        {
+            writeVarint( visibility.size() );
+            for ( BuzzAclEntry acl : visibility )
+            {
+                mask( acl.getType(), acl.getId(), acl.getUri(), acl.getName() );
+                string( acl.getType() );
+                string( acl.getId() );
+                string( acl.getUri() );
+                string( acl.getName() );
+            }
+        }
+        BuzzActivity activity = entry.getActivity();
+        if ( activity != null )
+        {
+            mask( activity.getActivityObjectType(), activity.getContent(), activity.getLink() );
+            string( activity.getActivityObjectType() );
+            content( activity.getContent() );
+            if ( activity.getLink() != null )
+            {
+                link( activity.getLink() );
+            }
+        }
+    }
+
+    private void comment( BuzzComment comment )
+    {
+        mask( comment.getActivityObjectType(), comment.getId(), comment.getPublished(), comment.getAuthor(),
+              comment.getContent(), comment.getOriginalContent(), comment.getLinks(), comment.getReply() );
+        string( comment.getActivityObjectType() );
+        string( comment.getId() );
+        date( comment.getPublished() );
+        author( comment.getAuthor() );
+        content( comment.getContent() );
+        content( comment.getOriginalContent() );
+        links( comment.getLinks() );
+        BuzzReply reply = comment.getReply();
+        if ( reply != null )
+        {
+            mask( reply.getHref(), reply.getType(), reply.getRef() );
+            string( reply.getHref() );
+            string( reply.getType() );
+            string( reply.getRef() );
+        }
+    }
+
+    private void commentsFeed( BuzzCommentsFeed feed )
+    {
+        mask( feed.getTitle(), feed.getTitleType(), feed.getId(), feed.getGenerator(), feed.getGeneratorUri(),
+              feed.getLinks(), feed.getComments() );
+        string( feed.getTitle() );
+        string( feed.getTitleType() );
+        string( feed.getId() );
+        string( feed.getGenerator() );
+        string( feed.getGeneratorUri() );
+        links( feed.getLinks() );
+        List<BuzzComment> comments = feed.getComments();
+        if ( present( comments ) )
+        {
+            writeVarint( comments.size() );
+            for ( BuzzComment comment : comments )
+            {
+                comment( comment );
+            }
+        }
+    }
+
+    private void profile( BuzzUserProfile profile )
+    {
+        mask( profile.getId(), profile.getName(), profile.getProfileUrl(), profile.getEmails(), profile.getUrls(),
+              profile.getPhotos() );
+        string( profile.getId() );
+        string( profile.getName() );
+        string( profile.getProfileUrl() );
+        List<BuzzEmail> emails = profile.getEmails();
+        if ( present( emails ) )
+        {
+            writeVarint( emails.size() );
+            for ( BuzzEmail email : emails )
+            {
+                mask( email.getValue(), email.getType(), email.isPrimary() ? Boolean.TRUE : null );
+                string( email.getValue() );
+                string( email.getType() );
+            }
+        }
+        List<BuzzUrl> urls = profile.getUrls();
+        if ( present( urls ) )
+        {
+            writeVarint( urls.size() );
+            for ( BuzzUrl url : urls )
+            {
+                mask( url.getValue(), url.getType() );
+                string( url.getValue() );
+                string( url.getType() );
+            }
+        }
+        List<BuzzPhoto> photos = profile.getPhotos();
+        if ( present( photos ) )
+        {
+            writeVarint( photos.size() );
+            for ( BuzzPhoto photo : photos )
+            {
+                mask( photo.getValue(), photo.getType() );
+                string( photo.getValue() );
+                string( photo.getType() );
+            }
+        }
+    }
+
+    private void peopleFeed( BuzzPeopleFeed feed )
+    {
+        mask( nonZero( feed.getStartIndex() ), nonZero( feed.getItemsPerPage() ),
+              nonZero( feed.getTotalResults() ), feed.getProfiles() );
+        number( feed.getStartIndex() );
+        number( feed.getItemsPerPage() );
+        number( feed.getTotalResults() );
+        List<BuzzUserProfile> profiles = feed.getProfiles();
+        if ( present( profiles ) )
+        {
+            writeVarint( profiles.size() );
+            for ( BuzzUserProfile profile : profiles )
+            {
+                profile( profile );
+            }
+        }
+    }
+
+    private void author( BuzzAuthor author )
+    {
+        if ( author != null )
+        {
+            mask( author.getId(), author.getName(), author.getUri(), author.getActivityObjectType(),
+                  author.getLinks() );
+            string( author.getId() );
+            string( author.getName() );
+            string( author.getUri() );
+            string( author.getActivityObjectType() );
+            links( author.getLinks() );
+        }
+    }
+
+    private void content( BuzzContent content )
+    {
+        if ( content != null )
+        {
+            mask( content.getText(), content.getType() );
+            string( content.getText() );
+            string( content.getType() );
+        }
+    }
+
+    private void links( List<BuzzLink> links )
+    {
+        if ( present( links ) )
+        {
+            writeVarint( links.size() );
+            for ( BuzzLink link : links )
+            {
+                link( link );
+            }
+        }
+    }
+
+    private void link( BuzzLink link )
+    {
+        mask( link.getHref(), link.getRel(), link.getType(), nonZero( link.getCount() ) );
+        string( link.getHref() );
+        string( link.getRel() );
+        string( link.getType() );
+        number( link.getCount() );
+    }
+
+    /**
+     * Write the mask of the present fields.
+     *
+     * @param fields the fields of a model, in order
+     */
+    private void mask( Object... fields )
+    {
+        int mask = 0;
+        for ( int i = 0; i < fields.length; i++ )
+        {
+            Object field = fields[i];
+            if ( field instanceof List ? present( (List<?>) field ) : field != null )
+            {
+                mask |= 1 << i;
+            }
+        }
+        writeVarint( mask );
+    }
+
+    private static boolean present( List<?> list )
+    {
+        return list != null && !list.isEmpty();
+    }
+
+    /**
+     * @param value a number field
+     * @return the value to put in the mask, null if absent
+     */
+    private static Integer nonZero( int value )
+    {
+        return value == 0 ? null : Integer.valueOf( value );
+    }
+
+    private void number( int value )
+    {
+        if ( value != 0 )
+        {
+            writeVarint( ( value << 1 ) ^ ( value >> 31 ) );
+        }
+    }
+
+    private void date( Date date )
+    {
+        if ( date != null )
+        {
+            long millis = date.getTime();
+            writeVarlong( ( millis << 1 ) ^ ( millis >> 63 ) );
+        }
+    }
+
+    private void string( String string )
+    {
+        if ( string == null )
+        {
+            return;
+        }
+        Integer index = table.get( string );
+        if ( index != null )
+        {
+            writeVarint( index.intValue() + 1 );
+            return;
+        }
+        if ( BuzzBinaryFormat.isInterned( string, table.size() ) )
+        {
+            table.put( string, Integer.valueOf( table.size() ) );
+        }
+        byte[] bytes = string.getBytes( StandardCharsets.UTF_8 );
+        writeVarint( 0 );
+        writeVarint( bytes.length );
+        ensure( bytes.length );
+        System.arraycopy( bytes, 0, buffer, count, bytes.length );
+        count += bytes.length;
+    }
+
+    private void writeByte( int b )
+    {
+        ensure( 1 );
+        buffer[count++] = (byte) b;
+    }
+
+    private void writeVarint( int value )
+    {
+        ensure( 5 );
+        while ( ( value & ~0x7F ) != 0 )
+        {
+            buffer[count++] = (byte) ( ( value & 0x7F ) | 0x80 );
+            value >>>= 7;
+        }
+        buffer[count++] = (byte) value;
+    }
+
+    private void writeVarlong( long value )
+    {
+        ensure( 10 );
+        while ( ( value & ~0x7FL ) != 0 )
+        {
+            buffer[count++] = (byte) ( ( value & 0x7F ) | 0x80 );
+            value >>>= 7;
+        }
+        buffer[count++] = (byte) value;
+    }
+
+    /**
+     * Grow the buffer; a model is always buffered whole.
+     *
+     * @param length number of bytes about to be written
+     */
+    private void ensure( int length )
+    {
+        if ( count + length > buffer.length )
+        {
+            byte[] grown = new byte[Math.max( buffer.length * 2, count + length )];
+            System.arraycopy( buffer, 0, grown, 0, count );
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.google.buzz.codec;
+
+/**
+ * Constants of the compact binary format of the Buzz models. <br/>
+ * A stream starts with the magic bytes <b>BZB</b> and the format version, followed by records.
+ * A record is a tag byte naming the model, then the model itself. A model starts with a varint
+ * mask of its present fields, followed by these fields in declaration order:
+ * <ul>
+ * <li>strings: a varint, 0 for a literal ( varint byte length and UTF-8 bytes ), or the index plus
+ * one of a string already in the table of the stream. The short literals are added to the table, so
+ * the authors, links and types repeated along a stream are written once;</li>
+ * <li>dates: the zigzag varint of their epoch milliseconds;</li>
+ * <li>numbers: zigzag varints; a boolean is only its bit in the mask;</li>
+ * <li>lists: a varint count and the models.</li>
+ * </ul>
+ * Null fields and empty lists are absent. Both ends apply the same table limits, so the table
+ * never has to be written.
+ */
+final class BuzzBinaryFormat
+{
+    /**
+     * First bytes of a stream
+     */
+    static final byte[] MAGIC = { 'B', 'Z', 'B' };
+
+    static final int VERSION = 1;
+
+    /**
+     * Tags of the records
+     */
+    static final int TAG_FEED = 1;
+
+    static final int TAG_FEED_ENTRY = 2;
+
+    static final int TAG_COMMENT = 3;
+
+    static final int TAG_COMMENTS_FEED = 4;
+
+    static final int TAG_USER_PROFILE = 5;
+
+    static final int TAG_PEOPLE_FEED = 6;
+
+    /**
+     * Longest string added to the string table, in chars
+     */
+    static final int MAX_TABLE_STRING = 256;
+
+    /**
+     * Number of strings of the string table, once full new strings are always written literally
+     */
+    static final int MAX_TABLE_SIZE = 1 << 16;
+
+    /**
+     * Highest byte length of a string and highest count of a list accepted when decoding
+     */
+    static final int MAX_LENGTH = 1 << 26;
+
+    private BuzzBinaryFormat()
+    {
+    }
+
+    /**
+     * @param string a string written or read
+     * @param tableSize number of strings in the table
+     * @return true if the string is added to the table
+     */
+    static boolean isInterned( String string, int tableSize )
+    {
+        return tableSize < MAX_TABLE_SIZE && string.length() <= MAX_TABLE_STRING;
+    }
+}
@@ -0,0 +1,94 @@
+package com.google.buzz.exception;
+
+/**
+ * BuzzIOException thrown when the server answers with an error status.
+ */
+public class BuzzHttpException
+    extends BuzzIOException
+{
+
+    /**
+     * Serial Version UID
+     */
+    private static final long serialVersionUID = 4262197512861290361L;
+
+    /**
+     * The http status code of the response
+     */
+    private final int status;
+
+    /**
+     * The delay of the Retry-After header of the response in milliseconds, or -1
+     */
+    private final long retryAfter;
+
+    /**
+     * Creates a BuzzHttpException for a response without error body.
+     *
+     * @param status http status code of the response
+     * @param cause the cause of the exception
+     */
+    public BuzzHttpException( int status, Throwable cause )
+    {
+        this( status, -1, cause );
+    }
+
+    /**
+     * Creates a BuzzHttpException for a response without error body.
+     *
+     * @param status http status code of the response
+     * @param retryAfter delay of the Retry-After header of the response in milliseconds, or -1
+     * @param cause the cause of the exception
+     */
+    public BuzzHttpException( int status, long retryAfter, Throwable cause )
+    {
+        super( cause );
+        this.status = status;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Creates a BuzzHttpException with the error body of the response as message.
+     *
+     * @param status http status code of the response
+     * @param body error body of the response
+     * @param cause the cause of the exception
+     */
+    public BuzzHttpException( int status, String body, Throwable cause )
+    {
+        this( status, body, -1, cause );
+    }
+
+    /**
+     * Creates a BuzzHttpException with the error body of the response as message.
+     *
+     * @param status http status code of the response
+     * @param body error body of the response
+     * @param retryAfter delay of the Retry-After header of the response in milliseconds, or -1
+     * @param cause the cause of the exception
+     */
+    public BuzzHttpException( int status, String body, long retryAfter, Throwable cause )
+    {
+        super( body, cause );
+        this.status = status;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return the http status code of the response
+     */
+    public int getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * @return the delay of the Retry-After header of the response in milliseconds, or -1 if it had
+     *         none
+     */
+    public long getRetryAfter()
+    {
+        return retryAfter;
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.google.buzz.exception;
+
+/**
+ * BuzzIOException thrown when a request is not sent at all, to fail fast: its endpoint is failing
+ * or already has too many requests in flight.
+ */
+public class BuzzRejectedException
+    extends BuzzIOException
+{
+
+    /**
+     * Serial Version UID
+     */
+    private static final long serialVersionUID = -2817470551316440371L;
+
+    /**
+     * Creates a BuzzRejectedException with a custom message.
+     *
+     * @param message detail of the exception
+     */
+    public BuzzRejectedException( String message )
+    {
+        super( message );
+    }
+
+}
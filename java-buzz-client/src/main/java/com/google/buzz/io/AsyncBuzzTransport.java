@@ -0,0 +1,21 @@
+package com.google.buzz.io;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Http engine able to execute Buzz requests without blocking the calling thread. <br/>
+ * Used by <b>AsyncBuzz</b>; <b>JdkHttpTransport</b> is the non-blocking implementation and
+ * <b>ExecutorAsyncTransport</b> adapts any blocking <b>BuzzTransport</b>.
+ */
+public interface AsyncBuzzTransport
+{
+    /**
+     * Execute a signed request asynchronously. <br/>
+     * Error statuses complete the future normally; failures to exchange the request complete it
+     * exceptionally with a <b>BuzzIOException</b>.
+     *
+     * @param request to execute
+     * @return the future response
+     */
+    public CompletableFuture<BuzzResponse> executeAsync( BuzzRequest request );
+}
@@ -0,0 +1,357 @@
+package com.google.buzz.io;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker of an endpoint family. <br/>
+ * The breaker records the outcome of the last <b>windowSize</b> calls. Once the share of failed
+ * calls or of slow calls reaches its threshold, the breaker <b>opens</b>: calls are rejected
+ * without being sent for <b>openDuration</b>. It then lets <b>halfOpenCalls</b> trial calls
+ * through; it closes again if they all succeed in time, and opens again otherwise. <br/>
+ * The breaker is safe to use from several threads.
+ */
+public class BuzzCircuitBreaker
+{
+    /**
+     * States of a circuit breaker
+     */
+    public enum State
+    {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Default number of calls of the sliding window
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 20;
+
+    /**
+     * Outcome flags of a call in the window
+     */
+    private static final byte FAILED = 1;
+
+    private static final byte SLOW = 2;
+
+    /**
+     * Outcomes of the last calls, as a ring
+     */
+    private final byte[] window;
+
+    /**
+     * Next position in the ring
+     */
+    private int next;
+
+    /**
+     * Number of calls in the ring
+     */
+    private int calls;
+
+    private int failedCalls;
+
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+
+    /**
+     * Time the breaker opened, in nanoseconds
+     */
+    private long openedAt;
+
+    /**
+     * Trial calls let through since the breaker half opened
+     */
+    private int trialCalls;
+
+    /**
+     * Trial calls completed since the breaker half opened
+     */
+    private int trialsDone;
+
+    /**
+     * Calls rejected while open
+     */
+    private long rejected;
+
+    /**
+     * Times the breaker opened
+     */
+    private long opened;
+
+    private volatile int failureRateThreshold = 50;
+
+    private volatile int slowCallRateThreshold = 80;
+
+    private volatile long slowCallDuration = 5L * 1000;
+
+    private volatile int minimumCalls = 10;
+
+    private volatile long openDuration = 30L * 1000;
+
+    private volatile int halfOpenCalls = 3;
+
+    /**
+     * Creates a closed breaker over the last <b>DEFAULT_WINDOW_SIZE</b> calls.
+     */
+    public BuzzCircuitBreaker()
+    {
+        this( DEFAULT_WINDOW_SIZE );
+    }
+
+    /**
+     * Creates a closed breaker.
+     *
+     * @param windowSize number of calls whose outcome is recorded
+     */
+    public BuzzCircuitBreaker( int windowSize )
+    {
+        if ( windowSize <= 0 )
+        {
+            throw new IllegalArgumentException( "windowSize must be positive" );
+        }
+        this.window = new byte[windowSize];
+    }
+
+    /**
+     * Ask to send a call.
+     *
+     * @return true if the call may be sent, false if it is rejected
+     */
+    public synchronized boolean tryAcquire()
+    {
+        if ( state == State.OPEN )
+        {
+            if ( System.nanoTime() - openedAt < TimeUnit.MILLISECONDS.toNanos( openDuration ) )
+            {
+                rejected++;
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialCalls = 0;
+            trialsDone = 0;
+        }
+        if ( state == State.HALF_OPEN )
+        {
+            if ( trialCalls >= halfOpenCalls )
+            {
+                rejected++;
+                return false;
+            }
+            trialCalls++;
+        }
+        return true;
+    }
+
+    /**
+     * Record the outcome of a call let through.
+     *
+     * @param failed true if the call failed
+     * @param duration of the call, in nanoseconds
+     */
+    public synchronized void record( boolean failed, long duration )
+    {
+        boolean slow = duration >= TimeUnit.MILLISECONDS.toNanos( slowCallDuration );
+        if ( state == State.HALF_OPEN )
+        {
+            if ( failed || slow )
+            {
+                open();
+            }
+            else if ( ++trialsDone >= halfOpenCalls )
+            {
+                close();
+            }
+            return;
+        }
+        if ( state == State.OPEN )
+        {
+            // a call sent before the breaker opened
+            return;
+        }
+        if ( calls == window.length )
+        {
+            byte evicted = window[next];
+            failedCalls -= evicted & FAILED;
+            slowCalls -= ( evicted & SLOW ) >> 1;
+        }
+        else
+        {
+            calls++;
+        }
+        window[next] = (byte) ( ( failed ? FAILED : 0 ) | ( slow ? SLOW : 0 ) );
+        next = ( next + 1 ) % window.length;
+        failedCalls += failed ? 1 : 0;
+        slowCalls += slow ? 1 : 0;
+        if ( calls >= minimumCalls
+            && ( failedCalls * 100 >= failureRateThreshold * calls || slowCalls * 100 >= slowCallRateThreshold * calls ) )
+        {
+            open();
+        }
+    }
+
+    /**
+     * Give back the permit of a call that was not sent.
+     */
+    public synchronized void release()
+    {
+        if ( state == State.HALF_OPEN && trialCalls > 0 )
+        {
+            trialCalls--;
+        }
+    }
+
+    /**
+     * Close the breaker and forget the recorded calls.
+     */
+    public synchronized void reset()
+    {
+        close();
+    }
+
+    private void open()
+    {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        opened++;
+    }
+
+    private void close()
+    {
+        state = State.CLOSED;
+        next = 0;
+        calls = 0;
+        failedCalls = 0;
+        slowCalls = 0;
+    }
+
+    /**
+     * @return the state of the breaker
+     */
+    public synchronized State getState()
+    {
+        if ( state == State.OPEN
+            && System.nanoTime() - openedAt >= TimeUnit.MILLISECONDS.toNanos( openDuration ) )
+        {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * @return the number of calls rejected
+     */
+    public synchronized long getRejected()
+    {
+        return rejected;
+    }
+
+    /**
+     * @return the number of times the breaker opened
+     */
+    public synchronized long getOpened()
+    {
+        return opened;
+    }
+
+    /**
+     * @return the share of failed calls that opens the breaker, in percent
+     */
+    public int getFailureRateThreshold()
+    {
+        return failureRateThreshold;
+    }
+
+    /**
+     * @param failureRateThreshold the share of failed calls that opens the breaker, in percent
+     */
+    public void setFailureRateThreshold( int failureRateThreshold )
+    {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    /**
+     * @return the share of slow calls that opens the breaker, in percent
+     */
+    public int getSlowCallRateThreshold()
+    {
+        return slowCallRateThreshold;
+    }
+
+    /**
+     * @param slowCallRateThreshold the share of slow calls that opens the breaker, in percent
+     */
+    public void setSlowCallRateThreshold( int slowCallRateThreshold )
+    {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    /**
+     * @return the duration from which a call is slow, in milliseconds
+     */
+    public long getSlowCallDuration()
+    {
+        return slowCallDuration;
+    }
+
+    /**
+     * @param slowCallDuration the duration from which a call is slow, in milliseconds
+     */
+    public void setSlowCallDuration( long slowCallDuration )
+    {
+        this.slowCallDuration = slowCallDuration;
+    }
+
+    /**
+     * @return the number of recorded calls needed before the breaker may open
+     */
+    public int getMinimumCalls()
+    {
+        return minimumCalls;
+    }
+
+    /**
+     * @param minimumCalls the number of recorded calls needed before the breaker may open
+     */
+    public void setMinimumCalls( int minimumCalls )
+    {
+        this.minimumCalls = Math.max( minimumCalls, 1 );
+    }
+
+    /**
+     * @return how long the breaker stays open, in milliseconds
+     */
+    public long getOpenDuration()
+    {
+        return openDuration;
+    }
+
+    /**
+     * @param openDuration how long the breaker stays open, in milliseconds
+     */
+    public void setOpenDuration( long openDuration )
+    {
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * @return the number of trial calls let through once the open duration is over
+     */
+    public int getHalfOpenCalls()
+    {
+        return halfOpenCalls;
+    }
+
+    /**
+     * @param halfOpenCalls the number of trial calls let through once the open duration is over
+     */
+    public void setHalfOpenCalls( int halfOpenCalls )
+    {
+        this.halfOpenCalls = Math.max( halfOpenCalls, 1 );
+    }
+
+    public synchronized String toString()
+    {
+        return "state=" + getState() + ", calls=" + calls + ", failed=" + failedCalls + ", slow=" + slowCalls
+            + ", rejected=" + rejected + ", opened=" + opened;
+    }
+}
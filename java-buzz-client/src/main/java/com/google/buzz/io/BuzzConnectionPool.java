@@ -0,0 +1,317 @@
+package com.google.buzz.io;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Bounded pool of keep-alive http connections used by <b>BuzzIO</b>. <br/>
+ * Connections are kept per host ( route ) and reused between requests; the pool limits the total
+ * number of connections and the number of connections per host, and a background thread closes
+ * connections that stayed idle for longer than the idle timeout.
+ */
+public class BuzzConnectionPool
+{
+    /**
+     * Default maximum number of connections in the pool
+     */
+    public static final int DEFAULT_MAX_TOTAL = 50;
+
+    /**
+     * Default maximum number of connections per host
+     */
+    public static final int DEFAULT_MAX_PER_HOST = 20;
+
+    /**
+     * Default time a connection may stay idle in the pool, in milliseconds
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000L;
+
+    /**
+     * Default maximum time to wait for a free connection, in milliseconds
+     */
+    public static final long DEFAULT_WAIT_TIMEOUT = 10000L;
+
+    /**
+     * Default connect and read timeout, in milliseconds
+     */
+    public static final int DEFAULT_SOCKET_TIMEOUT = 60000;
+
+    /**
+     * The connection manager doing the pooling
+     */
+    private final ThreadSafeClientConnManager connectionManager;
+
+    /**
+     * The http client bound to the connection manager
+     */
+    private final DefaultHttpClient httpClient;
+
+    /**
+     * The pool counters
+     */
+    private final BuzzConnectionPoolStats stats = new BuzzConnectionPoolStats();
+
+    /**
+     * The max total connections
+     */
+    private final int maxTotal;
+
+    /**
+     * The max connections per host
+     */
+    private final int maxPerHost;
+
+    /**
+     * The idle timeout in milliseconds
+     */
+    private final long idleTimeout;
+
+    /**
+     * The thread evicting idle connections
+     */
+    private final Thread evictor;
+
+    /**
+     * Creates a pool with the default limits.
+     */
+    public BuzzConnectionPool()
+    {
+        this( DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_HOST, DEFAULT_IDLE_TIMEOUT );
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param maxTotal maximum number of connections in the pool
+     * @param maxPerHost maximum number of connections to the same host
+     * @param idleTimeout time in milliseconds after which an idle connection is closed
+     */
+    public BuzzConnectionPool( int maxTotal, int maxPerHost, long idleTimeout )
+    {
+        if ( maxTotal <= 0 || maxPerHost <= 0 || idleTimeout <= 0 )
+        {
+            throw new IllegalArgumentException( "pool limits must be positive" );
+        }
+        this.maxTotal = maxTotal;
+        this.maxPerHost = maxPerHost;
+        this.idleTimeout = idleTimeout;
+
+        HttpParams params = new BasicHttpParams();
+        ConnManagerParams.setMaxTotalConnections( params, maxTotal );
+        ConnManagerParams.setMaxConnectionsPerRoute( params, new ConnPerRouteBean( maxPerHost ) );
+        ConnManagerParams.setTimeout( params, DEFAULT_WAIT_TIMEOUT );
+        HttpConnectionParams.setConnectionTimeout( params, DEFAULT_SOCKET_TIMEOUT );
+        HttpConnectionParams.setSoTimeout( params, DEFAULT_SOCKET_TIMEOUT );
+        HttpConnectionParams.setStaleCheckingEnabled( params, true );
+        HttpProtocolParams.setUseExpectContinue( params, false );
+
+        SchemeRegistry schemeRegistry = new SchemeRegistry();
+        schemeRegistry.register( new Scheme( "http", PlainSocketFactory.getSocketFactory(), 80 ) );
+        schemeRegistry.register( new Scheme( "https", SSLSocketFactory.getSocketFactory(), 443 ) );
+
+        connectionManager = new MeteredConnManager( params, schemeRegistry, stats );
+        httpClient = new DefaultHttpClient( connectionManager, params );
+        httpClient.setKeepAliveStrategy( new BoundedKeepAliveStrategy( idleTimeout ) );
+
+        evictor = new Thread( new IdleConnectionEvictor(), "buzz-connection-evictor" );
+        evictor.setDaemon( true );
+        evictor.start();
+    }
+
+    /**
+     * @return the http client that executes requests over the pooled connections
+     */
+    public HttpClient getHttpClient()
+    {
+        return httpClient;
+    }
+
+    /**
+     * @return the pool counters
+     */
+    public BuzzConnectionPoolStats getStats()
+    {
+        return stats;
+    }
+
+    /**
+     * @return the maximum number of connections in the pool
+     */
+    public int getMaxTotal()
+    {
+        return maxTotal;
+    }
+
+    /**
+     * @return the maximum number of connections per host
+     */
+    public int getMaxPerHost()
+    {
+        return maxPerHost;
+    }
+
+    /**
+     * @return the idle timeout in milliseconds
+     */
+    public long getIdleTimeout()
+    {
+        return idleTimeout;
+    }
+
+    /**
+     * @return the number of open connections, leased or idle
+     */
+    public int getConnectionsInPool()
+    {
+        return connectionManager.getConnectionsInPool();
+    }
+
+    /**
+     * Set the maximum time to wait for a free connection when the pool is exhausted.
+     *
+     * @param waitTimeout in milliseconds
+     */
+    public void setWaitTimeout( long waitTimeout )
+    {
+        ConnManagerParams.setTimeout( httpClient.getParams(), waitTimeout );
+    }
+
+    /**
+     * Set the connect and read timeouts of the pooled connections.
+     *
+     * @param connectTimeout in milliseconds
+     * @param readTimeout in milliseconds
+     */
+    public void setSocketTimeouts( int connectTimeout, int readTimeout )
+    {
+        HttpConnectionParams.setConnectionTimeout( httpClient.getParams(), connectTimeout );
+        HttpConnectionParams.setSoTimeout( httpClient.getParams(), readTimeout );
+    }
+
+    /**
+     * Close the connections that have been idle for longer than the idle timeout.
+     */
+    public void closeIdleConnections()
+    {
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections( idleTimeout, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Close all the connections and stop the idle evictor. The pool can not be used afterwards.
+     */
+    public void shutdown()
+    {
+        evictor.interrupt();
+        connectionManager.shutdown();
+    }
+
+    /**
+     * Background task closing idle connections every half of the idle timeout.
+     */
+    private class IdleConnectionEvictor
+        implements Runnable
+    {
+        public void run()
+        {
+            try
+            {
+                while ( !Thread.currentThread().isInterrupted() )
+                {
+                    Thread.sleep( Math.max( 1L, idleTimeout / 2 ) );
+                    closeIdleConnections();
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                // pool shut down
+            }
+        }
+    }
+
+    /**
+     * Keep-alive strategy honouring the server Keep-Alive header, bounded by the idle timeout.
+     */
+    private static class BoundedKeepAliveStrategy
+        extends DefaultConnectionKeepAliveStrategy
+    {
+        private final long maxKeepAlive;
+
+        BoundedKeepAliveStrategy( long maxKeepAlive )
+        {
+            this.maxKeepAlive = maxKeepAlive;
+        }
+
+        public long getKeepAliveDuration( HttpResponse response, HttpContext context )
+        {
+            long duration = super.getKeepAliveDuration( response, context );
+            return duration > 0 && duration < maxKeepAlive ? duration : maxKeepAlive;
+        }
+    }
+
+    /**
+     * Connection manager recording hits, misses and wait time in the pool stats.
+     */
+    private static class MeteredConnManager
+        extends ThreadSafeClientConnManager
+    {
+        private final BuzzConnectionPoolStats stats;
+
+        MeteredConnManager( HttpParams params, SchemeRegistry schemeRegistry, BuzzConnectionPoolStats stats )
+        {
+            super( params, schemeRegistry );
+            this.stats = stats;
+        }
+
+        public ClientConnectionRequest requestConnection( HttpRoute route, Object state )
+        {
+            final ClientConnectionRequest request = super.requestConnection( route, state );
+            return new ClientConnectionRequest()
+            {
+                public ManagedClientConnection getConnection( long timeout, TimeUnit unit )
+                    throws InterruptedException, ConnectionPoolTimeoutException
+                {
+                    long start = System.nanoTime();
+                    ManagedClientConnection connection;
+                    try
+                    {
+                        connection = request.getConnection( timeout, unit );
+                    }
+                    catch ( ConnectionPoolTimeoutException e )
+                    {
+                        stats.recordTimeout( System.nanoTime() - start );
+                        throw e;
+                    }
+                    stats.recordLease( connection.isOpen(), System.nanoTime() - start );
+                    return connection;
+                }
+
+                public void abortRequest()
+                {
+                    request.abortRequest();
+                }
+            };
+        }
+    }
+}
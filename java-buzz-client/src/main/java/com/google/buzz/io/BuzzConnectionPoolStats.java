@@ -0,0 +1,120 @@
+package com.google.buzz.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a <b>BuzzConnectionPool</b>. <br/>
+ * A hit is a request served by an already open ( kept alive ) connection, a miss is a request that
+ * had to open a new connection. The wait time is the time spent waiting for a connection to be
+ * leased from the pool.
+ */
+public class BuzzConnectionPoolStats
+{
+    /**
+     * Requests served by a reused connection
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Requests that needed a new connection
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Requests that timed out waiting for a connection
+     */
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /**
+     * Total time spent waiting for connections, in nanoseconds
+     */
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    /**
+     * Record a lease of a connection.
+     *
+     * @param reused true if the connection was already open
+     * @param waitedNanos time spent waiting for the connection
+     */
+    void recordLease( boolean reused, long waitedNanos )
+    {
+        if ( reused )
+        {
+            hits.incrementAndGet();
+        }
+        else
+        {
+            misses.incrementAndGet();
+        }
+        waitNanos.addAndGet( waitedNanos );
+    }
+
+    /**
+     * Record a request that could not get a connection in time.
+     *
+     * @param waitedNanos time spent waiting for the connection
+     */
+    void recordTimeout( long waitedNanos )
+    {
+        timeouts.incrementAndGet();
+        waitNanos.addAndGet( waitedNanos );
+    }
+
+    /**
+     * @return the number of requests served by a reused connection
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of requests that opened a new connection
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of requests that timed out waiting for a connection
+     */
+    public long getTimeouts()
+    {
+        return timeouts.get();
+    }
+
+    /**
+     * @return the total time spent waiting for connections, in milliseconds
+     */
+    public long getWaitTimeMillis()
+    {
+        return waitNanos.get() / 1000000L;
+    }
+
+    /**
+     * @return the average time spent waiting for a connection, in milliseconds
+     */
+    public double getAverageWaitTimeMillis()
+    {
+        long leases = hits.get() + misses.get() + timeouts.get();
+        return leases == 0 ? 0 : waitNanos.get() / 1000000.0 / leases;
+    }
+
+    /**
+     * Reset all the counters.
+     */
+    public void reset()
+    {
+        hits.set( 0 );
+        misses.set( 0 );
+        timeouts.set( 0 );
+        waitNanos.set( 0 );
+    }
+
+    public String toString()
+    {
+        return "hits=" + getHits() + ", misses=" + getMisses() + ", timeouts=" + getTimeouts() + ", waitTimeMillis="
+            + getWaitTimeMillis();
+    }
+}
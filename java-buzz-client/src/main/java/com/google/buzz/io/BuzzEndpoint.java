@@ -0,0 +1,65 @@
+package com.google.buzz.io;
+
+/**
+ * Families of endpoints of the Buzz API, sharing quotas and failure modes.
+ */
+public enum BuzzEndpoint
+{
+    /**
+     * Activities, their comments and likes
+     */
+    ACTIVITIES,
+
+    /**
+     * Profiles, followers and groups
+     */
+    PEOPLE,
+
+    /**
+     * Search of activities and people
+     */
+    SEARCH,
+
+    /**
+     * Any other url, such as the OAuth token requests
+     */
+    OTHER;
+
+    /**
+     * Path of the activities endpoints
+     */
+    private static final String ACTIVITIES_PATH = "/buzz/v1/activities/";
+
+    /**
+     * Path of the people endpoints
+     */
+    private static final String PEOPLE_PATH = "/buzz/v1/people/";
+
+    /**
+     * @param url of a request
+     * @return the family of the endpoint of the url
+     */
+    public static BuzzEndpoint of( String url )
+    {
+        int activities = url.indexOf( ACTIVITIES_PATH );
+        if ( activities >= 0 )
+        {
+            return url.startsWith( "search", activities + ACTIVITIES_PATH.length() ) ? SEARCH : ACTIVITIES;
+        }
+        int people = url.indexOf( PEOPLE_PATH );
+        if ( people >= 0 )
+        {
+            return url.startsWith( "search", people + PEOPLE_PATH.length() ) ? SEARCH : PEOPLE;
+        }
+        return OTHER;
+    }
+
+    /**
+     * @param request a request
+     * @return the family of the endpoint of the request
+     */
+    public static BuzzEndpoint of( BuzzRequest request )
+    {
+        return of( request.getUrl() );
+    }
+}
@@ -1,33 +1,35 @@
 package com.google.buzz.io;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
-import javax.net.ssl.HttpsURLConnection;
-
+import com.google.buzz.exception.BuzzHttpException;
 import com.google.buzz.exception.BuzzIOException;
 
 public class BuzzIO
 {
     /**
-     * The buffer size to be use when reading from the response
+     * Content type header name
      */
-    private static final int BUFFER_SIZE = 4096;
+    private static final String HEADER_CONTENT_TYPE = "Content-Type";
 
     /**
-     * Content type header name
+     * Accept encoding header name
      */
-    private static final String HEADER_CONTENT_TYPE = "Content-Type";
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
 
     /**
-     * Content length header name
+     * Content encodings the responses are decoded from
      */
-    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
 
     /**
      * Http method constant for PUT
@@ -50,38 +52,113 @@ public class BuzzIO
     public static final String HTTP_METHOD_GET = "GET";
 
     /**
-     * Create the request object.
+     * The connection pool shared by all the requests
+     */
+    private static BuzzConnectionPool connectionPool;
+
+    /**
+     * The transport used when none is given
+     */
+    private static BuzzTransport transport;
+
+    /**
+     * Counters of the response bodies read by all the transports
+     */
+    private static final BuzzTransferStats transferStats = new BuzzTransferStats();
+
+    /**
+     * @return the default transport, an <b>HttpClientTransport</b> over the shared connection pool
+     *         unless changed.
+     */
+    public static synchronized BuzzTransport getTransport()
+    {
+        if ( transport == null )
+        {
+            transport = new HttpClientTransport();
+        }
+        return transport;
+    }
+
+    /**
+     * Replace the default transport.
+     * 
+     * @param newTransport the transport to use, or null to restore the default one
+     */
+    public static synchronized void setTransport( BuzzTransport newTransport )
+    {
+        transport = newTransport;
+    }
+
+    /**
+     * @return the connection pool used to execute requests, created on first use.
+     */
+    public static synchronized BuzzConnectionPool getConnectionPool()
+    {
+        if ( connectionPool == null )
+        {
+            connectionPool = new BuzzConnectionPool();
+        }
+        return connectionPool;
+    }
+
+    /**
+     * Replace the connection pool used to execute requests. <br/>
+     * The previous pool, if any, is shut down.
+     * 
+     * @param pool the new connection pool
+     */
+    public static synchronized void setConnectionPool( BuzzConnectionPool pool )
+    {
+        if ( connectionPool != null && connectionPool != pool )
+        {
+            connectionPool.shutdown();
+        }
+        connectionPool = pool;
+    }
+
+    /**
+     * @return the counters of the compressed and uncompressed bytes of the response bodies
+     */
+    public static BuzzTransferStats getTransferStats()
+    {
+        return transferStats;
+    }
+
+    /**
+     * Create the request object. <br/>
+     * Unless the headers say otherwise, the request accepts gzip and deflate encoded responses; they
+     * are decoded as the body is read.
      * 
      * @param feedUrl of the url to be requested
      * @param httpMethod to use for the request
      * @param headers for the request
-     * @return the HttpsUrlConnection object
-     * @throws BuzzIOException if any IO error occurs ( networking ).
+     * @return the request object
+     * @throws BuzzIOException if the url is malformed.
      */
-    public static HttpsURLConnection createRequest( String feedUrl, String httpMethod, Map<String, String> headers )
+    public static BuzzRequest createRequest( String feedUrl, String httpMethod, Map<String, String> headers )
         throws BuzzIOException
     {
-        HttpsURLConnection con;
         try
         {
-            URL url = new URL( feedUrl );
-
-            con = (HttpsURLConnection) url.openConnection();
-            con.setRequestMethod( httpMethod );
-
-            if ( headers != null && !headers.isEmpty() )
+            new URL( feedUrl );
+        }
+        catch ( MalformedURLException e )
+        {
+            throw new BuzzIOException( e );
+        }
+        BuzzRequest request = new BuzzRequest( feedUrl, httpMethod );
+        if ( headers != null && !headers.isEmpty() )
+        {
+            for ( String key : headers.keySet() )
             {
-                for ( String key : headers.keySet() )
-                {
-                    con.setRequestProperty( key, headers.get( key ) );
-                }
+                request.setHeader( key, headers.get( key ) );
             }
         }
-        catch ( IOException e )
+        if ( request.getHeader( HEADER_ACCEPT_ENCODING ) == null )
         {
-            throw new BuzzIOException( e );
+            request.setHeader( HEADER_ACCEPT_ENCODING, ACCEPT_ENCODING );
         }
-        return con;
+        return request;
     }
 
     /**
@@ -90,10 +167,10 @@ public class BuzzIO
      * 
      * @param feedUrl of the url to be requested
      * @param httpMethod to be used.
-     * @return the HttpsUrlConnection object
-     * @throws BuzzIOException if any IO error occurs ( networking ).
+     * @return the request object
+     * @throws BuzzIOException if the url is malformed.
      */
-    public static HttpsURLConnection createRequest( String feedUrl, String httpMethod )
+    public static BuzzRequest createRequest( String feedUrl, String httpMethod )
         throws BuzzIOException
     {
         return createRequest( feedUrl, httpMethod, null );
@@ -104,10 +181,10 @@ public class BuzzIO
      * Used to retrieve all the feeds. ( @following, @followers, @public, @consumption, @self ).
      * 
      * @param feedUrl of the url to be requested
-     * @return the HttpsUrlConnection object
-     * @throws BuzzIOException if any IO error occurs ( networking ).
+     * @return the request object
+     * @throws BuzzIOException if the url is malformed.
      */
-    public static HttpsURLConnection createRequest( String feedUrl )
+    public static BuzzRequest createRequest( String feedUrl )
         throws BuzzIOException
     {
         return createRequest( feedUrl, HTTP_METHOD_GET, null );
@@ -119,68 +196,185 @@ public class BuzzIO
      * @param request to use
      * @param body to be added to the request
      * @return the request with the body added
-     * @throws BuzzIOException if any IO error occurs ( networking ).
      */
-    public static HttpsURLConnection addBody( HttpsURLConnection request, String body )
-        throws BuzzIOException
+    public static BuzzRequest addBody( BuzzRequest request, String body )
     {
-        try
+        if ( body != null && !body.equals( "" ) )
         {
-            if ( body != null && !body.equals( "" ) )
+            if ( request.getHeader( HEADER_CONTENT_TYPE ) == null )
             {
-                request.setRequestProperty( HEADER_CONTENT_LENGTH, String.valueOf( body.length() ) );
-                if (request.getRequestProperty(HEADER_CONTENT_TYPE)==null) {
-                  request.setRequestProperty( HEADER_CONTENT_TYPE, "application/atom+xml" );
-                }
-                request.setDoOutput( true );
-                OutputStream outStream = request.getOutputStream();
-                outStream.write( body.getBytes() );
-                outStream.flush();
-                outStream.close();
-                request.disconnect();
+                request.setHeader( HEADER_CONTENT_TYPE, "application/atom+xml" );
             }
-        }
-        catch ( IOException e )
-        {
-            throw new BuzzIOException( e );
+            request.setBody( body );
         }
         return request;
     }
 
     /**
-     * Sends the request over the wire and read the response.
+     * Sends the request with the default transport and read the response.
      * 
      * @param request to be send
      * @return the response body
-     * @throws BuzzIOException if any IO error occurs ( networking ).
+     * @throws BuzzIOException if any IO error occurs ( networking ), or the server answers with an
+     *             error status; in the later case the message is the error body.
      */
-    public static String send( HttpsURLConnection request )
+    public static String send( BuzzRequest request )
         throws BuzzIOException
     {
-	//StringBuilder response = null;
-        String response = null;
+        return send( request, getTransport() );
+    }
+
+    /**
+     * Sends the request with the given transport and read the response. <br/>
+     * The request is recorded as a <b>BuzzRequestEvent</b> when flight recording is on.
+     * 
+     * @param request to be send
+     * @param transport to execute the request
+     * @return the response body
+     * @throws BuzzIOException if any IO error occurs ( networking ), or the server answers with an
+     *             error status; in the later case the message is the error body.
+     */
+    public static String send( BuzzRequest request, BuzzTransport transport )
+        throws BuzzIOException
+    {
+        BuzzRequestEvent event = new BuzzRequestEvent();
+        event.begin();
+        BuzzResponse response = null;
         try
         {
-            request.connect();
-            InputStream is = request.getInputStream();
-            response = inputStreamToString(is,"UTF-8");
+            response = transport.execute( request );
+            String body = checkResponse( request, response );
+            event.record( request, response, body, null );
+            return body;
         }
-        catch ( Exception e )
+        catch ( BuzzIOException e )
         {
-            InputStream es = request.getErrorStream();
-            if (es==null) {
-               throw new BuzzIOException( e );
-            } else {
-               try {
-                 response = inputStreamToString(es,"UTF-8");
-               }catch(IOException ex) {
-                  // suppress second-level exception.
-                  ;
-               }
-               throw new BuzzIOException(response,e);
+            event.record( request, response, null, e );
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the request with the given transport and hand over the response, for the body to be
+     * parsed as it streams in. The caller closes the response.
+     * 
+     * @param request to be send
+     * @param transport to execute the request
+     * @return the successful response
+     * @throws BuzzIOException if any IO error occurs ( networking ), or the server answers with an
+     *             error status; in the later case the message is the error body.
+     */
+    public static BuzzResponse open( BuzzRequest request, BuzzTransport transport )
+        throws BuzzIOException
+    {
+        BuzzRequestEvent event = new BuzzRequestEvent();
+        event.begin();
+        BuzzResponse response = null;
+        try
+        {
+            response = transport.execute( request );
+            checkStatus( request, response );
+            event.record( request, response, null, null );
+            return response;
+        }
+        catch ( BuzzIOException e )
+        {
+            event.record( request, response, null, e );
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the request with an asynchronous transport and hand over the response, for the body to
+     * be parsed as it streams in, like <b>open</b>. The status is checked on the executor, as an
+     * error body is read to build the exception. The caller closes the response.
+     * 
+     * @param request to be send
+     * @param transport to execute the request
+     * @param executor to check the status of the response on
+     * @return the future successful response, failed with a BuzzIOException if any IO error occurs
+     *         ( networking ), or the server answers with an error status
+     */
+    public static CompletableFuture<BuzzResponse> openAsync( final BuzzRequest request, AsyncBuzzTransport transport,
+                                                             final Executor executor )
+    {
+        final BuzzRequestEvent event = new BuzzRequestEvent();
+        event.begin();
+        final CompletableFuture<BuzzResponse> opened = new CompletableFuture<BuzzResponse>();
+        transport.executeAsync( request ).whenComplete( ( response, error ) -> {
+            if ( error != null )
+            {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause()
+                                : error;
+                event.record( request, null, null, cause );
+                opened.completeExceptionally( cause );
+                return;
+            }
+            try
+            {
+                executor.execute( () -> {
+                    try
+                    {
+                        checkStatus( request, response );
+                        event.record( request, response, null, null );
+                        opened.complete( response );
+                    }
+                    catch ( BuzzIOException e )
+                    {
+                        response.close();
+                        event.record( request, response, null, e );
+                        opened.completeExceptionally( e );
+                    }
+                } );
+            }
+            catch ( RejectedExecutionException e )
+            {
+                response.close();
+                event.record( request, response, null, e );
+                opened.completeExceptionally( new BuzzIOException( e ) );
+            }
+        } );
+        return opened;
+    }
+
+    /**
+     * Check the status of a response.
+     * 
+     * @param request that was executed
+     * @param response to check
+     * @return the response body
+     * @throws BuzzIOException if the response has an error status; the message is the error body.
+     */
+    public static String checkResponse( BuzzRequest request, BuzzResponse response )
+        throws BuzzIOException
+    {
+        checkStatus( request, response );
+        return response.getBody();
+    }
+
+    /**
+     * Check the status of a response, without reading a successful body.
+     * 
+     * @param request that was executed
+     * @param response to check
+     * @throws BuzzHttpException if the response has an error status; the message is the error body.
+     * @throws BuzzIOException if the error body can not be read
+     */
+    public static void checkStatus( BuzzRequest request, BuzzResponse response )
+        throws BuzzIOException
+    {
+        if ( !response.isSuccessful() )
+        {
+            IOException e =
+                new IOException( "Server returned HTTP response code: " + response.getStatus() + " for URL: "
+                    + request.getUrl() );
+            String body = response.getBody();
+            if ( body.equals( "" ) )
+            {
+                throw new BuzzHttpException( response.getStatus(), response.getRetryAfter(), e );
             }
+            throw new BuzzHttpException( response.getStatus(), body, response.getRetryAfter(), e );
         }
-        return response.toString();
     }
 
     public static String inputStreamToString(InputStream is, String encoding) 
@@ -192,11 +386,11 @@ public class BuzzIO
       else
          in = new InputStreamReader(is, encoding);
 
-      BufferedReader br = new BufferedReader(in);
-      String line = "";
+      char[] buffer = new char[4096];
       StringBuilder sb = new StringBuilder();
-      while ((line = br.readLine()) != null)
-                        sb.append(line);
+      int n;
+      while ((n = in.read(buffer)) != -1)
+                        sb.append(buffer, 0, n);
 
       return sb.toString();
    }
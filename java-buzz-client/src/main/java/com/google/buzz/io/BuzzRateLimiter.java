@@ -0,0 +1,338 @@
+package com.google.buzz.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Token bucket limiting the rate of requests. <br/>
+ * The bucket holds up to <b>burst</b> permits and refills at <b>permitsPerSecond</b>. A request
+ * finding no permit does not fail: it waits in a queue, served by priority and then in arrival
+ * order, so a burst is spread over time and uses the whole quota. The limiter can also be paused,
+ * when the server answers that the quota is exceeded. <br/>
+ * Waiting does not hold a thread: <b>acquireAsync</b> completes when the permit is granted, from a
+ * shared daemon thread. The limiter is safe to use from several threads.
+ */
+public class BuzzRateLimiter
+{
+    /**
+     * Thread granting the permits of the waiting requests of all the limiters
+     */
+    private static final ScheduledExecutorService DISPATCHER =
+        Executors.newSingleThreadScheduledExecutor( new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "buzz-rate-limiter-" + count.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+
+    /**
+     * Permits added per nanosecond
+     */
+    private final double permitsPerNano;
+
+    /**
+     * Maximum number of permits in the bucket
+     */
+    private final int burst;
+
+    /**
+     * Permits in the bucket
+     */
+    private double permits;
+
+    /**
+     * Time of the last refill, in nanoseconds
+     */
+    private long refilled;
+
+    /**
+     * Time the limiter is paused until, in nanoseconds
+     */
+    private long pausedUntil;
+
+    /**
+     * Requests waiting for a permit
+     */
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<Waiter>();
+
+    /**
+     * Arrival order of the waiting requests
+     */
+    private long arrivals;
+
+    /**
+     * True if a dispatch of the waiting requests is scheduled
+     */
+    private boolean scheduled;
+
+    /**
+     * Permits granted
+     */
+    private long granted;
+
+    /**
+     * Permits granted after waiting
+     */
+    private long delayed;
+
+    /**
+     * Creates a limiter with a full bucket.
+     *
+     * @param permitsPerSecond sustained rate of requests
+     * @param burst maximum number of requests sent at once
+     */
+    public BuzzRateLimiter( double permitsPerSecond, int burst )
+    {
+        if ( permitsPerSecond <= 0 || burst <= 0 )
+        {
+            throw new IllegalArgumentException( "permitsPerSecond and burst must be positive" );
+        }
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos( 1 );
+        this.burst = burst;
+        this.permits = burst;
+        this.refilled = System.nanoTime();
+        this.pausedUntil = refilled;
+    }
+
+    /**
+     * Wait for a permit.
+     *
+     * @param priority of the request
+     * @throws InterruptedException if the thread is interrupted while waiting; no permit is taken
+     *             unless it was already granted
+     */
+    public void acquire( BuzzRequest.Priority priority )
+        throws InterruptedException
+    {
+        CompletableFuture<Void> permit = acquireAsync( priority );
+        try
+        {
+            permit.get();
+        }
+        catch ( InterruptedException e )
+        {
+            permit.cancel( false );
+            throw e;
+        }
+        catch ( ExecutionException e )
+        {
+            // permits are never completed exceptionally
+            throw new IllegalStateException( e.getCause() );
+        }
+    }
+
+    /**
+     * Ask for a permit without waiting.
+     *
+     * @param priority of the request
+     * @return a future completed once the permit is granted; cancelling it gives up the place in
+     *         the queue
+     */
+    public CompletableFuture<Void> acquireAsync( BuzzRequest.Priority priority )
+    {
+        synchronized ( this )
+        {
+            long now = System.nanoTime();
+            refill( now );
+            if ( waiters.isEmpty() && now - pausedUntil >= 0 && permits >= 1 )
+            {
+                permits -= 1;
+                granted++;
+                return CompletableFuture.completedFuture( null );
+            }
+            Waiter waiter = new Waiter( priority, arrivals++ );
+            waiters.add( waiter );
+            schedule( now );
+            return waiter.permit;
+        }
+    }
+
+    /**
+     * Take a permit if one is available right away.
+     *
+     * @return true if a permit was taken
+     */
+    public synchronized boolean tryAcquire()
+    {
+        long now = System.nanoTime();
+        refill( now );
+        if ( waiters.isEmpty() && now - pausedUntil >= 0 && permits >= 1 )
+        {
+            permits -= 1;
+            granted++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stop granting permits for a while and empty the bucket, for example when the server answers
+     * that the quota is exceeded.
+     *
+     * @param delay to pause for, in milliseconds
+     */
+    public synchronized void pause( long delay )
+    {
+        long now = System.nanoTime();
+        refill( now );
+        long until = now + TimeUnit.MILLISECONDS.toNanos( delay );
+        if ( until - pausedUntil > 0 )
+        {
+            pausedUntil = until;
+        }
+        // a dispatch already scheduled finds the limiter paused and schedules the next one
+        permits = 0;
+    }
+
+    /**
+     * @return the sustained rate of requests, per second
+     */
+    public double getPermitsPerSecond()
+    {
+        return permitsPerNano * TimeUnit.SECONDS.toNanos( 1 );
+    }
+
+    /**
+     * @return the maximum number of requests sent at once
+     */
+    public int getBurst()
+    {
+        return burst;
+    }
+
+    /**
+     * @return the number of requests waiting for a permit
+     */
+    public synchronized int getQueueLength()
+    {
+        return waiters.size();
+    }
+
+    /**
+     * @return the number of permits granted
+     */
+    public synchronized long getGranted()
+    {
+        return granted;
+    }
+
+    /**
+     * @return the number of permits granted after waiting in the queue
+     */
+    public synchronized long getDelayed()
+    {
+        return delayed;
+    }
+
+    public synchronized String toString()
+    {
+        return "permitsPerSecond=" + getPermitsPerSecond() + ", burst=" + burst + ", queued=" + waiters.size()
+            + ", granted=" + granted + ", delayed=" + delayed;
+    }
+
+    /**
+     * Add the permits accrued since the last refill.
+     */
+    private void refill( long now )
+    {
+        permits = Math.min( burst, permits + ( now - refilled ) * permitsPerNano );
+        refilled = now;
+    }
+
+    /**
+     * Schedule the dispatch of the waiting requests, when the next permit is available.
+     */
+    private void schedule( long now )
+    {
+        if ( scheduled )
+        {
+            return;
+        }
+        long delay = Math.max( pausedUntil - now, (long) Math.ceil( ( 1 - permits ) / permitsPerNano ) );
+        scheduled = true;
+        DISPATCHER.schedule( new Runnable()
+        {
+            public void run()
+            {
+                dispatch();
+            }
+        }, Math.max( delay, 0L ), TimeUnit.NANOSECONDS );
+    }
+
+    /**
+     * Grant the available permits to the waiting requests, by priority.
+     */
+    private void dispatch()
+    {
+        List<Waiter> ready = new ArrayList<Waiter>();
+        synchronized ( this )
+        {
+            scheduled = false;
+            long now = System.nanoTime();
+            refill( now );
+            while ( !waiters.isEmpty() && now - pausedUntil >= 0 )
+            {
+                if ( waiters.peek().permit.isDone() )
+                {
+                    // cancelled while waiting
+                    waiters.poll();
+                    continue;
+                }
+                if ( permits < 1 )
+                {
+                    break;
+                }
+                permits -= 1;
+                granted++;
+                delayed++;
+                ready.add( waiters.poll() );
+            }
+            if ( !waiters.isEmpty() )
+            {
+                schedule( now );
+            }
+        }
+        for ( Waiter waiter : ready )
+        {
+            waiter.permit.complete( null );
+        }
+    }
+
+    /**
+     * A request waiting for a permit.
+     */
+    private static final class Waiter
+        implements Comparable<Waiter>
+    {
+        private final BuzzRequest.Priority priority;
+
+        private final long arrival;
+
+        private final CompletableFuture<Void> permit = new CompletableFuture<Void>();
+
+        Waiter( BuzzRequest.Priority priority, long arrival )
+        {
+            this.priority = priority == null ? BuzzRequest.Priority.NORMAL : priority;
+            this.arrival = arrival;
+        }
+
+        public int compareTo( Waiter other )
+        {
+            int order = priority.compareTo( other.priority );
+            return order != 0 ? order : Long.compare( arrival, other.arrival );
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.google.buzz.io;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.buzz.exception.BuzzAuthenticationException;
+import com.google.buzz.exception.BuzzIOException;
+
+/**
+ * Transport independent description of a request to the Buzz API. <br/>
+ * Holds the url, http method, headers and body; the request is signed by a <b>BuzzOAuth</b>
+ * implementation and then executed by <b>BuzzIO.send</b>. A request signed by a <b>Buzz</b> client
+ * keeps its signer, so that a transport sending it once more, to retry or hedge it, sends a copy
+ * signed again with <b>resign</b>: an OAuth 1 nonce is not accepted twice, and an OAuth 2 token may
+ * have expired meanwhile.
+ */
+public class BuzzRequest
+{
+    /**
+     * Order in which requests waiting for the same rate limit are sent
+     */
+    public enum Priority
+    {
+        HIGH, NORMAL, LOW
+    }
+
+    /**
+     * Signs a request for the client that created it.
+     */
+    public interface Signer
+    {
+        /**
+         * @param request to be signed
+         * @throws BuzzIOException if the request can not be sent for now
+         * @throws BuzzAuthenticationException if an OAuth problem occurs
+         */
+        void sign( BuzzRequest request )
+            throws BuzzIOException, BuzzAuthenticationException;
+    }
+
+    /**
+     * The header carrying the signature of the request
+     */
+    private static final String HEADER_AUTHORIZATION = "Authorization";
+
+    /**
+     * The requested url
+     */
+    private String url;
+
+    /**
+     * The http method
+     */
+    private String method;
+
+    /**
+     * The request headers, in insertion order
+     */
+    private Map<String, String> headers = new LinkedHashMap<String, String>();
+
+    /**
+     * The request body, or null if the request has no body
+     */
+    private String body;
+
+    /**
+     * The priority of the request when it has to wait for a rate limit
+     */
+    private Priority priority = Priority.NORMAL;
+
+    /**
+     * The account the request is sent for, or null
+     */
+    private String accountId;
+
+    /**
+     * The Buzz API operation of the request, or null
+     */
+    private String operation;
+
+    /**
+     * The time spent signing the request, in nanoseconds
+     */
+    private long signingNanos;
+
+    /**
+     * The signer of the request, or null if it is signed by the caller or not at all
+     */
+    private Signer signer;
+
+    /**
+     * Creates a new request.
+     *
+     * @param url to be requested
+     * @param method http method to use
+     */
+    public BuzzRequest( String url, String method )
+    {
+        this.url = url;
+        this.method = method;
+    }
+
+    /**
+     * @return the url
+     */
+    public String getUrl()
+    {
+        return url;
+    }
+
+    /**
+     * @param url the url to set
+     */
+    public void setUrl( String url )
+    {
+        this.url = url;
+    }
+
+    /**
+     * @return the http method
+     */
+    public String getMethod()
+    {
+        return method;
+    }
+
+    /**
+     * @return the headers
+     */
+    public Map<String, String> getHeaders()
+    {
+        return headers;
+    }
+
+    /**
+     * Set a header, replacing any previous value with the same name ( case insensitive ).
+     *
+     * @param name of the header
+     * @param value of the header
+     */
+    public void setHeader( String name, String value )
+    {
+        String existing = findHeaderName( name );
+        if ( existing != null )
+        {
+            headers.remove( existing );
+        }
+        headers.put( name, value );
+    }
+
+    /**
+     * @param name of the header ( case insensitive )
+     * @return the header value or null if not set
+     */
+    public String getHeader( String name )
+    {
+        String existing = findHeaderName( name );
+        return existing == null ? null : headers.get( existing );
+    }
+
+    /**
+     * @return the body
+     */
+    public String getBody()
+    {
+        return body;
+    }
+
+    /**
+     * @param body the body to set
+     */
+    public void setBody( String body )
+    {
+        this.body = body;
+    }
+
+    /**
+     * @return the priority of the request when it has to wait for a rate limit
+     */
+    public Priority getPriority()
+    {
+        return priority;
+    }
+
+    /**
+     * @param priority the priority to set, NORMAL if null
+     */
+    public void setPriority( Priority priority )
+    {
+        this.priority = priority == null ? Priority.NORMAL : priority;
+    }
+
+    /**
+     * @return the account the request is sent for, or null if unknown
+     */
+    public String getAccountId()
+    {
+        return accountId;
+    }
+
+    /**
+     * @param accountId the account the request is sent for
+     */
+    public void setAccountId( String accountId )
+    {
+        this.accountId = accountId;
+    }
+
+    /**
+     * @return the Buzz API operation of the request, such as <b>getPosts</b>, or null if unnamed
+     */
+    public String getOperation()
+    {
+        return operation;
+    }
+
+    /**
+     * @param operation the Buzz API operation of the request, to group its metrics
+     */
+    public void setOperation( String operation )
+    {
+        this.operation = operation;
+    }
+
+    /**
+     * @return the time spent signing the request, in nanoseconds
+     */
+    public long getSigningNanos()
+    {
+        return signingNanos;
+    }
+
+    /**
+     * @param signingNanos the time spent signing the request, in nanoseconds
+     */
+    public void setSigningNanos( long signingNanos )
+    {
+        this.signingNanos = signingNanos;
+    }
+
+    /**
+     * @return the signer of the request, or null if it is signed by the caller or not at all
+     */
+    public Signer getSigner()
+    {
+        return signer;
+    }
+
+    /**
+     * @param signer that signed the request, to sign its copies again
+     */
+    public void setSigner( Signer signer )
+    {
+        this.signer = signer;
+    }
+
+    /**
+     * @return a copy of this request, with its headers, tags and signer
+     */
+    public BuzzRequest copy()
+    {
+        BuzzRequest copy = new BuzzRequest( url, method );
+        copy.headers.putAll( headers );
+        copy.body = body;
+        copy.priority = priority;
+        copy.accountId = accountId;
+        copy.operation = operation;
+        copy.signingNanos = signingNanos;
+        copy.signer = signer;
+        return copy;
+    }
+
+    /**
+     * Sign a copy of this request again, to send it once more.
+     *
+     * @return the copy signed again, or a plain copy if the request has no signer
+     * @throws BuzzIOException if the copy can not be signed
+     */
+    public BuzzRequest resign()
+        throws BuzzIOException
+    {
+        BuzzRequest copy = copy();
+        if ( signer == null )
+        {
+            return copy;
+        }
+        String existing = copy.findHeaderName( HEADER_AUTHORIZATION );
+        if ( existing != null )
+        {
+            // OAuth 1 signing would take the previous nonce and timestamp back from the header
+            copy.headers.remove( existing );
+        }
+        try
+        {
+            signer.sign( copy );
+        }
+        catch ( BuzzAuthenticationException e )
+        {
+            throw new BuzzIOException( "Can not sign " + url + " again", e );
+        }
+        return copy;
+    }
+
+    /**
+     * @param name of the header
+     * @return the name of the header as stored in the map, or null
+     */
+    private String findHeaderName( String name )
+    {
+        for ( String key : headers.keySet() )
+        {
+            if ( key.equalsIgnoreCase( name ) )
+            {
+                return key;
+            }
+        }
+        return null;
+    }
+}
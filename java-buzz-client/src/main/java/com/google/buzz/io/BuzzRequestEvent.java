@@ -0,0 +1,86 @@
+package com.google.buzz.io;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import com.google.buzz.util.Utf8;
+
+/**
+ * Flight recorder event of a request sent by <b>BuzzIO</b>, lasting until the status of its
+ * response is checked. The body of a streamed response is read afterwards, during its
+ * <b>BuzzParseEvent</b>.
+ */
+@Name( "com.google.buzz.Request" )
+@Label( "Buzz Request" )
+@Category( "Buzz" )
+@Description( "Request sent by BuzzIO, until the status of its response is checked" )
+@StackTrace( false )
+public class BuzzRequestEvent
+    extends Event
+{
+    @Label( "Endpoint" )
+    String endpoint;
+
+    @Label( "Operation" )
+    String operation;
+
+    @Label( "Method" )
+    String method;
+
+    @Label( "Status" )
+    @Description( "Http status of the response, 0 if there is none" )
+    int status;
+
+    @Label( "Bytes Out" )
+    @DataAmount
+    long bytesOut;
+
+    @Label( "Bytes In" )
+    @Description( "Bytes of the response body, or its Content-Length if streamed, -1 if unknown" )
+    @DataAmount
+    long bytesIn;
+
+    @Label( "Error" )
+    String error;
+
+    /**
+     * Commit the event, if recorded.
+     *
+     * @param request sent
+     * @param response received, or null
+     * @param body of the response if read, or null
+     * @param failure of the request, or null
+     */
+    void record( BuzzRequest request, BuzzResponse response, String body, Throwable failure )
+    {
+        if ( shouldCommit() )
+        {
+            endpoint = BuzzEndpoint.of( request ).name();
+            operation = request.getOperation();
+            method = request.getMethod();
+            status = response != null ? response.getStatus() : 0;
+            bytesOut = Utf8.length( request.getBody() );
+            bytesIn = body != null ? Utf8.length( body ) : contentLength( response );
+            error = failure != null ? failure.getClass().getSimpleName() : null;
+            commit();
+        }
+    }
+
+    private static long contentLength( BuzzResponse response )
+    {
+        String length = response != null ? response.getHeader( "Content-Length" ) : null;
+        try
+        {
+            return length != null ? Long.parseLong( length.trim() ) : -1;
+        }
+        catch ( NumberFormatException e )
+        {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.google.buzz.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.buzz.exception.BuzzIOException;
+
+/**
+ * Transport independent response to a <b>BuzzRequest</b>. <br/>
+ * The body is either held as a string or streamed from the connection; a streamed body is read
+ * once, either through <b>getContent</b> by a parser or into a string by <b>getBody</b>, and the
+ * response has to be closed to release the connection. <br/>
+ * A streamed body is decoded as it is read when its <b>Content-Encoding</b> is gzip or deflate, and
+ * counted in the transfer stats of <b>BuzzIO</b>.
+ */
+public class BuzzResponse
+    implements Closeable
+{
+    /**
+     * Content encoding header name
+     */
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+
+    /**
+     * The http status code
+     */
+    private final int status;
+
+    /**
+     * The response headers
+     */
+    private final Map<String, String> headers;
+
+    /**
+     * The response body, null until a streamed body is read
+     */
+    private String body;
+
+    /**
+     * The streamed response body, null once closed or if the body is a string
+     */
+    private InputStream content;
+
+    /**
+     * True once the streamed body has been handed over
+     */
+    private boolean taken;
+
+    /**
+     * Action run once the streamed body is released, or null
+     */
+    private Runnable release;
+
+    /**
+     * Creates a response.
+     *
+     * @param status http status code
+     * @param headers response headers, may be null
+     * @param body response body, may be null
+     */
+    public BuzzResponse( int status, Map<String, String> headers, String body )
+    {
+        this.status = status;
+        this.headers = headers == null ? new LinkedHashMap<String, String>() : headers;
+        this.body = body == null ? "" : body;
+    }
+
+    /**
+     * Creates a response streaming its body.
+     *
+     * @param status http status code
+     * @param headers response headers, may be null
+     * @param content stream of the UTF-8 response body as received, before content decoding; may be
+     *            null
+     */
+    public BuzzResponse( int status, Map<String, String> headers, InputStream content )
+    {
+        this.status = status;
+        this.headers = headers == null ? new LinkedHashMap<String, String>() : headers;
+        this.content = content;
+        this.body = content == null ? "" : null;
+    }
+
+    /**
+     * Convenient constructor for a response without headers.
+     *
+     * @param status http status code
+     * @param body response body
+     */
+    public BuzzResponse( int status, String body )
+    {
+        this( status, null, body );
+    }
+
+    /**
+     * @return the http status code
+     */
+    public int getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * @return true if the status is not an error status ( 4xx or 5xx ).
+     */
+    public boolean isSuccessful()
+    {
+        return status < 400;
+    }
+
+    /**
+     * @return the response headers
+     */
+    public Map<String, String> getHeaders()
+    {
+        return headers;
+    }
+
+    /**
+     * @param name of the header ( case insensitive )
+     * @return the header value or null if not present
+     */
+    public String getHeader( String name )
+    {
+        for ( Map.Entry<String, String> header : headers.entrySet() )
+        {
+            if ( header.getKey().equalsIgnoreCase( name ) )
+            {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the delay of the <b>Retry-After</b> header in milliseconds, or -1 if the response has
+     *         none or it is an http date
+     */
+    public long getRetryAfter()
+    {
+        String header = getHeader( "Retry-After" );
+        if ( header != null )
+        {
+            try
+            {
+                return Math.max( 0L, Long.parseLong( header.trim() ) * 1000L );
+            }
+            catch ( NumberFormatException e )
+            {
+                // an http date, rarely sent by the Buzz API
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the body is streamed and not read yet
+     */
+    public synchronized boolean isStreaming()
+    {
+        return content != null && !taken;
+    }
+
+    /**
+     * Read the whole body, if streamed, and release the connection.
+     *
+     * @return the response body, never null
+     * @throws BuzzIOException if the streamed body can not be read
+     */
+    public synchronized String getBody()
+        throws BuzzIOException
+    {
+        if ( body == null )
+        {
+            InputStream stream = getContent();
+            try
+            {
+                body = new String( stream.readAllBytes(), StandardCharsets.UTF_8 );
+            }
+            catch ( IOException e )
+            {
+                throw new BuzzIOException( e );
+            }
+            finally
+            {
+                close();
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Hand over the body as a stream, for parsing without buffering it. <br/>
+     * A streamed body can be taken only once, and the response has to be closed when done.
+     *
+     * @return the UTF-8 encoded response body, decoded from its content encoding
+     */
+    public synchronized InputStream getContent()
+    {
+        if ( body != null )
+        {
+            return new ByteArrayInputStream( body.getBytes( StandardCharsets.UTF_8 ) );
+        }
+        if ( taken )
+        {
+            throw new IllegalStateException( "The streamed body has already been taken" );
+        }
+        taken = true;
+        content = DecodingInputStream.decode( content, getHeader( HEADER_CONTENT_ENCODING ),
+                                              BuzzIO.getTransferStats() );
+        return content;
+    }
+
+    /**
+     * Run an action once the streamed body is released, for a transport to hold a resource until the
+     * body is read. The action runs at once if the body is not streamed or already released.
+     *
+     * @param action to run
+     */
+    void whenClosed( final Runnable action )
+    {
+        synchronized ( this )
+        {
+            if ( content != null )
+            {
+                final Runnable previous = release;
+                release = previous == null ? action : () -> {
+                    previous.run();
+                    action.run();
+                };
+                return;
+            }
+        }
+        action.run();
+    }
+
+    /**
+     * Release the connection of a streamed body.
+     */
+    public void close()
+    {
+        Runnable released;
+        synchronized ( this )
+        {
+            if ( content == null )
+            {
+                return;
+            }
+            try
+            {
+                content.close();
+            }
+            catch ( IOException e )
+            {
+                // nothing left to release.
+            }
+            content = null;
+            taken = true;
+            released = release;
+            release = null;
+        }
+        if ( released != null )
+        {
+            released.run();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.google.buzz.io;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * When and how long to wait before sending a failed request again. <br/>
+ * Only idempotent requests ( GET, PUT, DELETE ) are retried, after a network failure or a
+ * <b>429</b> or <b>5xx</b> answer. The delay doubles on every retry, from <b>baseDelay</b> up to
+ * <b>maxDelay</b>, with a random jitter so that clients failing together do not retry together; a
+ * longer <b>Retry-After</b> of the server wins. A request is not retried once the next attempt
+ * would end after <b>maxRetryTime</b> since the first one.
+ */
+public class BuzzRetryPolicy
+{
+    /**
+     * Default maximum number of attempts, including the first one
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 4;
+
+    /**
+     * Default delay before the first retry, in milliseconds
+     */
+    public static final long DEFAULT_BASE_DELAY = 200L;
+
+    /**
+     * Default maximum delay between two attempts, in milliseconds
+     */
+    public static final long DEFAULT_MAX_DELAY = 10L * 1000;
+
+    /**
+     * Default maximum time spent retrying a request, in milliseconds
+     */
+    public static final long DEFAULT_MAX_RETRY_TIME = 30L * 1000;
+
+    /**
+     * Http status of a response over the quota
+     */
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Lowest http status of the server errors
+     */
+    private static final int HTTP_SERVER_ERROR = 500;
+
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    private volatile long baseDelay = DEFAULT_BASE_DELAY;
+
+    private volatile long maxDelay = DEFAULT_MAX_DELAY;
+
+    private volatile long maxRetryTime = DEFAULT_MAX_RETRY_TIME;
+
+    /**
+     * @param request sent
+     * @return true if the request may be sent again without side effects
+     */
+    public boolean isIdempotent( BuzzRequest request )
+    {
+        String method = request.getMethod();
+        return BuzzIO.HTTP_METHOD_GET.equals( method ) || BuzzIO.HTTP_METHOD_PUT.equals( method )
+            || BuzzIO.HTTP_METHOD_DELETE.equals( method );
+    }
+
+    /**
+     * @param status of a response
+     * @return true if the same request may succeed later
+     */
+    public boolean isRetryable( int status )
+    {
+        return status == HTTP_TOO_MANY_REQUESTS || status >= HTTP_SERVER_ERROR;
+    }
+
+    /**
+     * @param retry number of the retry, from 1
+     * @return the delay before the retry, in milliseconds: half the exponential delay plus a random
+     *         part of the other half
+     */
+    public long backoff( int retry )
+    {
+        long cap = maxDelay;
+        long delay = baseDelay;
+        for ( int i = 1; i < retry && delay < cap; i++ )
+        {
+            delay *= 2;
+        }
+        delay = Math.min( delay, cap );
+        long half = delay / 2;
+        return half + ( delay - half > 0 ? ThreadLocalRandom.current().nextLong( delay - half + 1 ) : 0 );
+    }
+
+    /**
+     * @return the maximum number of attempts, including the first one
+     */
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+
+    /**
+     * @param maxAttempts the maximum number of attempts, including the first one; 1 disables the
+     *            retries
+     */
+    public void setMaxAttempts( int maxAttempts )
+    {
+        if ( maxAttempts < 1 )
+        {
+            throw new IllegalArgumentException( "maxAttempts must be positive" );
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @return the delay before the first retry, in milliseconds
+     */
+    public long getBaseDelay()
+    {
+        return baseDelay;
+    }
+
+    /**
+     * @param baseDelay the delay before the first retry, in milliseconds
+     */
+    public void setBaseDelay( long baseDelay )
+    {
+        this.baseDelay = Math.max( baseDelay, 0L );
+    }
+
+    /**
+     * @return the maximum delay between two attempts, in milliseconds
+     */
+    public long getMaxDelay()
+    {
+        return maxDelay;
+    }
+
+    /**
+     * @param maxDelay the maximum delay between two attempts, in milliseconds
+     */
+    public void setMaxDelay( long maxDelay )
+    {
+        this.maxDelay = Math.max( maxDelay, 0L );
+    }
+
+    /**
+     * @return the maximum time spent retrying a request, in milliseconds
+     */
+    public long getMaxRetryTime()
+    {
+        return maxRetryTime;
+    }
+
+    /**
+     * @param maxRetryTime the maximum time spent retrying a request, in milliseconds
+     */
+    public void setMaxRetryTime( long maxRetryTime )
+    {
+        this.maxRetryTime = Math.max( maxRetryTime, 0L );
+    }
+
+    public String toString()
+    {
+        return "maxAttempts=" + maxAttempts + ", baseDelay=" + baseDelay + ", maxDelay=" + maxDelay
+            + ", maxRetryTime=" + maxRetryTime;
+    }
+}
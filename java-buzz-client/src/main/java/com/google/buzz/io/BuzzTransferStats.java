@@ -0,0 +1,147 @@
+package com.google.buzz.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the response bodies read from the network. <br/>
+ * A compressed body is counted twice: its compressed bytes, as received, and its uncompressed
+ * bytes, as decoded for the parser. Bodies sent without content encoding are counted once, as
+ * identity bytes. Only the bytes actually read are counted.
+ */
+public class BuzzTransferStats
+{
+    /**
+     * Responses with a compressed body
+     */
+    private final AtomicLong compressedResponses = new AtomicLong();
+
+    /**
+     * Responses with an uncompressed body
+     */
+    private final AtomicLong identityResponses = new AtomicLong();
+
+    /**
+     * Bytes of the compressed bodies, as received
+     */
+    private final AtomicLong compressedBytes = new AtomicLong();
+
+    /**
+     * Bytes of the compressed bodies, once decoded
+     */
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+
+    /**
+     * Bytes of the uncompressed bodies
+     */
+    private final AtomicLong identityBytes = new AtomicLong();
+
+    /**
+     * Record a response body about to be read.
+     *
+     * @param compressed true if the body has a content encoding
+     */
+    void recordResponse( boolean compressed )
+    {
+        ( compressed ? compressedResponses : identityResponses ).incrementAndGet();
+    }
+
+    /**
+     * Record bytes of a compressed body, as received.
+     */
+    void recordCompressed( long bytes )
+    {
+        compressedBytes.addAndGet( bytes );
+    }
+
+    /**
+     * Record bytes of a compressed body, once decoded.
+     */
+    void recordUncompressed( long bytes )
+    {
+        uncompressedBytes.addAndGet( bytes );
+    }
+
+    /**
+     * Record bytes of an uncompressed body.
+     */
+    void recordIdentity( long bytes )
+    {
+        identityBytes.addAndGet( bytes );
+    }
+
+    /**
+     * @return the number of responses received compressed
+     */
+    public long getCompressedResponses()
+    {
+        return compressedResponses.get();
+    }
+
+    /**
+     * @return the number of responses received without content encoding
+     */
+    public long getIdentityResponses()
+    {
+        return identityResponses.get();
+    }
+
+    /**
+     * @return the bytes received for the compressed bodies
+     */
+    public long getCompressedBytes()
+    {
+        return compressedBytes.get();
+    }
+
+    /**
+     * @return the bytes the compressed bodies were decoded to
+     */
+    public long getUncompressedBytes()
+    {
+        return uncompressedBytes.get();
+    }
+
+    /**
+     * @return the bytes received for the bodies without content encoding
+     */
+    public long getIdentityBytes()
+    {
+        return identityBytes.get();
+    }
+
+    /**
+     * @return the bytes received on the network for all the bodies
+     */
+    public long getReceivedBytes()
+    {
+        return compressedBytes.get() + identityBytes.get();
+    }
+
+    /**
+     * @return the ratio of the uncompressed to the compressed bytes, or 1 if nothing was compressed
+     */
+    public double getCompressionRatio()
+    {
+        long compressed = compressedBytes.get();
+        return compressed == 0 ? 1 : (double) uncompressedBytes.get() / compressed;
+    }
+
+    /**
+     * Reset all the counters.
+     */
+    public void reset()
+    {
+        compressedResponses.set( 0 );
+        identityResponses.set( 0 );
+        compressedBytes.set( 0 );
+        uncompressedBytes.set( 0 );
+        identityBytes.set( 0 );
+    }
+
+    public String toString()
+    {
+        return "compressedResponses=" + getCompressedResponses() + ", identityResponses=" + getIdentityResponses()
+            + ", compressedBytes=" + getCompressedBytes() + ", uncompressedBytes=" + getUncompressedBytes()
+            + ", identityBytes=" + getIdentityBytes();
+    }
+}
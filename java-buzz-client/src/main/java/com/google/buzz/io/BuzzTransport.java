@@ -0,0 +1,23 @@
+package com.google.buzz.io;
+
+import com.google.buzz.exception.BuzzIOException;
+
+/**
+ * Http engine used to execute Buzz requests. <br/>
+ * Implementations must be safe to use from several threads at once. The default implementation is
+ * <b>HttpClientTransport</b>; <b>StubTransport</b> serves canned responses without network access.
+ */
+public interface BuzzTransport
+{
+    /**
+     * Execute a signed request. <br/>
+     * Error statuses are returned as regular responses; only failures to exchange the request with
+     * the server are reported as exceptions.
+     *
+     * @param request to execute
+     * @return the response
+     * @throws BuzzIOException if any IO error occurs ( networking ).
+     */
+    public BuzzResponse execute( BuzzRequest request )
+        throws BuzzIOException;
+}
@@ -0,0 +1,321 @@
+package com.google.buzz.io;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.buzz.exception.BuzzIOException;
+import com.google.buzz.exception.BuzzRejectedException;
+
+/**
+ * Transport isolating the endpoint families of another transport from each other. <br/>
+ * Every family has its own <b>BuzzCircuitBreaker</b>: network failures, <b>5xx</b> answers and
+ * slow answers open it, and its requests then fail fast with a <b>BuzzRejectedException</b>
+ * instead of waiting on a failing endpoint. A family may also get a bulkhead, bounding its
+ * requests in flight: the other requests wait up to <b>maxWait</b> and are then rejected, so a
+ * slow family can not hold every thread of the application. <br/>
+ * A call lasts until its response is closed, so a body read slowly holds its place in the bulkhead
+ * and counts as a slow call. Asynchronous requests are rejected at once when their bulkhead is full;
+ * a blocking transport is sent asynchronously on the executor given at creation.
+ */
+public class CircuitBreakerTransport
+    implements BuzzTransport, AsyncBuzzTransport
+{
+    /**
+     * Lowest http status of the server errors
+     */
+    private static final int HTTP_SERVER_ERROR = 500;
+
+    /**
+     * The transport sending the requests
+     */
+    private final BuzzTransport transport;
+
+    /**
+     * The transport sending the asynchronous requests, or null if the transport is blocking and no
+     * executor was given
+     */
+    private final AsyncBuzzTransport asyncTransport;
+
+    /**
+     * Circuit breakers by endpoint family
+     */
+    private final Map<BuzzEndpoint, BuzzCircuitBreaker> breakers =
+        new EnumMap<BuzzEndpoint, BuzzCircuitBreaker>( BuzzEndpoint.class );
+
+    /**
+     * Bulkheads by endpoint family
+     */
+    private final ConcurrentHashMap<BuzzEndpoint, Bulkhead> bulkheads = new ConcurrentHashMap<BuzzEndpoint, Bulkhead>();
+
+    /**
+     * Creates a transport with a default circuit breaker per endpoint family and no bulkhead.
+     *
+     * @param transport sending the requests
+     */
+    public CircuitBreakerTransport( BuzzTransport transport )
+    {
+        this( transport, null );
+    }
+
+    /**
+     * Creates a transport with a default circuit breaker per endpoint family and no bulkhead, sending
+     * the asynchronous requests of a blocking transport on an executor.
+     *
+     * @param transport sending the requests
+     * @param executor to run the asynchronous requests of a blocking transport on, or null
+     */
+    public CircuitBreakerTransport( BuzzTransport transport, Executor executor )
+    {
+        this.transport = transport;
+        this.asyncTransport = ExecutorAsyncTransport.of( transport, executor );
+        for ( BuzzEndpoint endpoint : BuzzEndpoint.values() )
+        {
+            breakers.put( endpoint, new BuzzCircuitBreaker() );
+        }
+    }
+
+    /**
+     * @param endpoint family
+     * @return the circuit breaker of the family, to be tuned
+     */
+    public BuzzCircuitBreaker getCircuitBreaker( BuzzEndpoint endpoint )
+    {
+        return breakers.get( endpoint );
+    }
+
+    /**
+     * Bound the requests in flight of an endpoint family.
+     *
+     * @param endpoint family to bound
+     * @param maxConcurrent maximum number of requests in flight
+     * @param maxWait maximum wait for a place, in milliseconds; 0 to reject at once
+     */
+    public void setBulkhead( BuzzEndpoint endpoint, int maxConcurrent, long maxWait )
+    {
+        bulkheads.put( endpoint, new Bulkhead( maxConcurrent, maxWait ) );
+    }
+
+    /**
+     * Remove the bulkhead of an endpoint family.
+     *
+     * @param endpoint family to stop bounding
+     */
+    public void removeBulkhead( BuzzEndpoint endpoint )
+    {
+        bulkheads.remove( endpoint );
+    }
+
+    /**
+     * @param endpoint family
+     * @return the number of requests of the family in flight, or 0 if it has no bulkhead
+     */
+    public int getInFlight( BuzzEndpoint endpoint )
+    {
+        Bulkhead bulkhead = bulkheads.get( endpoint );
+        return bulkhead == null ? 0 : bulkhead.maxConcurrent - bulkhead.places.availablePermits();
+    }
+
+    /**
+     * @param endpoint family
+     * @return the number of requests of the family rejected by its bulkhead
+     */
+    public long getBulkheadRejected( BuzzEndpoint endpoint )
+    {
+        Bulkhead bulkhead = bulkheads.get( endpoint );
+        return bulkhead == null ? 0 : bulkhead.rejected.get();
+    }
+
+    /**
+     * @return the transport sending the requests
+     */
+    public BuzzTransport getTransport()
+    {
+        return transport;
+    }
+
+    public BuzzResponse execute( BuzzRequest request )
+        throws BuzzIOException
+    {
+        BuzzEndpoint endpoint = BuzzEndpoint.of( request );
+        BuzzCircuitBreaker breaker = breakers.get( endpoint );
+        Bulkhead bulkhead = bulkheads.get( endpoint );
+        if ( bulkhead != null )
+        {
+            bulkhead.enter( endpoint, true );
+        }
+        boolean answered = false;
+        try
+        {
+            if ( !breaker.tryAcquire() )
+            {
+                throw new BuzzRejectedException( "Circuit breaker of " + endpoint + " is open" );
+            }
+            long start = System.nanoTime();
+            try
+            {
+                BuzzResponse response = transport.execute( request );
+                answered = true;
+                holdUntilClosed( response, breaker, bulkhead, start );
+                return response;
+            }
+            catch ( BuzzIOException e )
+            {
+                breaker.record( true, System.nanoTime() - start );
+                throw e;
+            }
+            catch ( RuntimeException e )
+            {
+                breaker.release();
+                throw e;
+            }
+        }
+        finally
+        {
+            if ( bulkhead != null && !answered )
+            {
+                bulkhead.places.release();
+            }
+        }
+    }
+
+    public CompletableFuture<BuzzResponse> executeAsync( BuzzRequest request )
+    {
+        if ( asyncTransport == null )
+        {
+            return ExecutorAsyncTransport.unsupported( transport );
+        }
+        final BuzzEndpoint endpoint = BuzzEndpoint.of( request );
+        final BuzzCircuitBreaker breaker = breakers.get( endpoint );
+        final Bulkhead bulkhead = bulkheads.get( endpoint );
+        try
+        {
+            if ( bulkhead != null )
+            {
+                bulkhead.enter( endpoint, false );
+            }
+        }
+        catch ( BuzzIOException e )
+        {
+            return CompletableFuture.failedFuture( e );
+        }
+        if ( !breaker.tryAcquire() )
+        {
+            if ( bulkhead != null )
+            {
+                bulkhead.places.release();
+            }
+            return CompletableFuture.failedFuture( new BuzzRejectedException( "Circuit breaker of " + endpoint
+                + " is open" ) );
+        }
+        final long start = System.nanoTime();
+        return ExecutorAsyncTransport.closeLateAnswer( asyncTransport.executeAsync( request ).whenComplete(
+            ( response, error ) -> {
+                if ( error == null )
+                {
+                    holdUntilClosed( response, breaker, bulkhead, start );
+                    return;
+                }
+                if ( bulkhead != null )
+                {
+                    bulkhead.places.release();
+                }
+                breaker.record( true, System.nanoTime() - start );
+            } ) );
+    }
+
+    /**
+     * Keep the place of a call in its bulkhead, and time it, until its response is closed.
+     *
+     * @param response of the call
+     * @param breaker recording the call
+     * @param bulkhead holding the place of the call, or null
+     * @param start of the call, in nanoseconds
+     */
+    private static void holdUntilClosed( BuzzResponse response, final BuzzCircuitBreaker breaker,
+                                         final Bulkhead bulkhead, final long start )
+    {
+        final boolean failure = response.getStatus() >= HTTP_SERVER_ERROR;
+        response.whenClosed( () -> {
+            if ( bulkhead != null )
+            {
+                bulkhead.places.release();
+            }
+            breaker.record( failure, System.nanoTime() - start );
+        } );
+    }
+
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for ( Map.Entry<BuzzEndpoint, BuzzCircuitBreaker> entry : breakers.entrySet() )
+        {
+            if ( sb.length() > 0 )
+            {
+                sb.append( ", " );
+            }
+            sb.append( entry.getKey() ).append( "={" ).append( entry.getValue() ).append( '}' );
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Bound of the requests in flight of an endpoint family.
+     */
+    private static final class Bulkhead
+    {
+        private final int maxConcurrent;
+
+        private final long maxWait;
+
+        private final Semaphore places;
+
+        private final AtomicLong rejected = new AtomicLong();
+
+        Bulkhead( int maxConcurrent, long maxWait )
+        {
+            if ( maxConcurrent <= 0 )
+            {
+                throw new IllegalArgumentException( "maxConcurrent must be positive" );
+            }
+            this.maxConcurrent = maxConcurrent;
+            this.maxWait = maxWait;
+            this.places = new Semaphore( maxConcurrent );
+        }
+
+        /**
+         * Take a place.
+         *
+         * @param endpoint family of the bulkhead
+         * @param wait true to wait up to maxWait for a place
+         * @throws BuzzRejectedException if there is no place
+         * @throws BuzzIOException if the thread is interrupted while waiting
+         */
+        void enter( BuzzEndpoint endpoint, boolean wait )
+            throws BuzzIOException
+        {
+            boolean entered;
+            try
+            {
+                entered = wait && maxWait > 0 ? places.tryAcquire( maxWait, TimeUnit.MILLISECONDS )
+                                : places.tryAcquire();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new BuzzIOException( "Interrupted while waiting for the bulkhead of " + endpoint, e );
+            }
+            if ( !entered )
+            {
+                rejected.incrementAndGet();
+                throw new BuzzRejectedException( "Bulkhead of " + endpoint + " is full: " + maxConcurrent
+                    + " requests in flight" );
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.google.buzz.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stream counting the bytes read through it, for the measures of a response body. <br/>
+ * The count is not synchronized: the stream is read by one thread at a time.
+ */
+public class CountingInputStream
+    extends FilterInputStream
+{
+    /**
+     * Bytes read so far
+     */
+    private long count;
+
+    /**
+     * @param in the stream to count
+     */
+    public CountingInputStream( InputStream in )
+    {
+        super( in );
+    }
+
+    /**
+     * @return the number of bytes read or skipped so far
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    public int read()
+        throws IOException
+    {
+        int b = in.read();
+        if ( b >= 0 )
+        {
+            count++;
+        }
+        return b;
+    }
+
+    public int read( byte[] b, int off, int len )
+        throws IOException
+    {
+        int n = in.read( b, off, len );
+        if ( n > 0 )
+        {
+            count += n;
+        }
+        return n;
+    }
+
+    public long skip( long n )
+        throws IOException
+    {
+        long skipped = in.skip( n );
+        if ( skipped > 0 )
+        {
+            count += skipped;
+        }
+        return skipped;
+    }
+}
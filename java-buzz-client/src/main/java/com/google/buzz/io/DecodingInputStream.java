@@ -0,0 +1,264 @@
+package com.google.buzz.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Stream of a response body, decoding its content encoding as it is read. <br/>
+ * Supports <b>gzip</b> and <b>deflate</b>, either zlib wrapped as the specification says or raw as
+ * some servers send it; the decoder is set up on the first read, so an empty body needs no
+ * header. The bytes read are counted in a <b>BuzzTransferStats</b>.
+ */
+class DecodingInputStream
+    extends InputStream
+{
+    /**
+     * Size of the decoder buffers
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The body as received
+     */
+    private final InputStream raw;
+
+    /**
+     * The content encoding, lower case
+     */
+    private final String encoding;
+
+    /**
+     * The counters to update
+     */
+    private final BuzzTransferStats stats;
+
+    /**
+     * The decoded body, null until the first read
+     */
+    private InputStream decoded;
+
+    /**
+     * The inflater of a deflate body, ended on close
+     */
+    private Inflater inflater;
+
+    /**
+     * Creates a decoding stream.
+     *
+     * @param raw the body as received
+     * @param encoding the content encoding of the body, lower case
+     * @param stats the counters to update
+     */
+    private DecodingInputStream( InputStream raw, String encoding, BuzzTransferStats stats )
+    {
+        this.raw = new CountingInputStream( raw, stats, Bytes.COMPRESSED );
+        this.encoding = encoding;
+        this.stats = stats;
+    }
+
+    /**
+     * Wrap a response body to be decoded and counted.
+     *
+     * @param raw the body as received
+     * @param contentEncoding the <b>Content-Encoding</b> header of the response, may be null
+     * @param stats the counters to update
+     * @return the decoded body
+     */
+    static InputStream decode( InputStream raw, String contentEncoding, BuzzTransferStats stats )
+    {
+        String encoding = contentEncoding == null ? "" : contentEncoding.trim().toLowerCase( Locale.ROOT );
+        if ( encoding.length() == 0 || "identity".equals( encoding ) )
+        {
+            stats.recordResponse( false );
+            return new CountingInputStream( raw, stats, Bytes.IDENTITY );
+        }
+        stats.recordResponse( true );
+        return new DecodingInputStream( raw, encoding, stats );
+    }
+
+    public int read()
+        throws IOException
+    {
+        return decoded().read();
+    }
+
+    public int read( byte[] b, int off, int len )
+        throws IOException
+    {
+        return decoded().read( b, off, len );
+    }
+
+    public long skip( long n )
+        throws IOException
+    {
+        return decoded().skip( n );
+    }
+
+    public int available()
+        throws IOException
+    {
+        return decoded == null ? 0 : decoded.available();
+    }
+
+    public void close()
+        throws IOException
+    {
+        try
+        {
+            if ( decoded != null )
+            {
+                decoded.close();
+            }
+            raw.close();
+        }
+        finally
+        {
+            if ( inflater != null )
+            {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * @return the decoded body, set up on the first call
+     * @throws IOException if the encoding is not supported or its header is invalid
+     */
+    private InputStream decoded()
+        throws IOException
+    {
+        if ( decoded == null )
+        {
+            PushbackInputStream in = new PushbackInputStream( raw, 2 );
+            byte[] header = new byte[2];
+            int n = 0;
+            int r;
+            while ( n < header.length && ( r = in.read( header, n, header.length - n ) ) >= 0 )
+            {
+                n += r;
+            }
+            if ( n == 0 )
+            {
+                decoded = in;
+                return decoded;
+            }
+            in.unread( header, 0, n );
+            InputStream stream;
+            if ( "gzip".equals( encoding ) || "x-gzip".equals( encoding ) )
+            {
+                stream = new GZIPInputStream( in, BUFFER_SIZE );
+            }
+            else if ( "deflate".equals( encoding ) )
+            {
+                inflater = new Inflater( !isZlibHeader( header, n ) );
+                stream = new InflaterInputStream( in, inflater, BUFFER_SIZE );
+            }
+            else
+            {
+                throw new IOException( "Unsupported content encoding: " + encoding );
+            }
+            decoded = new CountingInputStream( stream, stats, Bytes.UNCOMPRESSED );
+        }
+        return decoded;
+    }
+
+    /**
+     * @return true if the first bytes of a deflate body are a zlib header
+     */
+    private static boolean isZlibHeader( byte[] header, int length )
+    {
+        int cmf = header[0] & 0xff;
+        return length == 2 && ( cmf & 0x0f ) == 8 && ( cmf * 256 + ( header[1] & 0xff ) ) % 31 == 0;
+    }
+
+    /**
+     * Kinds of counted bytes
+     */
+    private enum Bytes
+    {
+        COMPRESSED, UNCOMPRESSED, IDENTITY
+    }
+
+    /**
+     * Stream counting the bytes read through it.
+     */
+    private static class CountingInputStream
+        extends FilterInputStream
+    {
+        private final BuzzTransferStats stats;
+
+        private final Bytes kind;
+
+        /**
+         * @param in the stream to count
+         * @param stats the counters to update
+         * @param kind of the bytes read from the stream
+         */
+        CountingInputStream( InputStream in, BuzzTransferStats stats, Bytes kind )
+        {
+            super( in );
+            this.stats = stats;
+            this.kind = kind;
+        }
+
+        public int read()
+            throws IOException
+        {
+            int b = in.read();
+            if ( b >= 0 )
+            {
+                count( 1 );
+            }
+            return b;
+        }
+
+        public int read( byte[] b, int off, int len )
+            throws IOException
+        {
+            int n = in.read( b, off, len );
+            if ( n > 0 )
+            {
+                count( n );
+            }
+            return n;
+        }
+
+        public long skip( long n )
+            throws IOException
+        {
+            long skipped = in.skip( n );
+            if ( skipped > 0 )
+            {
+                count( skipped );
+            }
+            return skipped;
+        }
+
+        public boolean markSupported()
+        {
+            return false;
+        }
+
+        private void count( long bytes )
+        {
+            switch ( kind )
+            {
+                case COMPRESSED:
+                    stats.recordCompressed( bytes );
+                    break;
+                case UNCOMPRESSED:
+                    stats.recordUncompressed( bytes );
+                    break;
+                default:
+                    stats.recordIdentity( bytes );
+                    break;
+            }
+        }
+    }
+}
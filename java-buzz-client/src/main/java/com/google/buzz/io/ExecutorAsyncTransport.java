@@ -0,0 +1,111 @@
+package com.google.buzz.io;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import com.google.buzz.exception.BuzzIOException;
+
+/**
+ * Adapts a blocking <b>BuzzTransport</b> to <b>AsyncBuzzTransport</b> by running each request on an
+ * executor. Every request in flight holds one executor thread.
+ */
+public class ExecutorAsyncTransport
+    implements AsyncBuzzTransport
+{
+    /**
+     * The blocking transport
+     */
+    private final BuzzTransport transport;
+
+    /**
+     * The executor running the blocking calls
+     */
+    private final Executor executor;
+
+    /**
+     * @param transport blocking transport to adapt
+     * @param executor to run the blocking calls on
+     */
+    public ExecutorAsyncTransport( BuzzTransport transport, Executor executor )
+    {
+        this.transport = transport;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<BuzzResponse> executeAsync( final BuzzRequest request )
+    {
+        return CompletableFuture.supplyAsync( () -> {
+            try
+            {
+                return transport.execute( request );
+            }
+            catch ( BuzzIOException e )
+            {
+                throw new CompletionException( e );
+            }
+        }, executor );
+    }
+
+    /**
+     * Choose how a transport decorator sends its asynchronous requests.
+     *
+     * @param transport the decorated transport
+     * @param executor to run a blocking transport on, or null
+     * @return the transport itself if it is non-blocking, an adapter running it on the executor if it
+     *         is blocking, or null if it is blocking and no executor is given
+     */
+    static AsyncBuzzTransport of( BuzzTransport transport, Executor executor )
+    {
+        if ( transport instanceof AsyncBuzzTransport )
+        {
+            return (AsyncBuzzTransport) transport;
+        }
+        return executor != null ? new ExecutorAsyncTransport( transport, executor ) : null;
+    }
+
+    /**
+     * Hand the answer of a request to the future returned to the caller, closing it if the caller
+     * cancelled that future, or timed it out, before the answer arrived: its connection or bulkhead
+     * place would never be released otherwise. The request itself goes on.
+     *
+     * @param answer future answer of the request
+     * @return the future for the caller
+     */
+    static CompletableFuture<BuzzResponse> closeLateAnswer( CompletableFuture<BuzzResponse> answer )
+    {
+        return closeLateAnswer( answer, new CompletableFuture<BuzzResponse>() );
+    }
+
+    /**
+     * @param answer future answer of the request
+     * @param result future for the caller, to complete with the answer
+     * @return the future for the caller
+     */
+    static CompletableFuture<BuzzResponse> closeLateAnswer( CompletableFuture<BuzzResponse> answer,
+                                                            final CompletableFuture<BuzzResponse> result )
+    {
+        answer.whenComplete( ( response, error ) -> {
+            if ( error != null )
+            {
+                result.completeExceptionally( error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error );
+            }
+            else if ( !result.complete( response ) )
+            {
+                response.close();
+            }
+        } );
+        return result;
+    }
+
+    /**
+     * @param transport the blocking transport
+     * @return a future failed because a blocking transport was given no executor
+     */
+    static CompletableFuture<BuzzResponse> unsupported( BuzzTransport transport )
+    {
+        return CompletableFuture.failedFuture( new UnsupportedOperationException( transport.getClass().getName()
+            + " is blocking; create the decorator with an executor to send it asynchronously" ) );
+    }
+}
@@ -0,0 +1,566 @@
+package com.google.buzz.io;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.buzz.exception.BuzzIOException;
+
+/**
+ * Transport hedging the <b>GET</b> requests of another transport, to cut the tail latency of
+ * reads such as <b>Buzz.getPost</b> and <b>Buzz.getComment</b>. <br/>
+ * The transport keeps the latencies of the last successful answers of each endpoint family. A read
+ * that has not been answered after the <b>percentile</b> of these latencies is sent a second time,
+ * and the first successful answer wins; the other one is closed. An error answer is returned only
+ * once every request sent answered badly. Hedging starts once <b>minSamples</b> latencies are
+ * known. <br/>
+ * The hedge is a copy of the read signed again by its <b>BuzzRequest.Signer</b>, as an OAuth 1
+ * nonce is not accepted twice; a read signed without a signer is not hedged. <br/>
+ * A budget bounds the load: every read earns <b>maxHedgeRatio</b> of a hedge, and a hedge is sent
+ * only if a whole one was earned, so hedges never exceed this share of the reads, and never
+ * double the load. Other methods are passed through, as they may not be idempotent. <br/>
+ * A blocking transport is hedged on the executor given at creation, each request in flight holding
+ * one of its threads; without an executor its reads are passed through too.
+ */
+public class HedgingTransport
+    implements BuzzTransport, AsyncBuzzTransport
+{
+    /**
+     * Thread sending the hedges of all the transports
+     */
+    private static final ScheduledExecutorService SCHEDULER =
+        Executors.newSingleThreadScheduledExecutor( new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "buzz-hedge-" + count.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+
+    /**
+     * Number of latencies kept per endpoint family
+     */
+    private static final int WINDOW_SIZE = 256;
+
+    /**
+     * Maximum number of hedges earned in advance
+     */
+    private static final double MAX_CREDITS = 10;
+
+    /**
+     * The transport sending the requests
+     */
+    private final BuzzTransport transport;
+
+    /**
+     * The transport sending the asynchronous requests, or null if the transport is blocking and no
+     * executor was given
+     */
+    private final AsyncBuzzTransport asyncTransport;
+
+    /**
+     * The executor signing and sending the hedges, or null to send them on the scheduler thread
+     */
+    private final Executor executor;
+
+    /**
+     * Latencies and counters by endpoint family
+     */
+    private final Map<BuzzEndpoint, Family> families = new EnumMap<BuzzEndpoint, Family>( BuzzEndpoint.class );
+
+    /**
+     * Hedges earned and not sent yet
+     */
+    private double credits;
+
+    private volatile double percentile = 95;
+
+    private volatile double maxHedgeRatio = 0.1;
+
+    private volatile int minSamples = 20;
+
+    private volatile long minDelay = 10;
+
+    /**
+     * Creates a transport hedging the reads answered after the 95th percentile of latency, up to
+     * one read in ten.
+     *
+     * @param transport sending the requests
+     */
+    public HedgingTransport( BuzzTransport transport )
+    {
+        this( transport, null );
+    }
+
+    /**
+     * Creates a transport hedging the reads answered after the 95th percentile of latency, up to
+     * one read in ten, sending the requests of a blocking transport on an executor.
+     *
+     * @param transport sending the requests
+     * @param executor to run the requests of a blocking transport on, or null to pass them through
+     */
+    public HedgingTransport( BuzzTransport transport, Executor executor )
+    {
+        this.transport = transport;
+        this.asyncTransport = ExecutorAsyncTransport.of( transport, executor );
+        this.executor = executor;
+        for ( BuzzEndpoint endpoint : BuzzEndpoint.values() )
+        {
+            families.put( endpoint, new Family() );
+        }
+    }
+
+    /**
+     * @return the transport sending the requests
+     */
+    public BuzzTransport getTransport()
+    {
+        return transport;
+    }
+
+    public BuzzResponse execute( BuzzRequest request )
+        throws BuzzIOException
+    {
+        if ( asyncTransport == null || !BuzzIO.HTTP_METHOD_GET.equals( request.getMethod() ) )
+        {
+            return transport.execute( request );
+        }
+        CompletableFuture<BuzzResponse> response = executeAsync( request );
+        try
+        {
+            return response.get();
+        }
+        catch ( InterruptedException e )
+        {
+            // the answers still in flight are closed when they arrive
+            response.cancel( false );
+            Thread.currentThread().interrupt();
+            throw new BuzzIOException( "Interrupted while waiting for " + request.getUrl(), e );
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof BuzzIOException )
+            {
+                throw (BuzzIOException) e.getCause();
+            }
+            if ( e.getCause() instanceof RuntimeException )
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new BuzzIOException( e.getCause() );
+        }
+    }
+
+    public CompletableFuture<BuzzResponse> executeAsync( final BuzzRequest request )
+    {
+        if ( asyncTransport == null )
+        {
+            return ExecutorAsyncTransport.unsupported( transport );
+        }
+        if ( !BuzzIO.HTTP_METHOD_GET.equals( request.getMethod() ) )
+        {
+            return asyncTransport.executeAsync( request );
+        }
+        final Family family = families.get( BuzzEndpoint.of( request ) );
+        final Hedge hedge = new Hedge( request, family );
+        earn();
+        hedge.send( false );
+        long delay = family.hedgeDelay();
+        if ( delay >= 0 && !hedge.result.isDone() && isResignable( request ) )
+        {
+            final ScheduledFuture<?> timer = SCHEDULER.schedule( () -> {
+                if ( !hedge.result.isDone() && spend() )
+                {
+                    family.hedged.incrementAndGet();
+                    if ( executor != null )
+                    {
+                        executor.execute( () -> hedge.send( true ) );
+                    }
+                    else
+                    {
+                        hedge.send( true );
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS );
+            hedge.result.whenComplete( ( response, error ) -> timer.cancel( false ) );
+        }
+        return hedge.result;
+    }
+
+    /**
+     * @return true if a copy of the request can be signed again, or needs no signature
+     */
+    private static boolean isResignable( BuzzRequest request )
+    {
+        return request.getSigner() != null || request.getHeader( "Authorization" ) == null;
+    }
+
+    /**
+     * Earn the share of a hedge of a read.
+     */
+    private synchronized void earn()
+    {
+        credits = Math.min( credits + maxHedgeRatio, MAX_CREDITS );
+    }
+
+    /**
+     * Spend a whole hedge, if earned.
+     *
+     * @return true if a hedge may be sent
+     */
+    private synchronized boolean spend()
+    {
+        if ( credits < 1 )
+        {
+            return false;
+        }
+        credits--;
+        return true;
+    }
+
+    /**
+     * @param endpoint family
+     * @return the number of hedges sent for the reads of the family
+     */
+    public long getHedged( BuzzEndpoint endpoint )
+    {
+        return families.get( endpoint ).hedged.get();
+    }
+
+    /**
+     * @param endpoint family
+     * @return the number of hedges of the family answered before the first request
+     */
+    public long getHedgeWins( BuzzEndpoint endpoint )
+    {
+        return families.get( endpoint ).wins.get();
+    }
+
+    /**
+     * @param endpoint family
+     * @return the delay after which a read of the family is hedged in milliseconds, or -1 if not
+     *         enough latencies are known yet
+     */
+    public long getHedgeDelay( BuzzEndpoint endpoint )
+    {
+        return families.get( endpoint ).hedgeDelay();
+    }
+
+    /**
+     * @return the percentile of latency after which a read is hedged
+     */
+    public double getPercentile()
+    {
+        return percentile;
+    }
+
+    /**
+     * @param percentile the percentile of latency after which a read is hedged, from 0 to 100
+     */
+    public void setPercentile( double percentile )
+    {
+        if ( percentile < 0 || percentile > 100 )
+        {
+            throw new IllegalArgumentException( "percentile must be between 0 and 100" );
+        }
+        this.percentile = percentile;
+    }
+
+    /**
+     * @return the maximum share of reads hedged
+     */
+    public double getMaxHedgeRatio()
+    {
+        return maxHedgeRatio;
+    }
+
+    /**
+     * @param maxHedgeRatio the maximum share of reads hedged, from 0 to 1
+     */
+    public void setMaxHedgeRatio( double maxHedgeRatio )
+    {
+        if ( maxHedgeRatio < 0 || maxHedgeRatio > 1 )
+        {
+            throw new IllegalArgumentException( "maxHedgeRatio must be between 0 and 1" );
+        }
+        this.maxHedgeRatio = maxHedgeRatio;
+    }
+
+    /**
+     * @return the number of latencies of a family needed before its reads are hedged
+     */
+    public int getMinSamples()
+    {
+        return minSamples;
+    }
+
+    /**
+     * @param minSamples the number of latencies of a family needed before its reads are hedged
+     */
+    public void setMinSamples( int minSamples )
+    {
+        this.minSamples = Math.max( minSamples, 1 );
+    }
+
+    /**
+     * @return the minimum delay before a read is hedged, in milliseconds
+     */
+    public long getMinDelay()
+    {
+        return minDelay;
+    }
+
+    /**
+     * @param minDelay the minimum delay before a read is hedged, in milliseconds
+     */
+    public void setMinDelay( long minDelay )
+    {
+        this.minDelay = minDelay;
+    }
+
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for ( Map.Entry<BuzzEndpoint, Family> entry : families.entrySet() )
+        {
+            if ( sb.length() > 0 )
+            {
+                sb.append( ", " );
+            }
+            sb.append( entry.getKey() ).append( "={" ).append( entry.getValue() ).append( '}' );
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A read and its hedge racing to answer.
+     */
+    private final class Hedge
+    {
+        private final BuzzRequest request;
+
+        private final Family family;
+
+        /**
+         * The first successful answer, or the first bad one if every request answered badly
+         */
+        private final CompletableFuture<BuzzResponse> result = new CompletableFuture<BuzzResponse>();
+
+        /**
+         * Whether the result was given its answer
+         */
+        private boolean answered;
+
+        /**
+         * Requests sent and not answered yet
+         */
+        private int outstanding;
+
+        /**
+         * The first answer with an error status, kept until a request is answered successfully
+         */
+        private BuzzResponse fallback;
+
+        /**
+         * The first failure to answer
+         */
+        private Throwable failure;
+
+        Hedge( BuzzRequest request, Family family )
+        {
+            this.request = request;
+            this.family = family;
+        }
+
+        /**
+         * Send the request, the hedge being signed again.
+         *
+         * @param hedged true if the request is the hedge
+         */
+        void send( final boolean hedged )
+        {
+            BuzzRequest sent = request;
+            if ( hedged )
+            {
+                try
+                {
+                    sent = request.resign();
+                }
+                catch ( BuzzIOException e )
+                {
+                    // the read still waits for its first request
+                    return;
+                }
+            }
+            synchronized ( this )
+            {
+                if ( answered )
+                {
+                    return;
+                }
+                outstanding++;
+            }
+            final long start = System.nanoTime();
+            asyncTransport.executeAsync( sent ).whenComplete( ( response, error ) -> {
+                if ( error == null && response.isSuccessful() )
+                {
+                    family.record( System.nanoTime() - start );
+                }
+                answer( response, error, hedged );
+            } );
+        }
+
+        /**
+         * Take the answer of a request: the first successful one completes the result, the first
+         * bad one is kept until every request sent answered badly, and the others are closed, as is
+         * an answer arriving after the read was cancelled.
+         *
+         * @param response of the request, or null if it failed
+         * @param error of the request, or null if answered
+         * @param hedged true if the request is the hedge
+         */
+        private void answer( BuzzResponse response, Throwable error, boolean hedged )
+        {
+            BuzzResponse completed = null;
+            Throwable failed = null;
+            BuzzResponse unused = null;
+            synchronized ( this )
+            {
+                outstanding--;
+                if ( answered )
+                {
+                    unused = response;
+                }
+                else if ( error == null && response.isSuccessful() )
+                {
+                    answered = true;
+                    completed = response;
+                    unused = fallback;
+                    fallback = null;
+                    if ( hedged )
+                    {
+                        family.wins.incrementAndGet();
+                    }
+                }
+                else
+                {
+                    if ( response != null && fallback == null )
+                    {
+                        fallback = response;
+                    }
+                    else
+                    {
+                        unused = response;
+                    }
+                    if ( error != null && failure == null )
+                    {
+                        failure = error instanceof CompletionException && error.getCause() != null
+                                        ? error.getCause() : error;
+                    }
+                    if ( outstanding == 0 )
+                    {
+                        answered = true;
+                        completed = fallback;
+                        fallback = null;
+                        failed = completed == null ? failure : null;
+                    }
+                }
+            }
+            if ( unused != null )
+            {
+                unused.close();
+            }
+            if ( completed != null && !result.complete( completed ) )
+            {
+                // the read was cancelled
+                completed.close();
+            }
+            else if ( failed != null )
+            {
+                result.completeExceptionally( failed );
+            }
+        }
+    }
+
+    /**
+     * Latencies and counters of an endpoint family.
+     */
+    private final class Family
+    {
+        /**
+         * Latencies of the last answers, as a ring, in nanoseconds
+         */
+        private final long[] latencies = new long[WINDOW_SIZE];
+
+        private int next;
+
+        private int samples;
+
+        /**
+         * Hedge delay computed from the latencies, in milliseconds
+         */
+        private long delay = -1;
+
+        /**
+         * Latencies recorded since the delay was computed
+         */
+        private int stale;
+
+        private final AtomicLong hedged = new AtomicLong();
+
+        private final AtomicLong wins = new AtomicLong();
+
+        /**
+         * @param latency of a successful answer, in nanoseconds
+         */
+        synchronized void record( long latency )
+        {
+            latencies[next] = latency;
+            next = ( next + 1 ) % latencies.length;
+            samples = Math.min( samples + 1, latencies.length );
+            stale++;
+        }
+
+        /**
+         * The percentile is computed again once every 16 answers, sorting the ring.
+         *
+         * @return the hedge delay in milliseconds, or -1 if not enough latencies are known
+         */
+        synchronized long hedgeDelay()
+        {
+            if ( samples < minSamples )
+            {
+                return -1;
+            }
+            if ( delay < 0 || stale >= 16 )
+            {
+                long[] sorted = Arrays.copyOf( latencies, samples );
+                Arrays.sort( sorted );
+                int rank = (int) Math.ceil( percentile / 100 * samples ) - 1;
+                delay = TimeUnit.NANOSECONDS.toMillis( sorted[Math.max( rank, 0 )] );
+                stale = 0;
+            }
+            return Math.max( delay, minDelay );
+        }
+
+        public String toString()
+        {
+            return "delay=" + hedgeDelay() + ", hedged=" + hedged.get() + ", wins=" + wins.get();
+        }
+    }
+}
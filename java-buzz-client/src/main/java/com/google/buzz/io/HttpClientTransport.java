@@ -0,0 +1,161 @@
+package com.google.buzz.io;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+
+import com.google.buzz.exception.BuzzIOException;
+
+/**
+ * Default transport: executes requests with httpclient over the keep-alive connections of a
+ * <b>BuzzConnectionPool</b>.
+ */
+public class HttpClientTransport
+    implements BuzzTransport
+{
+    /**
+     * Content type header name
+     */
+    private static final String HEADER_CONTENT_TYPE = "Content-Type";
+
+    /**
+     * Content length header name
+     */
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+
+    /**
+     * The pool to use, or null to use the shared pool of <b>BuzzIO</b>
+     */
+    private final BuzzConnectionPool connectionPool;
+
+    /**
+     * Creates a transport using the shared connection pool of <b>BuzzIO</b>.
+     */
+    public HttpClientTransport()
+    {
+        this( null );
+    }
+
+    /**
+     * Creates a transport with its own connection pool.
+     *
+     * @param connectionPool to execute the requests
+     */
+    public HttpClientTransport( BuzzConnectionPool connectionPool )
+    {
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * @return the connection pool used by this transport
+     */
+    public BuzzConnectionPool getConnectionPool()
+    {
+        return connectionPool != null ? connectionPool : BuzzIO.getConnectionPool();
+    }
+
+    /**
+     * Execute the request. The response body is streamed from the connection, which goes back to
+     * the pool once the body is read to the end or the response is closed.
+     */
+    public BuzzResponse execute( BuzzRequest request )
+        throws BuzzIOException
+    {
+        HttpUriRequest httpRequest = toHttpRequest( request );
+        try
+        {
+            HttpResponse httpResponse = getConnectionPool().getHttpClient().execute( httpRequest );
+            Map<String, String> headers = new LinkedHashMap<String, String>();
+            for ( Header header : httpResponse.getAllHeaders() )
+            {
+                headers.put( header.getName(), header.getValue() );
+            }
+            HttpEntity entity = httpResponse.getEntity();
+            return new BuzzResponse( httpResponse.getStatusLine().getStatusCode(), headers,
+                                     entity == null ? null : entity.getContent() );
+        }
+        catch ( IOException e )
+        {
+            httpRequest.abort();
+            throw new BuzzIOException( e );
+        }
+    }
+
+    /**
+     * Translate a request into the http client request object.
+     *
+     * @param request to translate
+     * @return the http client request
+     * @throws BuzzIOException if the http method is unknown
+     */
+    private static HttpUriRequest toHttpRequest( BuzzRequest request )
+        throws BuzzIOException
+    {
+        String method = request.getMethod();
+        HttpUriRequest httpRequest;
+        if ( BuzzIO.HTTP_METHOD_GET.equals( method ) )
+        {
+            httpRequest = new HttpGet( request.getUrl() );
+        }
+        else if ( BuzzIO.HTTP_METHOD_DELETE.equals( method ) )
+        {
+            httpRequest = new HttpDelete( request.getUrl() );
+        }
+        else if ( BuzzIO.HTTP_METHOD_POST.equals( method ) || BuzzIO.HTTP_METHOD_PUT.equals( method ) )
+        {
+            HttpEntityEnclosingRequestBase withBody =
+                BuzzIO.HTTP_METHOD_POST.equals( method ) ? new HttpPost( request.getUrl() )
+                                : new HttpPut( request.getUrl() );
+            if ( request.getBody() != null )
+            {
+                ByteArrayEntity entity = new ByteArrayEntity( getBodyBytes( request ) );
+                entity.setContentType( request.getHeader( HEADER_CONTENT_TYPE ) );
+                withBody.setEntity( entity );
+            }
+            httpRequest = withBody;
+        }
+        else
+        {
+            throw new BuzzIOException( "Unsupported http method: " + method );
+        }
+        for ( Map.Entry<String, String> header : request.getHeaders().entrySet() )
+        {
+            // the entity carries the body headers
+            if ( !HEADER_CONTENT_LENGTH.equalsIgnoreCase( header.getKey() )
+                && !HEADER_CONTENT_TYPE.equalsIgnoreCase( header.getKey() ) )
+            {
+                httpRequest.setHeader( header.getKey(), header.getValue() );
+            }
+        }
+        return httpRequest;
+    }
+
+    /**
+     * @param request with a body
+     * @return the body encoded as UTF-8
+     */
+    private static byte[] getBodyBytes( BuzzRequest request )
+    {
+        try
+        {
+            return request.getBody().getBytes( "UTF-8" );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            // impossible.
+            throw new IllegalStateException( e );
+        }
+    }
+}
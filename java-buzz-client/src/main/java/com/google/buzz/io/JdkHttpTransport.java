@@ -0,0 +1,163 @@
+package com.google.buzz.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.google.buzz.exception.BuzzIOException;
+
+/**
+ * Non-blocking transport built on the JDK <b>java.net.http.HttpClient</b>. <br/>
+ * Requests in flight do not hold threads, so a single client can keep thousands of them open; the
+ * connections are kept alive and, over TLS, multiplexed with HTTP/2 when the server supports it.
+ */
+public class JdkHttpTransport
+    implements BuzzTransport, AsyncBuzzTransport
+{
+    /**
+     * Default connect and request timeout, in milliseconds
+     */
+    public static final long DEFAULT_TIMEOUT = 60000L;
+
+    /**
+     * The underlying client
+     */
+    private final HttpClient client;
+
+    /**
+     * The timeout of a whole request, in milliseconds
+     */
+    private final long requestTimeout;
+
+    /**
+     * Creates a transport with the default timeouts.
+     */
+    public JdkHttpTransport()
+    {
+        this( HttpClient.newBuilder().connectTimeout( Duration.ofMillis( DEFAULT_TIMEOUT ) ).build(),
+              DEFAULT_TIMEOUT );
+    }
+
+    /**
+     * Creates a transport on a configured client.
+     *
+     * @param client to execute the requests
+     * @param requestTimeout timeout of a whole request, in milliseconds
+     */
+    public JdkHttpTransport( HttpClient client, long requestTimeout )
+    {
+        this.client = client;
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Execute the request, streaming the response body.
+     */
+    public BuzzResponse execute( BuzzRequest request )
+        throws BuzzIOException
+    {
+        try
+        {
+            HttpResponse<InputStream> response =
+                client.send( toHttpRequest( request ), HttpResponse.BodyHandlers.ofInputStream() );
+            return new BuzzResponse( response.statusCode(), toHeaders( response ), response.body() );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            throw new BuzzIOException( e );
+        }
+        catch ( IOException e )
+        {
+            throw new BuzzIOException( e );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new BuzzIOException( e );
+        }
+    }
+
+    public CompletableFuture<BuzzResponse> executeAsync( final BuzzRequest request )
+    {
+        HttpRequest httpRequest;
+        try
+        {
+            httpRequest = toHttpRequest( request );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            CompletableFuture<BuzzResponse> failed = new CompletableFuture<BuzzResponse>();
+            failed.completeExceptionally( new BuzzIOException( e ) );
+            return failed;
+        }
+        return client.sendAsync( httpRequest, HttpResponse.BodyHandlers.ofByteArray() )
+            .handle( ( response, error ) -> {
+                if ( error != null )
+                {
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    throw new CompletionException( new BuzzIOException( cause ) );
+                }
+                return toBuzzResponse( response );
+            } );
+    }
+
+    /**
+     * Translate a request into the JDK request object.
+     *
+     * @param request to translate
+     * @return the JDK request
+     */
+    private HttpRequest toHttpRequest( BuzzRequest request )
+    {
+        HttpRequest.BodyPublisher body =
+            request.getBody() == null ? HttpRequest.BodyPublishers.noBody()
+                            : HttpRequest.BodyPublishers.ofString( request.getBody(), StandardCharsets.UTF_8 );
+        HttpRequest.Builder builder =
+            HttpRequest.newBuilder( URI.create( request.getUrl() ) ).timeout( Duration.ofMillis( requestTimeout ) )
+                .method( request.getMethod(), body );
+        for ( Map.Entry<String, String> header : request.getHeaders().entrySet() )
+        {
+            // the client computes the length itself and refuses to have it set
+            if ( !"Content-Length".equalsIgnoreCase( header.getKey() ) )
+            {
+                builder.setHeader( header.getKey(), header.getValue() );
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param response of the JDK client
+     * @return the transport independent response, decoding the body when it is read
+     */
+    private static BuzzResponse toBuzzResponse( HttpResponse<byte[]> response )
+    {
+        return new BuzzResponse( response.statusCode(), toHeaders( response ),
+                                 new ByteArrayInputStream( response.body() ) );
+    }
+
+    /**
+     * @param response of the JDK client
+     * @return the response headers, with repeated headers joined
+     */
+    private static Map<String, String> toHeaders( HttpResponse<?> response )
+    {
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        for ( Map.Entry<String, List<String>> header : response.headers().map().entrySet() )
+        {
+            headers.put( header.getKey(), String.join( ", ", header.getValue() ) );
+        }
+        return headers;
+    }
+}
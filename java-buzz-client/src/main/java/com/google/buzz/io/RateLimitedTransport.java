@@ -0,0 +1,271 @@
+package com.google.buzz.io;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import com.google.buzz.exception.BuzzIOException;
+
+/**
+ * Transport sending the requests of another transport within rate limits. <br/>
+ * Limits are set per endpoint family ( activities, people, search ) and per account, with a token
+ * bucket each; a request takes a permit of its account, if it has one, and then of its endpoint
+ * family. Requests over a limit wait in a queue, served by <b>BuzzRequest.Priority</b>, instead of
+ * failing. When the server still answers <b>429 Too Many Requests</b>, the limits of the request
+ * are paused for the <b>Retry-After</b> delay, so the queued requests do not fail as well. <br/>
+ * Asynchronous requests wait without holding a thread, and cancelling one gives up its place in the
+ * queue. A blocking transport is sent asynchronously on the executor given at creation. Limits may
+ * be changed while requests are sent.
+ */
+public class RateLimitedTransport
+    implements BuzzTransport, AsyncBuzzTransport
+{
+    /**
+     * Http status of a response over the quota
+     */
+    public static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Pause of the limits after a 429 response without Retry-After header, in milliseconds
+     */
+    public static final long DEFAULT_RETRY_AFTER = 1000L;
+
+    /**
+     * The transport sending the requests
+     */
+    private final BuzzTransport transport;
+
+    /**
+     * The transport sending the asynchronous requests, or null if the transport is blocking and no
+     * executor was given
+     */
+    private final AsyncBuzzTransport asyncTransport;
+
+    /**
+     * Limits by endpoint family
+     */
+    private final ConcurrentHashMap<BuzzEndpoint, BuzzRateLimiter> endpointLimits =
+        new ConcurrentHashMap<BuzzEndpoint, BuzzRateLimiter>();
+
+    /**
+     * Limits by account, created on first use
+     */
+    private final ConcurrentHashMap<String, BuzzRateLimiter> accountLimits =
+        new ConcurrentHashMap<String, BuzzRateLimiter>();
+
+    /**
+     * Sustained rate of the requests of every account, or 0 for no account limit
+     */
+    private volatile double accountPermitsPerSecond;
+
+    /**
+     * Burst of the requests of every account
+     */
+    private volatile int accountBurst;
+
+    /**
+     * Creates a transport without limits.
+     *
+     * @param transport sending the requests
+     */
+    public RateLimitedTransport( BuzzTransport transport )
+    {
+        this( transport, null );
+    }
+
+    /**
+     * Creates a transport without limits, sending the asynchronous requests of a blocking transport
+     * on an executor.
+     *
+     * @param transport sending the requests
+     * @param executor to run the asynchronous requests of a blocking transport on, or null
+     */
+    public RateLimitedTransport( BuzzTransport transport, Executor executor )
+    {
+        this.transport = transport;
+        this.asyncTransport = ExecutorAsyncTransport.of( transport, executor );
+    }
+
+    /**
+     * Limit the requests of an endpoint family.
+     *
+     * @param endpoint family to limit
+     * @param permitsPerSecond sustained rate of requests
+     * @param burst maximum number of requests sent at once
+     */
+    public void setLimit( BuzzEndpoint endpoint, double permitsPerSecond, int burst )
+    {
+        endpointLimits.put( endpoint, new BuzzRateLimiter( permitsPerSecond, burst ) );
+    }
+
+    /**
+     * Remove the limit of an endpoint family.
+     *
+     * @param endpoint family to stop limiting
+     */
+    public void removeLimit( BuzzEndpoint endpoint )
+    {
+        endpointLimits.remove( endpoint );
+    }
+
+    /**
+     * Limit the requests of every account, each with its own bucket.
+     *
+     * @param permitsPerSecond sustained rate of requests, or 0 to remove the account limits
+     * @param burst maximum number of requests sent at once
+     */
+    public synchronized void setAccountLimit( double permitsPerSecond, int burst )
+    {
+        if ( permitsPerSecond > 0 && burst <= 0 )
+        {
+            throw new IllegalArgumentException( "burst must be positive" );
+        }
+        accountPermitsPerSecond = Math.max( permitsPerSecond, 0 );
+        accountBurst = burst;
+        accountLimits.clear();
+    }
+
+    /**
+     * @param endpoint family
+     * @return the limit of the endpoint family, or null if not limited
+     */
+    public BuzzRateLimiter getLimit( BuzzEndpoint endpoint )
+    {
+        return endpointLimits.get( endpoint );
+    }
+
+    /**
+     * @param accountId of an account
+     * @return the limit of the account, or null if accounts are not limited
+     */
+    public BuzzRateLimiter getAccountLimit( String accountId )
+    {
+        if ( accountId == null || accountPermitsPerSecond <= 0 )
+        {
+            return null;
+        }
+        return accountLimits.computeIfAbsent( accountId,
+                                              id -> new BuzzRateLimiter( accountPermitsPerSecond, accountBurst ) );
+    }
+
+    /**
+     * @return the transport sending the requests
+     */
+    public BuzzTransport getTransport()
+    {
+        return transport;
+    }
+
+    public BuzzResponse execute( BuzzRequest request )
+        throws BuzzIOException
+    {
+        CompletableFuture<Void> permit = permit( request );
+        try
+        {
+            permit.get();
+        }
+        catch ( InterruptedException e )
+        {
+            permit.cancel( false );
+            Thread.currentThread().interrupt();
+            throw new BuzzIOException( "Interrupted while waiting for the rate limit", e );
+        }
+        catch ( ExecutionException e )
+        {
+            throw new BuzzIOException( e.getCause() );
+        }
+        return checkQuota( request, transport.execute( request ) );
+    }
+
+    public CompletableFuture<BuzzResponse> executeAsync( final BuzzRequest request )
+    {
+        if ( asyncTransport == null )
+        {
+            return ExecutorAsyncTransport.unsupported( transport );
+        }
+        CompletableFuture<Void> permit = permit( request );
+        CompletableFuture<BuzzResponse> response = ExecutorAsyncTransport.closeLateAnswer(
+            permit.thenCompose( ignored -> asyncTransport.executeAsync( request ) )
+                  .thenApply( received -> checkQuota( request, received ) ) );
+        cancelWith( response, permit );
+        return response;
+    }
+
+    /**
+     * @param request to send
+     * @return a future completed once the request may be sent; cancelling it gives up the places of
+     *         the request in the queues
+     */
+    private CompletableFuture<Void> permit( BuzzRequest request )
+    {
+        final BuzzRequest.Priority priority = request.getPriority();
+        final BuzzRateLimiter endpoint = endpointLimits.get( BuzzEndpoint.of( request ) );
+        BuzzRateLimiter account = getAccountLimit( request.getAccountId() );
+        if ( account == null )
+        {
+            return endpoint == null ? CompletableFuture.completedFuture( (Void) null )
+                            : endpoint.acquireAsync( priority );
+        }
+        CompletableFuture<Void> accountPermit = account.acquireAsync( priority );
+        if ( endpoint == null )
+        {
+            return accountPermit;
+        }
+        final CompletableFuture<Void> permit = new CompletableFuture<Void>();
+        cancelWith( permit, accountPermit );
+        accountPermit.thenRun( () -> {
+            CompletableFuture<Void> endpointPermit = endpoint.acquireAsync( priority );
+            cancelWith( permit, endpointPermit );
+            endpointPermit.thenRun( () -> permit.complete( null ) );
+        } );
+        return permit;
+    }
+
+    /**
+     * Give up a queued permit when the future waiting for it is cancelled or fails, for example on
+     * a timeout; a permit already granted is kept.
+     *
+     * @param waiting future depending on the permit
+     * @param permit to give up
+     */
+    private static void cancelWith( final CompletableFuture<?> waiting, final CompletableFuture<Void> permit )
+    {
+        waiting.whenComplete( ( ignored, error ) -> {
+            if ( error != null )
+            {
+                permit.cancel( false );
+            }
+        } );
+    }
+
+    /**
+     * Pause the limits of a request answered with 429 Too Many Requests.
+     *
+     * @param request sent
+     * @param response received
+     * @return the response
+     */
+    private BuzzResponse checkQuota( BuzzRequest request, BuzzResponse response )
+    {
+        if ( response.getStatus() == HTTP_TOO_MANY_REQUESTS )
+        {
+            long delay = response.getRetryAfter();
+            if ( delay < 0 )
+            {
+                delay = DEFAULT_RETRY_AFTER;
+            }
+            BuzzRateLimiter endpoint = endpointLimits.get( BuzzEndpoint.of( request ) );
+            if ( endpoint != null )
+            {
+                endpoint.pause( delay );
+            }
+            BuzzRateLimiter account = getAccountLimit( request.getAccountId() );
+            if ( account != null )
+            {
+                account.pause( delay );
+            }
+        }
+        return response;
+    }
+}
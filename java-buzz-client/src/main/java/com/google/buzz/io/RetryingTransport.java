@@ -0,0 +1,345 @@
+package com.google.buzz.io;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.buzz.exception.BuzzIOException;
+import com.google.buzz.exception.BuzzRejectedException;
+
+/**
+ * Transport sending the requests of another transport again when they fail, as told by a
+ * <b>BuzzRetryPolicy</b>. <br/>
+ * The transport sees the http status and the <b>Retry-After</b> header of every answer: a
+ * retryable answer is closed and the request sent again after the backoff delay; the last answer
+ * is returned as it is, for <b>BuzzIO</b> to report its status. Retries are counted per endpoint
+ * family. <br/>
+ * Put a <b>RateLimitedTransport</b> under this transport for the retries to take their permits
+ * too. Requests rejected by a <b>CircuitBreakerTransport</b> are not retried. Asynchronous
+ * retries wait without holding a thread; a blocking transport is sent asynchronously on the executor
+ * given at creation. <br/>
+ * Every retry sends a copy of the request signed again by its <b>BuzzRequest.Signer</b>, with a new
+ * OAuth 1 nonce or a valid OAuth 2 token; a request without a signer is sent again as it is.
+ */
+public class RetryingTransport
+    implements BuzzTransport, AsyncBuzzTransport
+{
+    /**
+     * The transport sending the requests
+     */
+    private final BuzzTransport transport;
+
+    /**
+     * The transport sending the asynchronous requests, or null if the transport is blocking and no
+     * executor was given
+     */
+    private final AsyncBuzzTransport asyncTransport;
+
+    /**
+     * The executor signing the asynchronous retries, or null to sign them on the common pool
+     */
+    private final Executor executor;
+
+    /**
+     * The retry policy
+     */
+    private final BuzzRetryPolicy policy;
+
+    /**
+     * Counters by endpoint family
+     */
+    private final Map<BuzzEndpoint, Counters> counters = new EnumMap<BuzzEndpoint, Counters>( BuzzEndpoint.class );
+
+    /**
+     * Creates a transport with the default retry policy.
+     *
+     * @param transport sending the requests
+     */
+    public RetryingTransport( BuzzTransport transport )
+    {
+        this( transport, new BuzzRetryPolicy() );
+    }
+
+    /**
+     * Creates a transport.
+     *
+     * @param transport sending the requests
+     * @param policy telling which requests to retry and when
+     */
+    public RetryingTransport( BuzzTransport transport, BuzzRetryPolicy policy )
+    {
+        this( transport, policy, null );
+    }
+
+    /**
+     * Creates a transport sending the asynchronous requests of a blocking transport on an executor.
+     *
+     * @param transport sending the requests
+     * @param policy telling which requests to retry and when
+     * @param executor to run the asynchronous requests of a blocking transport on, or null
+     */
+    public RetryingTransport( BuzzTransport transport, BuzzRetryPolicy policy, Executor executor )
+    {
+        this.transport = transport;
+        this.asyncTransport = ExecutorAsyncTransport.of( transport, executor );
+        this.executor = executor;
+        this.policy = policy;
+        for ( BuzzEndpoint endpoint : BuzzEndpoint.values() )
+        {
+            counters.put( endpoint, new Counters() );
+        }
+    }
+
+    /**
+     * @return the retry policy
+     */
+    public BuzzRetryPolicy getPolicy()
+    {
+        return policy;
+    }
+
+    /**
+     * @return the transport sending the requests
+     */
+    public BuzzTransport getTransport()
+    {
+        return transport;
+    }
+
+    public BuzzResponse execute( BuzzRequest request )
+        throws BuzzIOException
+    {
+        Counters counter = counters.get( BuzzEndpoint.of( request ) );
+        long deadline = System.currentTimeMillis() + policy.getMaxRetryTime();
+        BuzzRequest sent = request;
+        for ( int attempt = 1;; attempt++ )
+        {
+            BuzzResponse response = null;
+            BuzzIOException failure = null;
+            try
+            {
+                response = transport.execute( sent );
+            }
+            catch ( BuzzIOException e )
+            {
+                failure = e;
+            }
+            long delay = retryDelay( request, attempt, response, failure, deadline );
+            if ( delay < 0 )
+            {
+                counter.record( attempt, response, failure );
+                if ( failure != null )
+                {
+                    throw failure;
+                }
+                return response;
+            }
+            if ( response != null )
+            {
+                response.close();
+            }
+            counter.retries.incrementAndGet();
+            try
+            {
+                Thread.sleep( delay );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new BuzzIOException( "Interrupted while waiting to retry " + request.getUrl(), e );
+            }
+            sent = request.resign();
+        }
+    }
+
+    public CompletableFuture<BuzzResponse> executeAsync( BuzzRequest request )
+    {
+        if ( asyncTransport == null )
+        {
+            return ExecutorAsyncTransport.unsupported( transport );
+        }
+        CompletableFuture<BuzzResponse> result = new CompletableFuture<BuzzResponse>();
+        return ExecutorAsyncTransport.closeLateAnswer( attempt( request, request, 1, System.currentTimeMillis()
+            + policy.getMaxRetryTime(), result ), result );
+    }
+
+    /**
+     * Send a request asynchronously, and again after the backoff delay if it fails.
+     *
+     * @param request to retry
+     * @param sent copy of the request signed for this attempt
+     * @param attempt number of the attempt, from 1
+     * @param deadline of the retries, in milliseconds
+     * @param result future of the caller, not retried any more once done
+     * @return the future last answer
+     */
+    private CompletableFuture<BuzzResponse> attempt( final BuzzRequest request, BuzzRequest sent, final int attempt,
+                                                     final long deadline, final CompletableFuture<BuzzResponse> result )
+    {
+        return asyncTransport.executeAsync( sent ).handle( ( response, error ) -> {
+            BuzzIOException failure = null;
+            if ( error != null )
+            {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause()
+                                : error;
+                if ( !( cause instanceof BuzzIOException ) )
+                {
+                    return CompletableFuture.<BuzzResponse> failedFuture( cause );
+                }
+                failure = (BuzzIOException) cause;
+            }
+            long delay = result.isDone() ? -1 : retryDelay( request, attempt, response, failure, deadline );
+            Counters counter = counters.get( BuzzEndpoint.of( request ) );
+            if ( delay < 0 )
+            {
+                counter.record( attempt, response, failure );
+                return failure != null ? CompletableFuture.<BuzzResponse> failedFuture( failure )
+                                : CompletableFuture.completedFuture( response );
+            }
+            if ( response != null )
+            {
+                response.close();
+            }
+            counter.retries.incrementAndGet();
+            Executor delayed = executor != null
+                            ? CompletableFuture.delayedExecutor( delay, TimeUnit.MILLISECONDS, executor )
+                            : CompletableFuture.delayedExecutor( delay, TimeUnit.MILLISECONDS );
+            return CompletableFuture.runAsync( () -> {}, delayed )
+                .thenCompose( waited -> retry( request, attempt + 1, deadline, result ) );
+        } ).thenCompose( next -> next );
+    }
+
+    /**
+     * Sign a request again and send it.
+     *
+     * @param request to retry
+     * @param attempt number of the attempt
+     * @param deadline of the retries, in milliseconds
+     * @param result future of the caller
+     * @return the future last answer
+     */
+    private CompletableFuture<BuzzResponse> retry( BuzzRequest request, int attempt, long deadline,
+                                                   CompletableFuture<BuzzResponse> result )
+    {
+        BuzzRequest sent;
+        try
+        {
+            sent = request.resign();
+        }
+        catch ( BuzzIOException e )
+        {
+            return CompletableFuture.failedFuture( e );
+        }
+        return attempt( request, sent, attempt, deadline, result );
+    }
+
+    /**
+     * @param request sent
+     * @param attempt number of the attempt, from 1
+     * @param response answer of the attempt, or null if it failed
+     * @param failure of the attempt, or null if answered
+     * @param deadline of the retries, in milliseconds
+     * @return the delay before the next attempt in milliseconds, or -1 if the request is not to be
+     *         retried
+     */
+    private long retryDelay( BuzzRequest request, int attempt, BuzzResponse response, BuzzIOException failure,
+                             long deadline )
+    {
+        if ( attempt >= policy.getMaxAttempts() || !policy.isIdempotent( request )
+            || Thread.currentThread().isInterrupted() )
+        {
+            return -1;
+        }
+        if ( failure instanceof BuzzRejectedException
+            || response != null && !policy.isRetryable( response.getStatus() ) )
+        {
+            return -1;
+        }
+        long delay = policy.backoff( attempt );
+        if ( response != null )
+        {
+            delay = Math.max( delay, response.getRetryAfter() );
+        }
+        return System.currentTimeMillis() + delay > deadline ? -1 : delay;
+    }
+
+    /**
+     * @param endpoint family
+     * @return the number of retries of the requests of the family
+     */
+    public long getRetries( BuzzEndpoint endpoint )
+    {
+        return counters.get( endpoint ).retries.get();
+    }
+
+    /**
+     * @param endpoint family
+     * @return the number of requests of the family that succeeded after being retried
+     */
+    public long getRecovered( BuzzEndpoint endpoint )
+    {
+        return counters.get( endpoint ).recovered.get();
+    }
+
+    /**
+     * @param endpoint family
+     * @return the number of requests of the family that still failed after being retried
+     */
+    public long getExhausted( BuzzEndpoint endpoint )
+    {
+        return counters.get( endpoint ).exhausted.get();
+    }
+
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for ( Map.Entry<BuzzEndpoint, Counters> entry : counters.entrySet() )
+        {
+            if ( sb.length() > 0 )
+            {
+                sb.append( ", " );
+            }
+            sb.append( entry.getKey() ).append( "={" ).append( entry.getValue() ).append( '}' );
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Retry counters of an endpoint family.
+     */
+    private static final class Counters
+    {
+        private final AtomicLong retries = new AtomicLong();
+
+        private final AtomicLong recovered = new AtomicLong();
+
+        private final AtomicLong exhausted = new AtomicLong();
+
+        /**
+         * Count the outcome of a retried request.
+         */
+        void record( int attempts, BuzzResponse response, BuzzIOException failure )
+        {
+            if ( attempts > 1 )
+            {
+                if ( failure == null && response.isSuccessful() )
+                {
+                    recovered.incrementAndGet();
+                }
+                else
+                {
+                    exhausted.incrementAndGet();
+                }
+            }
+        }
+
+        public String toString()
+        {
+            return "retries=" + retries.get() + ", recovered=" + recovered.get() + ", exhausted=" + exhausted.get();
+        }
+    }
+}
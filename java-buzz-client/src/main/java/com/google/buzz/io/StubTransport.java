@@ -0,0 +1,115 @@
+package com.google.buzz.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process transport serving canned responses. <br/>
+ * Responses are registered by http method and url; a request is answered by the response registered
+ * for its exact url, then by the one registered for its url without the query string, and otherwise
+ * by the default response ( 404 unless changed ). Every executed request is recorded. <br/>
+ * Asynchronous requests are answered immediately, on the calling thread.
+ */
+public class StubTransport
+    implements BuzzTransport, AsyncBuzzTransport
+{
+    /**
+     * Registered responses, by method and url
+     */
+    private final Map<String, BuzzResponse> responses = new ConcurrentHashMap<String, BuzzResponse>();
+
+    /**
+     * Executed requests
+     */
+    private final List<BuzzRequest> requests = Collections.synchronizedList( new ArrayList<BuzzRequest>() );
+
+    /**
+     * Response for unknown urls
+     */
+    private volatile BuzzResponse defaultResponse = new BuzzResponse( 404, "Not Found" );
+
+    /**
+     * Register a response.
+     *
+     * @param method http method of the request
+     * @param url of the request, with or without query string
+     * @param response to serve
+     * @return this transport
+     */
+    public StubTransport addResponse( String method, String url, BuzzResponse response )
+    {
+        responses.put( key( method, url ), response );
+        return this;
+    }
+
+    /**
+     * Register a successful response to a GET request.
+     *
+     * @param url of the request
+     * @param body of the response
+     * @return this transport
+     */
+    public StubTransport addResponse( String url, String body )
+    {
+        return addResponse( BuzzIO.HTTP_METHOD_GET, url, new BuzzResponse( 200, body ) );
+    }
+
+    /**
+     * @param defaultResponse the response to serve for unknown urls
+     */
+    public void setDefaultResponse( BuzzResponse defaultResponse )
+    {
+        this.defaultResponse = defaultResponse;
+    }
+
+    /**
+     * @return a copy of the requests executed so far
+     */
+    public List<BuzzRequest> getRequests()
+    {
+        synchronized ( requests )
+        {
+            return new ArrayList<BuzzRequest>( requests );
+        }
+    }
+
+    /**
+     * Forget the executed requests.
+     */
+    public void clearRequests()
+    {
+        requests.clear();
+    }
+
+    public BuzzResponse execute( BuzzRequest request )
+    {
+        requests.add( request );
+        BuzzResponse response = responses.get( key( request.getMethod(), request.getUrl() ) );
+        if ( response == null )
+        {
+            int query = request.getUrl().indexOf( '?' );
+            if ( query >= 0 )
+            {
+                response = responses.get( key( request.getMethod(), request.getUrl().substring( 0, query ) ) );
+            }
+        }
+        return response != null ? response : defaultResponse;
+    }
+
+    public CompletableFuture<BuzzResponse> executeAsync( BuzzRequest request )
+    {
+        return CompletableFuture.completedFuture( execute( request ) );
+    }
+
+    /**
+     * @return the lookup key of a method and url
+     */
+    private static String key( String method, String url )
+    {
+        return method + " " + url;
+    }
+}
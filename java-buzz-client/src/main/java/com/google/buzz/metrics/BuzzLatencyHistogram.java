@@ -0,0 +1,177 @@
+package com.google.buzz.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies, in microseconds. <br/>
+ * Every power of two is split into 8 buckets, so the percentiles are within 12.5% of the recorded
+ * latencies, from 1 microsecond to several days, in a fixed memory. Recording takes no lock and
+ * may run concurrently with reading; a reading then sees the recordings in progress or not.
+ */
+public class BuzzLatencyHistogram
+{
+    /**
+     * Buckets per power of two, as a power of two
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Number of buckets, up to 2^40 microseconds
+     */
+    private static final int BUCKETS = ( 40 - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray( BUCKETS );
+
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * Sum of the latencies, in nanoseconds
+     */
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * Highest latency, in nanoseconds
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos the latency, in nanoseconds
+     */
+    public void record( long nanos )
+    {
+        long value = Math.max( nanos, 0 );
+        counts.incrementAndGet( bucket( TimeUnit.NANOSECONDS.toMicros( value ) ) );
+        count.incrementAndGet();
+        sum.addAndGet( value );
+        long highest = max.get();
+        while ( value > highest && !max.compareAndSet( highest, value ) )
+        {
+            highest = max.get();
+        }
+    }
+
+    /**
+     * @param micros a latency
+     * @return the index of the bucket of the latency
+     */
+    static int bucket( long micros )
+    {
+        if ( micros < SUB_BUCKETS )
+        {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros( micros );
+        int index = ( exponent - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS
+            + (int) ( ( micros >>> ( exponent - SUB_BUCKET_BITS ) ) & ( SUB_BUCKETS - 1 ) );
+        return Math.min( index, BUCKETS - 1 );
+    }
+
+    /**
+     * @param index of a bucket
+     * @return the lowest latency of the bucket, in microseconds
+     */
+    static long lowerBound( int index )
+    {
+        if ( index < SUB_BUCKETS )
+        {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) ( SUB_BUCKETS + index % SUB_BUCKETS ) << ( exponent - SUB_BUCKET_BITS );
+    }
+
+    /**
+     * @param index of a bucket
+     * @return the width of the bucket, in microseconds
+     */
+    static long width( int index )
+    {
+        return index < SUB_BUCKETS ? 1 : 1L << ( index / SUB_BUCKETS - 1 );
+    }
+
+    /**
+     * @return the number of latencies recorded
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * @return the mean latency in milliseconds, or 0 if none was recorded
+     */
+    public double getMeanMillis()
+    {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / 1e6 / n;
+    }
+
+    /**
+     * @return the highest latency in milliseconds, or 0 if none was recorded
+     */
+    public double getMaxMillis()
+    {
+        return max.get() / 1e6;
+    }
+
+    /**
+     * The latency is interpolated in its bucket.
+     *
+     * @param percentile from 0 to 100
+     * @return the latency under which this percentile of the latencies is, in milliseconds, or 0 if
+     *         none was recorded
+     */
+    public double getPercentileMillis( double percentile )
+    {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            snapshot[i] = counts.get( i );
+            total += snapshot[i];
+        }
+        if ( total == 0 )
+        {
+            return 0;
+        }
+        long rank = Math.max( (long) Math.ceil( percentile / 100 * total ), 1 );
+        long seen = 0;
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            if ( seen + snapshot[i] >= rank )
+            {
+                double micros = lowerBound( i ) + width( i ) * (double) ( rank - seen ) / snapshot[i];
+                return Math.min( micros / 1e3, getMaxMillis() );
+            }
+            seen += snapshot[i];
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * Forget the recorded latencies.
+     */
+    public void reset()
+    {
+        for ( int i = 0; i < BUCKETS; i++ )
+        {
+            counts.set( i, 0 );
+        }
+        count.set( 0 );
+        sum.set( 0 );
+        max.set( 0 );
+    }
+
+    public String toString()
+    {
+        return String.format( "count=%d, mean=%.3fms, p50=%.3fms, p99=%.3fms, max=%.3fms", getCount(),
+                              getMeanMillis(), getPercentileMillis( 50 ), getPercentileMillis( 99 ),
+                              getMaxMillis() );
+    }
+}
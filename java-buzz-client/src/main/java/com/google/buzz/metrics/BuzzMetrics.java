@@ -0,0 +1,210 @@
+package com.google.buzz.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Default metrics registry, keeping the measures of every operation in memory. <br/>
+ * The clients record into the shared <b>getDefault()</b> registry unless given another one. Once
+ * <b>registerMBeans</b> is called, every operation is exported to the platform MBean server as a
+ * <b>BuzzOperationStatsMXBean</b> named <b>com.google.buzz:type=Operation,name=&lt;operation&gt;</b>,
+ * including the operations first recorded afterwards.
+ */
+public class BuzzMetrics
+    implements BuzzMetricsRegistry
+{
+    /**
+     * Default JMX domain of the operation MBeans
+     */
+    public static final String JMX_DOMAIN = "com.google.buzz";
+
+    /**
+     * The registry shared by the clients
+     */
+    private static final BuzzMetrics DEFAULT = new BuzzMetrics();
+
+    /**
+     * Measures by operation name
+     */
+    private final ConcurrentHashMap<String, BuzzOperationStats> operations =
+        new ConcurrentHashMap<String, BuzzOperationStats>();
+
+    /**
+     * JMX domain the operations are exported to, or null if they are not
+     */
+    private volatile String jmxDomain;
+
+    /**
+     * @return the registry shared by the clients
+     */
+    public static BuzzMetrics getDefault()
+    {
+        return DEFAULT;
+    }
+
+    public void record( BuzzOperationSample sample )
+    {
+        getOrCreate( sample.getOperation() ).record( sample );
+    }
+
+    /**
+     * @param operation name
+     * @return the measures of the operation, created and exported if needed
+     */
+    private BuzzOperationStats getOrCreate( String operation )
+    {
+        BuzzOperationStats stats = operations.get( operation );
+        if ( stats == null )
+        {
+            BuzzOperationStats created = new BuzzOperationStats( operation );
+            stats = operations.putIfAbsent( operation, created );
+            if ( stats == null )
+            {
+                stats = created;
+                exportNew( created );
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Export the measures of a new operation, if the operations are exported. A failure leaves the
+     * operation recorded, without MBean.
+     *
+     * @param stats of the new operation
+     */
+    private synchronized void exportNew( BuzzOperationStats stats )
+    {
+        if ( jmxDomain != null )
+        {
+            try
+            {
+                register( jmxDomain, stats );
+            }
+            catch ( JMException e )
+            {
+                // recorded, not exported
+            }
+        }
+    }
+
+    /**
+     * @param operation name
+     * @return the measures of the operation, or null if it has no request yet
+     */
+    public BuzzOperationStats getOperation( String operation )
+    {
+        return operations.get( operation );
+    }
+
+    /**
+     * @return the measures of the operations, by name
+     */
+    public Map<String, BuzzOperationStats> getOperations()
+    {
+        return new TreeMap<String, BuzzOperationStats>( operations );
+    }
+
+    /**
+     * Export the operations to the platform MBean server, in the <b>JMX_DOMAIN</b> domain.
+     *
+     * @throws JMException if an MBean can not be registered
+     */
+    public void registerMBeans()
+        throws JMException
+    {
+        registerMBeans( JMX_DOMAIN );
+    }
+
+    /**
+     * Export the operations to the platform MBean server.
+     *
+     * @param domain of the MBean names
+     * @throws JMException if an MBean can not be registered
+     */
+    public synchronized void registerMBeans( String domain )
+        throws JMException
+    {
+        unregisterMBeans();
+        jmxDomain = domain;
+        for ( BuzzOperationStats stats : operations.values() )
+        {
+            register( domain, stats );
+        }
+    }
+
+    /**
+     * Stop exporting the operations.
+     *
+     * @throws JMException if an MBean can not be unregistered
+     */
+    public synchronized void unregisterMBeans()
+        throws JMException
+    {
+        String domain = jmxDomain;
+        if ( domain == null )
+        {
+            return;
+        }
+        jmxDomain = null;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for ( String operation : operations.keySet() )
+        {
+            ObjectName name = objectName( domain, operation );
+            if ( server.isRegistered( name ) )
+            {
+                server.unregisterMBean( name );
+            }
+        }
+    }
+
+    /**
+     * @param domain of the MBean names
+     * @param operation name
+     * @return the name of the MBean of the operation
+     * @throws JMException if the name is not valid
+     */
+    public static ObjectName objectName( String domain, String operation )
+        throws JMException
+    {
+        return new ObjectName( domain + ":type=Operation,name=" + operation );
+    }
+
+    private static void register( String domain, BuzzOperationStats stats )
+        throws JMException
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = objectName( domain, stats.getOperation() );
+        if ( !server.isRegistered( name ) )
+        {
+            server.registerMBean( stats, name );
+        }
+    }
+
+    /**
+     * Forget the measures of all the operations.
+     */
+    public void reset()
+    {
+        for ( BuzzOperationStats stats : operations.values() )
+        {
+            stats.reset();
+        }
+    }
+
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for ( BuzzOperationStats stats : getOperations().values() )
+        {
+            sb.append( stats ).append( '\n' );
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,17 @@
+package com.google.buzz.metrics;
+
+/**
+ * Receives the measures of the operations of the Buzz clients. <br/>
+ * <b>BuzzMetrics</b> is the default registry, keeping them in memory and exporting them to JMX;
+ * implement this interface to forward them to another metrics library. <b>record</b> is called by
+ * the threads sending the requests, once per request, and must not block.
+ */
+public interface BuzzMetricsRegistry
+{
+    /**
+     * Record the measures of a request.
+     *
+     * @param sample of the request
+     */
+    void record( BuzzOperationSample sample );
+}
@@ -0,0 +1,121 @@
+package com.google.buzz.metrics;
+
+/**
+ * Measures of one request of an operation of the Buzz API. <br/>
+ * The time of the request is split into the time spent signing it, waiting for the network, and
+ * parsing the response body. A phase the request did not reach takes no time.
+ */
+public class BuzzOperationSample
+{
+    /**
+     * Name of the requests sent outside of a named operation
+     */
+    public static final String UNNAMED = "other";
+
+    private final String operation;
+
+    private final long signingNanos;
+
+    private final long networkNanos;
+
+    private final long parsingNanos;
+
+    private final long bytesOut;
+
+    private final long bytesIn;
+
+    private final Throwable error;
+
+    /**
+     * Creates a sample.
+     *
+     * @param operation name, such as <b>getPosts</b>, or null if unnamed
+     * @param signingNanos time spent signing the request
+     * @param networkNanos time spent sending the request and waiting for the response
+     * @param parsingNanos time spent reading and parsing the response body
+     * @param bytesOut bytes of the request body
+     * @param bytesIn bytes of the response body read
+     * @param error that failed the request, or null if it succeeded
+     */
+    public BuzzOperationSample( String operation, long signingNanos, long networkNanos, long parsingNanos,
+                                long bytesOut, long bytesIn, Throwable error )
+    {
+        this.operation = operation != null ? operation : UNNAMED;
+        this.signingNanos = signingNanos;
+        this.networkNanos = networkNanos;
+        this.parsingNanos = parsingNanos;
+        this.bytesOut = bytesOut;
+        this.bytesIn = bytesIn;
+        this.error = error;
+    }
+
+    /**
+     * @return the name of the operation
+     */
+    public String getOperation()
+    {
+        return operation;
+    }
+
+    /**
+     * @return the time spent signing the request, in nanoseconds
+     */
+    public long getSigningNanos()
+    {
+        return signingNanos;
+    }
+
+    /**
+     * @return the time spent sending the request and waiting for the response, in nanoseconds
+     */
+    public long getNetworkNanos()
+    {
+        return networkNanos;
+    }
+
+    /**
+     * @return the time spent reading and parsing the response body, in nanoseconds
+     */
+    public long getParsingNanos()
+    {
+        return parsingNanos;
+    }
+
+    /**
+     * @return the time of the whole request, in nanoseconds
+     */
+    public long getTotalNanos()
+    {
+        return signingNanos + networkNanos + parsingNanos;
+    }
+
+    /**
+     * @return the bytes of the request body
+     */
+    public long getBytesOut()
+    {
+        return bytesOut;
+    }
+
+    /**
+     * @return the bytes of the response body read
+     */
+    public long getBytesIn()
+    {
+        return bytesIn;
+    }
+
+    /**
+     * @return the error that failed the request, or null if it succeeded
+     */
+    public Throwable getError()
+    {
+        return error;
+    }
+
+    public String toString()
+    {
+        return operation + ": signing=" + signingNanos + "ns, network=" + networkNanos + "ns, parsing="
+            + parsingNanos + "ns, out=" + bytesOut + ", in=" + bytesIn + ( error != null ? ", error=" + error : "" );
+    }
+}
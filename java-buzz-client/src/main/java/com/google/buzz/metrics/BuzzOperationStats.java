@@ -0,0 +1,212 @@
+package com.google.buzz.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures of an operation of the Buzz API: requests, errors by class, bytes in and out, and the
+ * histograms of the latency of the requests and of each of their phases.
+ */
+public class BuzzOperationStats
+    implements BuzzOperationStatsMXBean
+{
+    private final String operation;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private final ConcurrentHashMap<String, AtomicLong> errorsByClass = new ConcurrentHashMap<String, AtomicLong>();
+
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    private final AtomicLong bytesIn = new AtomicLong();
+
+    private final BuzzLatencyHistogram latency = new BuzzLatencyHistogram();
+
+    private final BuzzLatencyHistogram network = new BuzzLatencyHistogram();
+
+    private final BuzzLatencyHistogram signing = new BuzzLatencyHistogram();
+
+    private final BuzzLatencyHistogram parsing = new BuzzLatencyHistogram();
+
+    /**
+     * @param operation name of the operation
+     */
+    public BuzzOperationStats( String operation )
+    {
+        this.operation = operation;
+    }
+
+    /**
+     * Record the measures of a request of the operation.
+     *
+     * @param sample of the request
+     */
+    public void record( BuzzOperationSample sample )
+    {
+        requests.incrementAndGet();
+        if ( sample.getError() != null )
+        {
+            errors.incrementAndGet();
+            String name = sample.getError().getClass().getSimpleName();
+            AtomicLong counter = errorsByClass.get( name );
+            if ( counter == null )
+            {
+                errorsByClass.putIfAbsent( name, new AtomicLong() );
+                counter = errorsByClass.get( name );
+            }
+            counter.incrementAndGet();
+        }
+        bytesOut.addAndGet( sample.getBytesOut() );
+        bytesIn.addAndGet( sample.getBytesIn() );
+        latency.record( sample.getTotalNanos() );
+        network.record( sample.getNetworkNanos() );
+        signing.record( sample.getSigningNanos() );
+        parsing.record( sample.getParsingNanos() );
+    }
+
+    public String getOperation()
+    {
+        return operation;
+    }
+
+    public long getRequests()
+    {
+        return requests.get();
+    }
+
+    public long getErrors()
+    {
+        return errors.get();
+    }
+
+    public Map<String, Long> getErrorsByClass()
+    {
+        Map<String, Long> copy = new TreeMap<String, Long>();
+        for ( Map.Entry<String, AtomicLong> entry : errorsByClass.entrySet() )
+        {
+            copy.put( entry.getKey(), entry.getValue().get() );
+        }
+        return copy;
+    }
+
+    public long getBytesOut()
+    {
+        return bytesOut.get();
+    }
+
+    public long getBytesIn()
+    {
+        return bytesIn.get();
+    }
+
+    /**
+     * @return the histogram of the latency of the requests
+     */
+    public BuzzLatencyHistogram getLatency()
+    {
+        return latency;
+    }
+
+    /**
+     * @return the histogram of the time spent sending the requests and waiting for the responses
+     */
+    public BuzzLatencyHistogram getNetworkLatency()
+    {
+        return network;
+    }
+
+    /**
+     * @return the histogram of the time spent signing the requests
+     */
+    public BuzzLatencyHistogram getSigningLatency()
+    {
+        return signing;
+    }
+
+    /**
+     * @return the histogram of the time spent reading and parsing the response bodies
+     */
+    public BuzzLatencyHistogram getParsingLatency()
+    {
+        return parsing;
+    }
+
+    public double getLatencyMeanMillis()
+    {
+        return latency.getMeanMillis();
+    }
+
+    public double getLatencyP50Millis()
+    {
+        return latency.getPercentileMillis( 50 );
+    }
+
+    public double getLatencyP95Millis()
+    {
+        return latency.getPercentileMillis( 95 );
+    }
+
+    public double getLatencyP99Millis()
+    {
+        return latency.getPercentileMillis( 99 );
+    }
+
+    public double getLatencyMaxMillis()
+    {
+        return latency.getMaxMillis();
+    }
+
+    public double getNetworkP50Millis()
+    {
+        return network.getPercentileMillis( 50 );
+    }
+
+    public double getNetworkP99Millis()
+    {
+        return network.getPercentileMillis( 99 );
+    }
+
+    public double getSigningP50Millis()
+    {
+        return signing.getPercentileMillis( 50 );
+    }
+
+    public double getSigningP99Millis()
+    {
+        return signing.getPercentileMillis( 99 );
+    }
+
+    public double getParsingP50Millis()
+    {
+        return parsing.getPercentileMillis( 50 );
+    }
+
+    public double getParsingP99Millis()
+    {
+        return parsing.getPercentileMillis( 99 );
+    }
+
+    public void reset()
+    {
+        requests.set( 0 );
+        errors.set( 0 );
+        errorsByClass.clear();
+        bytesOut.set( 0 );
+        bytesIn.set( 0 );
+        latency.reset();
+        network.reset();
+        signing.reset();
+        parsing.reset();
+    }
+
+    public String toString()
+    {
+        return operation + ": requests=" + getRequests() + ", errors=" + getErrorsByClass() + ", out=" + getBytesOut()
+            + ", in=" + getBytesIn() + ", latency={" + latency + "}, network={" + network + "}, signing={" + signing
+            + "}, parsing={" + parsing + "}";
+    }
+}
@@ -0,0 +1,68 @@
+package com.google.buzz.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the measures of an operation of the Buzz API. <br/>
+ * Latencies are in milliseconds: the latency of a request is the sum of its signing, network and
+ * parsing times.
+ */
+public interface BuzzOperationStatsMXBean
+{
+    /**
+     * @return the name of the operation
+     */
+    String getOperation();
+
+    /**
+     * @return the number of requests
+     */
+    long getRequests();
+
+    /**
+     * @return the number of failed requests
+     */
+    long getErrors();
+
+    /**
+     * @return the number of failed requests, by simple name of the exception class
+     */
+    Map<String, Long> getErrorsByClass();
+
+    /**
+     * @return the bytes of the request bodies
+     */
+    long getBytesOut();
+
+    /**
+     * @return the bytes of the response bodies
+     */
+    long getBytesIn();
+
+    double getLatencyMeanMillis();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP95Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyMaxMillis();
+
+    double getNetworkP50Millis();
+
+    double getNetworkP99Millis();
+
+    double getSigningP50Millis();
+
+    double getSigningP99Millis();
+
+    double getParsingP50Millis();
+
+    double getParsingP99Millis();
+
+    /**
+     * Forget the measures.
+     */
+    void reset();
+}
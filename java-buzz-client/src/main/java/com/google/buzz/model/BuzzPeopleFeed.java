@@ -0,0 +1,126 @@
+package com.google.buzz.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Model class to represent a page of people ( Portable Contacts response ).
+ */
+public class BuzzPeopleFeed
+{
+    /**
+     * Index of the first profile of the page in the whole list
+     */
+    private int startIndex;
+
+    /**
+     * Number of profiles per page
+     */
+    private int itemsPerPage;
+
+    /**
+     * Number of profiles of the whole list
+     */
+    private int totalResults;
+
+    /**
+     * The profiles of the page
+     */
+    private List<BuzzUserProfile> profiles = new ArrayList<BuzzUserProfile>( 0 );
+
+    /**
+     * @return the index of the first profile of the page
+     */
+    public int getStartIndex()
+    {
+        return startIndex;
+    }
+
+    /**
+     * @param startIndex the startIndex to set
+     */
+    public void setStartIndex( int startIndex )
+    {
+        this.startIndex = startIndex;
+    }
+
+    /**
+     * @return the number of profiles per page
+     */
+    public int getItemsPerPage()
+    {
+        return itemsPerPage;
+    }
+
+    /**
+     * @param itemsPerPage the itemsPerPage to set
+     */
+    public void setItemsPerPage( int itemsPerPage )
+    {
+        this.itemsPerPage = itemsPerPage;
+    }
+
+    /**
+     * @return the number of profiles of the whole list
+     */
+    public int getTotalResults()
+    {
+        return totalResults;
+    }
+
+    /**
+     * @param totalResults the totalResults to set
+     */
+    public void setTotalResults( int totalResults )
+    {
+        this.totalResults = totalResults;
+    }
+
+    /**
+     * @return the profiles
+     */
+    public List<BuzzUserProfile> getProfiles()
+    {
+        return profiles;
+    }
+
+    /**
+     * @param profiles the profiles to set
+     */
+    public void setProfiles( List<BuzzUserProfile> profiles )
+    {
+        this.profiles = profiles;
+    }
+
+    /**
+     * Overwrite the default toString method
+     * 
+     * @return the string representation of the object
+     */
+    public String toString()
+    {
+        return toString( "\n" );
+    }
+
+    /**
+     * Print the object in a pretty way.
+     * 
+     * @param indent to print the attributes
+     * @return a formatted string representation of the object
+     */
+    public String toString( String indent )
+    {
+        StringBuilder sb = new StringBuilder();
+        String newIndent = indent + "\t";
+        sb.append( indent + "BuzzPeopleFeed:" );
+        sb.append( newIndent + "Start Index: " + startIndex );
+        sb.append( newIndent + "Items Per Page: " + itemsPerPage );
+        sb.append( newIndent + "Total Results: " + totalResults );
+        sb.append( newIndent + "Profiles: " );
+        for ( int i = 0; i < profiles.size(); i++ )
+        {
+            sb.append( profiles.get( i ).toString( newIndent + "\t" ) );
+        }
+        return sb.toString();
+    }
+}
@@ -1,7 +1,7 @@
 package com.google.buzz.oauth;
 
-import java.net.URLConnection;
 import com.google.buzz.exception.BuzzAuthenticationException;
+import com.google.buzz.io.BuzzRequest;
 
 /**
  *  Wrapper for OAuth implementation
@@ -66,7 +66,7 @@ public interface BuzzOAuth
      * @param request to be signed with the access token
      * @throws BuzzAuthenticationException if an OAuth problem occurs
      */
-    public void signRequest( URLConnection request )
+    public void signRequest( BuzzRequest request )
         throws BuzzAuthenticationException;
 
 
@@ -1,6 +1,5 @@
 package com.google.buzz.oauth;
 
-import java.net.URLConnection;
 import java.net.URLEncoder;
 import java.io.UnsupportedEncodingException;
 
@@ -11,10 +10,14 @@ import oauth.signpost.commonshttp.CommonsHttpOAuthProvider;
 // Made signpost 1.2.1.1 compliant
 //import oauth.signpost.signature.SignatureMethod;
 import com.google.buzz.exception.BuzzAuthenticationException;
+import com.google.buzz.io.BuzzRequest;
 
 /**
  * This class is intended to be use as a wrapper of OAuth library tasks, facilitating the execution
  * of OAuth methods to the main Buzz class.
+ * <p>
+ * The signpost consumer keeps the parameters of the request being signed, so the methods are
+ * synchronized and requests of several threads are signed one at a time.
  * 
  * @author roberto.estivill
  */
@@ -45,6 +48,29 @@ public class BuzzOAuth1 implements BuzzOAuth
      */
     private OAuthProvider provider;
 
+    /**
+     * Creates an OAuth wrapper to be set up with <b>getAuthenticationUrl</b> or
+     * <b>setConsumerForScope</b>.
+     */
+    public BuzzOAuth1()
+    {
+    }
+
+    /**
+     * Creates an OAuth wrapper signing with an access token already retrieved. It has no provider,
+     * so it only signs requests.
+     * 
+     * @param consumerKey of the third party application
+     * @param consumerSecret of the third party application
+     * @param accessToken to sign requests
+     * @param tokenSecret of the access token
+     */
+    BuzzOAuth1( String consumerKey, String consumerSecret, String accessToken, String tokenSecret )
+    {
+        consumer = new DefaultOAuthConsumer( consumerKey, consumerSecret );
+        consumer.setTokenWithSecret( accessToken, tokenSecret );
+    }
+
 
     public int getOAuthVersion()
     { return 1; }
@@ -59,7 +85,7 @@ public class BuzzOAuth1 implements BuzzOAuth
      * @param callbackUrl the url google should redirect the user after a successful login
      * @return the authentication url for the user to log in
      */
-    public String getAuthenticationUrl( String scope, String consumerKey,
+    public synchronized String getAuthenticationUrl( String scope, String consumerKey,
                                         String consumerSecret, String callbackUrl )
         throws BuzzAuthenticationException
     {
@@ -78,7 +104,7 @@ public class BuzzOAuth1 implements BuzzOAuth
         return authUrl;
     }
 
-    public void setConsumerForScope(String consumerKey, 
+    public synchronized void setConsumerForScope(String consumerKey, 
                                     String consumerSecret,
                                     String scope) 
         throws BuzzAuthenticationException
@@ -105,7 +131,7 @@ public class BuzzOAuth1 implements BuzzOAuth
      * @param code for retrieve accessToken 
      * @throws BuzzAuthenticationException if any OAuth error occurs
      */
-    public void retrieveAccessToken( String code, String redirectUri )
+    public synchronized void retrieveAccessToken( String code, String redirectUri )
         throws BuzzAuthenticationException
     {
         try
@@ -127,7 +153,7 @@ public class BuzzOAuth1 implements BuzzOAuth
      * @param tokenSecret
      * @throws BuzzAuthenticationException if any OAuth error occurs
      */
-    public void setTokenWithSecret(String accessToken, String tokenSecret) {
+    public synchronized void setTokenWithSecret(String accessToken, String tokenSecret) {
 		consumer.setTokenWithSecret(accessToken, tokenSecret);
 	}
 
@@ -138,24 +164,44 @@ public class BuzzOAuth1 implements BuzzOAuth
      * @param request to be signed with the access token
      * @throws BuzzAuthenticationException if an OAuth problem occurs
      */
-    public void signRequest( URLConnection request )
+    public synchronized void signRequest( BuzzRequest request )
         throws BuzzAuthenticationException
     {
+        BuzzSignEvent event = new BuzzSignEvent();
+        event.begin();
         try
         {
-            consumer.sign( request );
+            consumer.sign( new BuzzRequestAdapter( request ) );
+            event.record( request, getOAuthVersion(), false );
         }
         catch ( Exception e )
         {
+            event.record( request, getOAuthVersion(), true );
             throw new BuzzAuthenticationException( e );
         }
     }
 
+    /**
+     * Sign a request with the token of an account, the consumer being shared by the accounts of a
+     * token manager.
+     * 
+     * @param request to be signed with the access token
+     * @param accessToken of the account
+     * @param tokenSecret of the access token
+     * @throws BuzzAuthenticationException if an OAuth problem occurs
+     */
+    synchronized void signRequest( BuzzRequest request, String accessToken, String tokenSecret )
+        throws BuzzAuthenticationException
+    {
+        consumer.setTokenWithSecret( accessToken, tokenSecret );
+        signRequest( request );
+    }
+
 
-    public String getToken()
+    public synchronized String getToken()
     { return consumer.getToken(); }
 
-    public String getTokenSecret()
+    public synchronized String getTokenSecret()
     { return consumer.getTokenSecret(); }
 
 }
@@ -1,22 +1,38 @@
 package com.google.buzz.oauth;
 
-import java.net.URLConnection;
 import java.net.URLEncoder;
 import java.net.URI;
 import java.net.URISyntaxException;
-import javax.net.ssl.HttpsURLConnection;
 import java.io.UnsupportedEncodingException;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.json.simple.JSONValue;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.ParseException;
 import com.google.buzz.exception.BuzzAuthenticationException;
 import com.google.buzz.exception.BuzzIOException;
 import com.google.buzz.io.BuzzIO;
+import com.google.buzz.io.BuzzRequest;
+import com.google.buzz.io.BuzzResponse;
+import com.google.buzz.io.BuzzTransport;
+import com.google.buzz.util.Utf8;
 
 /**
  * implementation of OAuth2 API. 
+ * <p>
+ * The access token, refresh token and expire time are published together, so concurrent requests
+ * always sign with a consistent token. When the token is about to expire, a single refresh request
+ * is sent and the other requests wait for its outcome. The optional background refresher renews the
+ * token ahead of expiry, so requests do not wait for refreshes at all.
  * 
  * @author ruslan@shevchenko.kiev.ua
  */
@@ -30,12 +46,84 @@ public class BuzzOAuth2 implements BuzzOAuth
     public static final String AUTHORIZATION_CODE = "authorization_code";
     public static final String REFRESH_TOKEN = "refresh_token";
 
-    private String        refreshToken;
-    private String        accessToken;
-    private long          expireTime;
-    private String        consumerKey;
-    private String        consumerSecret;
-    private String        redirectUri;
+    /**
+     * Requests refresh the token when it expires within this delay, in milliseconds
+     */
+    public static final long REFRESH_MARGIN = 300L * 1000;
+
+    /**
+     * The background refresher renews the token when it expires within this delay, in milliseconds
+     */
+    public static final long BACKGROUND_REFRESH_MARGIN = 600L * 1000;
+
+    /**
+     * Delay before the background refresher tries again after a failed refresh, in milliseconds
+     */
+    private static final long BACKGROUND_RETRY_DELAY = 30L * 1000;
+
+    /**
+     * Scheduler of the background refreshes, shared by all the instances
+     */
+    private static final ScheduledExecutorService REFRESHER =
+        Executors.newSingleThreadScheduledExecutor( new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "buzz-token-refresh-" + count.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+
+    /**
+     * The current token
+     */
+    private volatile TokenState token = new TokenState( null, null, 0 );
+
+    /**
+     * The refresh in flight, if any
+     */
+    private final AtomicReference<CompletableFuture<TokenState>> refreshing =
+        new AtomicReference<CompletableFuture<TokenState>>();
+
+    /**
+     * The next background refresh, or null if the background refresher is stopped
+     */
+    private ScheduledFuture<?> backgroundRefresh;
+
+    private volatile String        consumerKey;
+    private volatile String        consumerSecret;
+    private volatile String        redirectUri;
+    private volatile BuzzTransport transport;
+
+    /**
+     * The token manager of the account, or null
+     */
+    private final BuzzTokenManager manager;
+
+    /**
+     * Creates an OAuth wrapper to be set up with <b>getAuthenticationUrl</b> or
+     * <b>setConsumerForScope</b>.
+     */
+    public BuzzOAuth2()
+    {
+        this.manager = null;
+    }
+
+    /**
+     * Creates the OAuth wrapper of an account of a token manager, sharing its consumer and the
+     * transport of its token requests.
+     * 
+     * @param manager of the account
+     */
+    BuzzOAuth2( BuzzTokenManager manager )
+    {
+        this.manager = manager;
+        this.consumerKey = manager.getConsumerKey();
+        this.consumerSecret = manager.getConsumerSecret();
+    }
 
     public  int           getOAuthVersion()
      { return 2; }
@@ -79,20 +167,225 @@ public class BuzzOAuth2 implements BuzzOAuth
      doTokenRequest(AUTHORIZATION_CODE,code,redirectUri);
     }
 
+    /**
+     * Refresh the access token. If a refresh is already in flight, wait for it instead of sending
+     * another one.
+     * 
+     * @throws BuzzAuthenticationException if the token can not be refreshed
+     */
     public void  doRefreshTokenRequest()
         throws BuzzAuthenticationException
     {
-     doTokenRequest(REFRESH_TOKEN,null,redirectUri);
+     refresh(null,0);
+    }
+
+    /**
+     * Refresh the token, once for all the threads asking at the same time.
+     * 
+     * @param stale the token found about to expire, or null to refresh anyway
+     * @param margin the token found is about to expire when it expires within this delay
+     * @return the refreshed token
+     * @throws BuzzAuthenticationException if the token can not be refreshed
+     */
+    private TokenState refresh( TokenState stale, long margin )
+        throws BuzzAuthenticationException
+    {
+        CompletableFuture<TokenState> mine = new CompletableFuture<TokenState>();
+        CompletableFuture<TokenState> inFlight = refreshing.compareAndExchange( null, mine );
+        if ( inFlight != null )
+        {
+            return await( inFlight );
+        }
+        try
+        {
+            TokenState current = token;
+            if ( stale == null || current == stale || expiresWithin( current, margin ) )
+            {
+                doTokenRequest( REFRESH_TOKEN, null, redirectUri );
+            }
+            // else the token was replaced since it was found about to expire.
+            mine.complete( token );
+            return token;
+        }
+        catch ( BuzzAuthenticationException e )
+        {
+            mine.completeExceptionally( e );
+            throw e;
+        }
+        catch ( RuntimeException e )
+        {
+            mine.completeExceptionally( e );
+            throw e;
+        }
+        finally
+        {
+            refreshing.set( null );
+        }
+    }
+
+    /**
+     * Refresh the token if it expires within the delay, once for all the threads asking at the
+     * same time.
+     * 
+     * @param margin delay before expiry, in milliseconds
+     * @return true if the token was found about to expire
+     * @throws BuzzAuthenticationException if the token can not be refreshed
+     */
+    boolean refreshIfExpiring( long margin )
+        throws BuzzAuthenticationException
+    {
+        TokenState current = token;
+        if ( !expiresWithin( current, margin ) )
+        {
+            return false;
+        }
+        refresh( current, margin );
+        return true;
+    }
+
+    /**
+     * @param margin delay before expiry, in milliseconds
+     * @return true if the token expires within the delay
+     */
+    boolean isExpiring( long margin )
+    {
+        return expiresWithin( token, margin );
+    }
+
+    /**
+     * Wait for the refresh of another thread.
+     * 
+     * @param inFlight the refresh
+     * @return the refreshed token
+     * @throws BuzzAuthenticationException if the refresh failed or the thread was interrupted
+     */
+    private static TokenState await( CompletableFuture<TokenState> inFlight )
+        throws BuzzAuthenticationException
+    {
+        try
+        {
+            return inFlight.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new BuzzAuthenticationException( "Interrupted while waiting for the token refresh", e );
+        }
+        catch ( ExecutionException e )
+        {
+            throw new BuzzAuthenticationException( e.getCause().getMessage(), e.getCause() );
+        }
+    }
+
+    /**
+     * @return true if the token expires within the delay
+     */
+    private static boolean expiresWithin( TokenState state, long margin )
+    {
+        return state.expireTime - System.currentTimeMillis() < margin;
+    }
+
+    /**
+     * Start renewing the token in the background, ahead of its expiry: the token is refreshed when
+     * it expires within <b>BACKGROUND_REFRESH_MARGIN</b>, so requests never refresh it themselves. A
+     * failed refresh is tried again after a short delay. The refresher runs on a shared daemon
+     * thread until stopped.
+     */
+    public synchronized void startBackgroundRefresh()
+    {
+        if ( backgroundRefresh == null )
+        {
+            scheduleBackgroundRefresh( delayUntilBackgroundRefresh() );
+        }
+    }
+
+    /**
+     * Stop renewing the token in the background.
+     */
+    public synchronized void stopBackgroundRefresh()
+    {
+        if ( backgroundRefresh != null )
+        {
+            backgroundRefresh.cancel( false );
+            backgroundRefresh = null;
+        }
+    }
+
+    /**
+     * @return true if the token is renewed in the background
+     */
+    public synchronized boolean isBackgroundRefreshing()
+    {
+        return backgroundRefresh != null;
+    }
+
+    /**
+     * Schedule the next background refresh.
+     */
+    private synchronized void scheduleBackgroundRefresh( long delay )
+    {
+        backgroundRefresh = REFRESHER.schedule( new Runnable()
+        {
+            public void run()
+            {
+                backgroundRefresh();
+            }
+        }, delay, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * Refresh the token if it expires soon, and schedule the next background refresh.
+     */
+    private void backgroundRefresh()
+    {
+        long delay;
+        try
+        {
+            TokenState current = token;
+            if ( expiresWithin( current, BACKGROUND_REFRESH_MARGIN ) )
+            {
+                refresh( current, BACKGROUND_REFRESH_MARGIN );
+            }
+            delay = delayUntilBackgroundRefresh();
+        }
+        catch ( BuzzAuthenticationException e )
+        {
+            delay = BACKGROUND_RETRY_DELAY;
+        }
+        catch ( RuntimeException e )
+        {
+            delay = BACKGROUND_RETRY_DELAY;
+        }
+        synchronized ( this )
+        {
+            if ( backgroundRefresh != null )
+            {
+                scheduleBackgroundRefresh( Math.max( delay, 1L ) );
+            }
+        }
+    }
+
+    /**
+     * @return the delay until the token expires within the background refresh margin
+     */
+    private long delayUntilBackgroundRefresh()
+    {
+        return Math.max( 0L, token.expireTime - BACKGROUND_REFRESH_MARGIN - System.currentTimeMillis() );
     }
 
     private void doTokenRequest(String grant_type, String code, String redirectUri)
         throws BuzzAuthenticationException
     {
+        BuzzTokenRefreshEvent event = new BuzzTokenRefreshEvent();
+        event.begin();
+        BuzzResponse response = null;
+        String sr = null;
+        Exception failure = null;
         try {
-          HttpsURLConnection cn = BuzzIO.createRequest(
+          BuzzRequest cn = BuzzIO.createRequest(
                                   "https://accounts.google.com/o/oauth2/token",
                                   BuzzIO.HTTP_METHOD_POST);
-          cn.setRequestProperty("Content-Type","application/x-www-form-urlencoded");
+          cn.setHeader("Content-Type","application/x-www-form-urlencoded");
           StringBuilder sb = new StringBuilder();
           if (code!=null) {
             sb.append("code=").append(URLEncoder.encode(code,"UTF-8")).append("&");
@@ -105,11 +398,12 @@ public class BuzzOAuth2 implements BuzzOAuth
             sb.append("redirect_uri=").append(URLEncoder.encode(redirectUri,"UTF-8")).append("&");
           }
           if (grant_type.equals(REFRESH_TOKEN)) {
-            sb.append("refresh_token=").append(URLEncoder.encode(refreshToken,"UTF-8")).append("&");
+            sb.append("refresh_token=").append(URLEncoder.encode(token.refreshToken,"UTF-8")).append("&");
           }
           sb.append("grant_type=").append(grant_type);
           BuzzIO.addBody(cn,sb.toString());
-          String sr = BuzzIO.send(cn);
+          response = getTransport().execute(cn);
+          sr = BuzzIO.checkResponse(cn,response);
           Object oJsonObject = JSONValue.parseWithException(sr);
           JSONObject jsonObject=null;
           if (oJsonObject instanceof JSONObject) {
@@ -120,24 +414,27 @@ public class BuzzOAuth2 implements BuzzOAuth
           Object oAccessToken = jsonObject.get("access_token");
           Object oRefreshToken = jsonObject.get("refresh_token");
           Object oExpiresIn = jsonObject.get("expires_in");
-          if (oAccessToken!=null) {
-            this.accessToken = (String)oAccessToken;
-          }
-          if (oRefreshToken!=null) {
-            this.refreshToken = (String)oRefreshToken;
-          }
-          if (oExpiresIn!=null) {
-            long now = System.currentTimeMillis();
-            this.expireTime = now + ((Long)oExpiresIn)*1000L; 
+          long now = System.currentTimeMillis();
+          synchronized (this) {
+            TokenState current = token;
+            token = new TokenState(oAccessToken!=null ? (String)oAccessToken : current.accessToken,
+                                   oRefreshToken!=null ? (String)oRefreshToken : current.refreshToken,
+                                   oExpiresIn!=null ? now + ((Long)oExpiresIn)*1000L : current.expireTime);
           }
         } catch(BuzzIOException ex) {
+           failure = ex;
            throw new BuzzAuthenticationException("Can't retrieve token:"+ex.getMessage(),ex);
         } catch(IllegalArgumentException ex) {
+           failure = ex;
            throw new BuzzAuthenticationException("Can't retrieve token:"+ex.getMessage(),ex);
         } catch(UnsupportedEncodingException ex) {
+           failure = ex;
            throw new BuzzAuthenticationException("Can't retrieve token: unsupported encodeing:"+ex.getMessage(),ex);
         } catch(ParseException ex) {
+           failure = ex;
            throw new BuzzAuthenticationException("Can't retrieve token:"+ex.getMessage(),ex);
+        } finally {
+           event.record(grant_type, response!=null ? response.getStatus() : 0, Utf8.length(sr), failure);
         }
     }
 
@@ -157,23 +454,48 @@ public class BuzzOAuth2 implements BuzzOAuth
      * @param accessToken to sign requets
      * @throws BuzzAuthenticationException if any OAuth error occurs
      */
-    public void setAccessToken(String accessToken )
+    public synchronized void setAccessToken(String accessToken )
         throws BuzzAuthenticationException
     {
-       this.accessToken = accessToken;
+       token = new TokenState(accessToken, token.refreshToken, token.expireTime);
     }
     
-    public void setRefreshToken(String refreshToken)
+    public synchronized void setRefreshToken(String refreshToken)
     {
-      this.refreshToken = refreshToken;
+      token = new TokenState(token.accessToken, refreshToken, token.expireTime);
     }
 
     /**
      * set expire time in milliseconds.
      **/
-    public void setExpireTime(long expireTime)
+    public synchronized void setExpireTime(long expireTime)
+    {
+      token = new TokenState(token.accessToken, token.refreshToken, expireTime);
+    }
+
+    /**
+     * return expire time in milliseconds.
+     **/
+    public long getExpireTime()
     {
-      this.expireTime = expireTime;
+      return token.expireTime;
+    }
+
+    /**
+     * transport for token requests; default transport of BuzzIO if not set.
+     **/
+    public BuzzTransport getTransport()
+    {
+      BuzzTransport t = transport;
+      if (t==null && manager!=null) {
+        t = manager.getTransport();
+      }
+      return t!=null ? t : BuzzIO.getTransport();
+    }
+
+    public void setTransport(BuzzTransport transport)
+    {
+      this.transport=transport;
     }
 
     public String getRedirectUri()
@@ -191,9 +513,8 @@ public class BuzzOAuth2 implements BuzzOAuth
      * @param tokenSecret - refreshToken
      * @throws BuzzAuthenticationException if any OAuth error occurs
      */
-    public void setTokenWithSecret(String accessToken, String tokenSecret) {
-		this.accessToken=accessToken;
-                this.refreshToken=tokenSecret;
+    public synchronized void setTokenWithSecret(String accessToken, String tokenSecret) {
+		token = new TokenState(accessToken, tokenSecret, token.expireTime);
     }
 
     /**
@@ -201,7 +522,7 @@ public class BuzzOAuth2 implements BuzzOAuth
      **/
     public String getToken()
     {
-     return this.accessToken;
+     return token.accessToken;
     }
 
     /**
@@ -209,7 +530,7 @@ public class BuzzOAuth2 implements BuzzOAuth
      **/
     public String getTokenSecret()
     {
-     return this.refreshToken;
+     return token.refreshToken;
     }
 
 
@@ -217,18 +538,27 @@ public class BuzzOAuth2 implements BuzzOAuth
     /**
      * Sign the request to be send. <br/>
      * <b>BuzzOAuth.setAccessToken</b> method should be called before this method.
+     * The token is refreshed first if it expires within <b>REFRESH_MARGIN</b>.
      * 
      * @param request to be signed with the access token
      * @throws BuzzAuthenticationException if an OAuth problem occurs
      */
-    public void signRequest( URLConnection request )
+    public void signRequest( BuzzRequest request )
         throws BuzzAuthenticationException
     {
-       long millisNow = System.currentTimeMillis();
-       if (expireTime-millisNow < (300L*1000)) {
-          doRefreshTokenRequest();          
+       BuzzSignEvent event = new BuzzSignEvent();
+       event.begin();
+       boolean signed = false;
+       try {
+         TokenState current = token;
+         if (expiresWithin(current,REFRESH_MARGIN)) {
+            current = refresh(current,REFRESH_MARGIN);
+         }
+         request.setHeader("Authorization","OAuth "+current.accessToken);
+         signed = true;
+       } finally {
+         event.record(request, getOAuthVersion(), !signed);
        }
-       request.setRequestProperty("Authorization","OAuth "+accessToken);
     }
 
     private String createGetUrl(String baseUrl,Map<String,String> params)
@@ -255,4 +585,23 @@ public class BuzzOAuth2 implements BuzzOAuth
      return sb.toString();
     }
 
+    /**
+     * Access token, refresh token and expire time, replaced as a whole.
+     */
+    private static final class TokenState
+    {
+        private final String accessToken;
+
+        private final String refreshToken;
+
+        private final long expireTime;
+
+        TokenState( String accessToken, String refreshToken, long expireTime )
+        {
+            this.accessToken = accessToken;
+            this.refreshToken = refreshToken;
+            this.expireTime = expireTime;
+        }
+    }
+
 }
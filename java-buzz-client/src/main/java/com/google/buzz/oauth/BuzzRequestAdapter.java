@@ -0,0 +1,80 @@
+package com.google.buzz.oauth;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import oauth.signpost.http.HttpRequest;
+
+import com.google.buzz.io.BuzzRequest;
+
+/**
+ * Adapter exposing a <b>BuzzRequest</b> as a signpost request, so the OAuth 1 consumer can sign it.
+ */
+class BuzzRequestAdapter
+    implements HttpRequest
+{
+    /**
+     * The adapted request
+     */
+    private final BuzzRequest request;
+
+    /**
+     * @param request to adapt
+     */
+    BuzzRequestAdapter( BuzzRequest request )
+    {
+        this.request = request;
+    }
+
+    public String getMethod()
+    {
+        return request.getMethod();
+    }
+
+    public String getRequestUrl()
+    {
+        return request.getUrl();
+    }
+
+    public void setRequestUrl( String url )
+    {
+        request.setUrl( url );
+    }
+
+    public void setHeader( String name, String value )
+    {
+        request.setHeader( name, value );
+    }
+
+    public String getHeader( String name )
+    {
+        return request.getHeader( name );
+    }
+
+    public Map<String, String> getAllHeaders()
+    {
+        return request.getHeaders();
+    }
+
+    public InputStream getMessagePayload()
+        throws IOException
+    {
+        if ( request.getBody() == null )
+        {
+            return null;
+        }
+        return new ByteArrayInputStream( request.getBody().getBytes( "UTF-8" ) );
+    }
+
+    public String getContentType()
+    {
+        return request.getHeader( "Content-Type" );
+    }
+
+    public Object unwrap()
+    {
+        return request;
+    }
+}
@@ -0,0 +1,55 @@
+package com.google.buzz.oauth;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import com.google.buzz.io.BuzzEndpoint;
+import com.google.buzz.io.BuzzRequest;
+
+/**
+ * Flight recorder event of the signature of a request. With OAuth 2 it includes the refresh of
+ * an expiring token, recorded as a <b>BuzzTokenRefreshEvent</b> as well.
+ */
+@Name( "com.google.buzz.Sign" )
+@Label( "Buzz Sign" )
+@Category( "Buzz" )
+@Description( "Signature of a request with OAuth" )
+@StackTrace( false )
+public class BuzzSignEvent
+    extends Event
+{
+    @Label( "Endpoint" )
+    String endpoint;
+
+    @Label( "Operation" )
+    String operation;
+
+    @Label( "OAuth Version" )
+    int oauthVersion;
+
+    @Label( "Failed" )
+    boolean failed;
+
+    /**
+     * Commit the event, if recorded.
+     *
+     * @param request signed
+     * @param version of OAuth
+     * @param failure true if the request could not be signed
+     */
+    void record( BuzzRequest request, int version, boolean failure )
+    {
+        if ( shouldCommit() )
+        {
+            endpoint = BuzzEndpoint.of( request ).name();
+            operation = request.getOperation();
+            oauthVersion = version;
+            failed = failure;
+            commit();
+        }
+    }
+}
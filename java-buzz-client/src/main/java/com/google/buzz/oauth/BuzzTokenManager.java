@@ -0,0 +1,586 @@
+package com.google.buzz.oauth;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.buzz.exception.BuzzAuthenticationException;
+import com.google.buzz.exception.BuzzHttpException;
+import com.google.buzz.exception.BuzzIOException;
+import com.google.buzz.io.BuzzRequest;
+import com.google.buzz.io.BuzzTransport;
+import com.google.buzz.io.RateLimitedTransport;
+
+/**
+ * Credentials of many accounts of a single third party application. <br/>
+ * Every account keeps only its own tokens; the consumer key and secret, the transport of the token
+ * requests and the refresh schedule are shared by all of them, so thousands of accounts fit in a
+ * single manager. OAuth 1 requests are all signed by one consumer, one at a time. Requests are
+ * signed for an account with <b>signRequest</b>, or through the client returned by
+ * <b>Buzz.forAccount</b>. <br/>
+ * The scheduled refresh renews the OAuth 2 tokens about to expire on a small shared pool, each
+ * account refreshing once at a time, so requests rarely wait for a refresh. Each account also keeps
+ * its rate limit state: its number of signed requests, and the time it is throttled until after the
+ * server answered <b>429 Too Many Requests</b>, during which its requests fail fast instead of
+ * reaching the server. <br/>
+ * The manager is safe to use from several threads.
+ */
+public class BuzzTokenManager
+{
+    /**
+     * Default delay between two scheduled refreshes, in milliseconds
+     */
+    public static final long DEFAULT_REFRESH_PERIOD = 60L * 1000;
+
+    /**
+     * Number of threads refreshing the tokens of all the managers
+     */
+    private static final int REFRESH_THREADS = 4;
+
+    /**
+     * Scheduler and executor of the refreshes of all the managers
+     */
+    private static final ScheduledExecutorService REFRESHER =
+        Executors.newScheduledThreadPool( REFRESH_THREADS, new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "buzz-token-manager-" + count.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+
+    /**
+     * Version of OAuth of the accounts
+     */
+    private final int oauthVersion;
+
+    /**
+     * The consumer key of the application
+     */
+    private final String consumerKey;
+
+    /**
+     * The consumer secret of the application
+     */
+    private final String consumerSecret;
+
+    /**
+     * The consumer signing the requests of all the OAuth 1 accounts, or null for OAuth 2
+     */
+    private final BuzzOAuth1 consumer;
+
+    /**
+     * The transport of the OAuth 2 token requests, or null to use the default one of BuzzIO
+     */
+    private volatile BuzzTransport transport;
+
+    /**
+     * Accounts by id
+     */
+    private final ConcurrentHashMap<String, Account> accounts = new ConcurrentHashMap<String, Account>();
+
+    /**
+     * The scheduled refresh, or null if not started
+     */
+    private ScheduledFuture<?> scheduledRefresh;
+
+    /**
+     * Tokens refreshed by the scheduled refresh
+     */
+    private final AtomicLong refreshes = new AtomicLong();
+
+    /**
+     * Refreshes of the scheduled refresh that failed
+     */
+    private final AtomicLong refreshFailures = new AtomicLong();
+
+    /**
+     * Creates a token manager.
+     *
+     * @param oauthVersion version of OAuth of the accounts, 1 or 2
+     * @param consumerKey of the application
+     * @param consumerSecret of the application
+     */
+    public BuzzTokenManager( int oauthVersion, String consumerKey, String consumerSecret )
+    {
+        if ( oauthVersion != 1 && oauthVersion != 2 )
+        {
+            throw new IllegalArgumentException( "oauth version must be 1 or 2" );
+        }
+        this.oauthVersion = oauthVersion;
+        this.consumerKey = consumerKey;
+        this.consumerSecret = consumerSecret;
+        this.consumer = oauthVersion == 1 ? new BuzzOAuth1( consumerKey, consumerSecret, null, null ) : null;
+    }
+
+    /**
+     * @return the version of OAuth of the accounts
+     */
+    public int getOAuthVersion()
+    {
+        return oauthVersion;
+    }
+
+    /**
+     * Add an account, or replace its credentials.
+     *
+     * @param accountId identifying the account
+     * @param accessToken to sign its requests
+     * @param tokenSecret the token secret for OAuth 1, the refresh token for OAuth 2
+     * @param expireTime of the access token in milliseconds, ignored for OAuth 1
+     * @return the account
+     */
+    public Account addAccount( String accountId, String accessToken, String tokenSecret, long expireTime )
+    {
+        BuzzOAuth oauth;
+        if ( oauthVersion == 1 )
+        {
+            oauth = new AccountOAuth1( consumer, accessToken, tokenSecret );
+        }
+        else
+        {
+            BuzzOAuth2 oauth2 = new BuzzOAuth2( this );
+            oauth2.setTokenWithSecret( accessToken, tokenSecret );
+            oauth2.setExpireTime( expireTime );
+            oauth = oauth2;
+        }
+        Account account = new Account( accountId, oauth );
+        accounts.put( accountId, account );
+        return account;
+    }
+
+    /**
+     * Remove an account.
+     *
+     * @param accountId identifying the account
+     * @return the removed account, or null if unknown
+     */
+    public Account removeAccount( String accountId )
+    {
+        return accounts.remove( accountId );
+    }
+
+    /**
+     * @param accountId identifying the account
+     * @return the account, or null if unknown
+     */
+    public Account getAccount( String accountId )
+    {
+        return accounts.get( accountId );
+    }
+
+    /**
+     * @return the ids of the accounts, a live view
+     */
+    public Set<String> getAccountIds()
+    {
+        return Collections.unmodifiableSet( accounts.keySet() );
+    }
+
+    /**
+     * @return the number of accounts
+     */
+    public int size()
+    {
+        return accounts.size();
+    }
+
+    /**
+     * Sign a request for an account. <br/>
+     * The OAuth 2 token of the account is refreshed first if it is about to expire.
+     *
+     * @param accountId identifying the account
+     * @param request to be signed
+     * @throws BuzzAuthenticationException if the account is unknown or an OAuth problem occurs
+     * @throws BuzzIOException if the account is throttled
+     */
+    public void signRequest( String accountId, BuzzRequest request )
+        throws BuzzAuthenticationException, BuzzIOException
+    {
+        Account account = accounts.get( accountId );
+        if ( account == null )
+        {
+            throw new BuzzAuthenticationException( "Unknown account: " + accountId );
+        }
+        account.signRequest( request );
+    }
+
+    /**
+     * @return the transport of the OAuth 2 token requests
+     */
+    BuzzTransport getTransport()
+    {
+        return transport;
+    }
+
+    /**
+     * Set the transport of the OAuth 2 token requests of all the accounts.
+     *
+     * @param transport to use, or null to use the default transport of BuzzIO
+     */
+    public void setTransport( BuzzTransport transport )
+    {
+        this.transport = transport;
+    }
+
+    /**
+     * @return the consumer key of the application
+     */
+    String getConsumerKey()
+    {
+        return consumerKey;
+    }
+
+    /**
+     * @return the consumer secret of the application
+     */
+    String getConsumerSecret()
+    {
+        return consumerSecret;
+    }
+
+    /**
+     * Refresh the OAuth 2 tokens of all the accounts expiring within
+     * <b>BuzzOAuth2.BACKGROUND_REFRESH_MARGIN</b>. A failed refresh is counted and tried again on
+     * the next call.
+     *
+     * @return the number of tokens refreshed
+     */
+    public int refreshExpiring()
+    {
+        if ( oauthVersion != 2 )
+        {
+            return 0;
+        }
+        int refreshed = 0;
+        for ( Account account : accounts.values() )
+        {
+            if ( refresh( (BuzzOAuth2) account.oauth ) )
+            {
+                refreshed++;
+            }
+        }
+        return refreshed;
+    }
+
+    /**
+     * Hand the refreshes of the OAuth 2 tokens expiring within
+     * <b>BuzzOAuth2.BACKGROUND_REFRESH_MARGIN</b> to the shared pool, without waiting for them.
+     */
+    private void scheduleRefreshes()
+    {
+        for ( Account account : accounts.values() )
+        {
+            final BuzzOAuth2 oauth2 = (BuzzOAuth2) account.oauth;
+            if ( oauth2.getTokenSecret() != null && oauth2.isExpiring( BuzzOAuth2.BACKGROUND_REFRESH_MARGIN ) )
+            {
+                REFRESHER.execute( new Runnable()
+                {
+                    public void run()
+                    {
+                        refresh( oauth2 );
+                    }
+                } );
+            }
+        }
+    }
+
+    /**
+     * Refresh the token of an account if it is about to expire. A token already being refreshed is
+     * not refreshed twice.
+     *
+     * @param oauth2 credentials of the account
+     * @return true if the token was refreshed
+     */
+    private boolean refresh( BuzzOAuth2 oauth2 )
+    {
+        if ( oauth2.getTokenSecret() == null )
+        {
+            return false;
+        }
+        try
+        {
+            if ( oauth2.refreshIfExpiring( BuzzOAuth2.BACKGROUND_REFRESH_MARGIN ) )
+            {
+                refreshes.incrementAndGet();
+                return true;
+            }
+        }
+        catch ( BuzzAuthenticationException e )
+        {
+            refreshFailures.incrementAndGet();
+        }
+        catch ( RuntimeException e )
+        {
+            refreshFailures.incrementAndGet();
+        }
+        return false;
+    }
+
+    /**
+     * Start refreshing the expiring tokens on a schedule, on a small pool of daemon threads shared
+     * by all the managers.
+     *
+     * @param period delay between two refreshes, in milliseconds
+     */
+    public synchronized void startScheduledRefresh( long period )
+    {
+        if ( scheduledRefresh == null && oauthVersion == 2 )
+        {
+            scheduledRefresh = REFRESHER.scheduleWithFixedDelay( new Runnable()
+            {
+                public void run()
+                {
+                    scheduleRefreshes();
+                }
+            }, 0, period, TimeUnit.MILLISECONDS );
+        }
+    }
+
+    /**
+     * Start refreshing the expiring tokens every <b>DEFAULT_REFRESH_PERIOD</b>.
+     */
+    public void startScheduledRefresh()
+    {
+        startScheduledRefresh( DEFAULT_REFRESH_PERIOD );
+    }
+
+    /**
+     * Stop refreshing the tokens on a schedule.
+     */
+    public synchronized void stopScheduledRefresh()
+    {
+        if ( scheduledRefresh != null )
+        {
+            scheduledRefresh.cancel( false );
+            scheduledRefresh = null;
+        }
+    }
+
+    /**
+     * @return the number of tokens refreshed on schedule
+     */
+    public long getRefreshes()
+    {
+        return refreshes.get();
+    }
+
+    /**
+     * @return the number of scheduled refreshes that failed
+     */
+    public long getRefreshFailures()
+    {
+        return refreshFailures.get();
+    }
+
+    public String toString()
+    {
+        return "accounts=" + accounts.size() + ", refreshes=" + refreshes.get() + ", refreshFailures="
+            + refreshFailures.get();
+    }
+
+    /**
+     * Credentials and rate limit state of an account.
+     */
+    public static final class Account
+    {
+        private final String accountId;
+
+        private final BuzzOAuth oauth;
+
+        /**
+         * Requests signed for the account
+         */
+        private final AtomicLong requests = new AtomicLong();
+
+        /**
+         * Time the account is throttled until, in milliseconds
+         */
+        private volatile long throttledUntil;
+
+        Account( String accountId, BuzzOAuth oauth )
+        {
+            this.accountId = accountId;
+            this.oauth = oauth;
+        }
+
+        /**
+         * @return the id of the account
+         */
+        public String getAccountId()
+        {
+            return accountId;
+        }
+
+        /**
+         * @return the OAuth credentials of the account, shared by all its requests
+         */
+        public BuzzOAuth getOAuth()
+        {
+            return oauth;
+        }
+
+        /**
+         * Sign a request for the account.
+         *
+         * @param request to be signed
+         * @throws BuzzAuthenticationException if an OAuth problem occurs
+         * @throws BuzzIOException if the account is throttled
+         */
+        public void signRequest( BuzzRequest request )
+            throws BuzzAuthenticationException, BuzzIOException
+        {
+            long wait = throttledUntil - System.currentTimeMillis();
+            if ( wait > 0 )
+            {
+                throw new BuzzIOException( "Account " + accountId + " is throttled for " + wait + " ms" );
+            }
+            oauth.signRequest( request );
+            requests.incrementAndGet();
+        }
+
+        /**
+         * Throttle the account, for example after the server answered that its quota is exceeded.
+         *
+         * @param delay during which the requests of the account fail fast, in milliseconds
+         */
+        public void throttle( long delay )
+        {
+            throttledUntil = System.currentTimeMillis() + delay;
+        }
+
+        /**
+         * Throttle the account if a request failed because the server answered <b>429 Too Many
+         * Requests</b>, for the <b>Retry-After</b> delay of the answer or
+         * <b>RateLimitedTransport.DEFAULT_RETRY_AFTER</b> when it had none.
+         *
+         * @param error that failed a request of the account
+         * @return true if the account was throttled
+         */
+        public boolean throttleIfRejected( Throwable error )
+        {
+            if ( !( error instanceof BuzzHttpException )
+                || ( (BuzzHttpException) error ).getStatus() != RateLimitedTransport.HTTP_TOO_MANY_REQUESTS )
+            {
+                return false;
+            }
+            long retryAfter = ( (BuzzHttpException) error ).getRetryAfter();
+            throttle( retryAfter >= 0 ? retryAfter : RateLimitedTransport.DEFAULT_RETRY_AFTER );
+            return true;
+        }
+
+        /**
+         * @return the time the account is throttled until in milliseconds, in the past if it is not
+         */
+        public long getThrottledUntil()
+        {
+            return throttledUntil;
+        }
+
+        /**
+         * @return true if the requests of the account currently fail fast
+         */
+        public boolean isThrottled()
+        {
+            return throttledUntil > System.currentTimeMillis();
+        }
+
+        /**
+         * @return the number of requests signed for the account
+         */
+        public long getRequests()
+        {
+            return requests.get();
+        }
+
+        public String toString()
+        {
+            return accountId + ": requests=" + requests.get() + ", throttled=" + isThrottled();
+        }
+    }
+
+    /**
+     * OAuth 1 credentials of an account: only its token and secret, its requests being signed by the
+     * consumer shared by all the accounts of the manager.
+     */
+    private static final class AccountOAuth1
+        implements BuzzOAuth
+    {
+        private final BuzzOAuth1 consumer;
+
+        private volatile String accessToken;
+
+        private volatile String tokenSecret;
+
+        AccountOAuth1( BuzzOAuth1 consumer, String accessToken, String tokenSecret )
+        {
+            this.consumer = consumer;
+            this.accessToken = accessToken;
+            this.tokenSecret = tokenSecret;
+        }
+
+        public int getOAuthVersion()
+        {
+            return 1;
+        }
+
+        public String getAuthenticationUrl( String scope, String consumerKey, String consumerSecret,
+                                            String callbackUrl )
+            throws BuzzAuthenticationException
+        {
+            throw new BuzzAuthenticationException( "The credentials of an account only sign requests" );
+        }
+
+        public void setConsumerForScope( String consumerKey, String consumerSecret, String scope )
+            throws BuzzAuthenticationException
+        {
+            throw new BuzzAuthenticationException( "The credentials of an account only sign requests" );
+        }
+
+        public void retrieveAccessToken( String code, String redirectUri )
+            throws BuzzAuthenticationException
+        {
+            throw new BuzzAuthenticationException( "The credentials of an account only sign requests" );
+        }
+
+        public synchronized void setTokenWithSecret( String accessToken, String tokenSecret )
+        {
+            this.accessToken = accessToken;
+            this.tokenSecret = tokenSecret;
+        }
+
+        public String getToken()
+        {
+            return accessToken;
+        }
+
+        public String getTokenSecret()
+        {
+            return tokenSecret;
+        }
+
+        public void signRequest( BuzzRequest request )
+            throws BuzzAuthenticationException
+        {
+            String token;
+            String secret;
+            synchronized ( this )
+            {
+                token = accessToken;
+                secret = tokenSecret;
+            }
+            consumer.signRequest( request, token, secret );
+        }
+    }
+}
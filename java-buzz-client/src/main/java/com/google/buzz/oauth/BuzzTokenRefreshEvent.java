@@ -0,0 +1,56 @@
+package com.google.buzz.oauth;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of an OAuth 2 token request: the exchange of an authorization code, or
+ * the refresh of an access token.
+ */
+@Name( "com.google.buzz.TokenRefresh" )
+@Label( "Buzz Token Refresh" )
+@Category( "Buzz" )
+@Description( "OAuth 2 token request" )
+@StackTrace( false )
+public class BuzzTokenRefreshEvent
+    extends Event
+{
+    @Label( "Grant Type" )
+    String grantType;
+
+    @Label( "Status" )
+    @Description( "Http status of the response, 0 if there is none" )
+    int status;
+
+    @Label( "Bytes In" )
+    @DataAmount
+    long bytesIn;
+
+    @Label( "Error" )
+    String error;
+
+    /**
+     * Commit the event, if recorded.
+     *
+     * @param grant type of the request
+     * @param httpStatus of the response, or 0
+     * @param bytes of the response body
+     * @param failure of the request, or null
+     */
+    void record( String grant, int httpStatus, long bytes, Throwable failure )
+    {
+        if ( shouldCommit() )
+        {
+            grantType = grant;
+            status = httpStatus;
+            bytesIn = bytes;
+            error = failure != null ? failure.getClass().getSimpleName() : null;
+            commit();
+        }
+    }
+}
@@ -1,12 +1,11 @@
 package com.google.buzz.parser;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
 
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.XMLReaderFactory;
 
 import com.google.buzz.exception.BuzzIOException;
 import com.google.buzz.exception.BuzzParsingException;
@@ -31,15 +30,46 @@ public class BuzzCommentParser
     public static BuzzComment parseComment( String xmlResponse )
         throws BuzzParsingException, BuzzIOException
     {
-        CommentHandler handler;
-        XMLReader xr;
+        BuzzParseEvent event = BuzzParseEvent.start( "comment", xmlResponse );
+        return parseComment( new InputSource( new StringReader( xmlResponse ) ), event );
+    }
+
+    /**
+     * Parse an xml stream into a BuzzComment model object.
+     * 
+     * @param xmlResponse stream to be parsed, as it is read; not closed.
+     * @return the comment object.
+     * @throws BuzzIOException if any IO error occurs.
+     * @throws BuzzParsingException if a parsing error occurs.
+     */
+    public static BuzzComment parseComment( InputStream xmlResponse )
+        throws BuzzParsingException, BuzzIOException
+    {
+        BuzzParseEvent event = BuzzParseEvent.start( "comment", xmlResponse );
+        return parseComment( new InputSource( event.source( xmlResponse ) ), event );
+    }
+
+    /**
+     * Parse an xml source with a pull parser.
+     * 
+     * @param source to be parsed.
+     * @param event flight recorder event of the parsing.
+     * @return the parsed object.
+     * @throws BuzzIOException if any IO error occurs.
+     * @throws BuzzParsingException if a parsing error occurs.
+     */
+    private static BuzzComment parseComment( InputSource source, BuzzParseEvent event )
+        throws BuzzParsingException, BuzzIOException
+    {
+        BuzzComment result = null;
+        StaxXMLReader xr = StaxXMLReader.acquire();
         try
         {
-            xr = XMLReaderFactory.createXMLReader();
-            handler = new CommentHandler( xr );
+            CommentHandler handler = new CommentHandler( xr );
             xr.setContentHandler( handler );
             xr.setErrorHandler( handler );
-            xr.parse( new InputSource( new ByteArrayInputStream( xmlResponse.getBytes( "UTF-8" ) ) ) );
+            xr.parse( source );
+            result = handler.getBuzzComment();
         }
         catch ( SAXException e )
         {
@@ -49,6 +79,11 @@ public class BuzzCommentParser
         {
             throw new BuzzIOException( e );
         }
-        return handler.getBuzzComment();
+        finally
+        {
+            xr.release();
+            event.record( result == null ? 0 : 1, result == null );
+        }
+        return result;
     }
 }
\ No newline at end of file
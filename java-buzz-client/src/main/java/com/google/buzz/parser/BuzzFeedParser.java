@@ -1,12 +1,11 @@
 package com.google.buzz.parser;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
 
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.XMLReaderFactory;
 
 import com.google.buzz.exception.BuzzIOException;
 import com.google.buzz.exception.BuzzParsingException;
@@ -31,15 +30,60 @@ public class BuzzFeedParser
     public static BuzzFeed parseFeed( String xmlResponse )
         throws BuzzParsingException, BuzzIOException
     {
-        FeedHandler handler;
-        XMLReader xr;
+        BuzzParseEvent event = BuzzParseEvent.start( "feed", xmlResponse );
+        return parseFeed( new InputSource( new StringReader( xmlResponse ) ), event );
+    }
+
+    /**
+     * Parse an xml stream into a BuzzFeed model object.
+     * 
+     * @param xmlResponse stream to be parsed, as it is read; not closed.
+     * @return the feed object.
+     * @throws BuzzIOException if any IO error occurs.
+     * @throws BuzzParsingException if a parsing error occurs.
+     */
+    public static BuzzFeed parseFeed( InputStream xmlResponse )
+        throws BuzzParsingException, BuzzIOException
+    {
+        BuzzParseEvent event = BuzzParseEvent.start( "feed", xmlResponse );
+        return parseFeed( new InputSource( event.source( xmlResponse ) ), event );
+    }
+
+    /**
+     * Read the entries of an xml stream one at a time, as the stream is read.
+     * 
+     * @param xmlResponse stream to be parsed; closed with the reader.
+     * @return the reader of the entries.
+     * @throws BuzzIOException if any IO error occurs.
+     * @throws BuzzParsingException if a parsing error occurs.
+     */
+    public static BuzzFeedReader streamFeed( InputStream xmlResponse )
+        throws BuzzParsingException, BuzzIOException
+    {
+        return new BuzzFeedReader( xmlResponse );
+    }
+
+    /**
+     * Parse an xml source with a pull parser.
+     * 
+     * @param source to be parsed.
+     * @param event flight recorder event of the parsing.
+     * @return the parsed object.
+     * @throws BuzzIOException if any IO error occurs.
+     * @throws BuzzParsingException if a parsing error occurs.
+     */
+    private static BuzzFeed parseFeed( InputSource source, BuzzParseEvent event )
+        throws BuzzParsingException, BuzzIOException
+    {
+        BuzzFeed result = null;
+        StaxXMLReader xr = StaxXMLReader.acquire();
         try
         {
-            xr = XMLReaderFactory.createXMLReader();
-            handler = new FeedHandler( xr );
+            FeedHandler handler = new FeedHandler( xr );
             xr.setContentHandler( handler );
             xr.setErrorHandler( handler );
-            xr.parse( new InputSource( new ByteArrayInputStream( xmlResponse.getBytes( "UTF-8" ) ) ) );
+            xr.parse( source );
+            result = handler.getFeed();
         }
         catch ( SAXException e )
         {
@@ -49,6 +93,11 @@ public class BuzzFeedParser
         {
             throw new BuzzIOException( e );
         }
-        return handler.getFeed();
+        finally
+        {
+            xr.release();
+            event.record( result == null ? 0 : result.getEntries().size(), result == null );
+        }
+        return result;
     }
 }
\ No newline at end of file
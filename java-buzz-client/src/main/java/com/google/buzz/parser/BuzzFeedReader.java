@@ -0,0 +1,185 @@
+package com.google.buzz.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import com.google.buzz.exception.BuzzIOException;
+import com.google.buzz.exception.BuzzParsingException;
+import com.google.buzz.model.BuzzFeed;
+import com.google.buzz.model.BuzzFeedEntry;
+import com.google.buzz.parser.handler.FeedHandler;
+
+/**
+ * Reads the entries of a feed one at a time, while the body is still streaming in. <br/>
+ * Only the entry being returned is held in memory, so feeds of any size are read in constant
+ * memory. The feed level elements ( title, links, ... ) are available from <b>getFeed</b> as soon
+ * as they are parsed; its entry list stays empty. <br/>
+ * The reader has to be closed, which also closes the underlying stream; it closes itself once the
+ * last entry is read.
+ */
+public class BuzzFeedReader
+    implements Closeable
+{
+    /**
+     * The pull parser
+     */
+    private final StaxXMLReader xmlReader;
+
+    /**
+     * The handler building the feed
+     */
+    private final FeedHandler handler;
+
+    /**
+     * Entries parsed but not yet returned
+     */
+    private final Queue<BuzzFeedEntry> entries = new ArrayDeque<BuzzFeedEntry>();
+
+    /**
+     * The stream being parsed
+     */
+    private final Closeable source;
+
+    /**
+     * True once the whole feed is parsed or the reader is closed
+     */
+    private boolean done;
+
+    /**
+     * Flight recorder event of the reading, committed on close
+     */
+    private final BuzzParseEvent event;
+
+    /**
+     * Number of entries returned
+     */
+    private int returned;
+
+    /**
+     * True if the feed could not be parsed
+     */
+    private boolean failed;
+
+    /**
+     * Start reading a feed.
+     * 
+     * @param source stream of the feed
+     * @throws BuzzIOException if any IO error occurs.
+     * @throws BuzzParsingException if a parsing error occurs.
+     */
+    BuzzFeedReader( InputStream source )
+        throws BuzzParsingException, BuzzIOException
+    {
+        this.source = source;
+        event = BuzzParseEvent.start( "feed", source );
+        xmlReader = new StaxXMLReader();
+        handler = new FeedHandler( xmlReader );
+        handler.setEntryQueue( entries );
+        xmlReader.setContentHandler( handler );
+        xmlReader.setErrorHandler( handler );
+        try
+        {
+            xmlReader.start( new InputSource( event.source( source ) ) );
+        }
+        catch ( SAXException e )
+        {
+            failed = true;
+            close();
+            throw new BuzzParsingException( e );
+        }
+        catch ( IOException e )
+        {
+            failed = true;
+            close();
+            throw new BuzzIOException( e );
+        }
+    }
+
+    /**
+     * @return the feed level elements parsed so far, without entries
+     */
+    public BuzzFeed getFeed()
+    {
+        return handler.getFeed();
+    }
+
+    /**
+     * Parse until the next entry is complete.
+     * 
+     * @return true if there is another entry
+     * @throws BuzzIOException if any IO error occurs.
+     * @throws BuzzParsingException if a parsing error occurs.
+     */
+    public boolean hasNext()
+        throws BuzzParsingException, BuzzIOException
+    {
+        try
+        {
+            while ( entries.isEmpty() && !done )
+            {
+                if ( !xmlReader.step() )
+                {
+                    close();
+                }
+            }
+        }
+        catch ( SAXException e )
+        {
+            failed = true;
+            close();
+            throw new BuzzParsingException( e );
+        }
+        catch ( IOException e )
+        {
+            failed = true;
+            close();
+            throw new BuzzIOException( e );
+        }
+        return !entries.isEmpty();
+    }
+
+    /**
+     * @return the next entry of the feed
+     * @throws BuzzIOException if any IO error occurs.
+     * @throws BuzzParsingException if a parsing error occurs.
+     * @throws NoSuchElementException if there are no more entries
+     */
+    public BuzzFeedEntry next()
+        throws BuzzParsingException, BuzzIOException
+    {
+        if ( !hasNext() )
+        {
+            throw new NoSuchElementException();
+        }
+        returned++;
+        return entries.poll();
+    }
+
+    /**
+     * Stop reading and close the underlying stream.
+     */
+    public void close()
+    {
+        if ( !done )
+        {
+            done = true;
+            xmlReader.close();
+            try
+            {
+                source.close();
+            }
+            catch ( IOException e )
+            {
+                // nothing left to release.
+            }
+            event.record( returned, failed );
+        }
+    }
+}
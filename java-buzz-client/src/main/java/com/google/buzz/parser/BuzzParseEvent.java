@@ -0,0 +1,122 @@
+package com.google.buzz.parser;
+
+import java.io.InputStream;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import com.google.buzz.io.CountingInputStream;
+import com.google.buzz.util.Utf8;
+
+/**
+ * Flight recorder event of the parsing of a response body into a model. <br/>
+ * A streamed body is read while it is parsed, so the event includes the time spent waiting for
+ * it; the event of a <b>BuzzFeedReader</b> lasts until the reader is closed. The bytes of a stream
+ * are only counted while the event is recorded.
+ */
+@Name( "com.google.buzz.Parse" )
+@Label( "Buzz Parse" )
+@Category( "Buzz" )
+@Description( "Response body parsed into a model" )
+@StackTrace( false )
+public class BuzzParseEvent
+    extends Event
+{
+    @Label( "Element" )
+    @Description( "Root element parsed: feed, entry, comments, comment, people or profile" )
+    String element;
+
+    @Label( "Bytes" )
+    @Description( "Bytes of the body parsed, in UTF-8 for a string" )
+    @DataAmount
+    long bytes;
+
+    @Label( "Entries" )
+    @Description( "Posts, comments or profiles parsed" )
+    int entries;
+
+    @Label( "Failed" )
+    boolean failed;
+
+    /**
+     * The body parsed, if a stream
+     */
+    private transient CountingInputStream counter;
+
+    /**
+     * The body parsed, if a string
+     */
+    private transient String text;
+
+    /**
+     * Begin the event of the parsing of a string.
+     *
+     * @param element root element parsed
+     * @param xml body parsed
+     * @return the event
+     */
+    static BuzzParseEvent start( String element, String xml )
+    {
+        BuzzParseEvent event = new BuzzParseEvent();
+        event.element = element;
+        event.text = xml;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Begin the event of the parsing of a stream.
+     *
+     * @param element root element parsed
+     * @param xml body parsed
+     * @return the event
+     */
+    static BuzzParseEvent start( String element, InputStream xml )
+    {
+        BuzzParseEvent event = new BuzzParseEvent();
+        event.element = element;
+        if ( event.isEnabled() )
+        {
+            event.counter = new CountingInputStream( xml );
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param xml the stream given to <b>start</b>
+     * @return the stream to parse, counting its bytes if the event is recorded
+     */
+    InputStream source( InputStream xml )
+    {
+        // no conditional expression: the recorder instruments this class without seeing
+        // CountingInputStream, and can not merge it with InputStream
+        if ( counter == null )
+        {
+            return xml;
+        }
+        return counter;
+    }
+
+    /**
+     * Commit the event, if recorded.
+     *
+     * @param parsed number of posts, comments or profiles parsed
+     * @param failure true if the body could not be parsed
+     */
+    void record( int parsed, boolean failure )
+    {
+        if ( shouldCommit() )
+        {
+            bytes = counter != null ? counter.getCount() : Utf8.length( text );
+            entries = parsed;
+            failed = failure;
+            commit();
+        }
+    }
+}
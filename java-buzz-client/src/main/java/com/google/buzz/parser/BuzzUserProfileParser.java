@@ -1,12 +1,11 @@
 package com.google.buzz.parser;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
 
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.XMLReaderFactory;
 
 import com.google.buzz.exception.BuzzIOException;
 import com.google.buzz.exception.BuzzParsingException;
@@ -31,15 +30,46 @@ public class BuzzUserProfileParser
     public static BuzzUserProfile parseProfile( String xmlResponse )
         throws BuzzParsingException, BuzzIOException
     {
-        UserProfileHandler handler;
-        XMLReader xr;
+        BuzzParseEvent event = BuzzParseEvent.start( "profile", xmlResponse );
+        return parseProfile( new InputSource( new StringReader( xmlResponse ) ), event );
+    }
+
+    /**
+     * Parse an xml stream into a BuzzUserProfile model object.<br/>
+     * 
+     * @param xmlResponse stream to be parsed, as it is read; not closed.
+     * @return the user profile.
+     * @throws BuzzIOException if any IO error occurs.
+     * @throws BuzzParsingException if a parsing error occurs.
+     */
+    public static BuzzUserProfile parseProfile( InputStream xmlResponse )
+        throws BuzzParsingException, BuzzIOException
+    {
+        BuzzParseEvent event = BuzzParseEvent.start( "profile", xmlResponse );
+        return parseProfile( new InputSource( event.source( xmlResponse ) ), event );
+    }
+
+    /**
+     * Parse an xml source with a pull parser.
+     * 
+     * @param source to be parsed.
+     * @param event flight recorder event of the parsing.
+     * @return the parsed object.
+     * @throws BuzzIOException if any IO error occurs.
+     * @throws BuzzParsingException if a parsing error occurs.
+     */
+    private static BuzzUserProfile parseProfile( InputSource source, BuzzParseEvent event )
+        throws BuzzParsingException, BuzzIOException
+    {
+        BuzzUserProfile result = null;
+        StaxXMLReader xr = StaxXMLReader.acquire();
         try
         {
-            xr = XMLReaderFactory.createXMLReader();
-            handler = new UserProfileHandler( xr );
+            UserProfileHandler handler = new UserProfileHandler( xr );
             xr.setContentHandler( handler );
             xr.setErrorHandler( handler );
-            xr.parse( new InputSource( new ByteArrayInputStream( xmlResponse.getBytes( "UTF-8" ) ) ) );
+            xr.parse( source );
+            result = handler.getProfile();
         }
         catch ( SAXException e )
         {
@@ -49,6 +79,11 @@ public class BuzzUserProfileParser
         {
             throw new BuzzIOException( e );
         }
-        return handler.getProfile();
+        finally
+        {
+            xr.release();
+            event.record( result == null ? 0 : 1, result == null );
+        }
+        return result;
     }
 }
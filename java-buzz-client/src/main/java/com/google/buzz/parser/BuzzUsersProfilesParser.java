@@ -1,16 +1,16 @@
 package com.google.buzz.parser;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
 import java.util.List;
 
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.XMLReaderFactory;
 
 import com.google.buzz.exception.BuzzIOException;
 import com.google.buzz.exception.BuzzParsingException;
+import com.google.buzz.model.BuzzPeopleFeed;
 import com.google.buzz.model.BuzzUserProfile;
 import com.google.buzz.parser.handler.UsersProfilesHandler;
 
@@ -33,15 +33,62 @@ public class BuzzUsersProfilesParser
     public static List<BuzzUserProfile> parseUsersProfiles( String xmlResponse )
         throws BuzzParsingException, BuzzIOException
     {
-        UsersProfilesHandler handler;
-        XMLReader xr;
+        BuzzParseEvent event = BuzzParseEvent.start( "people", xmlResponse );
+        return parsePeopleFeed( new InputSource( new StringReader( xmlResponse ) ), event ).getProfiles();
+    }
+
+    /**
+     * Parse an xml stream into a list of BuzzUserProfile. <br/>
+     * Used to generate followers and following lists. <br/>
+     * 
+     * @param xmlResponse stream to be parsed, as it is read; not closed.
+     * @return the list of profiles.
+     * @throws BuzzIOException if any IO error occurs.
+     * @throws BuzzParsingException if a parsing error occurs.
+     */
+    public static List<BuzzUserProfile> parseUsersProfiles( InputStream xmlResponse )
+        throws BuzzParsingException, BuzzIOException
+    {
+        BuzzParseEvent event = BuzzParseEvent.start( "people", xmlResponse );
+        return parsePeopleFeed( new InputSource( event.source( xmlResponse ) ), event ).getProfiles();
+    }
+
+    /**
+     * Parse an xml stream into a page of profiles, with its paging information.
+     * 
+     * @param xmlResponse stream to be parsed, as it is read; not closed.
+     * @return the page of profiles.
+     * @throws BuzzIOException if any IO error occurs.
+     * @throws BuzzParsingException if a parsing error occurs.
+     */
+    public static BuzzPeopleFeed parsePeopleFeed( InputStream xmlResponse )
+        throws BuzzParsingException, BuzzIOException
+    {
+        BuzzParseEvent event = BuzzParseEvent.start( "people", xmlResponse );
+        return parsePeopleFeed( new InputSource( event.source( xmlResponse ) ), event );
+    }
+
+    /**
+     * Parse an xml source with a pull parser.
+     * 
+     * @param source to be parsed.
+     * @param event flight recorder event of the parsing.
+     * @return the parsed object.
+     * @throws BuzzIOException if any IO error occurs.
+     * @throws BuzzParsingException if a parsing error occurs.
+     */
+    private static BuzzPeopleFeed parsePeopleFeed( InputSource source, BuzzParseEvent event )
+        throws BuzzParsingException, BuzzIOException
+    {
+        BuzzPeopleFeed result = null;
+        StaxXMLReader xr = StaxXMLReader.acquire();
         try
         {
-            xr = XMLReaderFactory.createXMLReader();
-            handler = new UsersProfilesHandler( xr );
+            UsersProfilesHandler handler = new UsersProfilesHandler( xr );
             xr.setContentHandler( handler );
             xr.setErrorHandler( handler );
-            xr.parse( new InputSource( new ByteArrayInputStream( xmlResponse.getBytes( "UTF-8" ) ) ) );
+            xr.parse( source );
+            result = handler.getPeopleFeed();
         }
         catch ( SAXException e )
         {
@@ -51,6 +98,11 @@ public class BuzzUsersProfilesParser
         {
             throw new BuzzIOException( e );
         }
-        return handler.getBuzzUserFollowers();
+        finally
+        {
+            xr.release();
+            event.record( result == null ? 0 : result.getProfiles().size(), result == null );
+        }
+        return result;
     }
 }
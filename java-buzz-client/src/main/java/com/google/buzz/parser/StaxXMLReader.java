@@ -0,0 +1,516 @@
+package com.google.buzz.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * SAX <b>XMLReader</b> driven by a StAX pull parser. <br/>
+ * Parses straight from the byte or character stream of the input source, without buffering the
+ * document, and feeds the events to the handler chain of <b>com.google.buzz.parser.handler</b>:
+ * the current content handler is looked up at every event, so handlers can hand over to their
+ * children as they do with any SAX reader. The document can also be parsed one event at a time
+ * with <b>start</b> and <b>step</b>. <br/>
+ * Adjacent text is coalesced, so an element's text arrives in a single <b>characters</b> call.
+ * DTDs and external entities are not processed. <br/>
+ * The parsers of this package take their reader from a bounded pool shared by all the threads with
+ * <b>acquire</b> and give it back with <b>release</b>, so short-lived threads, virtual ones
+ * included, do not each look up a factory of their own. A pooled reader also reuses its pull parser
+ * from document to document when the StAX implementation supports it.
+ */
+public class StaxXMLReader
+    implements XMLReader
+{
+    /**
+     * SAX namespaces feature, always on
+     */
+    private static final String FEATURE_NAMESPACES = "http://xml.org/sax/features/namespaces";
+
+    /**
+     * SAX namespace prefixes feature, always off
+     */
+    private static final String FEATURE_NAMESPACE_PREFIXES = "http://xml.org/sax/features/namespace-prefixes";
+
+    /**
+     * StAX property of the JDK implementation reusing the pull parser of the previous document
+     */
+    private static final String PROPERTY_REUSE_INSTANCE = "reuse-instance";
+
+    /**
+     * Shared factory, thread safe once configured
+     */
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    /**
+     * Maximum number of pooled readers, each with its own reusing factory
+     */
+    private static final int MAX_POOLED = Math.max( 4, 2 * Runtime.getRuntime().availableProcessors() );
+
+    /**
+     * Pooled readers not in use, the most recently released first
+     */
+    private static final Deque<StaxXMLReader> POOL = new ConcurrentLinkedDeque<StaxXMLReader>();
+
+    /**
+     * Number of pooled readers created so far
+     */
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    /**
+     * The factory of the pull parsers
+     */
+    private final XMLInputFactory factory;
+
+    /**
+     * True if the reader goes back to the pool when released
+     */
+    private final boolean pooled;
+
+    /**
+     * True while a pooled reader waits in the pool, so that it is given back only once
+     */
+    private boolean idle;
+
+    /**
+     * The handler receiving the events
+     */
+    private ContentHandler contentHandler;
+
+    /**
+     * The handler receiving the errors
+     */
+    private ErrorHandler errorHandler;
+
+    /**
+     * The entity resolver, kept for the SAX contract only
+     */
+    private EntityResolver entityResolver;
+
+    /**
+     * The DTD handler, kept for the SAX contract only
+     */
+    private DTDHandler dtdHandler;
+
+    /**
+     * The pull parser of the document being parsed
+     */
+    private XMLStreamReader reader;
+
+    /**
+     * Attributes of the current element, reused between elements
+     */
+    private final AttributesImpl attributes = new AttributesImpl();
+
+    /**
+     * Creates a reader on the shared factory.
+     */
+    public StaxXMLReader()
+    {
+        this( FACTORY, false );
+    }
+
+    /**
+     * Creates a reader.
+     *
+     * @param factory of the pull parsers
+     * @param pooled true if the reader goes back to the pool when released
+     */
+    private StaxXMLReader( XMLInputFactory factory, boolean pooled )
+    {
+        this.factory = factory;
+        this.pooled = pooled;
+    }
+
+    /**
+     * Take a reader from the pool. <br/>
+     * When all the pooled readers are in use, a new one is created while the pool is not full, and
+     * a reader of the shared factory is returned once it is. Each call must be paired with a
+     * <b>release</b> once the document is parsed.
+     *
+     * @return a reader ready to parse a document
+     */
+    public static StaxXMLReader acquire()
+    {
+        StaxXMLReader idle = POOL.pollFirst();
+        if ( idle != null )
+        {
+            idle.idle = false;
+            return idle;
+        }
+        if ( POOLED.incrementAndGet() <= MAX_POOLED )
+        {
+            return new StaxXMLReader( createReusingFactory(), true );
+        }
+        POOLED.decrementAndGet();
+        return new StaxXMLReader();
+    }
+
+    /**
+     * Give back a reader taken with <b>acquire</b>: the document is closed and the handlers are
+     * forgotten, so the reader does not keep the parsed objects alive.
+     */
+    public void release()
+    {
+        close();
+        contentHandler = null;
+        errorHandler = null;
+        entityResolver = null;
+        dtdHandler = null;
+        attributes.clear();
+        if ( pooled && !idle )
+        {
+            idle = true;
+            POOL.offerFirst( this );
+        }
+    }
+
+    /**
+     * @return the factory of the pull parsers
+     */
+    private static XMLInputFactory createFactory()
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty( XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE );
+        factory.setProperty( XMLInputFactory.IS_COALESCING, Boolean.TRUE );
+        factory.setProperty( XMLInputFactory.SUPPORT_DTD, Boolean.FALSE );
+        factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE );
+        return factory;
+    }
+
+    /**
+     * @return a factory of the pull parsers handing out the same parser, reset, for every document
+     *         when supported; it may only be used for one document at a time
+     */
+    private static XMLInputFactory createReusingFactory()
+    {
+        XMLInputFactory factory = createFactory();
+        if ( factory.isPropertySupported( PROPERTY_REUSE_INSTANCE ) )
+        {
+            factory.setProperty( PROPERTY_REUSE_INSTANCE, Boolean.TRUE );
+        }
+        return factory;
+    }
+
+    /**
+     * Parse a document, pulling it from the stream of the input source.
+     */
+    public void parse( InputSource input )
+        throws IOException, SAXException
+    {
+        start( input );
+        try
+        {
+            while ( step() )
+            {
+                // every event goes to the handlers.
+            }
+        }
+        finally
+        {
+            close();
+        }
+    }
+
+    /**
+     * Open a document for parsing event by event with <b>step</b>. <br/>
+     * The content handler receives <b>startDocument</b>.
+     *
+     * @param input to parse
+     * @throws IOException if the stream can not be read
+     * @throws SAXException if the document is malformed or thrown by the handler
+     */
+    public void start( InputSource input )
+        throws IOException, SAXException
+    {
+        try
+        {
+            reader = createStreamReader( input );
+        }
+        catch ( XMLStreamException e )
+        {
+            throw fail( e );
+        }
+        contentHandler.startDocument();
+    }
+
+    /**
+     * Pull the next event of the document opened by <b>start</b> and send it to the current
+     * content handler. The last event also sends <b>endDocument</b>.
+     *
+     * @return false once the document is completely parsed
+     * @throws IOException if the stream can not be read
+     * @throws SAXException if the document is malformed or thrown by the handler
+     */
+    public boolean step()
+        throws IOException, SAXException
+    {
+        if ( reader == null )
+        {
+            return false;
+        }
+        try
+        {
+            if ( !reader.hasNext() )
+            {
+                close();
+                contentHandler.endDocument();
+                return false;
+            }
+            dispatch( reader, reader.next() );
+            return true;
+        }
+        catch ( XMLStreamException e )
+        {
+            close();
+            throw fail( e );
+        }
+    }
+
+    /**
+     * Release the pull parser of the current document. The underlying stream is not closed.
+     */
+    public void close()
+    {
+        if ( reader != null )
+        {
+            try
+            {
+                reader.close();
+            }
+            catch ( XMLStreamException e )
+            {
+                // nothing left to release.
+            }
+            reader = null;
+        }
+    }
+
+    /**
+     * Report a pull parser error.
+     *
+     * @param e the pull parser error
+     * @return the parse error to throw, once reported to the error handler
+     * @throws IOException if the error comes from the stream
+     * @throws SAXException thrown by the error handler
+     */
+    private SAXParseException fail( XMLStreamException e )
+        throws IOException, SAXException
+    {
+        if ( e.getNestedException() instanceof IOException )
+        {
+            throw (IOException) e.getNestedException();
+        }
+        SAXParseException parseException = toSAXException( e );
+        if ( errorHandler != null )
+        {
+            errorHandler.fatalError( parseException );
+        }
+        return parseException;
+    }
+
+    /**
+     * Parse a document from a system identifier ( url ).
+     */
+    public void parse( String systemId )
+        throws IOException, SAXException
+    {
+        parse( new InputSource( systemId ) );
+    }
+
+    /**
+     * Send one pull parser event to the current content handler.
+     *
+     * @param reader positioned on the event
+     * @param event type of the event
+     * @throws SAXException thrown by the handler
+     */
+    private void dispatch( XMLStreamReader reader, int event )
+        throws SAXException
+    {
+        switch ( event )
+        {
+            case XMLStreamConstants.START_ELEMENT:
+                for ( int i = 0; i < reader.getNamespaceCount(); i++ )
+                {
+                    contentHandler.startPrefixMapping( nullToEmpty( reader.getNamespacePrefix( i ) ),
+                                                       nullToEmpty( reader.getNamespaceURI( i ) ) );
+                }
+                attributes.clear();
+                for ( int i = 0; i < reader.getAttributeCount(); i++ )
+                {
+                    attributes.addAttribute( nullToEmpty( reader.getAttributeNamespace( i ) ),
+                                             reader.getAttributeLocalName( i ),
+                                             qName( reader.getAttributePrefix( i ), reader.getAttributeLocalName( i ) ),
+                                             "CDATA", reader.getAttributeValue( i ) );
+                }
+                contentHandler.startElement( nullToEmpty( reader.getNamespaceURI() ), reader.getLocalName(),
+                                             qName( reader.getPrefix(), reader.getLocalName() ), attributes );
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                contentHandler.endElement( nullToEmpty( reader.getNamespaceURI() ), reader.getLocalName(),
+                                           qName( reader.getPrefix(), reader.getLocalName() ) );
+                for ( int i = 0; i < reader.getNamespaceCount(); i++ )
+                {
+                    contentHandler.endPrefixMapping( nullToEmpty( reader.getNamespacePrefix( i ) ) );
+                }
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+                contentHandler.characters( reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength() );
+                break;
+            case XMLStreamConstants.SPACE:
+                contentHandler.ignorableWhitespace( reader.getTextCharacters(), reader.getTextStart(),
+                                                    reader.getTextLength() );
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                contentHandler.processingInstruction( reader.getPITarget(), reader.getPIData() );
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @return a pull parser on the stream of the input source
+     */
+    private XMLStreamReader createStreamReader( InputSource input )
+        throws XMLStreamException, IOException
+    {
+        if ( input.getCharacterStream() != null )
+        {
+            return factory.createXMLStreamReader( input.getCharacterStream() );
+        }
+        InputStream stream = input.getByteStream();
+        if ( stream == null )
+        {
+            stream = new URL( input.getSystemId() ).openStream();
+        }
+        if ( input.getEncoding() != null )
+        {
+            return factory.createXMLStreamReader( stream, input.getEncoding() );
+        }
+        return factory.createXMLStreamReader( stream );
+    }
+
+    /**
+     * @return the qualified name of a prefix and local name
+     */
+    private static String qName( String prefix, String localName )
+    {
+        return prefix == null || prefix.length() == 0 ? localName : prefix + ":" + localName;
+    }
+
+    /**
+     * @return the string, or the empty string for null
+     */
+    private static String nullToEmpty( String s )
+    {
+        return s == null ? "" : s;
+    }
+
+    /**
+     * @return the SAX exception of a pull parser error
+     */
+    private static SAXParseException toSAXException( XMLStreamException e )
+    {
+        int line = e.getLocation() == null ? -1 : e.getLocation().getLineNumber();
+        int column = e.getLocation() == null ? -1 : e.getLocation().getColumnNumber();
+        SAXParseException parseException = new SAXParseException( e.getMessage(), null, null, line, column );
+        parseException.initCause( e );
+        return parseException;
+    }
+
+    public boolean getFeature( String name )
+        throws SAXNotRecognizedException
+    {
+        if ( FEATURE_NAMESPACES.equals( name ) )
+        {
+            return true;
+        }
+        if ( FEATURE_NAMESPACE_PREFIXES.equals( name ) )
+        {
+            return false;
+        }
+        throw new SAXNotRecognizedException( name );
+    }
+
+    public void setFeature( String name, boolean value )
+        throws SAXNotRecognizedException
+    {
+        if ( getFeature( name ) != value )
+        {
+            throw new SAXNotRecognizedException( name + " can not be set to " + value );
+        }
+    }
+
+    public Object getProperty( String name )
+        throws SAXNotRecognizedException
+    {
+        throw new SAXNotRecognizedException( name );
+    }
+
+    public void setProperty( String name, Object value )
+        throws SAXNotRecognizedException
+    {
+        throw new SAXNotRecognizedException( name );
+    }
+
+    public void setEntityResolver( EntityResolver resolver )
+    {
+        this.entityResolver = resolver;
+    }
+
+    public EntityResolver getEntityResolver()
+    {
+        return entityResolver;
+    }
+
+    public void setDTDHandler( DTDHandler handler )
+    {
+        this.dtdHandler = handler;
+    }
+
+    public DTDHandler getDTDHandler()
+    {
+        return dtdHandler;
+    }
+
+    public void setContentHandler( ContentHandler handler )
+    {
+        this.contentHandler = handler;
+    }
+
+    public ContentHandler getContentHandler()
+    {
+        return contentHandler;
+    }
+
+    public void setErrorHandler( ErrorHandler handler )
+    {
+        this.errorHandler = handler;
+    }
+
+    public ErrorHandler getErrorHandler()
+    {
+        return errorHandler;
+    }
+}
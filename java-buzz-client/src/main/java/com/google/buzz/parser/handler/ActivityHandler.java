@@ -61,6 +61,7 @@ public class ActivityHandler
     public void startElement( String uri, String name, String qName, Attributes attributes )
         throws SAXException
     {
+        clearText();
         if ( ACTIVITY_OBJECT_TYPE.equals( qName ) )
         {
             insideActivityObjectType = true;
@@ -92,6 +93,7 @@ public class ActivityHandler
         }
         if ( ACTIVITY_OBJECT_TYPE.equals( qName ) )
         {
+            setText( takeText() );
             insideActivityObjectType = false;
         }
         else if ( CONTENT.equals( name ) )
@@ -105,12 +107,17 @@ public class ActivityHandler
     }
 
     /**
-     * Method to be called between the beginning and the end of the xml elements.
+     * Method to be called with the text of an xml element, when it ends.
+     * 
+     * @param content the text of the element, null if empty
      */
-    public void characters( char[] ch, int start, int length )
+    private void setText( String content )
         throws SAXException
     {
-        String content = ( new String( ch ).substring( start, start + length ) );
+        if ( content == null )
+        {
+            return;
+        }
         if ( insideActivityObjectType )
         {
             activity.setActivityObjectType( content );
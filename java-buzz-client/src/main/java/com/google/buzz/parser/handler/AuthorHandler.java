@@ -65,6 +65,7 @@ public class AuthorHandler
     public void startElement( String uri, String name, String qName, Attributes attributes )
         throws SAXException
     {
+        clearText();
         if ( POCO_ID.equals( qName ) )
         {
             insidePocoId = true;
@@ -97,18 +98,22 @@ public class AuthorHandler
     {
         if ( POCO_ID.equals( qName ) )
         {
+            setText( takeText() );
             insidePocoId = false;
         }
         else if ( NAME.equals( name ) )
         {
+            setText( takeText() );
             insideName = false;
         }
         else if ( URI.equals( name ) )
         {
+            setText( takeText() );
             insideUri = false;
         }
         else if ( ACTIVITY_OBJECT_TYPE.equals( qName ) )
         {
+            setText( takeText() );
             insideActivityObjectType = false;
         }
         else if ( LINK.equals( name ) )
@@ -123,12 +128,17 @@ public class AuthorHandler
     }
 
     /**
-     * Method to be called between the beginning and the end of the xml elements.
+     * Method to be called with the text of an xml element, when it ends.
+     * 
+     * @param content the text of the element, null if empty
      */
-    public void characters( char[] ch, int start, int length )
+    private void setText( String content )
         throws SAXException
     {
-        String content = ( new String( ch ).substring( start, start + length ) );
+        if ( content == null )
+        {
+            return;
+        }
         if ( insidePocoId )
         {
             author.setId( content );
@@ -1,5 +1,6 @@
 package com.google.buzz.parser.handler;
 
+import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
 
@@ -7,7 +8,9 @@ import org.xml.sax.helpers.DefaultHandler;
  * Base handler. <br/>
  * The rest of the handlers should extend BaseHandler.<br/>
  * BaseHandler provides methods to it's children to chain handlers. This allows to reuse handlers of
- * elements that might appear in different paths on the xml ( ie: link, url, etc).
+ * elements that might appear in different paths on the xml ( ie: link, url, etc). <br/>
+ * The text of the elements is accumulated in a buffer shared by the whole chain and reused from
+ * element to element, and handed to the handlers when the element ends.
  * 
  * @author roberto.estivill
  */
@@ -24,6 +27,11 @@ public class BaseHandler
      */
     public XMLReader xmlReader = null;
 
+    /**
+     * Text of the current element, shared by all the handlers of a parse
+     */
+    private StringBuilder text = new StringBuilder();
+
     /**
      * Default constructor is provided so a handler may be created by Class.newInstance. This puts
      * the burden on the creator to setParent() and/or setReader().
@@ -54,6 +62,7 @@ public class BaseHandler
         super();
         parentHandler = aParent;
         setReader( aParent.getReader() );
+        text = aParent.text;
     }
 
     /**
@@ -99,5 +108,39 @@ public class BaseHandler
     {
         this.parentHandler = parentHandler;
         setReader( parentHandler.getReader() );
+        text = parentHandler.text;
+    }
+
+    /**
+     * Accumulate the text of the current element; the text may arrive in several chunks.
+     */
+    public void characters( char[] ch, int start, int length )
+        throws SAXException
+    {
+        text.append( ch, start, length );
+    }
+
+    /**
+     * Forget the text accumulated so far. Called when an element starts.
+     */
+    protected void clearText()
+    {
+        text.setLength( 0 );
+    }
+
+    /**
+     * Take the text accumulated since the last element started. Called when an element ends.
+     * 
+     * @return the text, or null if there is none
+     */
+    protected String takeText()
+    {
+        if ( text.length() == 0 )
+        {
+            return null;
+        }
+        String content = text.toString();
+        text.setLength( 0 );
+        return content;
     }
 }
@@ -84,6 +84,7 @@ public class CommentHandler
     public void startElement( String uri, String name, String qName, Attributes attributes )
         throws SAXException
     {
+        clearText();
         if ( ACTIVITY_OBJECT_TYPE.equals( qName ) )
         {
             insideActivityObjectType = true;
@@ -141,14 +142,17 @@ public class CommentHandler
         }
         else if ( ACTIVITY_OBJECT_TYPE.equals( qName ) )
         {
+            setText( takeText() );
             insideActivityObjectType = false;
         }
         else if ( PUBLISHED.equals( name ) )
         {
+            setText( takeText() );
             insidePublished = false;
         }
         else if ( ID.equals( name ) )
         {
+            setText( takeText() );
             insideId = false;
         }
         else if ( AUTHOR.equals( name ) )
@@ -174,13 +178,17 @@ public class CommentHandler
     }
 
     /**
-     * Method to be called between the beginning and the end of the xml elements.
+     * Method to be called with the text of an xml element, when it ends.
+     * 
+     * @param content the text of the element, null if empty
      */
-    public void characters( char[] ch, int start, int length )
+    private void setText( String content )
         throws SAXException
     {
-        String content = ( new String( ch ).substring( start, start + length ) );
-
+        if ( content == null )
+        {
+            return;
+        }
         if ( insideActivityObjectType )
         {
             comment.setActivityObjectType( content );
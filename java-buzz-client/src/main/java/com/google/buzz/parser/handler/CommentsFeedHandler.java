@@ -79,6 +79,7 @@ public class CommentsFeedHandler
     public void startElement( String uri, String name, String qName, Attributes attributes )
         throws SAXException
     {
+        clearText();
         if ( LINK.equals( name ) )
         {
             linkHandler = new LinkHandler( this );
@@ -127,14 +128,17 @@ public class CommentsFeedHandler
         }
         else if ( TITLE.equals( name ) )
         {
+            setText( takeText() );
             insideTitle = false;
         }
         else if ( ID.equals( name ) )
         {
+            setText( takeText() );
             insideId = false;
         }
         else if ( GENERATOR.equals( name ) )
         {
+            setText( takeText() );
             insideGenerator = false;
         }
         else if ( ENTRY.equals( name ) )
@@ -144,12 +148,17 @@ public class CommentsFeedHandler
     }
 
     /**
-     * Method to be called between the beginning and the end of the xml elements.
+     * Method to be called with the text of an xml element, when it ends.
+     * 
+     * @param content the text of the element, null if empty
      */
-    public void characters( char[] ch, int start, int length )
+    private void setText( String content )
         throws SAXException
     {
-        String content = ( new String( ch ).substring( start, start + length ) );
+        if ( content == null )
+        {
+            return;
+        }
         if ( insideTitle )
         {
             commentsFeed.setTitle( content );
@@ -49,6 +49,10 @@ public class ContentHandler
     public void startElement( String uri, String name, String qName, Attributes attributes )
         throws SAXException
     {
+        if ( CONTENT.equals( name ) || ORIGINAL_CONTENT.equals( qName ) )
+        {
+            clearText();
+        }
         String type = attributes.getValue( TYPE );
         if ( type != null && !type.equals( "" ) )
             content.setType( type );
@@ -62,24 +66,14 @@ public class ContentHandler
     {
         if ( CONTENT.equals( name ) || ORIGINAL_CONTENT.equals( qName ) )
         {
+            String text = takeText();
+            if ( text != null )
+            {
+                content.setText( text );
+            }
             stopHandlingEvents();
             parentHandler.endElement( uri, name, qName );
         }
     }
 
-    /**
-     * Method to be called between the beginning and the end of the xml elements.
-     */
-    public void characters( char[] ch, int start, int length )
-        throws SAXException
-    {
-        String s = new String( ch ).substring( start, start + length );
-        String prev = content.getText();
-        if (prev==null) {
-          content.setText(s);
-        } else {
-          content.setText( prev + s);
-        }
-    }
-
 }
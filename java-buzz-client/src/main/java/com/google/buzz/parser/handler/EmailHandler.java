@@ -58,6 +58,7 @@ public class EmailHandler
     public void startElement( String uri, String name, String qName, Attributes attributes )
         throws SAXException
     {
+        clearText();
         if ( VALUE.equals( name ) )
         {
             insideValue = true;
@@ -80,14 +81,17 @@ public class EmailHandler
     {
         if ( VALUE.equals( name ) )
         {
+            setText( takeText() );
             insideValue = false;
         }
         else if ( TYPE.equals( name ) )
         {
+            setText( takeText() );
             insideType = false;
         }
         else if ( PRIMARY.equals( name ) )
         {
+            setText( takeText() );
             insidePrimary = false;
         }
         else if ( EMAILS.equals( name ) )
@@ -98,12 +102,17 @@ public class EmailHandler
     }
 
     /**
-     * Method to be called between the beginning and the end of the xml elements.
+     * Method to be called with the text of an xml element, when it ends.
+     * 
+     * @param content the text of the element, null if empty
      */
-    public void characters( char[] ch, int start, int length )
+    private void setText( String content )
         throws SAXException
     {
-        String content = ( new String( ch ).substring( start, start + length ) );
+        if ( content == null )
+        {
+            return;
+        }
         if ( insideValue )
         {
             email.setValue( content );
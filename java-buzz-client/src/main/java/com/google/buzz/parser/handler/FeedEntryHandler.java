@@ -95,6 +95,7 @@ public class FeedEntryHandler
     public void startElement( String uri, String name, String qName, Attributes attributes )
         throws SAXException
     {
+        clearText();
         if ( TITLE.equals( name ) )
         {
             insideTitle = true;
@@ -167,18 +168,22 @@ public class FeedEntryHandler
     {
         if ( TITLE.equals( name ) )
         {
+            setText( takeText() );
             insideTitle = false;
         }
         else if ( PUBLISHED.equals( name ) )
         {
+            setText( takeText() );
             insidePublished = false;
         }
         else if ( UPDATED.equals( name ) )
         {
+            setText( takeText() );
             insideUpdated = false;
         }
         else if ( ID.equals( name ) )
         {
+            setText( takeText() );
             insideId = false;
         }
         else if ( AUTHOR.equals( name ) )
@@ -191,18 +196,22 @@ public class FeedEntryHandler
         }
         else if ( ACTIVITY_VERB.equals( qName ) )
         {
+            setText( takeText() );
             insideActivityVerb = false;
         }
         else if ( CROSSPOST_SOURCE.equals( qName ) )
         {
+            setText( takeText() );
             insideCrosspostSource = false;
         }
         else if ( SOURCE.equals( name ) )
         {
+            setText( takeText() );
             insideSource = false;
         }
         else if ( ACTIVITY_SERVICE.equals( qName ) )
         {
+            setText( takeText() );
             insideActivityService = false;
         }
         else if ( LINK.equals( name ) )
@@ -225,12 +234,17 @@ public class FeedEntryHandler
     }
 
     /**
-     * Method to be called between the beginning and the end of the xml elements.
+     * Method to be called with the text of an xml element, when it ends.
+     * 
+     * @param content the text of the element, null if empty
      */
-    public void characters( char[] ch, int start, int length )
+    private void setText( String content )
         throws SAXException
     {
-        String content = ( new String( ch ).substring( start, start + length ) );
+        if ( content == null )
+        {
+            return;
+        }
         if ( insideCrosspostSource && insideId )
         {
             entry.setCrosspostSourceId( content );
@@ -1,10 +1,13 @@
 package com.google.buzz.parser.handler;
 
+import java.util.Queue;
+
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 
 import com.google.buzz.model.BuzzFeed;
+import com.google.buzz.model.BuzzFeedEntry;
 import com.google.buzz.util.DateUtils;
 
 /**
@@ -46,6 +49,11 @@ public class FeedHandler
      */
     private BuzzFeed feed;
 
+    /**
+     * Queue receiving the parsed entries instead of the feed, when streaming
+     */
+    private Queue<BuzzFeedEntry> entryQueue;
+
     /**
      * Constructor method to create a root handler.
      * 
@@ -76,12 +84,24 @@ public class FeedHandler
         return feed;
     }
 
+    /**
+     * Stream the entries: each parsed entry is added to the queue instead of the feed, so the
+     * entries can be consumed while the rest of the feed is parsed.
+     * 
+     * @param entryQueue to receive the entries, or null to collect them in the feed
+     */
+    public void setEntryQueue( Queue<BuzzFeedEntry> entryQueue )
+    {
+        this.entryQueue = entryQueue;
+    }
+
     /**
      * Method to be called every time an xml element starts
      */
     public void startElement( String uri, String name, String qName, Attributes attributes )
         throws SAXException
     {
+        clearText();
         if ( LINK.equals( name ) )
         {
             linkHandler = new LinkHandler( this );
@@ -134,33 +154,49 @@ public class FeedHandler
         }
         else if ( TITLE.equals( name ) )
         {
+            setText( takeText() );
             insideTitle = false;
         }
         else if ( UPDATED.equals( name ) )
         {
+            setText( takeText() );
             insideUpdated = false;
         }
         else if ( ID.equals( name ) )
         {
+            setText( takeText() );
             insideId = false;
         }
         else if ( GENERATOR.equals( name ) )
         {
+            setText( takeText() );
             insideGenerator = false;
         }
         else if ( ENTRY.equals( name ) )
         {
-            feed.getEntries().add( feedEntryHandler.getBuzzFeedEntry() );
+            if ( entryQueue != null )
+            {
+                entryQueue.add( feedEntryHandler.getBuzzFeedEntry() );
+            }
+            else
+            {
+                feed.getEntries().add( feedEntryHandler.getBuzzFeedEntry() );
+            }
         }
     }
 
     /**
-     * Method to be called between the beginning and the end of the xml elements.
+     * Method to be called with the text of an xml element, when it ends.
+     * 
+     * @param content the text of the element, null if empty
      */
-    public void characters( char[] ch, int start, int length )
+    private void setText( String content )
         throws SAXException
     {
-        String content = ( new String( ch ).substring( start, start + length ) );
+        if ( content == null )
+        {
+            return;
+        }
         if ( insideTitle )
         {
             feed.setTitle( content );
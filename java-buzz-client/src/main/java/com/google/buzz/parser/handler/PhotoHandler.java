@@ -56,6 +56,7 @@ public class PhotoHandler
     public void startElement( String uri, String name, String qName, Attributes attributes )
         throws SAXException
     {
+        clearText();
         if ( VALUE.equals( name ) )
         {
             insideValue = true;
@@ -74,10 +75,12 @@ public class PhotoHandler
     {
         if ( VALUE.equals( name ) )
         {
+            setText( takeText() );
             insideValue = false;
         }
         else if ( TYPE.equals( name ) )
         {
+            setText( takeText() );
             insideType = false;
         }
         else if ( PHOTOS.equals( name ) )
@@ -88,12 +91,17 @@ public class PhotoHandler
     }
 
     /**
-     * Method to be called between the beginning and the end of the xml elements.
+     * Method to be called with the text of an xml element, when it ends.
+     * 
+     * @param content the text of the element, null if empty
      */
-    public void characters( char[] ch, int start, int length )
+    private void setText( String content )
         throws SAXException
     {
-        String content = ( new String( ch ).substring( start, start + length ) );
+        if ( content == null )
+        {
+            return;
+        }
         if ( insideValue )
         {
             photo.setValue( content );
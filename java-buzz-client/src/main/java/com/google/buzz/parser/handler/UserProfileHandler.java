@@ -75,6 +75,7 @@ public class UserProfileHandler
     public void startElement( String uri, String name, String qName, Attributes attributes )
         throws SAXException
     {
+        clearText();
         if ( ENTRY.equals( name ) )
         {
             profile = new BuzzUserProfile();
@@ -124,14 +125,17 @@ public class UserProfileHandler
         }
         if ( ID.equals( name ) )
         {
+            setText( takeText() );
             insideId = false;
         }
         else if ( DISPLAY_NAME.equals( name ) )
         {
+            setText( takeText() );
             insideDisplayName = false;
         }
         else if ( PROFILE_URL.equals( name ) )
         {
+            setText( takeText() );
             insideProfileUrl = false;
         }
         else if ( EMAILS.equals( name ) )
@@ -149,12 +153,17 @@ public class UserProfileHandler
     }
 
     /**
-     * Method to be called between the beginning and the end of the xml elements.
+     * Method to be called with the text of an xml element, when it ends.
+     * 
+     * @param content the text of the element, null if empty
      */
-    public void characters( char[] ch, int start, int length )
+    private void setText( String content )
         throws SAXException
     {
-        String content = ( new String( ch ).substring( start, start + length ) );
+        if ( content == null )
+        {
+            return;
+        }
         if ( insideId )
         {
             profile.setId( content );
@@ -1,12 +1,12 @@
 package com.google.buzz.parser.handler;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 
+import com.google.buzz.model.BuzzPeopleFeed;
 import com.google.buzz.model.BuzzUserProfile;
 
 /**
@@ -21,12 +21,26 @@ public class UsersProfilesHandler
      * XML elements handled by this handler
      */
     private static final String ENTRY = "entry";
+    private static final String START_INDEX = "startIndex";
+    private static final String ITEMS_PER_PAGE = "itemsPerPage";
+    private static final String TOTAL_RESULTS = "totalResults";
+
+    /**
+     * Position flags
+     */
+    private boolean insideStartIndex = false;
+    private boolean insideItemsPerPage = false;
+    private boolean insideTotalResults = false;
+
+    /**
+     * Children handlers
+     */
     private UserProfileHandler userProfileHandler;
 
     /**
      * Object to return
      */
-    private List<BuzzUserProfile> followers;
+    private BuzzPeopleFeed peopleFeed;
 
     /**
      * Constructor method to create a root handler.
@@ -36,7 +50,7 @@ public class UsersProfilesHandler
     public UsersProfilesHandler( XMLReader xmlReader )
     {
         super( xmlReader );
-        followers = new ArrayList<BuzzUserProfile>( 0 );
+        peopleFeed = new BuzzPeopleFeed();
     }
 
     /**
@@ -44,7 +58,15 @@ public class UsersProfilesHandler
      */
     public List<BuzzUserProfile> getBuzzUserFollowers()
     {
-        return followers;
+        return peopleFeed.getProfiles();
+    }
+
+    /**
+     * @return the created page of profiles
+     */
+    public BuzzPeopleFeed getPeopleFeed()
+    {
+        return peopleFeed;
     }
 
     /**
@@ -53,12 +75,25 @@ public class UsersProfilesHandler
     public void startElement( String uri, String name, String qName, Attributes attributes )
         throws SAXException
     {
+        clearText();
         if ( ENTRY.equals( name ) )
         {
             userProfileHandler = new UserProfileHandler( this );
             userProfileHandler.startHandlingEvents();
             userProfileHandler.startElement( uri, name, qName, attributes );
         }
+        else if ( START_INDEX.equals( name ) )
+        {
+            insideStartIndex = true;
+        }
+        else if ( ITEMS_PER_PAGE.equals( name ) )
+        {
+            insideItemsPerPage = true;
+        }
+        else if ( TOTAL_RESULTS.equals( name ) )
+        {
+            insideTotalResults = true;
+        }
     }
 
     /**
@@ -69,7 +104,56 @@ public class UsersProfilesHandler
     {
         if ( ENTRY.equals( name ) )
         {
-            followers.add( userProfileHandler.getProfile() );
+            peopleFeed.getProfiles().add( userProfileHandler.getProfile() );
+        }
+        else if ( START_INDEX.equals( name ) )
+        {
+            setText( takeText() );
+            insideStartIndex = false;
+        }
+        else if ( ITEMS_PER_PAGE.equals( name ) )
+        {
+            setText( takeText() );
+            insideItemsPerPage = false;
+        }
+        else if ( TOTAL_RESULTS.equals( name ) )
+        {
+            setText( takeText() );
+            insideTotalResults = false;
+        }
+    }
+
+    /**
+     * Method to be called with the text of an xml element, when it ends.
+     * 
+     * @param content the text of the element, null if empty
+     */
+    private void setText( String content )
+        throws SAXException
+    {
+        if ( content == null )
+        {
+            return;
+        }
+        content = content.trim();
+        try
+        {
+            if ( insideStartIndex )
+            {
+                peopleFeed.setStartIndex( Integer.parseInt( content ) );
+            }
+            else if ( insideItemsPerPage )
+            {
+                peopleFeed.setItemsPerPage( Integer.parseInt( content ) );
+            }
+            else if ( insideTotalResults )
+            {
+                peopleFeed.setTotalResults( Integer.parseInt( content ) );
+            }
+        }
+        catch ( NumberFormatException e )
+        {
+            throw new SAXException( e );
         }
     }
 }
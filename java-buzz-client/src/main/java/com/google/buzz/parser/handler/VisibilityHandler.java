@@ -64,6 +64,7 @@ public class VisibilityHandler
     public void startElement( String uri, String name, String qName, Attributes attributes )
         throws SAXException
     {
+        clearText();
         if ( BUZZ_ACL_ENTRY.equals( qName ) )
         {
             buzzAclEntry = new BuzzAclEntry();
@@ -96,14 +97,17 @@ public class VisibilityHandler
     {
         if ( ID.equals( qName ) )
         {
+            setText( takeText() );
             insideId = false;
         }
         else if ( URI.equals( qName ) )
         {
+            setText( takeText() );
             insideUri = false;
         }
         else if ( NAME.equals( qName ) )
         {
+            setText( takeText() );
             insideName = false;
         }
         else if ( BUZZ_VISIBILITY.equals( qName ) )
@@ -114,12 +118,17 @@ public class VisibilityHandler
     }
 
     /**
-     * Method to be called between the beginning and the end of the xml elements.
+     * Method to be called with the text of an xml element, when it ends.
+     * 
+     * @param content the text of the element, null if empty
      */
-    public void characters( char[] ch, int start, int length )
+    private void setText( String content )
         throws SAXException
     {
-        String content = ( new String( ch ).substring( start, start + length ) );
+        if ( content == null )
+        {
+            return;
+        }
         if ( insideId )
         {
             buzzAclEntry.setId( content );
@@ -1,52 +1,277 @@
 package com.google.buzz.util;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 
 /**
- * Date utilities class.
- * 
+ * Date utilities class. <br/>
+ * Reads and writes the RFC 3339 ( ISO-8601 ) timestamps of the Atom feeds, such as
+ * <b>2010-02-09T17:01:35.000Z</b> or <b>2010-02-09T09:01:35-08:00</b>, without going through
+ * <b>SimpleDateFormat</b>: the methods are thread safe and only allocate their result.
+ *
  * @author roberto.estivill
  */
 public class DateUtils
 {
     /**
-     * Format used by google buzz feeds
+     * Length of the formatted dates: yyyy-MM-ddTHH:mm:ss.SSSZ
      */
-    private static final String FORMAT = "yyyy-MM-dd'T'hh:mm:ss.SSS'Z'";
+    private static final int FORMAT_LENGTH = 24;
 
     /**
-     * Method to format date fields.
-     * 
+     * Milliseconds of a minute, hour and day
+     */
+    private static final long MINUTE = 60 * 1000L;
+
+    private static final long HOUR = 60 * MINUTE;
+
+    private static final long DAY = 24 * HOUR;
+
+    /**
+     * Days from 0000-03-01 to 1970-01-01, in the proleptic gregorian calendar
+     */
+    private static final long EPOCH_DAY_OFFSET = 719468L;
+
+    /**
+     * Days of a 400 years era
+     */
+    private static final long DAYS_PER_ERA = 146097L;
+
+    /**
+     * Method to format date fields, in UTC with milliseconds.
+     *
      * @param date to format
      * @return the string representation of the date
      */
     public static String format( Date date )
     {
-        SimpleDateFormat format = new SimpleDateFormat( FORMAT );
-        String dateString = format.format( date );
-        return dateString;
+        return formatMillis( date.getTime() );
+    }
+
+    /**
+     * Method to format a time, in UTC with milliseconds.
+     *
+     * @param millis since the epoch
+     * @return the string representation of the time, ie: 2010-02-09T17:01:35.000Z
+     */
+    public static String formatMillis( long millis )
+    {
+        long epochDay = Math.floorDiv( millis, DAY );
+        int millisOfDay = (int) Math.floorMod( millis, DAY );
+
+        // civil date of the day, counted in eras starting on march 1st
+        long days = epochDay + EPOCH_DAY_OFFSET;
+        long era = Math.floorDiv( days, DAYS_PER_ERA );
+        int dayOfEra = (int) ( days - era * DAYS_PER_ERA );
+        int yearOfEra = ( dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096 ) / 365;
+        int dayOfYear = dayOfEra - ( 365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100 );
+        int shiftedMonth = ( 5 * dayOfYear + 2 ) / 153;
+        int day = dayOfYear - ( 153 * shiftedMonth + 2 ) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + ( month <= 2 ? 1 : 0 );
+        if ( year < 0 || year > 9999 )
+        {
+            throw new IllegalArgumentException( "Year out of range: " + year );
+        }
+
+        char[] chars = new char[FORMAT_LENGTH];
+        put( chars, 0, (int) year, 4 );
+        chars[4] = '-';
+        put( chars, 5, month, 2 );
+        chars[7] = '-';
+        put( chars, 8, day, 2 );
+        chars[10] = 'T';
+        put( chars, 11, millisOfDay / (int) HOUR, 2 );
+        chars[13] = ':';
+        put( chars, 14, millisOfDay / (int) MINUTE % 60, 2 );
+        chars[16] = ':';
+        put( chars, 17, millisOfDay / 1000 % 60, 2 );
+        chars[19] = '.';
+        put( chars, 20, millisOfDay % 1000, 3 );
+        chars[23] = 'Z';
+        return new String( chars );
     }
 
     /**
      * Method to pase date fields.
-     * 
+     *
      * @param date to parse
-     * @return the date object
+     * @return the date object, or null if the date is not a valid timestamp
      */
     public static Date parseDate( String date )
     {
-        SimpleDateFormat format = new SimpleDateFormat( FORMAT );
-        Date dateObj = null;
+        if ( date == null )
+        {
+            return null;
+        }
         try
         {
-            dateObj = format.parse( date );
+            return new Date( parseMillis( date ) );
         }
-        catch ( ParseException e )
+        catch ( IllegalArgumentException e )
         {
             return null;
         }
-        return dateObj;
+    }
+
+    /**
+     * Method to parse a timestamp: <b>yyyy-MM-ddTHH:mm:ss</b>, with optional fraction of second,
+     * followed by <b>Z</b> or an offset to UTC such as <b>+05:30</b>. Digits of the fraction beyond
+     * the milliseconds are ignored.
+     *
+     * @param date to parse
+     * @return the milliseconds since the epoch
+     * @throws IllegalArgumentException if the date is not a valid timestamp
+     */
+    public static long parseMillis( CharSequence date )
+    {
+        int length = date.length();
+        if ( length < 20 || date.charAt( 4 ) != '-' || date.charAt( 7 ) != '-'
+            || ( date.charAt( 10 ) != 'T' && date.charAt( 10 ) != 't' ) || date.charAt( 13 ) != ':'
+            || date.charAt( 16 ) != ':' )
+        {
+            throw invalid( date );
+        }
+        int year = digits( date, 0, 4 );
+        int month = digits( date, 5, 2 );
+        int day = digits( date, 8, 2 );
+        int hour = digits( date, 11, 2 );
+        int minute = digits( date, 14, 2 );
+        int second = digits( date, 17, 2 );
+        if ( month < 1 || month > 12 || day < 1 || day > daysOfMonth( year, month ) || hour > 23 || minute > 59
+            || second > 60 )
+        {
+            throw invalid( date );
+        }
+
+        int pos = 19;
+        int millis = 0;
+        if ( date.charAt( pos ) == '.' )
+        {
+            int start = ++pos;
+            int scale = 100;
+            while ( pos < length && isDigit( date.charAt( pos ) ) )
+            {
+                millis += ( date.charAt( pos ) - '0' ) * scale;
+                scale /= 10;
+                pos++;
+            }
+            if ( pos == start )
+            {
+                throw invalid( date );
+            }
+        }
+
+        long offset;
+        char zone = pos < length ? date.charAt( pos ) : 0;
+        if ( ( zone == 'Z' || zone == 'z' ) && pos + 1 == length )
+        {
+            offset = 0;
+        }
+        else if ( ( zone == '+' || zone == '-' ) && ( pos + 6 == length || pos + 5 == length ) )
+        {
+            int offsetHour = digits( date, pos + 1, 2 );
+            int minutePos = pos + 6 == length ? pos + 4 : pos + 3;
+            if ( minutePos == pos + 4 && date.charAt( pos + 3 ) != ':' )
+            {
+                throw invalid( date );
+            }
+            int offsetMinute = digits( date, minutePos, 2 );
+            if ( offsetHour > 23 || offsetMinute > 59 )
+            {
+                throw invalid( date );
+            }
+            offset = offsetHour * HOUR + offsetMinute * MINUTE;
+            if ( zone == '-' )
+            {
+                offset = -offset;
+            }
+        }
+        else
+        {
+            throw invalid( date );
+        }
+
+        return epochDay( year, month, day ) * DAY + hour * HOUR + minute * MINUTE + second * 1000L + millis
+            - offset;
+    }
+
+    /**
+     * @return the days from the epoch to a date of the proleptic gregorian calendar
+     */
+    private static long epochDay( int year, int month, int day )
+    {
+        // years start on march 1st, so the leap day is the last of the year
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv( y, 400 );
+        int yearOfEra = y - era * 400;
+        int dayOfYear = ( 153 * ( month > 2 ? month - 3 : month + 9 ) + 2 ) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * DAYS_PER_ERA + dayOfEra - EPOCH_DAY_OFFSET;
+    }
+
+    /**
+     * @return the number of days of a month
+     */
+    private static int daysOfMonth( int year, int month )
+    {
+        switch ( month )
+        {
+            case 2:
+                return year % 4 == 0 && ( year % 100 != 0 || year % 400 == 0 ) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * @return the value of a fixed number of decimal digits
+     * @throws IllegalArgumentException if one of the characters is not a digit
+     */
+    private static int digits( CharSequence date, int start, int count )
+    {
+        int value = 0;
+        for ( int i = start; i < start + count; i++ )
+        {
+            char c = date.charAt( i );
+            if ( !isDigit( c ) )
+            {
+                throw invalid( date );
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    /**
+     * @return true for the ascii digits
+     */
+    private static boolean isDigit( char c )
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Write a number, left padded with zeros.
+     */
+    private static void put( char[] chars, int start, int value, int count )
+    {
+        for ( int i = start + count - 1; i >= start; i-- )
+        {
+            chars[i] = (char) ( '0' + value % 10 );
+            value /= 10;
+        }
+    }
+
+    /**
+     * @return the exception for an invalid timestamp
+     */
+    private static IllegalArgumentException invalid( CharSequence date )
+    {
+        return new IllegalArgumentException( "Invalid timestamp: " + date );
     }
 }
@@ -0,0 +1,47 @@
+package com.google.buzz.util;
+
+/**
+ * Size of texts once encoded in UTF-8, computed without encoding them.
+ */
+public final class Utf8
+{
+    private Utf8()
+    {
+    }
+
+    /**
+     * @param text to measure, may be null
+     * @return the number of bytes of the text in UTF-8, 0 if null
+     */
+    public static long length( CharSequence text )
+    {
+        if ( text == null )
+        {
+            return 0;
+        }
+        long bytes = 0;
+        int n = text.length();
+        for ( int i = 0; i < n; i++ )
+        {
+            char c = text.charAt( i );
+            if ( c < 0x80 )
+            {
+                bytes++;
+            }
+            else if ( c < 0x800 )
+            {
+                bytes += 2;
+            }
+            else if ( Character.isHighSurrogate( c ) && i + 1 < n && Character.isLowSurrogate( text.charAt( i + 1 ) ) )
+            {
+                bytes += 4;
+                i++;
+            }
+            else
+            {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,156 @@
+package com.google.buzz;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.buzz.exception.BuzzIOException;
+import com.google.buzz.io.BuzzIO;
+import com.google.buzz.io.BuzzRequest;
+import com.google.buzz.io.BuzzResponse;
+import com.google.buzz.io.StubTransport;
+import com.google.buzz.model.BuzzFeed;
+import com.google.buzz.model.BuzzFeedEntry;
+import com.google.buzz.oauth.BuzzOAuth2;
+
+public class AsyncBuzzTest
+{
+
+ @Before public void initBuzzClient()
+                          throws Exception
+ {
+   transport = new StubTransport();
+   Buzz buzz = new Buzz(transport);
+   buzz.setOAuthVersion(2);
+   buzz.setConsumerForScope("client","secret",Buzz.BUZZ_SCOPE_WRITE);
+   buzz.setTokenWithSecret("token","refresh-token");
+   transport.addResponse(BuzzIO.HTTP_METHOD_POST,
+                         "https://accounts.google.com/o/oauth2/token",
+                         new BuzzResponse(200,
+                          "{\"access_token\":\"fresh-token\",\"expires_in\":3600}"));
+   asyncBuzz = new AsyncBuzz(buzz, transport, ForkJoinPool.commonPool());
+ }
+
+ @Test public void testManyFeedsInFlight() throws Exception
+ {
+   transport.addResponse(Buzz.BUZZ_URL_ACTIVITIES+"ada/@public",
+                         Resources.load("feed.xml"));
+   List<CompletableFuture<BuzzFeed>> futures = new ArrayList<CompletableFuture<BuzzFeed>>();
+   for(int i=0; i<100; ++i) {
+     futures.add(asyncBuzz.getPosts("ada",BuzzFeed.Type.PUBLIC));
+   }
+   for(CompletableFuture<BuzzFeed> future: futures) {
+     Assert.assertEquals(2,future.join().getEntries().size());
+   }
+   Assert.assertEquals(100,transport.getRequests().size());
+ }
+
+ @Test public void testSignedRequest() throws Exception
+ {
+   transport.addResponse(Buzz.BUZZ_URL_ACTIVITIES+"ada/@self/z12",
+                         Resources.load("entry.xml"));
+   BuzzFeedEntry entry = asyncBuzz.getPost("ada","z12").join();
+   Assert.assertEquals("Ada Lovelace",entry.getAuthor().getName());
+   Assert.assertNotNull(transport.getRequests().get(transport.getRequests().size()-1)
+                                 .getHeader("Authorization"));
+ }
+
+ @Test public void testErrorCompletesExceptionally() throws Exception
+ {
+   transport.addResponse(BuzzIO.HTTP_METHOD_GET,
+                         Buzz.BUZZ_URL_ACTIVITIES+"ada/@self/z12",
+                         new BuzzResponse(503,"try later"));
+   try {
+     asyncBuzz.getPost("ada","z12").join();
+     Assert.fail("expected CompletionException");
+   } catch (CompletionException ex) {
+     Assert.assertTrue(ex.getCause() instanceof BuzzIOException);
+     Assert.assertEquals("try later",ex.getCause().getMessage());
+   }
+ }
+
+ @Test public void testBlockingTransportNeedsAnExecutor() throws Exception
+ {
+   transport.addResponse(Buzz.BUZZ_URL_ACTIVITIES+"ada/@self/z12",
+                         Resources.load("entry.xml"));
+   Buzz buzz = new Buzz(request -> transport.execute(request));
+   buzz.setOAuthVersion(2);
+   buzz.setConsumerForScope("client","secret",Buzz.BUZZ_SCOPE_WRITE);
+   buzz.setTokenWithSecret("token","refresh-token");
+   try {
+     new AsyncBuzz(buzz);
+     Assert.fail("expected IllegalArgumentException");
+   } catch (IllegalArgumentException ex) {
+     // a blocking transport would hold threads of the library
+   }
+   ExecutorService executor = Executors.newFixedThreadPool(2);
+   try {
+     BuzzFeedEntry entry = new AsyncBuzz(buzz,executor).getPost("ada","z12").join();
+     Assert.assertEquals("Ada Lovelace",entry.getAuthor().getName());
+   } finally {
+     executor.shutdown();
+   }
+ }
+
+ @Test public void testNotModifiedIsServedFromTheCache() throws Exception
+ {
+   final String feed = Resources.load("feed.xml");
+   final List<BuzzRequest> requests = Collections.synchronizedList(new ArrayList<BuzzRequest>());
+   Buzz buzz = new Buzz(transport);
+   BuzzOAuth2 oauth = new BuzzOAuth2();
+   oauth.setAccessToken("token");
+   oauth.setExpireTime(Long.MAX_VALUE);
+   buzz.setBuzzOAuth(oauth);
+   buzz.setCache(new BuzzCache(2));
+   AsyncBuzz cached = new AsyncBuzz(buzz, request -> {
+     requests.add(request);
+     if ("\"v1\"".equals(request.getHeader("If-None-Match"))) {
+       return CompletableFuture.completedFuture(new BuzzResponse(304,null,(String)null));
+     }
+     return CompletableFuture.completedFuture(
+       new BuzzResponse(200,Collections.singletonMap("ETag","\"v1\""),
+                        new ByteArrayInputStream(feed.getBytes(StandardCharsets.UTF_8))));
+   }, ForkJoinPool.commonPool());
+   BuzzFeed first = cached.getPosts("ada",BuzzFeed.Type.CONSUMPTION).join();
+   BuzzFeed second = cached.getPosts("ada",BuzzFeed.Type.CONSUMPTION).join();
+   Assert.assertEquals("\"v1\"",requests.get(1).getHeader("If-None-Match"));
+   Assert.assertSame(first,second);
+   Assert.assertEquals(1L,buzz.getCache().getHits());
+ }
+
+ @Test public void testAbandonedCallClosesItsResponse() throws Exception
+ {
+   final CompletableFuture<BuzzResponse> answer = new CompletableFuture<BuzzResponse>();
+   final CountDownLatch closed = new CountDownLatch(1);
+   Buzz buzz = new Buzz(transport);
+   BuzzOAuth2 oauth = new BuzzOAuth2();
+   oauth.setAccessToken("token");
+   oauth.setExpireTime(Long.MAX_VALUE);
+   buzz.setBuzzOAuth(oauth);
+   AsyncBuzz slow = new AsyncBuzz(buzz, request -> answer, ForkJoinPool.commonPool());
+   CompletableFuture<BuzzFeedEntry> post = slow.getPost("ada","z12");
+   post.cancel(true);
+   answer.complete(new BuzzResponse(200,null,
+                    new ByteArrayInputStream(Resources.load("entry.xml").getBytes(StandardCharsets.UTF_8)) {
+     @Override public void close() { closed.countDown(); }
+   }));
+   Assert.assertTrue(closed.await(5,TimeUnit.SECONDS));
+ }
+
+ private StubTransport transport;
+ private AsyncBuzz asyncBuzz;
+
+}
@@ -0,0 +1,137 @@
+package com.google.buzz;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.buzz.exception.BuzzException;
+import com.google.buzz.exception.BuzzValidationException;
+import com.google.buzz.io.BuzzIO;
+import com.google.buzz.io.BuzzResponse;
+import com.google.buzz.io.StubTransport;
+import com.google.buzz.model.BuzzUserProfile;
+
+public class BulkBuzzTest
+{
+
+ @Test public void testAccountLimit() throws Exception
+ {
+   BulkBuzz bulk = new BulkBuzz(10,3);
+   final AtomicInteger inFlight = new AtomicInteger();
+   final AtomicInteger maxInFlight = new AtomicInteger();
+   List<Integer> keys = new ArrayList<Integer>();
+   for(int i=0; i<50; ++i) {
+     keys.add(i);
+   }
+   Iterator<BulkResult<Integer,Integer>> results = bulk.invokeAll("ada","host",keys,
+      new BulkBuzz.BulkCall<Integer,Integer>() {
+        public Integer call(Integer key) throws BuzzException
+        {
+          int n = inFlight.incrementAndGet();
+          maxInFlight.accumulateAndGet(n,Math::max);
+          try {
+            Thread.sleep(5);
+          } catch (InterruptedException ex) {
+            throw new BuzzException(ex);
+          }
+          inFlight.decrementAndGet();
+          if (key==7) {
+            throw new BuzzValidationException("bad key");
+          }
+          return key*2;
+        }
+      });
+   Set<Integer> seen = new HashSet<Integer>();
+   int failures = 0;
+   while(results.hasNext()) {
+     BulkResult<Integer,Integer> result = results.next();
+     seen.add(result.getKey());
+     if (result.isSuccessful()) {
+       Assert.assertEquals(result.getKey()*2,result.getValue().intValue());
+     } else {
+       ++failures;
+     }
+   }
+   bulk.shutdown();
+   Assert.assertEquals(50,seen.size());
+   Assert.assertEquals(1,failures);
+   Assert.assertTrue(maxInFlight.get()<=3);
+ }
+
+ @Test public void testBusyAccountDoesNotHoldTheThreads() throws Exception
+ {
+   // two threads: the calls of ada wait for her single permit in the queue, not on a thread
+   BulkBuzz bulk = new BulkBuzz(Executors.newFixedThreadPool(2),10,1);
+   final CountDownLatch release = new CountDownLatch(1);
+   Iterator<BulkResult<Integer,Integer>> ada = bulk.invokeAll("ada","host",Arrays.asList(1,2,3,4),
+      new BulkBuzz.BulkCall<Integer,Integer>() {
+        public Integer call(Integer key) throws BuzzException
+        {
+          try {
+            release.await();
+          } catch (InterruptedException ex) {
+            throw new BuzzException(ex);
+          }
+          return key;
+        }
+      });
+   Iterator<BulkResult<Integer,Integer>> charles = bulk.invokeAll("charles","host",Arrays.asList(5),
+      new BulkBuzz.BulkCall<Integer,Integer>() {
+        public Integer call(Integer key)
+        {
+          return key;
+        }
+      });
+   Assert.assertEquals(5,charles.next().getValue().intValue());
+   release.countDown();
+   int count = 0;
+   while(ada.hasNext()) {
+     Assert.assertTrue(ada.next().isSuccessful());
+     ++count;
+   }
+   bulk.shutdown();
+   Assert.assertEquals(4,count);
+ }
+
+ @Test public void testUserProfiles() throws Exception
+ {
+   StubTransport transport = new StubTransport();
+   transport.addResponse(Buzz.BUZZ_URL_PEOPLE+"ada/@self",Resources.load("profile.xml"));
+   transport.addResponse(Buzz.BUZZ_URL_PEOPLE+"charles/@self",Resources.load("profile.xml"));
+   transport.addResponse(BuzzIO.HTTP_METHOD_POST,
+                         "https://accounts.google.com/o/oauth2/token",
+                         new BuzzResponse(200,
+                          "{\"access_token\":\"fresh-token\",\"expires_in\":3600}"));
+   Buzz buzz = new Buzz(transport);
+   buzz.setOAuthVersion(2);
+   buzz.setConsumerForScope("client","secret",Buzz.BUZZ_SCOPE_WRITE);
+   buzz.setTokenWithSecret("token","refresh-token");
+   // refresh the token before fanning out
+   buzz.getUserProfile("ada");
+   BulkBuzz bulk = new BulkBuzz();
+   Iterator<BulkResult<String,BuzzUserProfile>> results =
+      bulk.getUserProfiles(buzz,"ada",Arrays.asList("ada","charles","nobody"));
+   int successes = 0;
+   while(results.hasNext()) {
+     BulkResult<String,BuzzUserProfile> result = results.next();
+     if (result.isSuccessful()) {
+       Assert.assertNotNull(result.getValue());
+       ++successes;
+     } else {
+       Assert.assertEquals("nobody",result.getKey());
+     }
+   }
+   bulk.shutdown();
+   Assert.assertEquals(2,successes);
+ }
+
+}
@@ -0,0 +1,76 @@
+package com.google.buzz;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.buzz.io.BuzzRequest;
+import com.google.buzz.io.BuzzResponse;
+import com.google.buzz.io.BuzzTransport;
+import com.google.buzz.model.BuzzCommentsFeed;
+import com.google.buzz.model.BuzzFeed;
+import com.google.buzz.oauth.BuzzOAuth2;
+
+public class BuzzCacheTest
+{
+
+ @Before public void initBuzzClient() throws Exception
+ {
+   requests = Collections.synchronizedList(new ArrayList<BuzzRequest>());
+   etag = "\"v1\"";
+   final String feed = Resources.load("feed.xml");
+   final String comments = Resources.load("comments.xml");
+   buzz = new Buzz(new BuzzTransport() {
+     public BuzzResponse execute(BuzzRequest request) {
+       requests.add(request);
+       if (etag.equals(request.getHeader("If-None-Match"))) {
+         return new BuzzResponse(304,null,(String)null);
+       }
+       String body = request.getUrl().endsWith("@comments") ? comments : feed;
+       return new BuzzResponse(200,Collections.singletonMap("ETag",etag),body);
+     }
+   });
+   BuzzOAuth2 oauth = new BuzzOAuth2();
+   oauth.setAccessToken("token");
+   oauth.setExpireTime(Long.MAX_VALUE);
+   buzz.setBuzzOAuth(oauth);
+   buzz.setCache(new BuzzCache(2));
+ }
+
+ @Test public void testNotModifiedReturnsCachedFeed() throws Exception
+ {
+   BuzzFeed first = buzz.getPosts("ada",BuzzFeed.Type.CONSUMPTION);
+   Assert.assertNull(requests.get(0).getHeader("If-None-Match"));
+   BuzzFeed second = buzz.getPosts("ada",BuzzFeed.Type.CONSUMPTION);
+   Assert.assertEquals("\"v1\"",requests.get(1).getHeader("If-None-Match"));
+   Assert.assertSame(first,second);
+   Assert.assertEquals(1L,buzz.getCache().getHits());
+
+   etag = "\"v2\"";
+   BuzzFeed third = buzz.getPosts("ada",BuzzFeed.Type.CONSUMPTION);
+   Assert.assertNotSame(first,third);
+   Assert.assertEquals(2,third.getEntries().size());
+   Assert.assertEquals(2L,buzz.getCache().getMisses());
+ }
+
+ @Test public void testLeastRecentlyUsedIsEvicted() throws Exception
+ {
+   BuzzFeed ada = buzz.getPosts("ada",BuzzFeed.Type.CONSUMPTION);
+   BuzzCommentsFeed comments = buzz.getComments("ada","post");
+   Assert.assertSame(ada,buzz.getPosts("ada",BuzzFeed.Type.CONSUMPTION));
+   buzz.getPosts("babbage",BuzzFeed.Type.CONSUMPTION);
+   Assert.assertEquals(2,buzz.getCache().size());
+   Assert.assertEquals(1L,buzz.getCache().getEvictions());
+   Assert.assertSame(ada,buzz.getPosts("ada",BuzzFeed.Type.CONSUMPTION));
+   Assert.assertNotSame(comments,buzz.getComments("ada","post"));
+ }
+
+ private Buzz buzz;
+ private List<BuzzRequest> requests;
+ private volatile String etag;
+
+}
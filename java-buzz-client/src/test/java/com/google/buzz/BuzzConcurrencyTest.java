@@ -0,0 +1,163 @@
+package com.google.buzz;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.buzz.io.BuzzIO;
+import com.google.buzz.io.BuzzRequest;
+import com.google.buzz.io.BuzzResponse;
+import com.google.buzz.io.StubTransport;
+import com.google.buzz.model.BuzzComment;
+import com.google.buzz.model.BuzzCommentsFeed;
+import com.google.buzz.model.BuzzFeed;
+import com.google.buzz.model.BuzzFeedEntry;
+import com.google.buzz.model.BuzzUserProfile;
+import com.google.buzz.oauth.BuzzOAuth;
+
+public class BuzzConcurrencyTest
+{
+
+ @Before public void initBuzzClient() throws Exception
+ {
+   transport = new StubTransport();
+   transport.addResponse(BuzzRequests.posts("ada",BuzzFeed.Type.CONSUMPTION).getUrl(),Resources.load("feed.xml"));
+   transport.addResponse(BuzzRequests.comments("ada","z12").getUrl(),Resources.load("comments.xml"));
+   transport.addResponse(BuzzRequests.userProfile("ada").getUrl(),Resources.load("profile.xml"));
+   transport.addResponse(BuzzRequests.post("ada","z12").getUrl(),Resources.load("entry.xml"));
+   transport.addResponse(BuzzIO.HTTP_METHOD_POST,"https://accounts.google.com/o/oauth2/token",
+                         new BuzzResponse(200,"{\"access_token\":\"fresh-token\",\"expires_in\":3600}"));
+   buzz = new Buzz(transport);
+   buzz.setOAuthVersion(2);
+   buzz.setConsumerForScope("client","secret",Buzz.BUZZ_SCOPE_WRITE);
+   buzz.setTokenWithSecret("expired-token","refresh-token");
+   pool = Executors.newFixedThreadPool(THREADS);
+ }
+
+ @After public void stopPool()
+ {
+   pool.shutdownNow();
+ }
+
+ @Test public void testSharedClientUnderParallelUse() throws Exception
+ {
+   final CountDownLatch start = new CountDownLatch(1);
+   List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+   for (int t=0; t<THREADS; ++t) {
+     final int offset = t;
+     results.add(pool.submit(new Callable<List<String>>() {
+       public List<String> call() throws Exception {
+         start.await();
+         List<String> seen = new ArrayList<String>();
+         for (int i=0; i<CALLS; ++i) {
+           seen.add(describe(buzz,(i+offset)%4));
+         }
+         return seen;
+       }
+     }));
+   }
+   start.countDown();
+   List<String> expected = new ArrayList<String>();
+   for (int i=0; i<4; ++i) {
+     expected.add(null);
+   }
+   for (int t=0; t<THREADS; ++t) {
+     List<String> seen = results.get(t).get(60,TimeUnit.SECONDS);
+     for (int i=0; i<CALLS; ++i) {
+       int kind = (i+t)%4;
+       if (expected.get(kind)==null) {
+         expected.set(kind,seen.get(i));
+       }
+       Assert.assertEquals(expected.get(kind),seen.get(i));
+     }
+   }
+   int tokenRequests = 0;
+   int signed = 0;
+   for (BuzzRequest request : transport.getRequests()) {
+     if (BuzzIO.HTTP_METHOD_POST.equals(request.getMethod())) {
+       tokenRequests++;
+     } else if ("OAuth fresh-token".equals(request.getHeader("Authorization"))) {
+       signed++;
+     }
+   }
+   Assert.assertEquals(1,tokenRequests);
+   Assert.assertEquals(THREADS*CALLS,signed);
+
+   Buzz serial = new Buzz(transport);
+   serial.setBuzzOAuth(buzz.getBuzzOAuth());
+   for (int kind=0; kind<4; ++kind) {
+     Assert.assertEquals(describe(serial,kind),expected.get(kind));
+   }
+ }
+
+ @Test public void testOAuthIsCreatedOnce() throws Exception
+ {
+   final Buzz fresh = new Buzz(transport);
+   final CountDownLatch start = new CountDownLatch(1);
+   List<Future<BuzzOAuth>> results = new ArrayList<Future<BuzzOAuth>>();
+   for (int t=0; t<THREADS; ++t) {
+     results.add(pool.submit(new Callable<BuzzOAuth>() {
+       public BuzzOAuth call() throws Exception {
+         start.await();
+         return fresh.getBuzzOAuth();
+       }
+     }));
+   }
+   start.countDown();
+   for (Future<BuzzOAuth> result : results) {
+     Assert.assertSame(fresh.getBuzzOAuth(),result.get(10,TimeUnit.SECONDS));
+   }
+ }
+
+ /**
+  * Calls one of the read methods and describes its result.
+  */
+ private static String describe(Buzz client, int kind) throws Exception
+ {
+   switch (kind) {
+     case 0: {
+       BuzzFeed feed = client.getPosts("ada",BuzzFeed.Type.CONSUMPTION);
+       StringBuilder sb = new StringBuilder("feed");
+       for (BuzzFeedEntry entry : feed.getEntries()) {
+         sb.append('|').append(entry.getId()).append('|').append(entry.getTitle())
+           .append('|').append(entry.getPublished());
+       }
+       return sb.toString();
+     }
+     case 1: {
+       BuzzCommentsFeed comments = client.getComments("ada","z12");
+       StringBuilder sb = new StringBuilder("comments|").append(comments.getTitle());
+       for (BuzzComment comment : comments.getComments()) {
+         sb.append('|').append(comment.getAuthor().getName()).append('|').append(comment.getPublished());
+       }
+       return sb.toString();
+     }
+     case 2: {
+       BuzzUserProfile profile = client.getUserProfile("ada");
+       return "profile|"+profile.getId()+"|"+profile.getName();
+     }
+     default: {
+       BuzzFeedEntry entry = client.getPost("ada","z12");
+       return "entry|"+entry.getId()+"|"+entry.getAuthor().getName()+"|"+entry.getTitle();
+     }
+   }
+ }
+
+ private static final int THREADS = 16;
+ private static final int CALLS = 200;
+
+ private StubTransport transport;
+ private Buzz buzz;
+ private ExecutorService pool;
+
+}
@@ -0,0 +1,118 @@
+package com.google.buzz;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.buzz.io.BuzzIO;
+import com.google.buzz.io.BuzzResponse;
+import com.google.buzz.io.StubTransport;
+import com.google.buzz.model.BuzzFeed;
+import com.google.buzz.model.BuzzFeedEntry;
+import com.google.buzz.model.BuzzUserProfile;
+
+public class BuzzCursorTest
+{
+
+ @Before public void initBuzzClient()
+                          throws Exception
+ {
+   transport = new StubTransport();
+   buzz = new Buzz(transport);
+   buzz.setOAuthVersion(2);
+   buzz.setConsumerForScope("client","secret",Buzz.BUZZ_SCOPE_WRITE);
+   buzz.setTokenWithSecret("token","refresh-token");
+   transport.addResponse(BuzzIO.HTTP_METHOD_POST,
+                         "https://accounts.google.com/o/oauth2/token",
+                         new BuzzResponse(200,
+                          "{\"access_token\":\"fresh-token\",\"expires_in\":3600}"));
+   String page1 = Resources.load("feed.xml");
+   String page2 = page1.replaceFirst("<link rel=\"next\"[^>]*>","");
+   transport.addResponse(FEED_URL,page1);
+   transport.addResponse(FEED_URL+"?c=page2",page2);
+ }
+
+ @Test public void testFollowsNextLinks() throws Exception
+ {
+   BuzzCursor<BuzzFeedEntry> cursor = buzz.paginatePosts(USER,BuzzFeed.Type.CONSUMPTION,
+                                          BuzzCursor.UNLIMITED,BuzzCursor.UNLIMITED);
+   int count = 0;
+   while(cursor.hasNext()) {
+     Assert.assertNotNull(cursor.next().getId());
+     ++count;
+   }
+   Assert.assertEquals(4,count);
+   Assert.assertEquals(2,cursor.getPageCount());
+ }
+
+ @Test public void testPageLimit() throws Exception
+ {
+   BuzzCursor<BuzzFeedEntry> cursor = buzz.paginatePosts(USER,BuzzFeed.Type.CONSUMPTION,
+                                          1,BuzzCursor.UNLIMITED);
+   int count = 0;
+   while(cursor.hasNext()) {
+     cursor.next();
+     ++count;
+   }
+   Assert.assertEquals(2,count);
+   Assert.assertEquals(1,cursor.getPageCount());
+ }
+
+ @Test public void testItemLimit() throws Exception
+ {
+   BuzzCursor<BuzzFeedEntry> cursor = buzz.paginatePosts(USER,BuzzFeed.Type.CONSUMPTION,
+                                          BuzzCursor.UNLIMITED,3);
+   int count = 0;
+   while(cursor.hasNext()) {
+     cursor.next();
+     ++count;
+   }
+   Assert.assertEquals(3,count);
+ }
+
+ @Test public void testFollowersByIndex() throws Exception
+ {
+   String url = Buzz.BUZZ_URL_PEOPLE+USER+"/@groups/@followers";
+   String people = Resources.load("people.xml").replace("<totalResults>2","<totalResults>4");
+   transport.addResponse(url,people);
+   transport.addResponse(url+"?startIndex=2",
+             people.replace("<startIndex>0","<startIndex>2"));
+   BuzzCursor<BuzzUserProfile> cursor = buzz.paginateFollowers(USER,
+                                          BuzzCursor.UNLIMITED,BuzzCursor.UNLIMITED);
+   int count = 0;
+   while(cursor.hasNext()) {
+     cursor.next();
+     ++count;
+   }
+   Assert.assertEquals(4,count);
+   Assert.assertEquals(2,cursor.getPageCount());
+ }
+
+ @Test public void testClosingStopsThePrefetch() throws Exception
+ {
+   final CountDownLatch started = new CountDownLatch(1);
+   final CountDownLatch interrupted = new CountDownLatch(1);
+   try (BuzzCursor<String> cursor = new BuzzCursor<String>(url -> {
+          started.countDown();
+          try {
+            Thread.sleep(60000);
+          } catch (InterruptedException e) {
+            interrupted.countDown();
+          }
+          return null;
+        },FEED_URL,BuzzCursor.UNLIMITED,BuzzCursor.UNLIMITED)) {
+     Assert.assertTrue(started.await(5,TimeUnit.SECONDS));
+   }
+   Assert.assertTrue(interrupted.await(5,TimeUnit.SECONDS));
+ }
+
+ private static final String USER = "117377434815709898403";
+ private static final String FEED_URL = Buzz.BUZZ_URL_ACTIVITIES+USER+"/@consumption";
+
+ private StubTransport transport;
+ private Buzz buzz;
+
+}
@@ -0,0 +1,179 @@
+package com.google.buzz;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.buzz.exception.BuzzIOException;
+import com.google.buzz.io.BuzzRequest;
+import com.google.buzz.io.BuzzResponse;
+import com.google.buzz.io.BuzzTransport;
+import com.google.buzz.model.BuzzFeed;
+import com.google.buzz.model.BuzzUserProfile;
+import com.google.buzz.oauth.BuzzOAuth2;
+
+public class BuzzDiskCacheTest
+{
+
+ @Before public void initBuzzClient() throws Exception
+ {
+   directory = Files.createTempDirectory("buzz-cache").toFile();
+   requests = Collections.synchronizedList(new ArrayList<BuzzRequest>());
+   feed = Resources.load("feed.xml");
+   people = Resources.load("people.xml");
+ }
+
+ @After public void deleteDirectory() throws Exception
+ {
+   if (cache!=null) {
+     cache.close();
+   }
+   for (File file : directory.listFiles()) {
+     file.delete();
+   }
+   directory.delete();
+ }
+
+ @Test public void testRestartStartsWarm() throws Exception
+ {
+   Buzz buzz = open(new BuzzDiskCache(directory,10,1<<20));
+   BuzzFeed first = buzz.getPosts("ada",BuzzFeed.Type.CONSUMPTION);
+   List<BuzzUserProfile> followers = buzz.followers("ada");
+   Assert.assertEquals(2,cache.size());
+   cache.close();
+
+   buzz = open(new BuzzDiskCache(directory,10,1<<20));
+   Assert.assertEquals(2,cache.size());
+   BuzzFeed second = buzz.getPosts("ada",BuzzFeed.Type.CONSUMPTION);
+   Assert.assertEquals("\"v1\"",requests.get(2).getHeader("If-None-Match"));
+   Assert.assertNotSame(first,second);
+   Assert.assertEquals(first.getEntries().get(0).getContent().getText(),
+                       second.getEntries().get(0).getContent().getText());
+   Assert.assertEquals(followers.size(),buzz.followers("ada").size());
+   Assert.assertEquals(2L,cache.getHits());
+   Assert.assertEquals(0L,cache.getMisses());
+ }
+
+ @Test public void testInvalidatedUrlsStayForgotten() throws Exception
+ {
+   Buzz buzz = open(new BuzzDiskCache(directory,10,1<<20));
+   buzz.getPosts("ada",BuzzFeed.Type.CONSUMPTION);
+   buzz.getPosts("babbage",BuzzFeed.Type.CONSUMPTION);
+   cache.invalidate(requests.get(0).getUrl());
+   cache.close();
+
+   open(new BuzzDiskCache(directory,10,1<<20));
+   Assert.assertEquals(1,cache.size());
+ }
+
+ @Test public void testSizeIsCapped() throws Exception
+ {
+   Buzz buzz = open(new BuzzDiskCache(directory,100,8192,4096));
+   for (int i=0;i<50;i++) {
+     buzz.getPosts("user"+i,BuzzFeed.Type.CONSUMPTION);
+   }
+   Assert.assertTrue(cache.getBytes()<=8192);
+   Assert.assertTrue(cache.getEvictions()>0);
+   // the oldest segments are rewritten, so the files stay bounded
+   Assert.assertTrue(directory.list().length<=6);
+   int size = cache.size();
+   cache.close();
+
+   buzz = open(new BuzzDiskCache(directory,100,8192,4096));
+   Assert.assertEquals(size,cache.size());
+   buzz.getPosts("user49",BuzzFeed.Type.CONSUMPTION);
+   Assert.assertEquals(1L,cache.getHits());
+ }
+
+ @Test public void testTornRecordIsDropped() throws Exception
+ {
+   Buzz buzz = open(new BuzzDiskCache(directory,10,1<<20));
+   buzz.getPosts("ada",BuzzFeed.Type.CONSUMPTION);
+   buzz.getPosts("babbage",BuzzFeed.Type.CONSUMPTION);
+   cache.close();
+   // damage the end of the second record
+   File segment = directory.listFiles((dir,name) -> name.startsWith("segment-"))[0];
+   try (RandomAccessFile file = new RandomAccessFile(segment,"rw")) {
+     int length = file.readInt();
+     file.seek(8+length+20);
+     file.writeInt(0x0BADF00D);
+   }
+
+   open(new BuzzDiskCache(directory,10,1<<20));
+   Assert.assertEquals(1,cache.size());
+ }
+
+ @Test public void testClosedCacheMisses() throws Exception
+ {
+   Buzz buzz = open(new BuzzDiskCache(directory,10,1<<20));
+   buzz.getPosts("ada",BuzzFeed.Type.CONSUMPTION);
+   cache.close();
+   Assert.assertEquals(0,cache.size());
+   Assert.assertNotNull(buzz.getPosts("ada",BuzzFeed.Type.CONSUMPTION));
+   Assert.assertNull(requests.get(1).getHeader("If-None-Match"));
+   Assert.assertEquals(0L,cache.getHits());
+ }
+
+ @Test public void testCacheClosedDuringRevalidationSendsAgain() throws Exception
+ {
+   Buzz buzz = open(new BuzzDiskCache(directory,10,1<<20));
+   BuzzFeed first = buzz.getPosts("ada",BuzzFeed.Type.CONSUMPTION);
+   closeOnRevalidate = true;
+   BuzzFeed second = buzz.getPosts("ada",BuzzFeed.Type.CONSUMPTION);
+   Assert.assertEquals(3,requests.size());
+   Assert.assertNull(requests.get(2).getHeader("If-None-Match"));
+   // a new request is signed, the conditional one is left as it was sent
+   Assert.assertNotSame(requests.get(1),requests.get(2));
+   Assert.assertEquals("\"v1\"",requests.get(1).getHeader("If-None-Match"));
+   Assert.assertEquals("OAuth token",requests.get(2).getHeader("Authorization"));
+   Assert.assertEquals(first.getEntries().get(0).getContent().getText(),
+                       second.getEntries().get(0).getContent().getText());
+   Assert.assertEquals(0L,cache.getHits());
+ }
+
+ @Test(expected=BuzzIOException.class) public void testDirectoryIsLocked() throws Exception
+ {
+   cache = new BuzzDiskCache(directory,10,1<<20);
+   new BuzzDiskCache(directory,10,1<<20);
+ }
+
+ private Buzz open(BuzzDiskCache diskCache) throws Exception
+ {
+   cache = diskCache;
+   Buzz buzz = new Buzz(new BuzzTransport() {
+     public BuzzResponse execute(BuzzRequest request) throws BuzzIOException {
+       requests.add(request);
+       if ("\"v1\"".equals(request.getHeader("If-None-Match"))) {
+         if (closeOnRevalidate) {
+           cache.close();
+         }
+         return new BuzzResponse(304,null,(String)null);
+       }
+       String body = request.getUrl().contains("@groups") ? people : feed;
+       return new BuzzResponse(200,Collections.singletonMap("ETag","\"v1\""),body);
+     }
+   });
+   BuzzOAuth2 oauth = new BuzzOAuth2();
+   oauth.setAccessToken("token");
+   oauth.setExpireTime(Long.MAX_VALUE);
+   buzz.setBuzzOAuth(oauth);
+   buzz.setCache(cache);
+   return buzz;
+ }
+
+ private File directory;
+ private BuzzDiskCache cache;
+ private List<BuzzRequest> requests;
+ private boolean closeOnRevalidate;
+ private String feed;
+ private String people;
+
+}
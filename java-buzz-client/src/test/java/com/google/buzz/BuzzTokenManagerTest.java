@@ -0,0 +1,147 @@
+package com.google.buzz;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.buzz.exception.BuzzAuthenticationException;
+import com.google.buzz.exception.BuzzIOException;
+import com.google.buzz.io.BuzzIO;
+import com.google.buzz.io.BuzzRequest;
+import com.google.buzz.io.BuzzResponse;
+import com.google.buzz.io.BuzzTransport;
+import com.google.buzz.model.BuzzFeed;
+import com.google.buzz.oauth.BuzzTokenManager;
+
+public class BuzzTokenManagerTest
+{
+
+ @Before public void initBuzzClient() throws Exception
+ {
+   requests = Collections.synchronizedList(new ArrayList<BuzzRequest>());
+   final String feed = Resources.load("feed.xml");
+   buzz = new Buzz(new BuzzTransport() {
+     public BuzzResponse execute(BuzzRequest request) {
+       requests.add(request);
+       if ("\"v1\"".equals(request.getHeader("If-None-Match"))) {
+         return new BuzzResponse(304,null,(String)null);
+       }
+       return new BuzzResponse(200,Collections.singletonMap("ETag","\"v1\""),feed);
+     }
+   });
+   buzz.setCache(new BuzzCache(16));
+   refreshes = new AtomicInteger();
+   manager = new BuzzTokenManager(2,"key","secret");
+   manager.setTransport(new BuzzTransport() {
+     public BuzzResponse execute(BuzzRequest request) {
+       return new BuzzResponse(200,null,"{\"access_token\":\"fresh"+refreshes.incrementAndGet()+"\",\"expires_in\":3600}");
+     }
+   });
+   buzz.setTokenManager(manager);
+ }
+
+ @Test public void testAccountsShareOneClient() throws Exception
+ {
+   manager.addAccount("ada","ada-token","ada-refresh",Long.MAX_VALUE);
+   manager.addAccount("babbage","babbage-token","babbage-refresh",Long.MAX_VALUE);
+   Buzz ada = buzz.forAccount("ada");
+   Buzz babbage = buzz.forAccount("babbage");
+   Assert.assertEquals("ada",ada.getAccountId());
+   Assert.assertSame(buzz.getTransport(),babbage.getTransport());
+
+   BuzzFeed adaFeed = ada.getPosts("@me",BuzzFeed.Type.CONSUMPTION);
+   babbage.getPosts("@me",BuzzFeed.Type.CONSUMPTION);
+   Assert.assertSame(adaFeed,ada.getPosts("@me",BuzzFeed.Type.CONSUMPTION));
+   Assert.assertEquals("OAuth ada-token",requests.get(0).getHeader("Authorization"));
+   Assert.assertEquals("ada",requests.get(0).getAccountId());
+   Assert.assertEquals("OAuth babbage-token",requests.get(1).getHeader("Authorization"));
+   Assert.assertNull(requests.get(1).getHeader("If-None-Match"));
+   Assert.assertEquals("\"v1\"",requests.get(2).getHeader("If-None-Match"));
+   Assert.assertEquals(2L,manager.getAccount("ada").getRequests());
+   Assert.assertEquals(0,refreshes.get());
+ }
+
+ @Test(expected=BuzzAuthenticationException.class) public void testUnknownAccount() throws Exception
+ {
+   buzz.forAccount("nobody");
+ }
+
+ @Test public void testThrottledAccountFailsFast() throws Exception
+ {
+   manager.addAccount("ada","ada-token","ada-refresh",Long.MAX_VALUE).throttle(60000L);
+   try {
+     buzz.forAccount("ada").getPosts("@me",BuzzFeed.Type.CONSUMPTION);
+     Assert.fail("throttled account sent a request");
+   } catch (BuzzIOException ex) {
+     Assert.assertTrue(requests.isEmpty());
+   }
+ }
+
+ @Test public void testRejectedAccountIsThrottled() throws Exception
+ {
+   manager.addAccount("ada","ada-token","ada-refresh",Long.MAX_VALUE);
+   Buzz ada = new Buzz(new BuzzTransport() {
+     public BuzzResponse execute(BuzzRequest request) {
+       requests.add(request);
+       return new BuzzResponse(429,Collections.singletonMap("Retry-After","60"),"quota exceeded");
+     }
+   });
+   ada.setTokenManager(manager);
+   ada = ada.forAccount("ada");
+   try {
+     ada.getPosts("@me",BuzzFeed.Type.CONSUMPTION);
+     Assert.fail("rejected request succeeded");
+   } catch (BuzzIOException ex) {
+     Assert.assertTrue(manager.getAccount("ada").isThrottled());
+   }
+   try {
+     ada.getPosts("@me",BuzzFeed.Type.CONSUMPTION);
+     Assert.fail("throttled account sent a request");
+   } catch (BuzzIOException ex) {
+     Assert.assertEquals(1,requests.size());
+   }
+ }
+
+ @Test public void testOAuth1AccountsShareOneConsumer() throws Exception
+ {
+   BuzzTokenManager oauth1 = new BuzzTokenManager(1,"key","secret");
+   oauth1.addAccount("ada","ada-token","ada-secret",0);
+   oauth1.addAccount("babbage","babbage-token","babbage-secret",0);
+   BuzzRequest adaRequest = BuzzIO.createRequest(Buzz.BUZZ_URL_ACTIVITIES+"@me/@self");
+   BuzzRequest babbageRequest = BuzzIO.createRequest(Buzz.BUZZ_URL_ACTIVITIES+"@me/@self");
+   oauth1.signRequest("ada",adaRequest);
+   oauth1.signRequest("babbage",babbageRequest);
+   Assert.assertTrue(adaRequest.getHeader("Authorization").contains("oauth_token=\"ada-token\""));
+   Assert.assertTrue(babbageRequest.getHeader("Authorization").contains("oauth_token=\"babbage-token\""));
+   Assert.assertEquals("ada-secret",oauth1.getAccount("ada").getOAuth().getTokenSecret());
+ }
+
+ @Test public void testRefreshExpiringAccounts() throws Exception
+ {
+   long now = System.currentTimeMillis();
+   for (int i=0; i<1000; ++i) {
+     manager.addAccount("user"+i,"token"+i,"refresh"+i,i%4==0 ? now : now+3600000L);
+   }
+   Assert.assertEquals(1000,manager.size());
+   Assert.assertEquals(250,manager.refreshExpiring());
+   Assert.assertEquals(250,refreshes.get());
+   Assert.assertEquals(0,manager.refreshExpiring());
+   Assert.assertEquals(0L,manager.getRefreshFailures());
+
+   BuzzRequest request = BuzzIO.createRequest(Buzz.BUZZ_URL_ACTIVITIES+"@me/@self");
+   manager.signRequest("user4",request);
+   Assert.assertTrue(request.getHeader("Authorization").startsWith("OAuth fresh"));
+   Assert.assertEquals(250,refreshes.get());
+ }
+
+ private Buzz buzz;
+ private BuzzTokenManager manager;
+ private List<BuzzRequest> requests;
+ private AtomicInteger refreshes;
+
+}
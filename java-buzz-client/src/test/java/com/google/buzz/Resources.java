@@ -0,0 +1,34 @@
+package com.google.buzz;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+ * Access to the canned responses under src/test/resources.
+ */
+public class Resources
+{
+
+ public static String load(String name) throws IOException
+ {
+   InputStream is = Resources.class.getResourceAsStream(name);
+   if (is==null) {
+     throw new IOException("missing test resource "+name);
+   }
+   Reader reader = new InputStreamReader(is,"UTF-8");
+   try {
+     StringBuilder sb = new StringBuilder();
+     char[] buffer = new char[4096];
+     int n;
+     while((n=reader.read(buffer))!=-1) {
+       sb.append(buffer,0,n);
+     }
+     return sb.toString();
+   } finally {
+     reader.close();
+   }
+ }
+
+}
@@ -0,0 +1,87 @@
+package com.google.buzz;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.buzz.exception.BuzzIOException;
+import com.google.buzz.io.BuzzIO;
+import com.google.buzz.io.BuzzRequest;
+import com.google.buzz.io.BuzzResponse;
+import com.google.buzz.io.StubTransport;
+import com.google.buzz.model.BuzzFeed;
+import com.google.buzz.model.BuzzFeedEntry;
+import com.google.buzz.oauth.BuzzOAuth2;
+import com.google.buzz.parser.BuzzFeedReader;
+
+public class StubTransportTest
+{
+
+ @Before public void initBuzzClient()
+                          throws Exception
+ {
+   transport = new StubTransport();
+   buzz = new Buzz(transport);
+   buzz.setOAuthVersion(2);
+   buzz.setConsumerForScope("client","secret",Buzz.BUZZ_SCOPE_WRITE);
+   buzz.setTokenWithSecret("expired-token","refresh-token");
+   transport.addResponse(BuzzIO.HTTP_METHOD_POST,
+                         "https://accounts.google.com/o/oauth2/token",
+                         new BuzzResponse(200,
+                          "{\"access_token\":\"fresh-token\",\"expires_in\":3600}"));
+ }
+
+ @Test public void testPublicFeedIsNotSigned() throws Exception
+ {
+   transport.addResponse(Buzz.BUZZ_URL_ACTIVITIES+"ada/@public",
+                         Resources.load("feed.xml"));
+   BuzzFeed feed = buzz.getPosts("ada",BuzzFeed.Type.PUBLIC);
+   Assert.assertEquals(2,feed.getEntries().size());
+   Assert.assertEquals("Buzz by Ada Lovelace from Buzz",
+                       feed.getEntries().get(0).getTitle());
+   BuzzRequest request = transport.getRequests().get(0);
+   Assert.assertNull(request.getHeader("Authorization"));
+ }
+
+ @Test public void testStreamPosts() throws Exception
+ {
+   transport.addResponse(Buzz.BUZZ_URL_ACTIVITIES+"ada/@public",
+                         Resources.load("feed.xml"));
+   BuzzFeedReader reader = buzz.streamPosts("ada",BuzzFeed.Type.PUBLIC);
+   try {
+     Assert.assertEquals("Buzz by Ada Lovelace from Buzz",reader.next().getTitle());
+     Assert.assertTrue(reader.hasNext());
+   } finally {
+     reader.close();
+   }
+ }
+
+ @Test public void testTokenIsRefreshedThroughTransport() throws Exception
+ {
+   String url = Buzz.BUZZ_URL_ACTIVITIES+"ada/@self/z12";
+   transport.addResponse(url, Resources.load("entry.xml"));
+   BuzzFeedEntry entry = buzz.getPost("ada","z12");
+   Assert.assertEquals("Ada Lovelace",entry.getAuthor().getName());
+   Assert.assertEquals(2,transport.getRequests().size());
+   BuzzRequest request = transport.getRequests().get(1);
+   Assert.assertEquals("OAuth fresh-token",request.getHeader("Authorization"));
+   Assert.assertEquals("fresh-token",((BuzzOAuth2)buzz.getBuzzOAuth()).getToken());
+ }
+
+ @Test public void testErrorStatusIsReported() throws Exception
+ {
+   String url = Buzz.BUZZ_URL_ACTIVITIES+"ada/@self/z12";
+   transport.addResponse(BuzzIO.HTTP_METHOD_GET, url,
+                         new BuzzResponse(503,"try later"));
+   try {
+     buzz.getPost("ada","z12");
+     Assert.fail("expected BuzzIOException");
+   } catch (BuzzIOException ex) {
+     Assert.assertEquals("try later",ex.getMessage());
+   }
+ }
+
+ private StubTransport transport;
+ private Buzz buzz;
+
+}
@@ -0,0 +1,373 @@
+package com.google.buzz.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.buzz.Resources;
+import com.google.buzz.exception.BuzzParsingException;
+import com.google.buzz.model.BuzzAclEntry;
+import com.google.buzz.model.BuzzActivity;
+import com.google.buzz.model.BuzzAuthor;
+import com.google.buzz.model.BuzzComment;
+import com.google.buzz.model.BuzzCommentsFeed;
+import com.google.buzz.model.BuzzContent;
+import com.google.buzz.model.BuzzEmail;
+import com.google.buzz.model.BuzzFeed;
+import com.google.buzz.model.BuzzFeedEntry;
+import com.google.buzz.model.BuzzLink;
+import com.google.buzz.model.BuzzPeopleFeed;
+import com.google.buzz.model.BuzzPhoto;
+import com.google.buzz.model.BuzzReply;
+import com.google.buzz.model.BuzzUrl;
+import com.google.buzz.model.BuzzUserProfile;
+import com.google.buzz.parser.BuzzCommentParser;
+import com.google.buzz.parser.BuzzCommentsParser;
+import com.google.buzz.parser.BuzzFeedEntryParser;
+import com.google.buzz.parser.BuzzFeedParser;
+import com.google.buzz.parser.BuzzUserProfileParser;
+import com.google.buzz.parser.BuzzUsersProfilesParser;
+
+public class BuzzBinaryCodecTest
+{
+    @Test
+    public void testModelsRoundTrip()
+        throws Exception
+    {
+        assertRoundTrip( BuzzFeedParser.parseFeed( Resources.load( "feed.xml" ) ) );
+        assertRoundTrip( BuzzFeedEntryParser.parseFeedEntry( Resources.load( "entry.xml" ) ) );
+        assertRoundTrip( BuzzCommentParser.parseComment( Resources.load( "comment.xml" ) ) );
+        assertRoundTrip( BuzzCommentsParser.parseComments( Resources.load( "comments.xml" ) ) );
+        assertRoundTrip( BuzzUserProfileParser.parseProfile( Resources.load( "profile.xml" ) ) );
+        assertRoundTrip( BuzzUsersProfilesParser.parsePeopleFeed( open( "people.xml" ) ) );
+    }
+
+    @Test
+    public void testModelsAreStreamed()
+        throws Exception
+    {
+        BuzzFeed feed = BuzzFeedParser.parseFeed( Resources.load( "feed.xml" ) );
+        BuzzUserProfile profile = BuzzUserProfileParser.parseProfile( Resources.load( "profile.xml" ) );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try ( BuzzBinaryEncoder encoder = new BuzzBinaryEncoder( out ) )
+        {
+            encoder.writeFeed( feed );
+            encoder.writeUserProfile( profile );
+            encoder.writeFeed( feed );
+        }
+        // the repeated feed only refers to the strings of the first one
+        Assert.assertTrue( out.size() < 2 * BuzzBinaryEncoder.encode( feed ).length );
+
+        // a tiny stream buffer exercises the refills
+        InputStream in = new SlowInputStream( out.toByteArray() );
+        try ( BuzzBinaryDecoder decoder = new BuzzBinaryDecoder( in ) )
+        {
+            BuzzFeed decoded = decoder.readFeed();
+            assertModelEquals( feed, decoded );
+            Assert.assertEquals( "Ada Lovelace", decoded.getEntries().get( 0 ).getAuthor().getName() );
+            assertModelEquals( profile, decoder.readUserProfile() );
+            assertModelEquals( feed, decoder.read() );
+            Assert.assertNull( decoder.read() );
+        }
+    }
+
+    @Test
+    public void testFixturesAreNotEmpty()
+        throws Exception
+    {
+        // the field by field comparison only proves something if the fixtures fill the fields
+        BuzzFeed feed = BuzzFeedParser.parseFeed( Resources.load( "feed.xml" ) );
+        BuzzFeedEntry entry = feed.getEntries().get( 0 );
+        Assert.assertNotNull( feed.getUpdated() );
+        Assert.assertNotNull( entry.getTitle() );
+        Assert.assertNotNull( entry.getPublished() );
+        Assert.assertFalse( entry.getLinks().isEmpty() );
+        Assert.assertNotNull( entry.getAuthor() );
+        boolean visibility = false;
+        for ( BuzzFeedEntry each : feed.getEntries() )
+        {
+            visibility |= !each.getVisibility().isEmpty();
+        }
+        Assert.assertTrue( visibility );
+    }
+
+    @Test
+    public void testCorruptStreamsAreRejected()
+        throws Exception
+    {
+        byte[] bytes = BuzzBinaryEncoder.encode( BuzzFeedParser.parseFeed( Resources.load( "feed.xml" ) ) );
+        assertRejected( Arrays.copyOf( bytes, bytes.length - 3 ) );
+        assertRejected( "<feed/>".getBytes( "UTF-8" ) );
+        byte[] unknown = bytes.clone();
+        unknown[4] = 42;
+        assertRejected( unknown );
+        try
+        {
+            new BuzzBinaryDecoder( bytes, 0, bytes.length ).readComment();
+            Assert.fail( "expected BuzzParsingException" );
+        }
+        catch ( BuzzParsingException e )
+        {
+            // expected
+        }
+    }
+
+    private static void assertRoundTrip( Object model )
+        throws Exception
+    {
+        Object decoded = BuzzBinaryDecoder.decode( BuzzBinaryEncoder.encode( model ) );
+        Assert.assertEquals( model.getClass(), decoded.getClass() );
+        assertModelEquals( model, decoded );
+    }
+
+    /**
+     * Compares the decoded model field by field with the one parsed from the XML fixture.
+     */
+    private static void assertModelEquals( Object expected, Object actual )
+    {
+        Assert.assertNotNull( actual );
+        Assert.assertEquals( expected.getClass(), actual.getClass() );
+        if ( expected instanceof BuzzFeed )
+        {
+            assertFeedEquals( (BuzzFeed) expected, (BuzzFeed) actual );
+        }
+        else if ( expected instanceof BuzzFeedEntry )
+        {
+            assertEntryEquals( (BuzzFeedEntry) expected, (BuzzFeedEntry) actual );
+        }
+        else if ( expected instanceof BuzzComment )
+        {
+            assertCommentEquals( (BuzzComment) expected, (BuzzComment) actual );
+        }
+        else if ( expected instanceof BuzzCommentsFeed )
+        {
+            assertCommentsEquals( (BuzzCommentsFeed) expected, (BuzzCommentsFeed) actual );
+        }
+        else if ( expected instanceof BuzzUserProfile )
+        {
+            assertProfileEquals( (BuzzUserProfile) expected, (BuzzUserProfile) actual );
+        }
+        else if ( expected instanceof BuzzPeopleFeed )
+        {
+            BuzzPeopleFeed people = (BuzzPeopleFeed) expected;
+            BuzzPeopleFeed decoded = (BuzzPeopleFeed) actual;
+            Assert.assertEquals( people.getStartIndex(), decoded.getStartIndex() );
+            Assert.assertEquals( people.getItemsPerPage(), decoded.getItemsPerPage() );
+            Assert.assertEquals( people.getTotalResults(), decoded.getTotalResults() );
+            Assert.assertEquals( people.getProfiles().size(), decoded.getProfiles().size() );
+            for ( int i = 0; i < people.getProfiles().size(); i++ )
+            {
+                assertProfileEquals( people.getProfiles().get( i ), decoded.getProfiles().get( i ) );
+            }
+        }
+        else
+        {
+            Assert.fail( "no comparison for " + expected.getClass() );
+        }
+    }
+
+    private static void assertFeedEquals( BuzzFeed expected, BuzzFeed actual )
+    {
+        assertLinksEquals( expected.getLinks(), actual.getLinks() );
+        Assert.assertEquals( expected.getFeedTitle(), actual.getFeedTitle() );
+        Assert.assertEquals( expected.getTitleType(), actual.getTitleType() );
+        Assert.assertEquals( expected.getUpdated(), actual.getUpdated() );
+        Assert.assertEquals( expected.getId(), actual.getId() );
+        Assert.assertEquals( expected.getGenerator(), actual.getGenerator() );
+        Assert.assertEquals( expected.getGeneratorUri(), actual.getGeneratorUri() );
+        Assert.assertEquals( expected.getEntries().size(), actual.getEntries().size() );
+        for ( int i = 0; i < expected.getEntries().size(); i++ )
+        {
+            assertEntryEquals( expected.getEntries().get( i ), actual.getEntries().get( i ) );
+        }
+    }
+
+    private static void assertEntryEquals( BuzzFeedEntry expected, BuzzFeedEntry actual )
+    {
+        Assert.assertEquals( expected.getTitle(), actual.getTitle() );
+        Assert.assertEquals( expected.getPublished(), actual.getPublished() );
+        Assert.assertEquals( expected.getUpdated(), actual.getUpdated() );
+        Assert.assertEquals( expected.getId(), actual.getId() );
+        assertLinksEquals( expected.getLinks(), actual.getLinks() );
+        assertAuthorEquals( expected.getAuthor(), actual.getAuthor() );
+        assertContentEquals( expected.getContent(), actual.getContent() );
+        Assert.assertEquals( expected.getActivityVerb(), actual.getActivityVerb() );
+        Assert.assertEquals( expected.getCrosspostSourceId(), actual.getCrosspostSourceId() );
+        Assert.assertEquals( expected.getSourceActivityTitle(), actual.getSourceActivityTitle() );
+        Assert.assertEquals( expected.getVisibility().size(), actual.getVisibility().size() );
+        for ( int i = 0; i < expected.getVisibility().size(); i++ )
+        {
+            BuzzAclEntry acl = expected.getVisibility().get( i );
+            BuzzAclEntry decoded = actual.getVisibility().get( i );
+            Assert.assertEquals( acl.getType(), decoded.getType() );
+            Assert.assertEquals( acl.getId(), decoded.getId() );
+            Assert.assertEquals( acl.getUri(), decoded.getUri() );
+            Assert.assertEquals( acl.getName(), decoded.getName() );
+        }
+        BuzzActivity activity = expected.getActivity();
+        if ( activity == null )
+        {
+            Assert.assertNull( actual.getActivity() );
+        }
+        else
+        {
+            Assert.assertEquals( activity.getActivityObjectType(), actual.getActivity().getActivityObjectType() );
+            assertContentEquals( activity.getContent(), actual.getActivity().getContent() );
+            assertLinkEquals( activity.getLink(), actual.getActivity().getLink() );
+        }
+    }
+
+    private static void assertCommentsEquals( BuzzCommentsFeed expected, BuzzCommentsFeed actual )
+    {
+        assertLinksEquals( expected.getLinks(), actual.getLinks() );
+        Assert.assertEquals( expected.getTitle(), actual.getTitle() );
+        Assert.assertEquals( expected.getTitleType(), actual.getTitleType() );
+        Assert.assertEquals( expected.getId(), actual.getId() );
+        Assert.assertEquals( expected.getGenerator(), actual.getGenerator() );
+        Assert.assertEquals( expected.getGeneratorUri(), actual.getGeneratorUri() );
+        Assert.assertEquals( expected.getComments().size(), actual.getComments().size() );
+        for ( int i = 0; i < expected.getComments().size(); i++ )
+        {
+            assertCommentEquals( expected.getComments().get( i ), actual.getComments().get( i ) );
+        }
+    }
+
+    private static void assertCommentEquals( BuzzComment expected, BuzzComment actual )
+    {
+        Assert.assertEquals( expected.getActivityObjectType(), actual.getActivityObjectType() );
+        Assert.assertEquals( expected.getId(), actual.getId() );
+        Assert.assertEquals( expected.getPublished(), actual.getPublished() );
+        assertAuthorEquals( expected.getAuthor(), actual.getAuthor() );
+        assertContentEquals( expected.getContent(), actual.getContent() );
+        assertContentEquals( expected.getOriginalContent(), actual.getOriginalContent() );
+        assertLinksEquals( expected.getLinks(), actual.getLinks() );
+        BuzzReply reply = expected.getReply();
+        if ( reply == null )
+        {
+            Assert.assertNull( actual.getReply() );
+        }
+        else
+        {
+            Assert.assertEquals( reply.getHref(), actual.getReply().getHref() );
+            Assert.assertEquals( reply.getType(), actual.getReply().getType() );
+            Assert.assertEquals( reply.getRef(), actual.getReply().getRef() );
+        }
+    }
+
+    private static void assertProfileEquals( BuzzUserProfile expected, BuzzUserProfile actual )
+    {
+        Assert.assertEquals( expected.getId(), actual.getId() );
+        Assert.assertEquals( expected.getName(), actual.getName() );
+        Assert.assertEquals( expected.getProfileUrl(), actual.getProfileUrl() );
+        Assert.assertEquals( expected.getEmails().size(), actual.getEmails().size() );
+        for ( int i = 0; i < expected.getEmails().size(); i++ )
+        {
+            BuzzEmail email = expected.getEmails().get( i );
+            Assert.assertEquals( email.getValue(), actual.getEmails().get( i ).getValue() );
+            Assert.assertEquals( email.getType(), actual.getEmails().get( i ).getType() );
+            Assert.assertEquals( email.isPrimary(), actual.getEmails().get( i ).isPrimary() );
+        }
+        Assert.assertEquals( expected.getUrls().size(), actual.getUrls().size() );
+        for ( int i = 0; i < expected.getUrls().size(); i++ )
+        {
+            BuzzUrl url = expected.getUrls().get( i );
+            Assert.assertEquals( url.getValue(), actual.getUrls().get( i ).getValue() );
+            Assert.assertEquals( url.getType(), actual.getUrls().get( i ).getType() );
+        }
+        Assert.assertEquals( expected.getPhotos().size(), actual.getPhotos().size() );
+        for ( int i = 0; i < expected.getPhotos().size(); i++ )
+        {
+            BuzzPhoto photo = expected.getPhotos().get( i );
+            Assert.assertEquals( photo.getValue(), actual.getPhotos().get( i ).getValue() );
+            Assert.assertEquals( photo.getType(), actual.getPhotos().get( i ).getType() );
+        }
+    }
+
+    private static void assertAuthorEquals( BuzzAuthor expected, BuzzAuthor actual )
+    {
+        if ( expected == null )
+        {
+            Assert.assertNull( actual );
+            return;
+        }
+        Assert.assertEquals( expected.getId(), actual.getId() );
+        Assert.assertEquals( expected.getName(), actual.getName() );
+        Assert.assertEquals( expected.getUri(), actual.getUri() );
+        Assert.assertEquals( expected.getActivityObjectType(), actual.getActivityObjectType() );
+        assertLinksEquals( expected.getLinks(), actual.getLinks() );
+    }
+
+    private static void assertContentEquals( BuzzContent expected, BuzzContent actual )
+    {
+        if ( expected == null )
+        {
+            Assert.assertNull( actual );
+            return;
+        }
+        Assert.assertEquals( expected.getText(), actual.getText() );
+        Assert.assertEquals( expected.getType(), actual.getType() );
+    }
+
+    private static void assertLinksEquals( List<BuzzLink> expected, List<BuzzLink> actual )
+    {
+        Assert.assertEquals( expected.size(), actual.size() );
+        for ( int i = 0; i < expected.size(); i++ )
+        {
+            assertLinkEquals( expected.get( i ), actual.get( i ) );
+        }
+    }
+
+    private static void assertLinkEquals( BuzzLink expected, BuzzLink actual )
+    {
+        if ( expected == null )
+        {
+            Assert.assertNull( actual );
+            return;
+        }
+        Assert.assertEquals( expected.getHref(), actual.getHref() );
+        Assert.assertEquals( expected.getRel(), actual.getRel() );
+        Assert.assertEquals( expected.getType(), actual.getType() );
+        Assert.assertEquals( expected.getCount(), actual.getCount() );
+    }
+
+    private static void assertRejected( byte[] bytes )
+    {
+        try
+        {
+            BuzzBinaryDecoder.decode( bytes );
+            Assert.fail( "expected BuzzParsingException" );
+        }
+        catch ( BuzzParsingException e )
+        {
+            // expected
+        }
+    }
+
+    private static InputStream open( String name )
+    {
+        return Resources.class.getResourceAsStream( name );
+    }
+
+    /**
+     * Hands out at most three bytes per read.
+     */
+    private static class SlowInputStream
+        extends ByteArrayInputStream
+    {
+        SlowInputStream( byte[] bytes )
+        {
+            super( bytes );
+        }
+
+        @Override
+        public synchronized int read( byte[] b, int off, int len )
+        {
+            return super.read( b, off, Math.min( len, 3 ) );
+        }
+    }
+}
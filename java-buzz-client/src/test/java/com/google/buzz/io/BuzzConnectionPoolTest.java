@@ -0,0 +1,99 @@
+package com.google.buzz.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.buzz.exception.BuzzIOException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class BuzzConnectionPoolTest
+{
+    private HttpServer server;
+
+    private BuzzConnectionPool pool;
+
+    private String baseUrl;
+
+    @Before
+    public void startServer()
+        throws IOException
+    {
+        server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        server.createContext( "/", new HttpHandler()
+        {
+            public void handle( HttpExchange exchange )
+                throws IOException
+            {
+                int status = exchange.getRequestURI().getPath().startsWith( "/error" ) ? 500 : 200;
+                String method = exchange.getRequestMethod();
+                byte[] body = ( status == 200 ? "ok " + method : "boom" ).getBytes( "UTF-8" );
+                exchange.getRequestBody().close();
+                exchange.sendResponseHeaders( status, body.length );
+                OutputStream out = exchange.getResponseBody();
+                out.write( body );
+                out.close();
+            }
+        } );
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        pool = new BuzzConnectionPool( 4, 2, 10000L );
+        BuzzIO.setConnectionPool( pool );
+    }
+
+    @After
+    public void stopServer()
+    {
+        BuzzIO.setConnectionPool( null );
+        server.stop( 0 );
+    }
+
+    @Test
+    public void testConnectionIsReused()
+        throws Exception
+    {
+        for ( int i = 0; i < 5; i++ )
+        {
+            Assert.assertEquals( "ok GET", BuzzIO.send( BuzzIO.createRequest( baseUrl + "/feed" ) ) );
+        }
+        Assert.assertEquals( 1L, pool.getStats().getMisses() );
+        Assert.assertEquals( 4L, pool.getStats().getHits() );
+        Assert.assertEquals( 1, pool.getConnectionsInPool() );
+    }
+
+    @Test
+    public void testRequestWithBodyReusesConnection()
+        throws Exception
+    {
+        BuzzRequest request = BuzzIO.createRequest( baseUrl + "/feed", BuzzIO.HTTP_METHOD_POST );
+        BuzzIO.addBody( request, "<entry/>" );
+        Assert.assertEquals( "ok POST", BuzzIO.send( request ) );
+        Assert.assertEquals( "ok GET", BuzzIO.send( BuzzIO.createRequest( baseUrl + "/feed" ) ) );
+        Assert.assertEquals( 1L, pool.getStats().getHits() );
+    }
+
+    @Test
+    public void testErrorBodyIsReported()
+        throws Exception
+    {
+        try
+        {
+            BuzzIO.send( BuzzIO.createRequest( baseUrl + "/error" ) );
+            Assert.fail( "expected BuzzIOException" );
+        }
+        catch ( BuzzIOException e )
+        {
+            Assert.assertEquals( "boom", e.getMessage() );
+        }
+        // the connection is released after an error as well
+        BuzzIO.send( BuzzIO.createRequest( baseUrl + "/feed" ) );
+        Assert.assertEquals( 1L, pool.getStats().getHits() );
+    }
+}
@@ -0,0 +1,283 @@
+package com.google.buzz.io;
+
+/**
+ * Synthetic Atom and Portable Contacts bodies served by <b>BuzzStubServer</b>. <br/>
+ * The bodies follow the shape of the Buzz API answers closely enough for every parser of the
+ * client, and only depend on their arguments, so the same url is always answered the same way.
+ */
+final class BuzzStubPayloads
+{
+    private static final String ATOM_NAMESPACES = " xmlns=\"http://www.w3.org/2005/Atom\""
+        + " xmlns:buzz=\"http://schemas.google.com/buzz/2010\""
+        + " xmlns:thr=\"http://purl.org/syndication/thread/1.0\""
+        + " xmlns:activity=\"http://activitystrea.ms/spec/1.0/\""
+        + " xmlns:poco=\"http://portablecontacts.net/ns/1.0\"";
+
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+
+    private static final String PUBLISHED = "2010-05-21T17:05:12.000Z";
+
+    private BuzzStubPayloads()
+    {
+    }
+
+    /**
+     * @param selfUrl url of the feed
+     * @param nextUrl url of the next page, or null on the last page
+     * @param user owner of the posts
+     * @param page index of the page, making the post ids unique across pages
+     * @param size number of posts
+     * @param contentLength number of characters of each post content
+     * @return an activities feed
+     */
+    static String feed( String selfUrl, String nextUrl, String user, int page, int size, int contentLength )
+    {
+        StringBuilder sb = new StringBuilder( 512 + size * ( 1024 + contentLength ) );
+        sb.append( XML_DECLARATION ).append( "<feed" ).append( ATOM_NAMESPACES ).append( ">\n" );
+        links( sb, selfUrl, nextUrl );
+        sb.append( " <title type=\"text\">Google Buzz</title>\n" );
+        sb.append( " <updated>" ).append( PUBLISHED ).append( "</updated>\n" );
+        sb.append( " <id>tag:google.com,2010:buzz-feed/" ).append( escape( user ) ).append( "</id>\n" );
+        for ( int i = 0; i < size; i++ )
+        {
+            entryBody( sb, user, "stub" + page + "x" + i, contentLength );
+        }
+        return sb.append( "</feed>\n" ).toString();
+    }
+
+    /**
+     * @param user owner of the post
+     * @param postId id of the post
+     * @param contentLength number of characters of the post content
+     * @return a single post
+     */
+    static String entry( String user, String postId, int contentLength )
+    {
+        StringBuilder sb = new StringBuilder( 1024 + contentLength );
+        sb.append( XML_DECLARATION ).append( "<entry" ).append( ATOM_NAMESPACES ).append( ">\n" );
+        entryElements( sb, user, postId, contentLength );
+        return sb.append( "</entry>\n" ).toString();
+    }
+
+    /**
+     * @param selfUrl url of the feed
+     * @param nextUrl url of the next page, or null on the last page
+     * @param user owner of the post
+     * @param postId id of the post
+     * @param page index of the page, making the comment ids unique across pages
+     * @param size number of comments
+     * @param contentLength number of characters of each comment content
+     * @return the comments feed of a post
+     */
+    static String comments( String selfUrl, String nextUrl, String user, String postId, int page, int size,
+                            int contentLength )
+    {
+        StringBuilder sb = new StringBuilder( 512 + size * ( 768 + contentLength ) );
+        sb.append( XML_DECLARATION ).append( "<feed" ).append( ATOM_NAMESPACES ).append( ">\n" );
+        links( sb, selfUrl, nextUrl );
+        sb.append( " <title type=\"text\">Comments</title>\n" );
+        sb.append( " <id>tag:google.com,2010:buzz-comments:" ).append( escape( postId ) ).append( "</id>\n" );
+        for ( int i = 0; i < size; i++ )
+        {
+            sb.append( " <entry>\n" );
+            commentElements( sb, user, postId, "stub" + page + "x" + i, contentLength );
+            sb.append( " </entry>\n" );
+        }
+        return sb.append( "</feed>\n" ).toString();
+    }
+
+    /**
+     * @param user owner of the post
+     * @param postId id of the post
+     * @param commentId id of the comment
+     * @param contentLength number of characters of the comment content
+     * @return a single comment
+     */
+    static String comment( String user, String postId, String commentId, int contentLength )
+    {
+        StringBuilder sb = new StringBuilder( 768 + contentLength );
+        sb.append( XML_DECLARATION ).append( "<entry" ).append( ATOM_NAMESPACES ).append( ">\n" );
+        commentElements( sb, user, postId, commentId, contentLength );
+        return sb.append( "</entry>\n" ).toString();
+    }
+
+    /**
+     * @param page index of the page, making the profile ids unique across pages
+     * @param size number of profiles
+     * @return a list of profiles
+     */
+    static String people( int page, int size )
+    {
+        StringBuilder sb = new StringBuilder( 256 + size * 320 );
+        sb.append( XML_DECLARATION ).append( "<response xmlns=\"http://portablecontacts.net/ns/1.0\">\n" );
+        sb.append( " <startIndex>" ).append( page * size ).append( "</startIndex>\n" );
+        sb.append( " <itemsPerPage>" ).append( size ).append( "</itemsPerPage>\n" );
+        sb.append( " <totalResults>" ).append( size ).append( "</totalResults>\n" );
+        for ( int i = 0; i < size; i++ )
+        {
+            sb.append( " <entry>\n" );
+            profileElements( sb, "stub" + page + "x" + i );
+            sb.append( " </entry>\n" );
+        }
+        return sb.append( "</response>\n" ).toString();
+    }
+
+    /**
+     * @param user id of the profile
+     * @return a single profile
+     */
+    static String profile( String user )
+    {
+        StringBuilder sb = new StringBuilder( 512 );
+        sb.append( XML_DECLARATION ).append( "<entry xmlns=\"http://portablecontacts.net/ns/1.0\">\n" );
+        profileElements( sb, user );
+        return sb.append( "</entry>\n" ).toString();
+    }
+
+    /**
+     * @param accessToken the token granted
+     * @param expiresIn lifetime of the token, in seconds
+     * @return an OAuth 2 token response
+     */
+    static String token( String accessToken, long expiresIn )
+    {
+        return "{\"access_token\":\"" + accessToken + "\",\"expires_in\":" + expiresIn
+            + ",\"refresh_token\":\"stub-refresh-token\"}";
+    }
+
+    private static void links( StringBuilder sb, String selfUrl, String nextUrl )
+    {
+        sb.append( " <link rel=\"self\" type=\"application/atom+xml\" href=\"" ).append( escape( selfUrl ) )
+            .append( "\"/>\n" );
+        if ( nextUrl != null )
+        {
+            sb.append( " <link rel=\"next\" type=\"application/atom+xml\" href=\"" ).append( escape( nextUrl ) )
+                .append( "\"/>\n" );
+        }
+    }
+
+    private static void entryBody( StringBuilder sb, String user, String postId, int contentLength )
+    {
+        sb.append( " <entry>\n" );
+        entryElements( sb, user, postId, contentLength );
+        sb.append( " </entry>\n" );
+    }
+
+    private static void entryElements( StringBuilder sb, String user, String postId, int contentLength )
+    {
+        String owner = escape( user );
+        String id = escape( postId );
+        String postUrl = "https://www.googleapis.com/buzz/v1/activities/" + owner + "/@self/" + id;
+        sb.append( " <title type=\"text\">Buzz by " ).append( owner ).append( "</title>\n" );
+        sb.append( " <published>" ).append( PUBLISHED ).append( "</published>\n" );
+        sb.append( " <updated>" ).append( PUBLISHED ).append( "</updated>\n" );
+        sb.append( " <id>" ).append( id ).append( "</id>\n" );
+        sb.append( " <link rel=\"alternate\" type=\"text/html\" href=\"http://www.google.com/buzz/" ).append( owner )
+            .append( '/' ).append( id ).append( "\"/>\n" );
+        sb.append( " <link rel=\"replies\" type=\"application/atom+xml\" href=\"" ).append( postUrl )
+            .append( "/@comments\" thr:count=\"2\"/>\n" );
+        sb.append( " <link rel=\"http://schemas.google.com/buzz/2010#liked\" type=\"application/poco+xml\" href=\"" )
+            .append( postUrl ).append( "/@liked\" buzz:count=\"5\"/>\n" );
+        author( sb, owner );
+        sb.append( " <content type=\"text\">" );
+        content( sb, contentLength );
+        sb.append( "</content>\n" );
+        sb.append( " <activity:verb>http://activitystrea.ms/schema/1.0/post</activity:verb>\n" );
+        sb.append( " <source><activity:service><title>Buzz</title></activity:service></source>\n" );
+    }
+
+    private static void commentElements( StringBuilder sb, String user, String postId, String commentId,
+                                         int contentLength )
+    {
+        sb.append( " <activity:object-type>http://activitystrea.ms/schema/1.0/comment</activity:object-type>\n" );
+        sb.append( " <published>" ).append( PUBLISHED ).append( "</published>\n" );
+        sb.append( " <id>" ).append( escape( commentId ) ).append( "</id>\n" );
+        author( sb, escape( user ) );
+        sb.append( " <content type=\"text\">" );
+        content( sb, contentLength );
+        sb.append( "</content>\n" );
+        sb.append( " <thr:in-reply-to ref=\"" ).append( escape( postId ) ).append( "\" type=\"text/html\"/>\n" );
+    }
+
+    private static void profileElements( StringBuilder sb, String user )
+    {
+        String id = escape( user );
+        sb.append( " <id>" ).append( id ).append( "</id>\n" );
+        sb.append( " <displayName>Stub " ).append( id ).append( "</displayName>\n" );
+        sb.append( " <profileUrl>http://www.google.com/profiles/" ).append( id ).append( "</profileUrl>\n" );
+        sb.append( " <photos><value>http://www.google.com/s2/photos/public/" ).append( id )
+            .append( "</value><type>thumbnail</type></photos>\n" );
+    }
+
+    private static void author( StringBuilder sb, String owner )
+    {
+        sb.append( " <author>\n" );
+        sb.append( "  <poco:id>" ).append( owner ).append( "</poco:id>\n" );
+        sb.append( "  <name>Stub " ).append( owner ).append( "</name>\n" );
+        sb.append( "  <uri>http://www.google.com/profiles/" ).append( owner ).append( "</uri>\n" );
+        sb.append( "  <activity:object-type>http://activitystrea.ms/schema/1.0/person</activity:object-type>\n" );
+        sb.append( " </author>\n" );
+    }
+
+    /**
+     * Append filler text.
+     *
+     * @param sb to append to
+     * @param length number of characters
+     */
+    private static void content( StringBuilder sb, int length )
+    {
+        String words = "The analytical engine weaves algebraic patterns just as the loom weaves flowers. ";
+        for ( int i = 0; i < length; i++ )
+        {
+            sb.append( words.charAt( i % words.length() ) );
+        }
+    }
+
+    /**
+     * @param text to put in an element or an attribute
+     * @return the text with the xml special characters escaped
+     */
+    static String escape( String text )
+    {
+        StringBuilder sb = null;
+        for ( int i = 0; i < text.length(); i++ )
+        {
+            char c = text.charAt( i );
+            String entity;
+            switch ( c )
+            {
+                case '&':
+                    entity = "&amp;";
+                    break;
+                case '<':
+                    entity = "&lt;";
+                    break;
+                case '>':
+                    entity = "&gt;";
+                    break;
+                case '"':
+                    entity = "&quot;";
+                    break;
+                default:
+                    entity = null;
+            }
+            if ( entity != null && sb == null )
+            {
+                sb = new StringBuilder( text.length() + 16 ).append( text, 0, i );
+            }
+            if ( sb != null )
+            {
+                if ( entity != null )
+                {
+                    sb.append( entity );
+                }
+                else
+                {
+                    sb.append( c );
+                }
+            }
+        }
+        return sb == null ? text : sb.toString();
+    }
+}
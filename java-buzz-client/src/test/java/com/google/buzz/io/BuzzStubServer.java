@@ -0,0 +1,629 @@
+package com.google.buzz.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.buzz.exception.BuzzIOException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local http server answering the Buzz API with synthetic bodies, to run the client end to end
+ * without Google credentials. <br/>
+ * The server listens on the loopback interface and serves the activity, comment, like, people and
+ * search urls used by <b>Buzz</b>, and the OAuth 2 token endpoint; any other url is answered 404.
+ * Feeds hold <b>feedSize</b> items and link to a next page up to <b>pages</b> pages. Every answer
+ * may be delayed by <b>latency</b> plus a uniform <b>latencyJitter</b>, and replaced by an
+ * <b>errorStatus</b> answer with the probability <b>errorRate</b>. <br/>
+ * The client keeps its Google urls: the transport returned by <b>createTransport</b> sends them
+ * to this server instead. The server is a test fixture, published in the test jar of the client.
+ */
+public class BuzzStubServer
+    implements Closeable
+{
+    /**
+     * Host of the Buzz API
+     */
+    public static final String API_URL = "https://www.googleapis.com";
+
+    /**
+     * Host of the OAuth 2 endpoints
+     */
+    public static final String ACCOUNTS_URL = "https://accounts.google.com";
+
+    /**
+     * Path of the Buzz API
+     */
+    private static final String API_PATH = "/buzz/v1/";
+
+    /**
+     * Path of the OAuth 2 token endpoint
+     */
+    private static final String TOKEN_PATH = "/o/oauth2/token";
+
+    static
+    {
+        // without it the body waits for the ack of the headers, about 40ms on most systems; the
+        // JDK server reads the property once, when its first instance is created
+        if ( System.getProperty( "sun.net.httpserver.nodelay" ) == null )
+        {
+            System.setProperty( "sun.net.httpserver.nodelay", "true" );
+        }
+    }
+
+    private final HttpServer server;
+
+    /**
+     * Threads answering the requests, one per request being delayed, and sending the asynchronous
+     * requests of the blocking transports returned by <b>createTransport</b>
+     */
+    private final ExecutorService executor;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private volatile long latency;
+
+    private volatile long latencyJitter;
+
+    private volatile double errorRate;
+
+    private volatile int errorStatus = 503;
+
+    private volatile int feedSize = 20;
+
+    private volatile int pages = 1;
+
+    private volatile int contentLength = 200;
+
+    /**
+     * Start a server on a free port.
+     *
+     * @throws BuzzIOException if the server can not listen
+     */
+    public BuzzStubServer()
+        throws BuzzIOException
+    {
+        this( 0 );
+    }
+
+    /**
+     * Start a server.
+     *
+     * @param port to listen on, 0 for a free port
+     * @throws BuzzIOException if the server can not listen
+     */
+    public BuzzStubServer( int port )
+        throws BuzzIOException
+    {
+        try
+        {
+            server = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress(), port ), 0 );
+        }
+        catch ( IOException e )
+        {
+            throw new BuzzIOException( e );
+        }
+        executor = Executors.newCachedThreadPool( new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "buzz-stub-" + count.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+        server.setExecutor( executor );
+        server.createContext( "/", new HttpHandler()
+        {
+            public void handle( HttpExchange exchange )
+                throws IOException
+            {
+                serve( exchange );
+            }
+        } );
+        server.start();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the url of the server, without trailing slash
+     */
+    public String getUrl()
+    {
+        return "http://" + server.getAddress().getAddress().getHostAddress() + ":" + getPort();
+    }
+
+    /**
+     * Creates a transport sending the requests to the Buzz API and to the OAuth 2 endpoints to this
+     * server, over the JDK http client.
+     *
+     * @return the transport to give to <b>Buzz</b>
+     */
+    public BuzzTransport createTransport()
+    {
+        return createTransport( new JdkHttpTransport() );
+    }
+
+    /**
+     * Creates a transport sending the requests to the Buzz API and to the OAuth 2 endpoints to this
+     * server. The requests are copied with the new url; other urls are left alone.
+     *
+     * @param transport sending the requests
+     * @return the transport to give to <b>Buzz</b>
+     */
+    public BuzzTransport createTransport( BuzzTransport transport )
+    {
+        return new RedirectTransport( transport, executor, getUrl() );
+    }
+
+    /**
+     * Stop the server, dropping the requests in progress.
+     */
+    public void close()
+    {
+        server.stop( 0 );
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the number of requests answered, errors included
+     */
+    public long getRequests()
+    {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of injected errors
+     */
+    public long getErrors()
+    {
+        return errors.get();
+    }
+
+    /**
+     * @return the delay of every answer, in milliseconds
+     */
+    public long getLatency()
+    {
+        return latency;
+    }
+
+    /**
+     * @param latency the delay of every answer, in milliseconds
+     */
+    public void setLatency( long latency )
+    {
+        this.latency = Math.max( latency, 0 );
+    }
+
+    /**
+     * @return the maximum random delay added to the latency, in milliseconds
+     */
+    public long getLatencyJitter()
+    {
+        return latencyJitter;
+    }
+
+    /**
+     * @param latencyJitter the maximum random delay added to the latency, in milliseconds
+     */
+    public void setLatencyJitter( long latencyJitter )
+    {
+        this.latencyJitter = Math.max( latencyJitter, 0 );
+    }
+
+    /**
+     * @return the probability of answering with an error
+     */
+    public double getErrorRate()
+    {
+        return errorRate;
+    }
+
+    /**
+     * @param errorRate the probability of answering with an error, from 0 to 1
+     */
+    public void setErrorRate( double errorRate )
+    {
+        if ( errorRate < 0 || errorRate > 1 )
+        {
+            throw new IllegalArgumentException( "errorRate must be between 0 and 1" );
+        }
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * @return the http status of the injected errors
+     */
+    public int getErrorStatus()
+    {
+        return errorStatus;
+    }
+
+    /**
+     * @param errorStatus the http status of the injected errors
+     */
+    public void setErrorStatus( int errorStatus )
+    {
+        this.errorStatus = errorStatus;
+    }
+
+    /**
+     * @return the number of items of a feed page
+     */
+    public int getFeedSize()
+    {
+        return feedSize;
+    }
+
+    /**
+     * @param feedSize the number of items of a feed page
+     */
+    public void setFeedSize( int feedSize )
+    {
+        this.feedSize = Math.max( feedSize, 0 );
+    }
+
+    /**
+     * @return the number of pages of a feed
+     */
+    public int getPages()
+    {
+        return pages;
+    }
+
+    /**
+     * @param pages the number of pages of a feed
+     */
+    public void setPages( int pages )
+    {
+        this.pages = Math.max( pages, 1 );
+    }
+
+    /**
+     * @return the number of characters of the content of a post or comment
+     */
+    public int getContentLength()
+    {
+        return contentLength;
+    }
+
+    /**
+     * @param contentLength the number of characters of the content of a post or comment
+     */
+    public void setContentLength( int contentLength )
+    {
+        this.contentLength = Math.max( contentLength, 0 );
+    }
+
+    /**
+     * Answer a request, after the latency, with an error or with the body of its url.
+     *
+     * @param exchange the request
+     * @throws IOException if the answer can not be sent
+     */
+    private void serve( HttpExchange exchange )
+        throws IOException
+    {
+        try
+        {
+            requests.incrementAndGet();
+            drain( exchange.getRequestBody() );
+            long jitter = latencyJitter;
+            long delay = latency + ( jitter > 0 ? ThreadLocalRandom.current().nextLong( jitter + 1 ) : 0 );
+            if ( delay > 0 )
+            {
+                TimeUnit.MILLISECONDS.sleep( delay );
+            }
+            double rate = errorRate;
+            if ( rate > 0 && ThreadLocalRandom.current().nextDouble() < rate )
+            {
+                errors.incrementAndGet();
+                reply( exchange, errorStatus, "text/plain", "Injected error" );
+                return;
+            }
+            route( exchange );
+        }
+        catch ( InterruptedException e )
+        {
+            // closing
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Answer a request with the body of its url.
+     *
+     * @param exchange the request
+     * @throws IOException if the answer can not be sent
+     */
+    private void route( HttpExchange exchange )
+        throws IOException
+    {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getRawPath();
+        int page = page( exchange.getRequestURI().getRawQuery() );
+        if ( TOKEN_PATH.equals( path ) && BuzzIO.HTTP_METHOD_POST.equals( method ) )
+        {
+            reply( exchange, 200, "application/json", BuzzStubPayloads.token( "stub-token", 3600 ) );
+            return;
+        }
+        if ( !path.startsWith( API_PATH ) )
+        {
+            reply( exchange, 404, "text/plain", "Not Found" );
+            return;
+        }
+        String[] segments = path.substring( API_PATH.length() ).split( "/" );
+        String body = null;
+        String type = "application/atom+xml";
+        if ( "activities".equals( segments[0] ) )
+        {
+            body = activities( method, path, page, segments );
+        }
+        else if ( "people".equals( segments[0] ) )
+        {
+            body = people( method, page, segments );
+            type = "application/xml";
+        }
+        if ( body == null )
+        {
+            reply( exchange, 404, "text/plain", "Not Found" );
+        }
+        else
+        {
+            reply( exchange, 200, type, body );
+        }
+    }
+
+    /**
+     * @param method http method of the request
+     * @param path of the request
+     * @param page index of the page requested
+     * @param segments of the path after the api path
+     * @return the answer to a request under <b>activities</b>, or null if the url is unknown
+     */
+    private String activities( String method, String path, int page, String[] segments )
+    {
+        boolean get = BuzzIO.HTTP_METHOD_GET.equals( method );
+        if ( segments.length == 2 && "search".equals( segments[1] ) && get )
+        {
+            return feed( path, "search", page );
+        }
+        if ( segments.length < 3 )
+        {
+            return null;
+        }
+        String user = segments[1];
+        if ( segments.length == 3 )
+        {
+            if ( get )
+            {
+                return feed( path, user, page );
+            }
+            // createPost and resharePost
+            return BuzzIO.HTTP_METHOD_POST.equals( method ) && "@self".equals( segments[2] )
+                ? BuzzStubPayloads.entry( user, "stub-created", contentLength ) : null;
+        }
+        String post = segments[3];
+        if ( "@liked".equals( segments[2] ) )
+        {
+            // likePost and unlikePost
+            return segments.length == 4 && !get ? "" : null;
+        }
+        if ( segments.length == 4 )
+        {
+            return BuzzIO.HTTP_METHOD_DELETE.equals( method ) ? ""
+                            : BuzzStubPayloads.entry( user, post, contentLength );
+        }
+        if ( "@liked".equals( segments[4] ) && segments.length == 5 && get )
+        {
+            return BuzzStubPayloads.people( page, feedSize );
+        }
+        if ( !"@comments".equals( segments[4] ) )
+        {
+            return null;
+        }
+        if ( segments.length == 5 )
+        {
+            if ( get )
+            {
+                return BuzzStubPayloads.comments( API_URL + path, nextUrl( path, page ), user, post, page, feedSize,
+                                                  contentLength );
+            }
+            return BuzzIO.HTTP_METHOD_POST.equals( method )
+                ? BuzzStubPayloads.comment( user, post, "stub-created", contentLength ) : null;
+        }
+        if ( segments.length == 6 )
+        {
+            return BuzzIO.HTTP_METHOD_DELETE.equals( method ) ? ""
+                            : BuzzStubPayloads.comment( user, post, segments[5], contentLength );
+        }
+        return null;
+    }
+
+    /**
+     * @param method http method of the request
+     * @param page index of the page requested
+     * @param segments of the path after the api path
+     * @return the answer to a request under <b>people</b>, or null if the url is unknown
+     */
+    private String people( String method, int page, String[] segments )
+    {
+        boolean get = BuzzIO.HTTP_METHOD_GET.equals( method );
+        if ( segments.length == 2 && "search".equals( segments[1] ) && get )
+        {
+            return BuzzStubPayloads.people( page, feedSize );
+        }
+        if ( segments.length == 3 && "@self".equals( segments[2] ) && get )
+        {
+            return BuzzStubPayloads.profile( segments[1] );
+        }
+        if ( segments.length < 4 || !"@groups".equals( segments[2] ) )
+        {
+            return null;
+        }
+        if ( segments.length == 4 && get )
+        {
+            // followers and following
+            return BuzzStubPayloads.people( page, feedSize );
+        }
+        // follow and unfollow
+        return segments.length == 5 && !get ? "" : null;
+    }
+
+    private String feed( String path, String user, int page )
+    {
+        return BuzzStubPayloads.feed( API_URL + path, nextUrl( path, page ), user, page, feedSize, contentLength );
+    }
+
+    /**
+     * @param path of the feed
+     * @param page index of the page served
+     * @return the url of the next page, or null if the page is the last one
+     */
+    private String nextUrl( String path, int page )
+    {
+        return page + 1 < pages ? API_URL + path + "?c=" + ( page + 1 ) : null;
+    }
+
+    /**
+     * @param query of the request, or null
+     * @return the index of the page requested by the <b>c</b> parameter, 0 by default
+     */
+    private static int page( String query )
+    {
+        if ( query != null )
+        {
+            for ( String parameter : query.split( "&" ) )
+            {
+                if ( parameter.startsWith( "c=" ) )
+                {
+                    try
+                    {
+                        return Math.max( Integer.parseInt( parameter.substring( 2 ) ), 0 );
+                    }
+                    catch ( NumberFormatException e )
+                    {
+                        return 0;
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static void reply( HttpExchange exchange, int status, String type, String body )
+        throws IOException
+    {
+        byte[] bytes = body.getBytes( StandardCharsets.UTF_8 );
+        exchange.getResponseHeaders().set( "Content-Type", type + "; charset=UTF-8" );
+        exchange.sendResponseHeaders( status, bytes.length == 0 ? -1 : bytes.length );
+        if ( bytes.length > 0 )
+        {
+            OutputStream out = exchange.getResponseBody();
+            out.write( bytes );
+            out.close();
+        }
+    }
+
+    private static void drain( InputStream in )
+        throws IOException
+    {
+        byte[] buffer = new byte[4096];
+        while ( in.read( buffer ) >= 0 )
+        {
+            // discard
+        }
+        in.close();
+    }
+
+    /**
+     * Transport sending the Google urls to the stub server.
+     */
+    private static final class RedirectTransport
+        implements BuzzTransport, AsyncBuzzTransport
+    {
+        private final BuzzTransport transport;
+
+        private final AsyncBuzzTransport asyncTransport;
+
+        private final String url;
+
+        RedirectTransport( BuzzTransport transport, Executor executor, String url )
+        {
+            this.transport = transport;
+            this.asyncTransport = ExecutorAsyncTransport.of( transport, executor );
+            this.url = url;
+        }
+
+        public BuzzResponse execute( BuzzRequest request )
+            throws BuzzIOException
+        {
+            return transport.execute( redirect( request ) );
+        }
+
+        public CompletableFuture<BuzzResponse> executeAsync( BuzzRequest request )
+        {
+            return asyncTransport.executeAsync( redirect( request ) );
+        }
+
+        /**
+         * @param request to the Buzz API or to the OAuth 2 endpoints
+         * @return a copy of the request sent to the stub server, or the request itself for another
+         *         url
+         */
+        private BuzzRequest redirect( BuzzRequest request )
+        {
+            String target = request.getUrl();
+            String host = target.startsWith( API_URL + "/" ) ? API_URL
+                            : target.startsWith( ACCOUNTS_URL + "/" ) ? ACCOUNTS_URL : null;
+            if ( host == null )
+            {
+                return request;
+            }
+            BuzzRequest copy = new BuzzRequest( url + target.substring( host.length() ), request.getMethod() );
+            for ( Map.Entry<String, String> header : request.getHeaders().entrySet() )
+            {
+                copy.setHeader( header.getKey(), header.getValue() );
+            }
+            copy.setBody( request.getBody() );
+            copy.setPriority( request.getPriority() );
+            copy.setAccountId( request.getAccountId() );
+            copy.setOperation( request.getOperation() );
+            copy.setSigningNanos( request.getSigningNanos() );
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.google.buzz.io;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.buzz.Buzz;
+import com.google.buzz.BuzzCursor;
+import com.google.buzz.exception.BuzzHttpException;
+import com.google.buzz.model.BuzzContent;
+import com.google.buzz.model.BuzzFeed;
+import com.google.buzz.model.BuzzFeedEntry;
+
+public class BuzzStubServerTest
+{
+    private BuzzStubServer server;
+
+    private Buzz buzz;
+
+    @Before
+    public void startServer()
+        throws Exception
+    {
+        server = new BuzzStubServer();
+        server.setFeedSize( 5 );
+        buzz = new Buzz( server.createTransport() );
+        buzz.setMetrics( null );
+        buzz.setOAuthVersion( 2 );
+        buzz.setConsumerForScope( "client", "secret", Buzz.BUZZ_SCOPE_WRITE );
+        buzz.setTokenWithSecret( "expired-token", "refresh-token" );
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.close();
+    }
+
+    @Test
+    public void testApiIsServed()
+        throws Exception
+    {
+        BuzzFeed feed = buzz.getPosts( "ada", BuzzFeed.Type.CONSUMPTION );
+        Assert.assertEquals( 5, feed.getEntries().size() );
+        Assert.assertEquals( "Stub ada", feed.getEntries().get( 0 ).getAuthor().getName() );
+        Assert.assertEquals( "z12", buzz.getPost( "ada", "z12" ).getId() );
+        Assert.assertEquals( 5, buzz.getComments( "ada", "z12" ).getComments().size() );
+        Assert.assertEquals( "c1", buzz.getComment( "ada", "z12", "c1" ).getId() );
+        Assert.assertEquals( "ada", buzz.getUserProfile( "ada" ).getId() );
+        Assert.assertEquals( 5, buzz.followers( "ada" ).size() );
+        Assert.assertEquals( 5, buzz.getLikes( "ada", "z12" ).size() );
+        Assert.assertEquals( 5, buzz.search( "engines" ).getEntries().size() );
+        Assert.assertEquals( 5, buzz.searchPeople( "ada" ).size() );
+        BuzzContent content = new BuzzContent();
+        content.setText( "Hello" );
+        Assert.assertEquals( "stub-created", buzz.createComment( "ada", "z12", content ).getId() );
+        buzz.likePost( "ada", "z12" );
+        buzz.follow( "ada", "babbage" );
+        buzz.deletePost( "ada", "z12" );
+        // the token request, then one request per call
+        Assert.assertEquals( 14L, server.getRequests() );
+    }
+
+    @Test
+    public void testFeedsArePaged()
+        throws Exception
+    {
+        server.setPages( 3 );
+        BuzzCursor<BuzzFeedEntry> cursor = buzz.paginatePosts( "ada", BuzzFeed.Type.PUBLIC, 10, 100 );
+        int entries = 0;
+        while ( cursor.hasNext() )
+        {
+            cursor.next();
+            entries++;
+        }
+        Assert.assertEquals( 15, entries );
+        Assert.assertEquals( 3, cursor.getPageCount() );
+    }
+
+    @Test
+    public void testErrorsAreInjected()
+        throws Exception
+    {
+        buzz.getUserProfile( "ada" );
+        server.setErrorRate( 1 );
+        server.setErrorStatus( 429 );
+        try
+        {
+            buzz.getUserProfile( "ada" );
+            Assert.fail( "expected BuzzHttpException" );
+        }
+        catch ( BuzzHttpException e )
+        {
+            Assert.assertEquals( 429, e.getStatus() );
+        }
+        Assert.assertEquals( 1L, server.getErrors() );
+    }
+
+    @Test
+    public void testLatencyIsInjected()
+        throws Exception
+    {
+        buzz.getUserProfile( "ada" );
+        server.setLatency( 50 );
+        long start = System.nanoTime();
+        buzz.getUserProfile( "ada" );
+        Assert.assertTrue( System.nanoTime() - start >= 50000000L );
+    }
+}
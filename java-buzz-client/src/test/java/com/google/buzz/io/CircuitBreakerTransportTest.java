@@ -0,0 +1,271 @@
+package com.google.buzz.io;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.buzz.exception.BuzzIOException;
+import com.google.buzz.exception.BuzzRejectedException;
+
+public class CircuitBreakerTransportTest
+{
+    private static final String ACTIVITIES = "https://www.googleapis.com/buzz/v1/activities/@me/@self";
+
+    private static final String PEOPLE = "https://www.googleapis.com/buzz/v1/people/@me/@self";
+
+    private volatile int status = 200;
+
+    private volatile long latency;
+
+    private volatile CountDownLatch gate;
+
+    private volatile boolean streamed;
+
+    private int sent;
+
+    private CircuitBreakerTransport transport;
+
+    private BuzzCircuitBreaker breaker;
+
+    private ExecutorService executor;
+
+    @Before
+    public void createTransport()
+    {
+        executor = Executors.newCachedThreadPool();
+        transport = new CircuitBreakerTransport( new BuzzTransport()
+        {
+            public BuzzResponse execute( BuzzRequest request )
+                throws BuzzIOException
+            {
+                synchronized ( CircuitBreakerTransportTest.this )
+                {
+                    sent++;
+                }
+                try
+                {
+                    if ( gate != null && BuzzEndpoint.of( request ) == BuzzEndpoint.ACTIVITIES )
+                    {
+                        gate.await( 5, TimeUnit.SECONDS );
+                    }
+                    Thread.sleep( latency );
+                }
+                catch ( InterruptedException e )
+                {
+                    throw new BuzzIOException( e );
+                }
+                if ( streamed )
+                {
+                    return new BuzzResponse( status, null,
+                                             new ByteArrayInputStream( "body".getBytes( StandardCharsets.UTF_8 ) ) );
+                }
+                return new BuzzResponse( status, "body" );
+            }
+        }, executor );
+        breaker = transport.getCircuitBreaker( BuzzEndpoint.ACTIVITIES );
+        breaker.setMinimumCalls( 4 );
+        breaker.setHalfOpenCalls( 2 );
+    }
+
+    @After
+    public void shutdownExecutor()
+    {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testFailuresOpenTheBreaker()
+        throws Exception
+    {
+        status = 503;
+        for ( int i = 0; i < 4; i++ )
+        {
+            Assert.assertEquals( 503, transport.execute( BuzzIO.createRequest( ACTIVITIES ) ).getStatus() );
+        }
+        Assert.assertEquals( BuzzCircuitBreaker.State.OPEN, breaker.getState() );
+        try
+        {
+            transport.execute( BuzzIO.createRequest( ACTIVITIES ) );
+            Assert.fail( "expected BuzzRejectedException" );
+        }
+        catch ( BuzzRejectedException e )
+        {
+            // expected
+        }
+        Assert.assertEquals( 4, sent );
+        Assert.assertEquals( 1L, breaker.getRejected() );
+        Assert.assertEquals( 503, transport.execute( BuzzIO.createRequest( PEOPLE ) ).getStatus() );
+    }
+
+    @Test
+    public void testClientErrorsDoNotOpenTheBreaker()
+        throws Exception
+    {
+        status = 404;
+        for ( int i = 0; i < 10; i++ )
+        {
+            transport.execute( BuzzIO.createRequest( ACTIVITIES ) );
+        }
+        Assert.assertEquals( BuzzCircuitBreaker.State.CLOSED, breaker.getState() );
+    }
+
+    @Test
+    public void testHalfOpenBreakerClosesAfterTrialCalls()
+        throws Exception
+    {
+        breaker.setOpenDuration( 50 );
+        status = 500;
+        for ( int i = 0; i < 4; i++ )
+        {
+            transport.execute( BuzzIO.createRequest( ACTIVITIES ) );
+        }
+        Thread.sleep( 100 );
+        Assert.assertEquals( BuzzCircuitBreaker.State.HALF_OPEN, breaker.getState() );
+        status = 200;
+        transport.execute( BuzzIO.createRequest( ACTIVITIES ) );
+        transport.execute( BuzzIO.createRequest( ACTIVITIES ) );
+        Assert.assertEquals( BuzzCircuitBreaker.State.CLOSED, breaker.getState() );
+    }
+
+    @Test
+    public void testHalfOpenBreakerReopensOnFailure()
+        throws Exception
+    {
+        breaker.setOpenDuration( 50 );
+        status = 500;
+        for ( int i = 0; i < 4; i++ )
+        {
+            transport.execute( BuzzIO.createRequest( ACTIVITIES ) );
+        }
+        Thread.sleep( 100 );
+        transport.execute( BuzzIO.createRequest( ACTIVITIES ) );
+        Assert.assertEquals( BuzzCircuitBreaker.State.OPEN, breaker.getState() );
+        Assert.assertEquals( 2L, breaker.getOpened() );
+    }
+
+    @Test
+    public void testSlowCallsOpenTheBreaker()
+        throws Exception
+    {
+        breaker.setSlowCallDuration( 10 );
+        latency = 20;
+        for ( int i = 0; i < 4; i++ )
+        {
+            Assert.assertEquals( 200, transport.execute( BuzzIO.createRequest( ACTIVITIES ) ).getStatus() );
+        }
+        Assert.assertEquals( BuzzCircuitBreaker.State.OPEN, breaker.getState() );
+    }
+
+    @Test
+    public void testBulkheadRejectsBeyondItsBound()
+        throws Exception
+    {
+        transport.setBulkhead( BuzzEndpoint.ACTIVITIES, 2, 0 );
+        gate = new CountDownLatch( 1 );
+        BuzzRequest request = BuzzIO.createRequest( ACTIVITIES );
+        Thread first = new Thread( () -> send( request ) );
+        Thread second = new Thread( () -> send( request ) );
+        first.start();
+        second.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while ( transport.getInFlight( BuzzEndpoint.ACTIVITIES ) < 2 && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 5 );
+        }
+        try
+        {
+            transport.execute( request );
+            Assert.fail( "expected BuzzRejectedException" );
+        }
+        catch ( BuzzRejectedException e )
+        {
+            // expected
+        }
+        Assert.assertTrue( transport.executeAsync( request ).isCompletedExceptionally() );
+        Assert.assertEquals( 2L, transport.getBulkheadRejected( BuzzEndpoint.ACTIVITIES ) );
+        Assert.assertEquals( 200, transport.execute( BuzzIO.createRequest( PEOPLE ) ).getStatus() );
+        gate.countDown();
+        first.join();
+        second.join();
+        Assert.assertEquals( 0, transport.getInFlight( BuzzEndpoint.ACTIVITIES ) );
+    }
+
+    @Test
+    public void testRejectedRequestsAreNotRetried()
+        throws Exception
+    {
+        breaker.setMinimumCalls( 1 );
+        status = 500;
+        transport.execute( BuzzIO.createRequest( ACTIVITIES ) );
+        BuzzRetryPolicy policy = new BuzzRetryPolicy();
+        policy.setBaseDelay( 1 );
+        RetryingTransport retrying = new RetryingTransport( transport, policy );
+        try
+        {
+            retrying.execute( BuzzIO.createRequest( ACTIVITIES ) );
+            Assert.fail( "expected BuzzRejectedException" );
+        }
+        catch ( BuzzRejectedException e )
+        {
+            // expected
+        }
+        Assert.assertEquals( 0L, retrying.getRetries( BuzzEndpoint.ACTIVITIES ) );
+    }
+
+    @Test
+    public void testStreamedBodyHoldsItsPlaceUntilClosed()
+        throws Exception
+    {
+        streamed = true;
+        breaker.setMinimumCalls( 1 );
+        breaker.setSlowCallDuration( 10 );
+        transport.setBulkhead( BuzzEndpoint.ACTIVITIES, 1, 0 );
+        BuzzResponse response = transport.execute( BuzzIO.createRequest( ACTIVITIES ) );
+        Assert.assertEquals( 1, transport.getInFlight( BuzzEndpoint.ACTIVITIES ) );
+        Assert.assertTrue( transport.executeAsync( BuzzIO.createRequest( ACTIVITIES ) ).isCompletedExceptionally() );
+        Thread.sleep( 20 );
+        Assert.assertEquals( BuzzCircuitBreaker.State.CLOSED, breaker.getState() );
+        Assert.assertEquals( "body", response.getBody() );
+        Assert.assertEquals( 0, transport.getInFlight( BuzzEndpoint.ACTIVITIES ) );
+        // reading the body was slow
+        Assert.assertEquals( BuzzCircuitBreaker.State.OPEN, breaker.getState() );
+    }
+
+    @Test
+    public void testAnswerOfACancelledCallGivesBackItsPlace()
+        throws Exception
+    {
+        streamed = true;
+        gate = new CountDownLatch( 1 );
+        transport.setBulkhead( BuzzEndpoint.ACTIVITIES, 1, 0 );
+        Assert.assertTrue( transport.executeAsync( BuzzIO.createRequest( ACTIVITIES ) ).cancel( false ) );
+        Assert.assertEquals( 1, transport.getInFlight( BuzzEndpoint.ACTIVITIES ) );
+        gate.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while ( transport.getInFlight( BuzzEndpoint.ACTIVITIES ) > 0 && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 5 );
+        }
+        Assert.assertEquals( 0, transport.getInFlight( BuzzEndpoint.ACTIVITIES ) );
+    }
+
+    private void send( BuzzRequest request )
+    {
+        try
+        {
+            transport.execute( request );
+        }
+        catch ( BuzzIOException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+}
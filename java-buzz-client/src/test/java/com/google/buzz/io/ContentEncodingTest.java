@@ -0,0 +1,140 @@
+package com.google.buzz.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class ContentEncodingTest
+{
+    private static final String BODY;
+
+    static
+    {
+        StringBuilder sb = new StringBuilder( "<feed>" );
+        for ( int i = 0; i < 200; i++ )
+        {
+            sb.append( "<entry><title>Buzz by Ada Lovelace \u00e9</title></entry>" );
+        }
+        BODY = sb.append( "</feed>" ).toString();
+    }
+
+    private HttpServer server;
+
+    private String baseUrl;
+
+    private volatile String acceptEncoding;
+
+    @Before
+    public void startServer()
+        throws IOException
+    {
+        server = HttpServer.create( new InetSocketAddress( "127.0.0.1", 0 ), 0 );
+        server.createContext( "/", new HttpHandler()
+        {
+            public void handle( HttpExchange exchange )
+                throws IOException
+            {
+                acceptEncoding = exchange.getRequestHeaders().getFirst( "Accept-Encoding" );
+                String encoding = exchange.getRequestURI().getPath().substring( 1 );
+                byte[] body = encode( encoding, BODY.getBytes( "UTF-8" ) );
+                if ( !"identity".equals( encoding ) )
+                {
+                    exchange.getResponseHeaders().set( "Content-Encoding", encoding.replace( "raw", "" ) );
+                }
+                exchange.getRequestBody().close();
+                exchange.sendResponseHeaders( 200, body.length );
+                OutputStream out = exchange.getResponseBody();
+                out.write( body );
+                out.close();
+            }
+        } );
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        BuzzIO.getTransferStats().reset();
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop( 0 );
+    }
+
+    @Test
+    public void testEncodingsAreDecoded()
+        throws Exception
+    {
+        BuzzTransport transport = new HttpClientTransport( new BuzzConnectionPool() );
+        for ( String encoding : new String[] { "gzip", "deflate", "rawdeflate", "identity" } )
+        {
+            Assert.assertEquals( encoding, BODY, BuzzIO.send( BuzzIO.createRequest( baseUrl + encoding ), transport ) );
+            Assert.assertEquals( BuzzIO.ACCEPT_ENCODING, acceptEncoding );
+        }
+        BuzzTransferStats stats = BuzzIO.getTransferStats();
+        Assert.assertEquals( 3L, stats.getCompressedResponses() );
+        Assert.assertEquals( 1L, stats.getIdentityResponses() );
+        long length = BODY.getBytes( "UTF-8" ).length;
+        Assert.assertEquals( 3 * length, stats.getUncompressedBytes() );
+        Assert.assertEquals( length, stats.getIdentityBytes() );
+        Assert.assertTrue( stats.getCompressedBytes() < length );
+        Assert.assertTrue( stats.getCompressionRatio() > 10 );
+    }
+
+    @Test
+    public void testAsyncResponseIsDecoded()
+        throws Exception
+    {
+        BuzzRequest request = BuzzIO.createRequest( baseUrl + "gzip" );
+        BuzzResponse response = new JdkHttpTransport().executeAsync( request ).get();
+        Assert.assertEquals( BODY, response.getBody() );
+    }
+
+    @Test
+    public void testExplicitEncodingIsKept()
+        throws Exception
+    {
+        BuzzRequest request = BuzzIO.createRequest( baseUrl + "identity", BuzzIO.HTTP_METHOD_GET,
+                                                    Collections.singletonMap( "Accept-Encoding", "identity" ) );
+        Assert.assertEquals( BODY, BuzzIO.send( request, new JdkHttpTransport() ) );
+        Assert.assertEquals( "identity", acceptEncoding );
+    }
+
+    private static byte[] encode( String encoding, byte[] body )
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out;
+        if ( "gzip".equals( encoding ) )
+        {
+            out = new GZIPOutputStream( bytes );
+        }
+        else if ( "deflate".equals( encoding ) )
+        {
+            out = new DeflaterOutputStream( bytes );
+        }
+        else if ( "rawdeflate".equals( encoding ) )
+        {
+            out = new DeflaterOutputStream( bytes, new Deflater( Deflater.DEFAULT_COMPRESSION, true ) );
+        }
+        else
+        {
+            out = bytes;
+        }
+        out.write( body );
+        out.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,241 @@
+package com.google.buzz.io;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.buzz.exception.BuzzIOException;
+
+public class HedgingTransportTest
+{
+    private static final String URL = "https://www.googleapis.com/buzz/v1/activities/@me/@self/1";
+
+    private final AtomicInteger sent = new AtomicInteger();
+
+    /**
+     * Number of the request answered slowly, from 1
+     */
+    private volatile int slow;
+
+    /**
+     * Number of the request answered at once with a server error, from 1
+     */
+    private volatile int failing;
+
+    /**
+     * Authorization headers of the requests sent
+     */
+    private final List<String> signatures = Collections.synchronizedList( new ArrayList<String>() );
+
+    private ExecutorService executor;
+
+    private HedgingTransport transport;
+
+    @Before
+    public void createTransport()
+    {
+        executor = Executors.newCachedThreadPool();
+        transport = new HedgingTransport( new BuzzTransport()
+        {
+            public BuzzResponse execute( BuzzRequest request )
+                throws BuzzIOException
+            {
+                signatures.add( request.getHeader( "Authorization" ) );
+                int number = sent.incrementAndGet();
+                if ( number == failing )
+                {
+                    return new BuzzResponse( 503, "busy" );
+                }
+                if ( number == slow )
+                {
+                    try
+                    {
+                        Thread.sleep( 2000 );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        throw new BuzzIOException( e );
+                    }
+                    return new BuzzResponse( 200, "slow" );
+                }
+                return new BuzzResponse( 200, "fast" );
+            }
+        }, executor );
+        transport.setMinSamples( 5 );
+        transport.setMaxHedgeRatio( 1 );
+    }
+
+    @After
+    public void shutdownExecutor()
+    {
+        executor.shutdown();
+    }
+
+    private void warmUp()
+        throws Exception
+    {
+        for ( int i = 0; i < 5; i++ )
+        {
+            transport.execute( BuzzIO.createRequest( URL ) );
+        }
+    }
+
+    @Test
+    public void testSlowReadIsHedged()
+        throws Exception
+    {
+        Assert.assertEquals( -1L, transport.getHedgeDelay( BuzzEndpoint.ACTIVITIES ) );
+        warmUp();
+        Assert.assertTrue( transport.getHedgeDelay( BuzzEndpoint.ACTIVITIES ) >= 10 );
+        slow = 6;
+        long start = System.currentTimeMillis();
+        Assert.assertEquals( "fast", BuzzIO.send( BuzzIO.createRequest( URL ), transport ) );
+        Assert.assertTrue( System.currentTimeMillis() - start < 1000 );
+        Assert.assertEquals( 7, sent.get() );
+        Assert.assertEquals( 1L, transport.getHedged( BuzzEndpoint.ACTIVITIES ) );
+        Assert.assertEquals( 1L, transport.getHedgeWins( BuzzEndpoint.ACTIVITIES ) );
+        Assert.assertEquals( 0L, transport.getHedged( BuzzEndpoint.PEOPLE ) );
+    }
+
+    @Test
+    public void testErrorOfTheHedgeDoesNotBeatASlowSuccess()
+        throws Exception
+    {
+        warmUp();
+        slow = 6;
+        failing = 7;
+        Assert.assertEquals( "slow", BuzzIO.send( BuzzIO.createRequest( URL ), transport ) );
+        Assert.assertEquals( 7, sent.get() );
+        Assert.assertEquals( 1L, transport.getHedged( BuzzEndpoint.ACTIVITIES ) );
+        Assert.assertEquals( 0L, transport.getHedgeWins( BuzzEndpoint.ACTIVITIES ) );
+    }
+
+    @Test
+    public void testErrorIsReturnedWhenEveryRequestFails()
+        throws Exception
+    {
+        warmUp();
+        slow = 7;
+        failing = 6;
+        Assert.assertEquals( 503, transport.execute( BuzzIO.createRequest( URL ) ).getStatus() );
+    }
+
+    @Test
+    public void testHedgeIsSignedAgain()
+        throws Exception
+    {
+        warmUp();
+        slow = 6;
+        final AtomicInteger signed = new AtomicInteger();
+        BuzzRequest request = BuzzIO.createRequest( URL );
+        request.setSigner( new BuzzRequest.Signer()
+        {
+            public void sign( BuzzRequest copy )
+            {
+                copy.setHeader( "Authorization", "OAuth nonce-" + signed.incrementAndGet() );
+            }
+        } );
+        request.getSigner().sign( request );
+        Assert.assertEquals( "fast", BuzzIO.send( request, transport ) );
+        Assert.assertEquals( "OAuth nonce-1", signatures.get( 5 ) );
+        Assert.assertEquals( "OAuth nonce-2", signatures.get( 6 ) );
+    }
+
+    @Test
+    public void testReadSignedWithoutASignerIsNotHedged()
+        throws Exception
+    {
+        warmUp();
+        slow = 6;
+        BuzzRequest request = BuzzIO.createRequest( URL );
+        request.setHeader( "Authorization", "OAuth oauth_nonce=\"1\"" );
+        Assert.assertEquals( "slow", BuzzIO.send( request, transport ) );
+        Assert.assertEquals( 0L, transport.getHedged( BuzzEndpoint.ACTIVITIES ) );
+    }
+
+    @Test
+    public void testFastReadIsNotHedged()
+        throws Exception
+    {
+        warmUp();
+        transport.execute( BuzzIO.createRequest( URL ) );
+        Assert.assertEquals( 6, sent.get() );
+        Assert.assertEquals( 0L, transport.getHedged( BuzzEndpoint.ACTIVITIES ) );
+    }
+
+    @Test
+    public void testBudgetBoundsTheHedges()
+        throws Exception
+    {
+        transport.setMaxHedgeRatio( 0 );
+        warmUp();
+        slow = 6;
+        Assert.assertEquals( "slow", BuzzIO.send( BuzzIO.createRequest( URL ), transport ) );
+        Assert.assertEquals( 0L, transport.getHedged( BuzzEndpoint.ACTIVITIES ) );
+    }
+
+    @Test
+    public void testAnswerOfACancelledReadIsClosed()
+        throws Exception
+    {
+        final CountDownLatch answer = new CountDownLatch( 1 );
+        final AtomicBoolean closed = new AtomicBoolean();
+        HedgingTransport hedging = new HedgingTransport( new BuzzTransport()
+        {
+            public BuzzResponse execute( BuzzRequest request )
+                throws BuzzIOException
+            {
+                try
+                {
+                    answer.await( 5, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException e )
+                {
+                    throw new BuzzIOException( e );
+                }
+                byte[] body = "slow".getBytes( StandardCharsets.UTF_8 );
+                return new BuzzResponse( 200, null, new ByteArrayInputStream( body )
+                {
+                    public void close()
+                    {
+                        closed.set( true );
+                    }
+                } );
+            }
+        }, executor );
+        CompletableFuture<BuzzResponse> read = hedging.executeAsync( BuzzIO.createRequest( URL ) );
+        Assert.assertTrue( read.cancel( false ) );
+        answer.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while ( !closed.get() && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 5 );
+        }
+        Assert.assertTrue( closed.get() );
+    }
+
+    @Test
+    public void testWritesAreNotHedged()
+        throws Exception
+    {
+        warmUp();
+        slow = 6;
+        BuzzResponse response = transport.execute( BuzzIO.createRequest( URL, BuzzIO.HTTP_METHOD_POST ) );
+        Assert.assertEquals( "slow", response.getBody() );
+        Assert.assertEquals( 6, sent.get() );
+    }
+}
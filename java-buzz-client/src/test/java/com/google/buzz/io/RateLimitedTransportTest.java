@@ -0,0 +1,162 @@
+package com.google.buzz.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RateLimitedTransportTest
+{
+    private static final String ACTIVITIES = "https://www.googleapis.com/buzz/v1/activities/";
+
+    private static final String PEOPLE = "https://www.googleapis.com/buzz/v1/people/";
+
+    private StubTransport stub;
+
+    private RateLimitedTransport transport;
+
+    @Before
+    public void createTransport()
+    {
+        stub = new StubTransport();
+        stub.setDefaultResponse( new BuzzResponse( 200, "ok" ) );
+        transport = new RateLimitedTransport( stub );
+    }
+
+    @Test
+    public void testEndpointFamilies()
+    {
+        Assert.assertEquals( BuzzEndpoint.ACTIVITIES, BuzzEndpoint.of( ACTIVITIES + "@me/@self" ) );
+        Assert.assertEquals( BuzzEndpoint.SEARCH, BuzzEndpoint.of( ACTIVITIES + "search?q=buzz" ) );
+        Assert.assertEquals( BuzzEndpoint.PEOPLE, BuzzEndpoint.of( PEOPLE + "ada/@self" ) );
+        Assert.assertEquals( BuzzEndpoint.SEARCH, BuzzEndpoint.of( PEOPLE + "search?q=ada" ) );
+        Assert.assertEquals( BuzzEndpoint.OTHER, BuzzEndpoint.of( "https://accounts.google.com/o/oauth2/token" ) );
+    }
+
+    @Test
+    public void testBurstThenRate()
+    {
+        BuzzRateLimiter limiter = new BuzzRateLimiter( 1, 3 );
+        for ( int i = 0; i < 3; i++ )
+        {
+            Assert.assertTrue( limiter.tryAcquire() );
+        }
+        Assert.assertFalse( limiter.tryAcquire() );
+        Assert.assertEquals( 3L, limiter.getGranted() );
+    }
+
+    @Test
+    public void testWaitersAreServedByPriority()
+        throws Exception
+    {
+        BuzzRateLimiter limiter = new BuzzRateLimiter( 20, 1 );
+        Assert.assertTrue( limiter.tryAcquire() );
+        final List<BuzzRequest.Priority> order = Collections.synchronizedList( new ArrayList<BuzzRequest.Priority>() );
+        List<CompletableFuture<Void>> permits = new ArrayList<CompletableFuture<Void>>();
+        BuzzRequest.Priority[] arrivals = { BuzzRequest.Priority.LOW, BuzzRequest.Priority.NORMAL,
+            BuzzRequest.Priority.LOW, BuzzRequest.Priority.HIGH };
+        for ( final BuzzRequest.Priority priority : arrivals )
+        {
+            permits.add( limiter.acquireAsync( priority ).thenRun( () -> order.add( priority ) ) );
+        }
+        Assert.assertEquals( 4, limiter.getQueueLength() );
+        CompletableFuture.allOf( permits.toArray( new CompletableFuture<?>[0] ) ).get( 5, TimeUnit.SECONDS );
+        Assert.assertEquals( Arrays.asList( BuzzRequest.Priority.HIGH, BuzzRequest.Priority.NORMAL,
+                                            BuzzRequest.Priority.LOW, BuzzRequest.Priority.LOW ), order );
+        Assert.assertEquals( 4L, limiter.getDelayed() );
+    }
+
+    @Test
+    public void testRequestsOverTheLimitQueue()
+        throws Exception
+    {
+        transport.setLimit( BuzzEndpoint.SEARCH, 50, 1 );
+        long start = System.nanoTime();
+        for ( int i = 0; i < 6; i++ )
+        {
+            Assert.assertEquals( "ok", BuzzIO.send( BuzzIO.createRequest( ACTIVITIES + "search?q=" + i ), transport ) );
+        }
+        Assert.assertTrue( System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos( 90 ) );
+
+        start = System.nanoTime();
+        for ( int i = 0; i < 20; i++ )
+        {
+            BuzzIO.send( BuzzIO.createRequest( PEOPLE + "ada/@self" ), transport );
+        }
+        Assert.assertTrue( System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos( 90 ) );
+        Assert.assertEquals( 26, stub.getRequests().size() );
+    }
+
+    @Test
+    public void testAccountsHaveTheirOwnLimit()
+        throws Exception
+    {
+        transport.setAccountLimit( 1, 2 );
+        for ( String account : new String[] { "ada", "ada", "babbage", "babbage" } )
+        {
+            BuzzRequest request = BuzzIO.createRequest( ACTIVITIES + "@me/@self" );
+            request.setAccountId( account );
+            transport.execute( request );
+        }
+        Assert.assertFalse( transport.getAccountLimit( "ada" ).tryAcquire() );
+        Assert.assertFalse( transport.getAccountLimit( "babbage" ).tryAcquire() );
+        Assert.assertTrue( transport.getAccountLimit( "charles" ).tryAcquire() );
+    }
+
+    @Test
+    public void testCancelledRequestGivesUpItsPlace()
+        throws Exception
+    {
+        transport.setAccountLimit( 1000, 10 );
+        transport.setLimit( BuzzEndpoint.ACTIVITIES, 5, 1 );
+        BuzzRequest first = BuzzIO.createRequest( ACTIVITIES + "@me/@self" );
+        first.setAccountId( "ada" );
+        transport.execute( first );
+        BuzzRequest second = BuzzIO.createRequest( ACTIVITIES + "@me/@self" );
+        second.setAccountId( "ada" );
+        CompletableFuture<BuzzResponse> cancelled = transport.executeAsync( second );
+        Assert.assertTrue( cancelled.cancel( false ) );
+        BuzzRequest third = BuzzIO.createRequest( ACTIVITIES + "@me/@self" );
+        third.setAccountId( "ada" );
+        Assert.assertEquals( "ok", transport.executeAsync( third ).get( 5, TimeUnit.SECONDS ).getBody() );
+        // only the third request was granted a permit after waiting
+        Assert.assertEquals( 1L, transport.getLimit( BuzzEndpoint.ACTIVITIES ).getDelayed() );
+    }
+
+    @Test
+    public void testTimedOutRequestGivesUpItsPlace()
+        throws Exception
+    {
+        transport.setLimit( BuzzEndpoint.ACTIVITIES, 5, 1 );
+        transport.execute( BuzzIO.createRequest( ACTIVITIES + "@me/@self" ) );
+        CompletableFuture<BuzzResponse> timedOut =
+            transport.executeAsync( BuzzIO.createRequest( ACTIVITIES + "@me/@self" ) ).orTimeout( 1, TimeUnit.MILLISECONDS );
+        Assert.assertTrue( timedOut.handle( ( response, error ) -> error != null ).get( 5, TimeUnit.SECONDS ) );
+        BuzzRequest next = BuzzIO.createRequest( ACTIVITIES + "@me/@self" );
+        Assert.assertEquals( "ok", transport.executeAsync( next ).get( 5, TimeUnit.SECONDS ).getBody() );
+        // only the next request was granted a permit after waiting
+        Assert.assertEquals( 1L, transport.getLimit( BuzzEndpoint.ACTIVITIES ).getDelayed() );
+    }
+
+    @Test
+    public void testTooManyRequestsPausesTheLimit()
+        throws Exception
+    {
+        transport.setLimit( BuzzEndpoint.ACTIVITIES, 1000, 10 );
+        stub.addResponse( BuzzIO.HTTP_METHOD_GET, ACTIVITIES + "@me/@consumption",
+                          new BuzzResponse( 429, Collections.singletonMap( "Retry-After", "1" ), "slow down" ) );
+        BuzzResponse response = transport.execute( BuzzIO.createRequest( ACTIVITIES + "@me/@consumption" ) );
+        Assert.assertEquals( 429, response.getStatus() );
+        long start = System.nanoTime();
+        CompletableFuture<BuzzResponse> next = transport.executeAsync( BuzzIO.createRequest( ACTIVITIES + "@me/@self" ) );
+        Assert.assertFalse( next.isDone() );
+        Assert.assertEquals( "ok", next.get( 5, TimeUnit.SECONDS ).getBody() );
+        Assert.assertTrue( System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos( 900 ) );
+    }
+}
@@ -0,0 +1,219 @@
+package com.google.buzz.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.buzz.exception.BuzzHttpException;
+import com.google.buzz.exception.BuzzIOException;
+
+public class RetryingTransportTest
+{
+    private static final String URL = "https://www.googleapis.com/buzz/v1/activities/@me/@self";
+
+    private final LinkedList<Object> answers = new LinkedList<Object>();
+
+    private final List<BuzzRequest> sent = Collections.synchronizedList( new ArrayList<BuzzRequest>() );
+
+    private ExecutorService executor;
+
+    private BuzzTransport blocking;
+
+    private RetryingTransport transport;
+
+    @Before
+    public void createTransport()
+    {
+        executor = Executors.newCachedThreadPool();
+        BuzzRetryPolicy policy = new BuzzRetryPolicy();
+        policy.setBaseDelay( 1 );
+        blocking = new BuzzTransport()
+        {
+            public BuzzResponse execute( BuzzRequest request )
+                throws BuzzIOException
+            {
+                sent.add( request );
+                Object answer;
+                synchronized ( answers )
+                {
+                    answer = answers.size() > 1 ? answers.removeFirst() : answers.getFirst();
+                }
+                if ( answer instanceof BuzzIOException )
+                {
+                    throw (BuzzIOException) answer;
+                }
+                return (BuzzResponse) answer;
+            }
+        };
+        transport = new RetryingTransport( blocking, policy, executor );
+    }
+
+    @After
+    public void shutdownExecutor()
+    {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testServerErrorsAreRetried()
+        throws Exception
+    {
+        answers.add( new BuzzResponse( 503, "busy" ) );
+        answers.add( new BuzzIOException( "connection reset" ) );
+        answers.add( new BuzzResponse( 200, "ok" ) );
+        Assert.assertEquals( "ok", BuzzIO.send( BuzzIO.createRequest( URL ), transport ) );
+        Assert.assertEquals( 3, sent.size() );
+        Assert.assertEquals( 2L, transport.getRetries( BuzzEndpoint.ACTIVITIES ) );
+        Assert.assertEquals( 1L, transport.getRecovered( BuzzEndpoint.ACTIVITIES ) );
+        Assert.assertEquals( 0L, transport.getRetries( BuzzEndpoint.PEOPLE ) );
+    }
+
+    @Test
+    public void testPostIsNotRetried()
+        throws Exception
+    {
+        answers.add( new BuzzResponse( 503, "busy" ) );
+        answers.add( new BuzzResponse( 200, "ok" ) );
+        BuzzResponse response = transport.execute( BuzzIO.createRequest( URL, BuzzIO.HTTP_METHOD_POST ) );
+        Assert.assertEquals( 503, response.getStatus() );
+        Assert.assertEquals( 1, sent.size() );
+    }
+
+    @Test
+    public void testClientErrorIsNotRetried()
+        throws Exception
+    {
+        answers.add( new BuzzResponse( 404, "not found" ) );
+        Assert.assertEquals( 404, transport.execute( BuzzIO.createRequest( URL ) ).getStatus() );
+        Assert.assertEquals( 1, sent.size() );
+    }
+
+    @Test
+    public void testAttemptsAreCapped()
+        throws Exception
+    {
+        transport.getPolicy().setMaxAttempts( 3 );
+        answers.add( new BuzzResponse( 500, "broken" ) );
+        try
+        {
+            BuzzIO.send( BuzzIO.createRequest( URL ), transport );
+            Assert.fail( "expected BuzzHttpException" );
+        }
+        catch ( BuzzHttpException e )
+        {
+            Assert.assertEquals( 500, e.getStatus() );
+            Assert.assertEquals( "broken", e.getMessage() );
+        }
+        Assert.assertEquals( 3, sent.size() );
+        Assert.assertEquals( 1L, transport.getExhausted( BuzzEndpoint.ACTIVITIES ) );
+    }
+
+    @Test
+    public void testRetryAfterBeyondTheRetryTimeIsNotWaited()
+        throws Exception
+    {
+        transport.getPolicy().setMaxRetryTime( 500 );
+        answers.add( new BuzzResponse( 429, Collections.singletonMap( "Retry-After", "5" ), "slow down" ) );
+        long start = System.nanoTime();
+        Assert.assertEquals( 429, transport.execute( BuzzIO.createRequest( URL ) ).getStatus() );
+        Assert.assertTrue( System.nanoTime() - start < TimeUnit.SECONDS.toNanos( 1 ) );
+        Assert.assertEquals( 1, sent.size() );
+    }
+
+    @Test
+    public void testAsyncRequestsAreRetried()
+        throws Exception
+    {
+        answers.add( new BuzzResponse( 502, "bad gateway" ) );
+        answers.add( new BuzzResponse( 200, "ok" ) );
+        BuzzResponse response = transport.executeAsync( BuzzIO.createRequest( URL ) ).get( 5, TimeUnit.SECONDS );
+        Assert.assertEquals( "ok", response.getBody() );
+        Assert.assertEquals( 1L, transport.getRetries( BuzzEndpoint.ACTIVITIES ) );
+    }
+
+    @Test
+    public void testEveryAttemptIsSignedAgain()
+        throws Exception
+    {
+        answers.add( new BuzzResponse( 503, "busy" ) );
+        answers.add( new BuzzResponse( 503, "busy" ) );
+        answers.add( new BuzzResponse( 200, "ok" ) );
+        Assert.assertEquals( 200, transport.execute( signedRequest() ).getStatus() );
+        answers.clear();
+        answers.add( new BuzzResponse( 503, "busy" ) );
+        answers.add( new BuzzResponse( 200, "ok" ) );
+        Assert.assertEquals( 200, transport.executeAsync( signedRequest() ).get( 5, TimeUnit.SECONDS ).getStatus() );
+        Assert.assertEquals( 5, sent.size() );
+        List<String> signatures = new ArrayList<String>();
+        for ( BuzzRequest request : sent )
+        {
+            signatures.add( request.getHeader( "Authorization" ) );
+        }
+        Assert.assertEquals( 5, new HashSet<String>( signatures ).size() );
+    }
+
+    /**
+     * @return a request signed with a new signature every time
+     */
+    private BuzzRequest signedRequest()
+        throws Exception
+    {
+        final int[] signatures = new int[1];
+        BuzzRequest request = BuzzIO.createRequest( URL );
+        request.setSigner( new BuzzRequest.Signer()
+        {
+            public void sign( BuzzRequest signed )
+            {
+                Assert.assertNull( signed.getHeader( "Authorization" ) );
+                signed.setHeader( "Authorization", "OAuth " + request.hashCode() + "-" + ++signatures[0] );
+            }
+        } );
+        request.getSigner().sign( request );
+        return request;
+    }
+
+    @Test
+    public void testBlockingTransportNeedsAnExecutor()
+        throws Exception
+    {
+        answers.add( new BuzzResponse( 200, "ok" ) );
+        try
+        {
+            new RetryingTransport( blocking ).executeAsync( BuzzIO.createRequest( URL ) ).get( 5, TimeUnit.SECONDS );
+            Assert.fail( "expected UnsupportedOperationException" );
+        }
+        catch ( ExecutionException e )
+        {
+            Assert.assertTrue( e.getCause() instanceof UnsupportedOperationException );
+        }
+        Assert.assertTrue( sent.isEmpty() );
+    }
+
+    @Test
+    public void testBackoffGrowsWithinBounds()
+    {
+        BuzzRetryPolicy policy = new BuzzRetryPolicy();
+        policy.setBaseDelay( 100 );
+        policy.setMaxDelay( 1000 );
+        for ( int i = 0; i < 50; i++ )
+        {
+            long first = policy.backoff( 1 );
+            long third = policy.backoff( 3 );
+            long tenth = policy.backoff( 10 );
+            Assert.assertTrue( first >= 50 && first <= 100 );
+            Assert.assertTrue( third >= 200 && third <= 400 );
+            Assert.assertTrue( tenth >= 500 && tenth <= 1000 );
+        }
+    }
+}
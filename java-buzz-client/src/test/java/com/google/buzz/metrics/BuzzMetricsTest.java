@@ -0,0 +1,126 @@
+package com.google.buzz.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.buzz.Buzz;
+import com.google.buzz.Resources;
+import com.google.buzz.exception.BuzzHttpException;
+import com.google.buzz.io.BuzzIO;
+import com.google.buzz.io.BuzzResponse;
+import com.google.buzz.io.StubTransport;
+import com.google.buzz.model.BuzzFeed;
+
+public class BuzzMetricsTest
+{
+    private StubTransport transport;
+
+    private Buzz buzz;
+
+    private BuzzMetrics metrics;
+
+    @Before
+    public void createClient()
+        throws Exception
+    {
+        transport = new StubTransport();
+        buzz = new Buzz( transport );
+        buzz.setOAuthVersion( 2 );
+        buzz.setConsumerForScope( "client", "secret", Buzz.BUZZ_SCOPE_WRITE );
+        buzz.setTokenWithSecret( "expired-token", "refresh-token" );
+        transport.addResponse( BuzzIO.HTTP_METHOD_POST, "https://accounts.google.com/o/oauth2/token",
+                               new BuzzResponse( 200, "{\"access_token\":\"fresh-token\",\"expires_in\":3600}" ) );
+        metrics = new BuzzMetrics();
+        buzz.setMetrics( metrics );
+    }
+
+    @Test
+    public void testOperationsAreMeasuredApart()
+        throws Exception
+    {
+        String feed = Resources.load( "feed.xml" );
+        transport.addResponse( Buzz.BUZZ_URL_ACTIVITIES + "ada/@public", feed );
+        buzz.getPosts( "ada", BuzzFeed.Type.PUBLIC );
+        buzz.getPosts( "ada", BuzzFeed.Type.PUBLIC );
+        try
+        {
+            buzz.deletePost( "ada", "missing" );
+            Assert.fail( "expected BuzzHttpException" );
+        }
+        catch ( BuzzHttpException e )
+        {
+            // expected
+        }
+
+        BuzzOperationStats posts = metrics.getOperation( "getPosts" );
+        Assert.assertEquals( 2L, posts.getRequests() );
+        Assert.assertEquals( 0L, posts.getErrors() );
+        Assert.assertEquals( 2L * feed.getBytes( "UTF-8" ).length, posts.getBytesIn() );
+        Assert.assertEquals( 2L, posts.getParsingLatency().getCount() );
+        Assert.assertTrue( posts.getParsingLatency().getMaxMillis() > 0 );
+
+        BuzzOperationStats delete = metrics.getOperation( "deletePost" );
+        Assert.assertEquals( 1L, delete.getRequests() );
+        Assert.assertEquals( Long.valueOf( 1 ), delete.getErrorsByClass().get( "BuzzHttpException" ) );
+        Assert.assertTrue( delete.getSigningLatency().getMaxMillis() > 0 );
+        Assert.assertNull( metrics.getOperation( "getComments" ) );
+    }
+
+    @Test
+    public void testDisabledMetricsRecordNothing()
+        throws Exception
+    {
+        buzz.setMetrics( null );
+        transport.addResponse( Buzz.BUZZ_URL_ACTIVITIES + "ada/@public", Resources.load( "feed.xml" ) );
+        buzz.getPosts( "ada", BuzzFeed.Type.PUBLIC );
+        Assert.assertTrue( metrics.getOperations().isEmpty() );
+    }
+
+    @Test
+    public void testOperationsAreExportedToJmx()
+        throws Exception
+    {
+        String domain = "com.google.buzz.test";
+        metrics.record( new BuzzOperationSample( "getPost", 0, TimeUnit.MILLISECONDS.toNanos( 5 ), 0, 0, 10, null ) );
+        metrics.registerMBeans( domain );
+        try
+        {
+            metrics.record( new BuzzOperationSample( "getComment", 0, 0, 0, 0, 0, new BuzzHttpException( 503, null ) ) );
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName post = BuzzMetrics.objectName( domain, "getPost" );
+            Assert.assertEquals( 1L, server.getAttribute( post, "Requests" ) );
+            Assert.assertEquals( 10L, server.getAttribute( post, "BytesIn" ) );
+            Assert.assertEquals( 1L, server.getAttribute( BuzzMetrics.objectName( domain, "getComment" ), "Errors" ) );
+        }
+        finally
+        {
+            metrics.unregisterMBeans();
+        }
+        Assert.assertFalse( ManagementFactory.getPlatformMBeanServer()
+            .isRegistered( BuzzMetrics.objectName( domain, "getPost" ) ) );
+    }
+
+    @Test
+    public void testHistogramPercentiles()
+    {
+        BuzzLatencyHistogram histogram = new BuzzLatencyHistogram();
+        for ( int i = 1; i <= 1000; i++ )
+        {
+            histogram.record( TimeUnit.MILLISECONDS.toNanos( i ) );
+        }
+        Assert.assertEquals( 1000L, histogram.getCount() );
+        Assert.assertEquals( 500.5, histogram.getMeanMillis(), 0.001 );
+        Assert.assertEquals( 500, histogram.getPercentileMillis( 50 ), 500 * 0.125 );
+        Assert.assertEquals( 990, histogram.getPercentileMillis( 99 ), 990 * 0.125 );
+        Assert.assertEquals( 1000, histogram.getMaxMillis(), 0.001 );
+        histogram.reset();
+        Assert.assertEquals( 0, histogram.getPercentileMillis( 50 ), 0 );
+    }
+}
@@ -0,0 +1,133 @@
+package com.google.buzz.oauth;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.buzz.exception.BuzzAuthenticationException;
+import com.google.buzz.io.BuzzIO;
+import com.google.buzz.io.BuzzRequest;
+import com.google.buzz.io.BuzzResponse;
+import com.google.buzz.io.BuzzTransport;
+
+public class BuzzOAuth2RefreshTest
+{
+
+ @Before public void initOAuth() throws Exception
+ {
+   refreshes = new AtomicInteger();
+   oauth = new BuzzOAuth2();
+   oauth.setConsumerForScope("key","secret","scope");
+   oauth.setTokenWithSecret("stale","refresh");
+   oauth.setExpireTime(System.currentTimeMillis());
+   oauth.setTransport(new BuzzTransport() {
+     public BuzzResponse execute(BuzzRequest request) {
+       int n = refreshes.incrementAndGet();
+       try {
+         Thread.sleep(delay);
+       } catch (InterruptedException ex) {
+         Thread.currentThread().interrupt();
+       }
+       if (failing) {
+         return new BuzzResponse(400,null,"{\"error\":\"invalid_grant\"}");
+       }
+       return new BuzzResponse(200,null,"{\"access_token\":\"fresh"+n+"\",\"expires_in\":3600}");
+     }
+   });
+ }
+
+ @After public void stopRefresher()
+ {
+   oauth.stopBackgroundRefresh();
+ }
+
+ @Test public void testConcurrentSignersRefreshOnce() throws Exception
+ {
+   final CountDownLatch start = new CountDownLatch(1);
+   ExecutorService pool = Executors.newFixedThreadPool(16);
+   List<Future<String>> signed = new ArrayList<Future<String>>();
+   for (int i=0; i<16; ++i) {
+     signed.add(pool.submit(new Callable<String>() {
+       public String call() throws Exception {
+         start.await();
+         BuzzRequest request = BuzzIO.createRequest("https://www.googleapis.com/buzz/v1/activities/@me/@self");
+         oauth.signRequest(request);
+         return request.getHeader("Authorization");
+       }
+     }));
+   }
+   start.countDown();
+   for (Future<String> header : signed) {
+     Assert.assertEquals("OAuth fresh1",header.get(10,TimeUnit.SECONDS));
+   }
+   pool.shutdown();
+   Assert.assertEquals(1,refreshes.get());
+   Assert.assertEquals("refresh",oauth.getTokenSecret());
+   Assert.assertTrue(oauth.getExpireTime()>System.currentTimeMillis()+BuzzOAuth2.REFRESH_MARGIN);
+ }
+
+ @Test public void testFailedRefreshReachesAllWaiters() throws Exception
+ {
+   failing = true;
+   final CountDownLatch start = new CountDownLatch(1);
+   ExecutorService pool = Executors.newFixedThreadPool(8);
+   List<Future<Object>> signed = new ArrayList<Future<Object>>();
+   for (int i=0; i<8; ++i) {
+     signed.add(pool.submit(new Callable<Object>() {
+       public Object call() throws Exception {
+         start.await();
+         try {
+           oauth.signRequest(BuzzIO.createRequest("https://www.googleapis.com/buzz/v1/activities/@me/@self"));
+           return "signed";
+         } catch (BuzzAuthenticationException ex) {
+           return ex;
+         }
+       }
+     }));
+   }
+   start.countDown();
+   for (Future<Object> result : signed) {
+     Assert.assertTrue(result.get(10,TimeUnit.SECONDS) instanceof BuzzAuthenticationException);
+   }
+   pool.shutdown();
+   Assert.assertEquals(1,refreshes.get());
+   Assert.assertEquals("stale",oauth.getToken());
+ }
+
+ @Test public void testBackgroundRefreshRenewsAhead() throws Exception
+ {
+   delay = 0;
+   oauth.setExpireTime(System.currentTimeMillis()+BuzzOAuth2.REFRESH_MARGIN+60000L);
+   oauth.startBackgroundRefresh();
+   Assert.assertTrue(oauth.isBackgroundRefreshing());
+   long deadline = System.currentTimeMillis()+10000L;
+   while ("stale".equals(oauth.getToken()) && System.currentTimeMillis()<deadline) {
+     Thread.sleep(10);
+   }
+   Assert.assertEquals(1,refreshes.get());
+   BuzzRequest request = BuzzIO.createRequest("https://www.googleapis.com/buzz/v1/activities/@me/@self");
+   oauth.signRequest(request);
+   Assert.assertEquals("OAuth fresh1",request.getHeader("Authorization"));
+   Assert.assertEquals(1,refreshes.get());
+   oauth.stopBackgroundRefresh();
+   Assert.assertFalse(oauth.isBackgroundRefreshing());
+ }
+
+ private BuzzOAuth2 oauth;
+ private AtomicInteger refreshes;
+ private volatile long delay = 200;
+ private volatile boolean failing;
+
+}
@@ -0,0 +1,169 @@
+package com.google.buzz.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.buzz.Resources;
+import com.google.buzz.exception.BuzzParsingException;
+import com.google.buzz.model.BuzzCommentsFeed;
+import com.google.buzz.model.BuzzFeed;
+import com.google.buzz.model.BuzzFeedEntry;
+import com.google.buzz.model.BuzzUserProfile;
+
+public class StreamingParserTest
+{
+
+ @Test public void testFeedFromStream() throws Exception
+ {
+   BuzzFeed feed = BuzzFeedParser.parseFeed(open("feed.xml"));
+   Assert.assertEquals(2,feed.getEntries().size());
+   Assert.assertEquals("Google Buzz",feed.getFeedTitle());
+   BuzzFeedEntry entry = feed.getEntries().get(0);
+   Assert.assertEquals("Ada Lovelace",entry.getAuthor().getName());
+   Assert.assertEquals("Analytical engines & <b>numbers</b>, weaving algebraic patterns.",
+                       entry.getContent().getText());
+   Assert.assertEquals(1,entry.getVisibility().size());
+   Assert.assertEquals("Public",entry.getVisibility().get(0).getName());
+ }
+
+ @Test public void testStreamMatchesString() throws Exception
+ {
+   Assert.assertEquals(
+     BuzzFeedEntryParser.parseFeedEntry(Resources.load("entry.xml")).getId(),
+     BuzzFeedEntryParser.parseFeedEntry(open("entry.xml")).getId());
+   BuzzCommentsFeed comments = BuzzCommentsParser.parseComments(open("comments.xml"));
+   Assert.assertEquals(
+     BuzzCommentsParser.parseComments(Resources.load("comments.xml")).getComments().size(),
+     comments.getComments().size());
+   Assert.assertEquals(
+     BuzzCommentParser.parseComment(Resources.load("comment.xml")).getId(),
+     BuzzCommentParser.parseComment(open("comment.xml")).getId());
+   BuzzUserProfile profile = BuzzUserProfileParser.parseProfile(open("profile.xml"));
+   Assert.assertEquals(
+     BuzzUserProfileParser.parseProfile(Resources.load("profile.xml")).getName(),
+     profile.getName());
+   Assert.assertEquals(
+     BuzzUsersProfilesParser.parseUsersProfiles(Resources.load("people.xml")).size(),
+     BuzzUsersProfilesParser.parseUsersProfiles(open("people.xml")).size());
+ }
+
+ @Test public void testNewlinesArePreserved() throws Exception
+ {
+   String xml = "<entry xmlns=\"http://www.w3.org/2005/Atom\">"
+               +"<content type=\"text\">first line\nsecond line</content></entry>";
+   BuzzFeedEntry entry = BuzzFeedEntryParser.parseFeedEntry(
+                    new ByteArrayInputStream(xml.getBytes("UTF-8")));
+   Assert.assertEquals("first line\nsecond line",entry.getContent().getText());
+ }
+
+ @Test public void testEntriesAreReadOneAtATime() throws Exception
+ {
+   String feed = Resources.load("feed.xml");
+   int start = feed.indexOf("<entry>");
+   int end = feed.lastIndexOf("</feed>");
+   StringBuilder sb = new StringBuilder(feed.substring(0,start));
+   for(int i=0; i<500; ++i) {
+     sb.append(feed,start,end);
+   }
+   sb.append("</feed>");
+   byte[] bytes = sb.toString().getBytes("UTF-8");
+   final int[] read = new int[1];
+   InputStream counting = new ByteArrayInputStream(bytes) {
+     public synchronized int read(byte[] b, int off, int len) {
+       int n = super.read(b,off,len);
+       if (n>0) read[0]+=n;
+       return n;
+     }
+   };
+   BuzzFeedReader reader = BuzzFeedParser.streamFeed(counting);
+   Assert.assertTrue(reader.hasNext());
+   Assert.assertEquals("Ada Lovelace",reader.next().getAuthor().getName());
+   Assert.assertEquals("Google Buzz",reader.getFeed().getFeedTitle());
+   Assert.assertTrue(read[0]<bytes.length/10);
+   int count = 1;
+   while(reader.hasNext()) {
+     reader.next();
+     ++count;
+   }
+   Assert.assertEquals(1000,count);
+   Assert.assertEquals(0,reader.getFeed().getEntries().size());
+ }
+
+ @Test(expected=BuzzParsingException.class)
+ public void testMalformedXml() throws Exception
+ {
+   BuzzFeedParser.parseFeed("<feed><entry></feed>");
+ }
+
+ @Test public void testCachedReaderIsReused() throws Exception
+ {
+   StaxXMLReader first = StaxXMLReader.acquire();
+   StaxXMLReader nested = StaxXMLReader.acquire();
+   Assert.assertNotSame(first,nested);
+   nested.release();
+   first.release();
+   Assert.assertSame(first,StaxXMLReader.acquire());
+   first.release();
+   // the pool is shared: another thread takes the reader released by this one
+   final StaxXMLReader[] other = new StaxXMLReader[1];
+   Thread thread = new Thread(() -> {
+     other[0] = StaxXMLReader.acquire();
+     other[0].release();
+   });
+   thread.start();
+   thread.join();
+   Assert.assertSame(first,other[0]);
+   try {
+     BuzzFeedParser.parseFeed("<feed><entry></feed>");
+     Assert.fail();
+   } catch (BuzzParsingException e) {
+   }
+   for(int i=0; i<3; ++i) {
+     Assert.assertEquals(2,BuzzFeedParser.parseFeed(open("feed.xml")).getEntries().size());
+     Assert.assertEquals("Ada Lovelace",BuzzUserProfileParser.parseProfile(Resources.load("profile.xml")).getName());
+   }
+ }
+
+ @Test public void testParseEventsAreRecorded() throws Exception
+ {
+   byte[] bytes = Resources.load("feed.xml").getBytes("UTF-8");
+   Path file = Files.createTempFile("buzz-parse",".jfr");
+   try (Recording recording = new Recording()) {
+     recording.enable("com.google.buzz.Parse");
+     recording.start();
+     BuzzFeedParser.parseFeed(new ByteArrayInputStream(bytes));
+     try {
+       BuzzFeedParser.parseFeed("<feed><entry></feed>");
+       Assert.fail();
+     } catch (BuzzParsingException e) {
+     }
+     recording.stop();
+     recording.dump(file);
+     List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+     Assert.assertEquals(2,events.size());
+     Assert.assertEquals("feed",events.get(0).getString("element"));
+     Assert.assertEquals((long) bytes.length,events.get(0).getLong("bytes"));
+     Assert.assertEquals(2,events.get(0).getInt("entries"));
+     Assert.assertFalse(events.get(0).getBoolean("failed"));
+     Assert.assertTrue(events.get(1).getBoolean("failed"));
+   } finally {
+     Files.delete(file);
+   }
+ }
+
+ private static InputStream open(String name)
+ {
+   return Resources.class.getResourceAsStream(name);
+ }
+
+}
@@ -0,0 +1,448 @@
+package com.google.buzz.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.buzz.Buzz;
+import com.google.buzz.exception.BuzzException;
+import com.google.buzz.io.BuzzStubServer;
+import com.google.buzz.metrics.BuzzLatencyHistogram;
+import com.google.buzz.model.BuzzContent;
+import com.google.buzz.model.BuzzFeed;
+
+/**
+ * Load generator calling a <b>Buzz</b> client from several threads, and reporting the throughput
+ * and the latency percentiles of every operation. <br/>
+ * Every thread calls operations drawn at random from a weighted <b>mix</b>, one after the other,
+ * for <b>duration</b> milliseconds; the calls of the first <b>warmup</b> milliseconds are not
+ * measured. A latency is the time of the whole call, signing and parsing included. <br/>
+ * The generator ships in the test jar of the client, not in the client itself. Run from the command
+ * line with the test classes on the class path, it starts a <b>BuzzStubServer</b> and drives a
+ * client against it:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:... com.google.buzz.tools.BuzzLoadGenerator --threads 16 --duration 30
+ * </pre>
+ */
+public class BuzzLoadGenerator
+{
+    /**
+     * Operations called by default, with their weight
+     */
+    public static final String DEFAULT_MIX = "getPosts=30,getPost=20,getComments=15,getUserProfile=10,getLikes=5,"
+        + "followers=5,search=5,searchPeople=3,createComment=5,likePost=2";
+
+    /**
+     * Operations the generator can call
+     */
+    private static final List<String> OPERATIONS =
+        Arrays.asList( "getPosts", "getPost", "getComments", "getUserProfile", "getLikes", "followers", "search",
+                       "searchPeople", "createComment", "likePost" );
+
+    /**
+     * User the operations act on
+     */
+    private static final String USER = "@me";
+
+    private final Buzz buzz;
+
+    /**
+     * Weight by operation, in call order
+     */
+    private final Map<String, Integer> mix = new LinkedHashMap<String, Integer>();
+
+    private int threads = 8;
+
+    private long duration = 10000;
+
+    private long warmup = 2000;
+
+    /**
+     * Creates a generator of the default mix.
+     *
+     * @param buzz the client to load, signed in
+     */
+    public BuzzLoadGenerator( Buzz buzz )
+    {
+        this.buzz = buzz;
+        setMix( DEFAULT_MIX );
+    }
+
+    /**
+     * @param mix the operations to call with their weight, as <b>name=weight</b> pairs separated by
+     *            commas; the names are the ones of the <b>Buzz</b> methods
+     * @throws IllegalArgumentException if an operation is unknown or a weight is not a number
+     */
+    public void setMix( String mix )
+    {
+        Map<String, Integer> parsed = new LinkedHashMap<String, Integer>();
+        for ( String pair : mix.split( "," ) )
+        {
+            String[] parts = pair.trim().split( "=" );
+            if ( parts.length != 2 || !OPERATIONS.contains( parts[0].trim() ) )
+            {
+                throw new IllegalArgumentException( "Unknown operation in mix: " + pair );
+            }
+            int weight = Integer.parseInt( parts[1].trim() );
+            if ( weight > 0 )
+            {
+                parsed.put( parts[0].trim(), weight );
+            }
+        }
+        if ( parsed.isEmpty() )
+        {
+            throw new IllegalArgumentException( "The mix has no operation" );
+        }
+        this.mix.clear();
+        this.mix.putAll( parsed );
+    }
+
+    /**
+     * @param threads the number of threads calling the client
+     */
+    public void setThreads( int threads )
+    {
+        this.threads = Math.max( threads, 1 );
+    }
+
+    /**
+     * @param duration how long to call the client, warmup included, in milliseconds
+     */
+    public void setDuration( long duration )
+    {
+        this.duration = duration;
+    }
+
+    /**
+     * @param warmup how long to call the client before measuring, in milliseconds
+     */
+    public void setWarmup( long warmup )
+    {
+        this.warmup = Math.max( warmup, 0 );
+    }
+
+    /**
+     * Load the client for the duration.
+     *
+     * @return the measures of the calls after the warmup
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public Report run()
+        throws InterruptedException
+    {
+        final Report report = new Report( mix.keySet() );
+        final String[] operations = new String[total( mix )];
+        int next = 0;
+        for ( Map.Entry<String, Integer> entry : mix.entrySet() )
+        {
+            for ( int i = 0; i < entry.getValue(); i++ )
+            {
+                operations[next++] = entry.getKey();
+            }
+        }
+        final long start = System.nanoTime();
+        final long measureStart = start + TimeUnit.MILLISECONDS.toNanos( warmup );
+        final long end = start + TimeUnit.MILLISECONDS.toNanos( Math.max( duration, warmup ) );
+        List<Thread> workers = new ArrayList<Thread>();
+        for ( int t = 0; t < threads; t++ )
+        {
+            Thread worker = new Thread( () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long now = System.nanoTime();
+                while ( now < end )
+                {
+                    String operation = operations[random.nextInt( operations.length )];
+                    boolean failed = false;
+                    try
+                    {
+                        call( operation, random.nextInt( 1000 ) );
+                    }
+                    catch ( BuzzException e )
+                    {
+                        failed = true;
+                    }
+                    catch ( RuntimeException e )
+                    {
+                        // counted, so that a failing client does not silently stop the thread
+                        failed = true;
+                    }
+                    long done = System.nanoTime();
+                    if ( now >= measureStart )
+                    {
+                        report.record( operation, done - now, failed );
+                    }
+                    now = done;
+                }
+            }, "buzz-load-" + ( t + 1 ) );
+            worker.setDaemon( true );
+            workers.add( worker );
+            worker.start();
+        }
+        for ( Thread worker : workers )
+        {
+            worker.join();
+        }
+        report.elapsed = System.nanoTime() - Math.min( measureStart, end );
+        return report;
+    }
+
+    /**
+     * Call an operation of the client.
+     *
+     * @param operation name of the <b>Buzz</b> method
+     * @param n random number choosing the post
+     * @throws BuzzException if the call fails
+     */
+    private void call( String operation, int n )
+        throws BuzzException
+    {
+        String post = "stub0x" + n;
+        switch ( operation )
+        {
+            case "getPosts":
+                buzz.getPosts( USER, BuzzFeed.Type.CONSUMPTION );
+                break;
+            case "getPost":
+                buzz.getPost( USER, post );
+                break;
+            case "getComments":
+                buzz.getComments( USER, post );
+                break;
+            case "getUserProfile":
+                buzz.getUserProfile( USER );
+                break;
+            case "getLikes":
+                buzz.getLikes( USER, post );
+                break;
+            case "followers":
+                buzz.followers( USER );
+                break;
+            case "search":
+                buzz.search( "engines" );
+                break;
+            case "searchPeople":
+                buzz.searchPeople( "lovelace" );
+                break;
+            case "createComment":
+                BuzzContent content = new BuzzContent();
+                content.setText( "Load test comment" );
+                buzz.createComment( USER, post, content );
+                break;
+            case "likePost":
+                buzz.likePost( USER, post );
+                break;
+            default:
+                throw new IllegalArgumentException( "Unknown operation: " + operation );
+        }
+    }
+
+    private static int total( Map<String, Integer> mix )
+    {
+        int total = 0;
+        for ( int weight : mix.values() )
+        {
+            total += weight;
+        }
+        return total;
+    }
+
+    /**
+     * Start a stub server, load a client against it and print the report.
+     *
+     * @param args the options, see <b>usage</b>
+     * @throws BuzzException if the stub server can not start or the client can not sign in
+     * @throws InterruptedException if interrupted while loading
+     */
+    public static void main( String[] args )
+        throws BuzzException, InterruptedException
+    {
+        Map<String, String> options = new LinkedHashMap<String, String>();
+        for ( int i = 0; i < args.length; i += 2 )
+        {
+            if ( !args[i].startsWith( "--" ) || i + 1 >= args.length )
+            {
+                usage( "Bad option: " + args[i] );
+                return;
+            }
+            options.put( args[i].substring( 2 ), args[i + 1] );
+        }
+        BuzzStubServer server = new BuzzStubServer();
+        try
+        {
+            Buzz buzz = new Buzz( server.createTransport() );
+            buzz.setOAuthVersion( 2 );
+            buzz.setConsumerForScope( "stub-client", "stub-secret", Buzz.BUZZ_SCOPE_WRITE );
+            buzz.setTokenWithSecret( "stub-token", "stub-refresh-token" );
+            BuzzLoadGenerator generator = new BuzzLoadGenerator( buzz );
+            for ( Map.Entry<String, String> option : options.entrySet() )
+            {
+                String value = option.getValue();
+                switch ( option.getKey() )
+                {
+                    case "threads":
+                        generator.setThreads( Integer.parseInt( value ) );
+                        break;
+                    case "duration":
+                        generator.setDuration( TimeUnit.SECONDS.toMillis( Long.parseLong( value ) ) );
+                        break;
+                    case "warmup":
+                        generator.setWarmup( TimeUnit.SECONDS.toMillis( Long.parseLong( value ) ) );
+                        break;
+                    case "mix":
+                        generator.setMix( value );
+                        break;
+                    case "latency":
+                        server.setLatency( Long.parseLong( value ) );
+                        break;
+                    case "jitter":
+                        server.setLatencyJitter( Long.parseLong( value ) );
+                        break;
+                    case "error-rate":
+                        server.setErrorRate( Double.parseDouble( value ) );
+                        break;
+                    case "error-status":
+                        server.setErrorStatus( Integer.parseInt( value ) );
+                        break;
+                    case "feed-size":
+                        server.setFeedSize( Integer.parseInt( value ) );
+                        break;
+                    case "content-length":
+                        server.setContentLength( Integer.parseInt( value ) );
+                        break;
+                    default:
+                        usage( "Unknown option: --" + option.getKey() );
+                        return;
+                }
+            }
+            Report report = generator.run();
+            System.out.print( report );
+            System.out.println( "server: requests=" + server.getRequests() + ", injected errors="
+                + server.getErrors() );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            usage( e.getMessage() );
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+    private static void usage( String error )
+    {
+        System.err.println( error );
+        System.err.println( "usage: BuzzLoadGenerator [--threads n] [--duration seconds] [--warmup seconds]"
+            + " [--mix name=weight,...] [--latency ms] [--jitter ms] [--error-rate 0..1] [--error-status code]"
+            + " [--feed-size n] [--content-length chars]" );
+        System.err.println( "operations: " + OPERATIONS );
+        System.exit( 2 );
+    }
+
+    /**
+     * Measures of a load run.
+     */
+    public static class Report
+    {
+        /**
+         * Latencies and errors by operation, in mix order
+         */
+        private final Map<String, Operation> operations = new LinkedHashMap<String, Operation>();
+
+        /**
+         * Measured time, in nanoseconds
+         */
+        private long elapsed;
+
+        Report( Iterable<String> names )
+        {
+            for ( String name : names )
+            {
+                operations.put( name, new Operation() );
+            }
+        }
+
+        void record( String operation, long latency, boolean failed )
+        {
+            Operation measures = operations.get( operation );
+            measures.latencies.record( latency );
+            if ( failed )
+            {
+                measures.errors.incrementAndGet();
+            }
+        }
+
+        /**
+         * @param operation name
+         * @return the latencies of the calls of the operation, errors included
+         */
+        public BuzzLatencyHistogram getLatencies( String operation )
+        {
+            return operations.get( operation ).latencies;
+        }
+
+        /**
+         * @param operation name
+         * @return the number of failed calls of the operation
+         */
+        public long getErrors( String operation )
+        {
+            return operations.get( operation ).errors.get();
+        }
+
+        /**
+         * @return the number of calls measured
+         */
+        public long getCalls()
+        {
+            long calls = 0;
+            for ( Operation measures : operations.values() )
+            {
+                calls += measures.latencies.getCount();
+            }
+            return calls;
+        }
+
+        /**
+         * @return the calls measured per second
+         */
+        public double getThroughput()
+        {
+            return elapsed <= 0 ? 0 : getCalls() * 1e9 / elapsed;
+        }
+
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder();
+            sb.append( String.format( "%-16s %9s %7s %9s %9s %9s %9s %9s %9s%n", "operation", "calls", "errors",
+                                      "calls/s", "mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms" ) );
+            long errors = 0;
+            for ( Map.Entry<String, Operation> entry : operations.entrySet() )
+            {
+                BuzzLatencyHistogram latencies = entry.getValue().latencies;
+                errors += entry.getValue().errors.get();
+                sb.append( String.format( "%-16s %9d %7d %9.1f %9.3f %9.3f %9.3f %9.3f %9.3f%n", entry.getKey(),
+                                          latencies.getCount(), entry.getValue().errors.get(),
+                                          elapsed <= 0 ? 0 : latencies.getCount() * 1e9 / elapsed,
+                                          latencies.getMeanMillis(), latencies.getPercentileMillis( 50 ),
+                                          latencies.getPercentileMillis( 90 ), latencies.getPercentileMillis( 99 ),
+                                          latencies.getMaxMillis() ) );
+            }
+            sb.append( String.format( "%-16s %9d %7d %9.1f%n", "total", getCalls(), errors, getThroughput() ) );
+            return sb.toString();
+        }
+
+        private static final class Operation
+        {
+            private final BuzzLatencyHistogram latencies = new BuzzLatencyHistogram();
+
+            private final AtomicLong errors = new AtomicLong();
+        }
+    }
+}
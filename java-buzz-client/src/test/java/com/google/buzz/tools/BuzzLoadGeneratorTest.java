@@ -0,0 +1,47 @@
+package com.google.buzz.tools;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.buzz.Buzz;
+import com.google.buzz.io.BuzzStubServer;
+
+public class BuzzLoadGeneratorTest
+{
+    @Test
+    public void testReportCountsCallsAndErrors()
+        throws Exception
+    {
+        BuzzStubServer server = new BuzzStubServer();
+        try
+        {
+            Buzz buzz = new Buzz( server.createTransport() );
+            buzz.setMetrics( null );
+            buzz.setOAuthVersion( 2 );
+            buzz.setConsumerForScope( "client", "secret", Buzz.BUZZ_SCOPE_WRITE );
+            buzz.setTokenWithSecret( "expired-token", "refresh-token" );
+            buzz.getUserProfile( "ada" );
+            server.setErrorRate( 1 );
+            BuzzLoadGenerator generator = new BuzzLoadGenerator( buzz );
+            generator.setMix( "getPosts=1,getUserProfile=0" );
+            generator.setThreads( 2 );
+            generator.setWarmup( 0 );
+            generator.setDuration( 300 );
+            BuzzLoadGenerator.Report report = generator.run();
+            Assert.assertTrue( report.getCalls() > 0 );
+            Assert.assertEquals( report.getCalls(), report.getErrors( "getPosts" ) );
+            Assert.assertEquals( report.getCalls(), server.getErrors() );
+            Assert.assertTrue( report.toString().contains( "getPosts" ) );
+        }
+        finally
+        {
+            server.close();
+        }
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testUnknownOperationIsRejected()
+    {
+        new BuzzLoadGenerator( new Buzz() ).setMix( "getPosts=1,launchRocket=2" );
+    }
+}
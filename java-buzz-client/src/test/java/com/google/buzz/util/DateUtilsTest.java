@@ -0,0 +1,59 @@
+package com.google.buzz.util;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DateUtilsTest
+{
+ private static final DateTimeFormatter UTC =
+   DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+ @Test public void testParseUtc()
+ {
+   Assert.assertEquals(Instant.parse("2010-02-09T17:01:35.123Z").toEpochMilli(),
+                       DateUtils.parseDate("2010-02-09T17:01:35.123Z").getTime());
+   Assert.assertEquals(0L,DateUtils.parseMillis("1970-01-01T00:00:00Z"));
+   Assert.assertEquals(-1L,DateUtils.parseMillis("1969-12-31T23:59:59.999Z"));
+ }
+
+ @Test public void testParseOffsets()
+ {
+   String[] dates = { "2010-02-09T09:01:35-08:00", "2010-02-10T02:31:35.5+09:30",
+                      "2010-02-09T17:01:35.123456+00:00", "2008-02-29T23:59:59+0100" };
+   for (String date : dates) {
+     String iso = date.endsWith("+0100") ? "2008-02-29T23:59:59+01:00" : date;
+     Assert.assertEquals(date,OffsetDateTime.parse(iso).toInstant().toEpochMilli(),
+                         DateUtils.parseMillis(date));
+   }
+ }
+
+ @Test public void testInvalidDates()
+ {
+   String[] dates = { null, "", "2010-02-09", "2010-02-09 17:01:35Z", "2010-13-09T17:01:35Z",
+                      "2010-02-30T17:01:35Z", "2010-02-09T24:01:35Z", "2010-02-09T17:01:35",
+                      "2010-02-09T17:01:35.Z", "2010-02-09T17:01:35+1:00", "2010-02-09T17:01:35Zulu" };
+   for (String date : dates) {
+     Assert.assertNull(date,DateUtils.parseDate(date));
+   }
+ }
+
+ @Test public void testFormatRoundTrip()
+ {
+   Random random = new Random(42);
+   for (int i=0; i<10000; ++i) {
+     long millis = (long) (random.nextDouble() * 4102444800000L) - 2208988800000L;
+     String formatted = DateUtils.formatMillis(millis);
+     Assert.assertEquals(UTC.format(Instant.ofEpochMilli(millis)),formatted);
+     Assert.assertEquals(millis,DateUtils.parseMillis(formatted));
+   }
+   Assert.assertEquals("2010-02-09T17:01:35.000Z",DateUtils.format(new Date(1265734895000L)));
+ }
+
+}